@@ -1,24 +1,43 @@
 package com.github.yuyuvu.urlshortener;
 
+import static com.github.yuyuvu.urlshortener.cli.presenters.ColorPrinter.printlnCyan;
+import static com.github.yuyuvu.urlshortener.cli.presenters.ColorPrinter.printlnRed;
+
+import com.github.yuyuvu.urlshortener.application.ClickEventPipeline;
 import com.github.yuyuvu.urlshortener.application.LinkService;
 import com.github.yuyuvu.urlshortener.application.NotificationService;
+import com.github.yuyuvu.urlshortener.application.UsageLimitNotifier;
 import com.github.yuyuvu.urlshortener.application.UserService;
 import com.github.yuyuvu.urlshortener.cli.ConsoleController;
-import com.github.yuyuvu.urlshortener.domain.repository.NotificationRepository;
-import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
-import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
 import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.http.RedirectHttpServer;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigFileWatcher;
 import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.BinaryStorageService;
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.FileStorageService;
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryNotificationRepository;
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.IncrementalSnapshotStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StagedStorageState;
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageService;
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageState;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.WriteAheadLogStorageService;
 import com.github.yuyuvu.urlshortener.infrastructure.scheduler.LinkCheckStateTask;
+import com.github.yuyuvu.urlshortener.infrastructure.scheduler.StorageCheckpointTask;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Класс, собирающий все объекты приложения и передающий зависимости по цепочке дальше. В конце
@@ -32,24 +51,85 @@ public class UrlShortenerApp {
     ConfigManager configManager;
     configManager = new ConfigManager();
 
-    // Загружаем состояние всех репозиториев из файла
-    StorageService storageService = new FileStorageService(configManager);
-    StorageState loadedStorageState;
+    // Загружаем состояние всех репозиториев из файла. При включённых инкрементальных снимках
+    // к полному снимку применяются файлы-дельты с изменениями, а при включённом журнале
+    // упреждающей записи поверх них проигрываются все изменения, сделанные после них
+    StorageService storageService =
+        configManager.getStorageFormatProperty() == ConfigManager.StorageFormat.BINARY
+            ? new BinaryStorageService(configManager)
+            : new FileStorageService(configManager);
+    if (configManager.getStorageIncrementalSnapshotEnabledProperty()) {
+      storageService = new IncrementalSnapshotStorageService(storageService, configManager);
+    }
+    WriteAheadLogStorageService writeAheadLog = null;
+    if (configManager.getStorageWriteAheadLogEnabledProperty()) {
+      writeAheadLog = new WriteAheadLogStorageService(storageService, configManager);
+      storageService = writeAheadLog;
+    }
+    long loadStartNanos = System.nanoTime();
+    InMemoryShortLinkRepository linkRepository;
+    InMemoryUserRepository userRepository;
+    InMemoryNotificationRepository notificationRepository;
     try {
-      loadedStorageState = storageService.loadState().orElse(new StorageState());
+      if (configManager.getStorageLoadLazyProperty()) {
+        // Сначала загружаем только короткие ссылки, чтобы сразу работали редиректы,
+        // а пользователи и уведомления догружаются в фоне по шардам
+        StagedStorageState stagedStorageState =
+            storageService
+                .loadStateStaged()
+                .orElseGet(() -> StagedStorageState.completed(new StorageState()));
+        linkRepository =
+            new InMemoryShortLinkRepository(stagedStorageState.getExistingShortLinks());
+        userRepository = new InMemoryUserRepository(stagedStorageState);
+        notificationRepository = new InMemoryNotificationRepository(stagedStorageState);
+      } else {
+        // Возвращаем все репозитории в состояние до выключения сервиса
+        StorageState loadedStorageState = storageService.loadState().orElse(new StorageState());
+        linkRepository =
+            new InMemoryShortLinkRepository(loadedStorageState.getExistingShortLinks());
+        userRepository = new InMemoryUserRepository(loadedStorageState.getExistingUsers());
+        notificationRepository =
+            new InMemoryNotificationRepository(loadedStorageState.getUnreadNotifications());
+      }
     } catch (StorageStatePersistenceException e) {
       // Возможная критическая проблема загрузки данных после перезапуска сервиса,
       // которая может привести к их перезаписи впоследствии
       throw new StorageStatePersistenceException(e.getMessage());
     }
+    printlnCyan(
+        "Короткие ссылки загружены за "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStartNanos)
+            + " мс (ссылок: "
+            + linkRepository.getRepositoryAsMap().size()
+            + ").");
+    final InMemoryUserRepository loadingUserRepository = userRepository;
+    CompletableFuture.allOf(userRepository.whenLoaded(), notificationRepository.whenLoaded())
+        .whenComplete(
+            (result, e) -> {
+              if (e != null) {
+                // Сохранение данных тоже завершится ошибкой, поэтому файлы не будут перезаписаны
+                printlnRed(
+                    "Не удалось загрузить пользователей и уведомления: "
+                        + (e.getCause() != null ? e.getCause() : e).getMessage()
+                        + "\nПерезапустите сервис без ленивой загрузки данных.");
+                return;
+              }
+              printlnCyan(
+                  "Все данные сервиса загружены за "
+                      + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStartNanos)
+                      + " мс (пользователей: "
+                      + loadingUserRepository.getRepositoryAsMap().size()
+                      + "). Пиковое использование heap: "
+                      + getPeakHeapUsageInMb()
+                      + " МБ.");
+            });
 
-    // Возвращаем все репозитории в состояние до выключения сервиса
-    ShortLinkRepository linkRepository =
-        new InMemoryShortLinkRepository(loadedStorageState.getExistingShortLinks());
-    UserRepository userRepository =
-        new InMemoryUserRepository(loadedStorageState.getExistingUsers());
-    NotificationRepository notificationRepository =
-        new InMemoryNotificationRepository(loadedStorageState.getUnreadNotifications());
+    // Подписываем журнал упреждающей записи на все изменения данных в репозиториях
+    if (writeAheadLog != null) {
+      linkRepository.addStorageChangeListener(writeAheadLog);
+      userRepository.addStorageChangeListener(writeAheadLog);
+      notificationRepository.addStorageChangeListener(writeAheadLog);
+    }
 
     // Инициализируем сервисы
     UserService userService = new UserService(userRepository);
@@ -63,7 +143,6 @@ public class UrlShortenerApp {
     /*
      * Создаём задание, которое в параллельном режиме будет проверять истечение
      * срока действия коротких ссылок и удалять их, отправлять уведомления,
-     * если был израсходован лимит использований или срок действия ссылки истёк,
      * а также очищать список уже прочитанных уведомлений.
      * <br>
      * В данном случае мы гарантируем, что все ссылки с истёкшим сроком действия будут удалены,
@@ -85,23 +164,165 @@ public class UrlShortenerApp {
         15,
         TimeUnit.SECONDS);
 
+    // Уведомления об израсходовании лимита создаются сразу после перехода по ссылке в потоке
+    // заданий (а не ищутся перебором всех ссылок), пропущенные до перезапуска публикуются заново
+    linkService.addShortLinkEventListener(
+        new UsageLimitNotifier(
+            linkService,
+            notificationService,
+            scheduledExecutorService,
+            consoleController::sendUnreadNotifications));
+    linkService.publishPendingUsageLimitReachedEvents();
+
+    // В том же потоке периодически сохраняем изменения данных, не дожидаясь выключения сервиса.
+    // Период сохранения меняется при перезагрузке настроек без перезапуска сервиса
+    StorageCheckpointTask storageCheckpointTask =
+        new StorageCheckpointTask(
+            storageService, userRepository, linkRepository, notificationRepository);
+    AtomicInteger checkpointIntervalSeconds =
+        new AtomicInteger(configManager.getStorageCheckpointIntervalSecondsProperty());
+    AtomicReference<ScheduledFuture<?>> storageCheckpoints =
+        new AtomicReference<>(
+            scheduleStorageCheckpoints(
+                scheduledExecutorService, storageCheckpointTask, checkpointIntervalSeconds.get()));
+    configManager.addConfigReloadListener(
+        configSnapshot -> {
+          int newIntervalSeconds = configSnapshot.storageCheckpointIntervalSeconds();
+          if (checkpointIntervalSeconds.getAndSet(newIntervalSeconds) != newIntervalSeconds) {
+            ScheduledFuture<?> previous =
+                storageCheckpoints.getAndSet(
+                    scheduleStorageCheckpoints(
+                        scheduledExecutorService, storageCheckpointTask, newIntervalSeconds));
+            if (previous != null) {
+              previous.cancel(false);
+            }
+          }
+        });
+
+    // Следим за файлом конфигурации: изменённые настройки разбираются в отдельном потоке
+    // и применяются без команды config reload
+    Optional<ConfigFileWatcher> configFileWatcher = Optional.empty();
+    try {
+      configFileWatcher = configManager.startConfigFileWatcher();
+    } catch (IOException e) {
+      printlnRed(
+          "Не удалось включить автоматическую перезагрузку настроек: "
+              + e.getMessage()
+              + "\nИзменённые настройки можно применить командой config reload.");
+    }
+    final Optional<ConfigFileWatcher> finalConfigFileWatcher = configFileWatcher;
+
+    // Переносим сохранение счётчиков использований при переходах в фоновый поток,
+    // чтобы задержка редиректа не зависела от хранилища
+    ClickEventPipeline clickEventPipeline = null;
+    int clickEventsBufferSize = configManager.getClickEventsBufferSizeProperty();
+    if (clickEventsBufferSize > 0) {
+      clickEventPipeline = new ClickEventPipeline(linkRepository, clickEventsBufferSize);
+      clickEventPipeline.start();
+      linkService.setClickEventPipeline(clickEventPipeline);
+    }
+    final ClickEventPipeline finalClickEventPipeline = clickEventPipeline;
+
+    // Запускаем HTTP-сервер редиректов, если для него задан порт. Он работает с теми же
+    // репозиториями и лимитами использований, что и консоль
+    RedirectHttpServer redirectHttpServer = null;
+    int httpRedirectPort = configManager.getHttpRedirectPortProperty();
+    if (httpRedirectPort > 0) {
+      try {
+        redirectHttpServer =
+            new RedirectHttpServer(linkService, new InetSocketAddress(httpRedirectPort));
+        redirectHttpServer.start();
+        printlnCyan(
+            "HTTP-сервер редиректов запущен на порту "
+                + redirectHttpServer.getPort()
+                + (redirectHttpServer.usesVirtualThreads()
+                    ? " (запросы обрабатываются в виртуальных потоках)."
+                    : "."));
+      } catch (IOException e) {
+        printlnRed(
+            "Не удалось запустить HTTP-сервер редиректов на порту "
+                + httpRedirectPort
+                + ": "
+                + e.getMessage()
+                + "\nРедиректы доступны только через консоль.");
+      }
+    }
+    final RedirectHttpServer finalRedirectHttpServer = redirectHttpServer;
+
     // Добавляем автосохранение всех данных при выключении сервиса
+    final StorageService finalStorageService = storageService;
     Runtime.getRuntime()
         .addShutdownHook(
             new Thread(
                 () -> {
+                  // Сначала перестаём принимать запросы, чтобы переходы не терялись при сохранении
+                  if (finalRedirectHttpServer != null) {
+                    finalRedirectHttpServer.close();
+                  }
+                  // Сохраняем в хранилище счётчики переходов, оставшиеся в буфере событий
+                  if (finalClickEventPipeline != null) {
+                    finalClickEventPipeline.close();
+                  }
+                  finalConfigFileWatcher.ifPresent(
+                      watcher -> {
+                        try {
+                          watcher.close();
+                        } catch (IOException e) {
+                          System.err.println(e.getMessage());
+                        }
+                      });
+                  // Выключение ScheduledExecutorService до итогового сохранения, чтобы фоновые
+                  // задания (периодическое сохранение, проверка ссылок, уведомления) не меняли
+                  // данные во время него и не открывали заново уже закрытый журнал
+                  scheduledExecutorService.shutdown();
                   try {
-                    storageService.saveStorageState(
+                    if (!scheduledExecutorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                      scheduledExecutorService.shutdownNow();
+                    }
+                  } catch (InterruptedException e) {
+                    scheduledExecutorService.shutdownNow();
+                    Thread.currentThread().interrupt();
+                  }
+                  try {
+                    finalStorageService.saveStorageState(
                         userRepository, linkRepository, notificationRepository);
+                    finalStorageService.close();
                   } catch (StorageStatePersistenceException e) {
                     // Обработка критической проблемы сохранения данных при выключении сервиса
                     System.err.println(e.getMessage());
                   }
-                  // Выключение ScheduledExecutorService
-                  scheduledExecutorService.shutdown();
                 }));
 
     // Запускаем цикл чтения команд или перенаправления по коротким URL
     consoleController.startListening();
   }
+
+  /**
+   * Метод ставит периодическое сохранение изменений данных с заданным периодом в секундах (0 -
+   * только при выключении сервиса).
+   */
+  private static ScheduledFuture<?> scheduleStorageCheckpoints(
+      ScheduledExecutorService scheduledExecutorService,
+      StorageCheckpointTask storageCheckpointTask,
+      int checkpointIntervalSeconds) {
+    if (checkpointIntervalSeconds <= 0) {
+      return null;
+    }
+    return scheduledExecutorService.scheduleWithFixedDelay(
+        storageCheckpointTask,
+        checkpointIntervalSeconds,
+        checkpointIntervalSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  /** Метод возвращает пиковое с момента запуска JVM использование heap в мегабайтах. */
+  private static long getPeakHeapUsageInMb() {
+    long peakHeapUsage = 0;
+    for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (memoryPool.getType() == MemoryType.HEAP) {
+        peakHeapUsage += memoryPool.getPeakUsage().getUsed();
+      }
+    }
+    return peakHeapUsage / (1024 * 1024);
+  }
 }
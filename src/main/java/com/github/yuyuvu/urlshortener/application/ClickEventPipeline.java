@@ -0,0 +1,268 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронная обработка переходов по коротким ссылкам. Редирект только увеличивает счётчик
+ * использований ссылки (он нужен сразу для проверки лимита) и публикует компактное событие перехода
+ * (shortID, время, источник) в ограниченный кольцевой буфер без блокировок. Отдельный поток
+ * забирает события пачками, обновляет статистику переходов и сохраняет счётчики использований в
+ * хранилище (одна запись на ссылку за пачку), поэтому задержка редиректа не зависит от диска. <br>
+ * Если буфер заполнен, событие отбрасывается, но shortID ссылки запоминается отдельно, чтобы её
+ * счётчик использований всё равно был сохранён со следующей пачкой. Теряется только статистика
+ * таких переходов.
+ */
+public class ClickEventPipeline implements AutoCloseable {
+  /** Источник перехода по короткой ссылке. */
+  public enum ClickSource {
+    CONSOLE,
+    HTTP
+  }
+
+  /**
+   * Метрики обработки событий переходов.
+   *
+   * @param queueDepth количество событий в буфере, ещё не забранных потоком обработки
+   * @param capacity ёмкость буфера
+   * @param published принятые в буфер события
+   * @param dropped события, отброшенные из-за заполненного буфера
+   * @param batches обработанные пачки событий
+   * @param averageBatchSize средний размер пачки
+   * @param maxBatchSize наибольший размер пачки
+   * @param maxProcessingLagMillis наибольшая задержка от перехода до обработки его события
+   * @param processedClicksBySource обработанные переходы по источникам
+   */
+  public record Metrics(
+      int queueDepth,
+      int capacity,
+      long published,
+      long dropped,
+      long batches,
+      double averageBatchSize,
+      int maxBatchSize,
+      long maxProcessingLagMillis,
+      Map<ClickSource, Long> processedClicksBySource) {}
+
+  /** Наибольшее количество событий, которое поток обработки забирает за одну пачку. */
+  private static final int MAX_BATCH_SIZE = 1024;
+
+  /** Сколько поток обработки спит, если не разбудить его новым событием. */
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final ShortLinkRepository shortLinkRepository;
+
+  /*
+   * Кольцевой буфер из параллельных массивов полей события. Ячейка с номером
+   * позиции p свободна для записи, когда её sequence равен p, и готова к
+   * чтению, когда sequence равен p + 1. Запись sequence публикует поля события.
+   * */
+  private final int capacity;
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final String[] shortIds;
+  private final long[] timestamps;
+  private final byte[] sources;
+  private final AtomicLong tail = new AtomicLong();
+
+  /** Позиция чтения, меняется только потоком обработки. */
+  private volatile long head;
+
+  /**
+   * ShortID ссылок, события которых были отброшены, их счётчики сохраняются со следующей пачкой.
+   */
+  private final Set<String> droppedShortIds = ConcurrentHashMap.newKeySet();
+
+  private final Thread consumerThread;
+  private volatile boolean consumerParked;
+  private volatile boolean running = true;
+
+  private final AtomicLong published = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong batchedEvents = new AtomicLong();
+  private volatile int maxBatchSize;
+  private volatile long maxProcessingLagMillis;
+  private final AtomicLongArray processedClicksBySource =
+      new AtomicLongArray(ClickSource.values().length);
+
+  /**
+   * Конструктор создаёт буфер событий, обработка начинается методом start.
+   *
+   * @param requestedCapacity ёмкость буфера, округляется вверх до степени двойки
+   */
+  public ClickEventPipeline(ShortLinkRepository shortLinkRepository, int requestedCapacity) {
+    this.shortLinkRepository = shortLinkRepository;
+    this.capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+    this.mask = capacity - 1;
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    this.shortIds = new String[capacity];
+    this.timestamps = new long[capacity];
+    this.sources = new byte[capacity];
+    this.consumerThread = new Thread(this::consume, "click-events");
+    this.consumerThread.setDaemon(true);
+  }
+
+  /** Метод запускает поток обработки событий. */
+  public void start() {
+    consumerThread.start();
+  }
+
+  /**
+   * Метод публикует событие перехода по ссылке. Не блокируется: при заполненном буфере событие
+   * отбрасывается.
+   *
+   * @return false, если событие было отброшено
+   */
+  public boolean publish(String shortId, ClickSource source) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          shortIds[index] = shortId;
+          timestamps[index] = System.currentTimeMillis();
+          sources[index] = (byte) source.ordinal();
+          sequences.set(index, position + 1);
+          break;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        droppedShortIds.add(shortId);
+        dropped.incrementAndGet();
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+    published.incrementAndGet();
+    if (consumerParked) {
+      consumerParked = false;
+      LockSupport.unpark(consumerThread);
+    }
+    return true;
+  }
+
+  private void consume() {
+    while (running) {
+      if (drainBatch() == 0) {
+        consumerParked = true;
+        if (isEmpty() && running) {
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        consumerParked = false;
+      }
+    }
+  }
+
+  private boolean isEmpty() {
+    return sequences.get((int) (head & mask)) != head + 1 && droppedShortIds.isEmpty();
+  }
+
+  /**
+   * Метод забирает из буфера до MAX_BATCH_SIZE событий и обрабатывает их одной пачкой.
+   *
+   * @return количество обработанных событий
+   */
+  private int drainBatch() {
+    Set<String> batchShortIds = new HashSet<>();
+    long position = head;
+    long oldestClickMillis = Long.MAX_VALUE;
+    int batchSize = 0;
+    while (batchSize < MAX_BATCH_SIZE) {
+      int index = (int) (position & mask);
+      if (sequences.get(index) != position + 1) {
+        break;
+      }
+      batchShortIds.add(shortIds[index]);
+      oldestClickMillis = Math.min(oldestClickMillis, timestamps[index]);
+      processedClicksBySource.incrementAndGet(sources[index]);
+      shortIds[index] = null;
+      sequences.set(index, position + capacity);
+      position++;
+      batchSize++;
+    }
+    head = position;
+
+    for (String droppedShortId : droppedShortIds) {
+      droppedShortIds.remove(droppedShortId);
+      batchShortIds.add(droppedShortId);
+    }
+    if (batchShortIds.isEmpty()) {
+      return 0;
+    }
+
+    // Сохраняем текущее значение счётчика один раз для каждой ссылки из пачки,
+    // удалённые за это время ссылки сохранять уже не нужно
+    for (String shortId : batchShortIds) {
+      Optional<ShortLink> shortLink = shortLinkRepository.getShortLinkByShortID(shortId);
+      shortLink.ifPresent(shortLinkRepository::updateUsageCounter);
+    }
+    if (batchSize > 0) {
+      batches.incrementAndGet();
+      batchedEvents.addAndGet(batchSize);
+      if (batchSize > maxBatchSize) {
+        maxBatchSize = batchSize;
+      }
+      long processingLagMillis = System.currentTimeMillis() - oldestClickMillis;
+      if (processingLagMillis > maxProcessingLagMillis) {
+        maxProcessingLagMillis = processingLagMillis;
+      }
+    }
+    return Math.max(batchSize, 1);
+  }
+
+  /** Метод возвращает метрики обработки событий. */
+  public Metrics getMetrics() {
+    long batchCount = batches.get();
+    Map<ClickSource, Long> clicksBySource = new EnumMap<>(ClickSource.class);
+    for (ClickSource source : ClickSource.values()) {
+      clicksBySource.put(source, processedClicksBySource.get(source.ordinal()));
+    }
+    return new Metrics(
+        (int) Math.max(0, tail.get() - head),
+        capacity,
+        published.get(),
+        dropped.get(),
+        batchCount,
+        batchCount == 0 ? 0 : (double) batchedEvents.get() / batchCount,
+        maxBatchSize,
+        maxProcessingLagMillis,
+        clicksBySource);
+  }
+
+  /**
+   * Метод останавливает поток обработки и обрабатывает оставшиеся события в вызывающем потоке,
+   * чтобы счётчики использований попали в хранилище до его сохранения при выключении сервиса.
+   */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(consumerThread);
+    try {
+      consumerThread.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (!consumerThread.isAlive()) {
+      int drained;
+      do {
+        drained = drainBatch();
+      } while (drained > 0);
+    }
+  }
+}
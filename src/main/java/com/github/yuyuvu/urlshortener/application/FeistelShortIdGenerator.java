@@ -0,0 +1,185 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Генерация shortID без коллизий: возрастающий счётчик пропускается через сеть Фейстеля с секретным
+ * ключом, которая взаимно однозначно переставляет числа от 0 до N - 1, где N - количество всех
+ * shortID заданной длины из разрешённых символов. Результат записывается в системе счисления по
+ * основанию числа символов. <br>
+ * Разным значениям счётчика соответствуют разные shortID, поэтому повторная генерация не нужна, а
+ * соседние значения счётчика дают непохожие друг на друга shortID. <br>
+ * Счётчик не хранится между запусками: при первой генерации (и при смене символов или длины в
+ * настройках) он восстанавливается обратной перестановкой всех существующих shortID. Проверка по
+ * ShortLinkRepository остаётся только как защита от совпадения с shortID, созданными другим
+ * генератором или с другим ключом, и после полного оборота счётчика.
+ */
+public class FeistelShortIdGenerator implements ShortIdGenerator {
+  private static final int ROUNDS = 6;
+
+  /** Ограничение размера пространства shortID, чтобы перестановка помещалась в long. */
+  private static final long MAX_DOMAIN_SIZE = 1L << 62;
+
+  private final long[] roundKeys = new long[ROUNDS];
+
+  /* Состояние для текущих символов и длины shortID. */
+  private char[] alphabet;
+  private int shortIdLength;
+  private long domainSize;
+  private int halfBits;
+  private long halfMask;
+  private long nextCounter;
+
+  /** Генератор зависит от секретного ключа, из которого выводятся ключи раундов. */
+  public FeistelShortIdGenerator(long key) {
+    for (int round = 0; round < ROUNDS; round++) {
+      roundKeys[round] = mix(key + (round + 1) * 0x9E3779B97F4A7C15L);
+    }
+  }
+
+  @Override
+  public synchronized String nextShortId(
+      char[] allowedCharacters, int shortIdLength, ShortLinkRepository shortLinkRepository) {
+    if (!Arrays.equals(allowedCharacters, alphabet) || shortIdLength != this.shortIdLength) {
+      configure(
+          allowedCharacters.clone(),
+          shortIdLength,
+          shortLinkRepository.getRepositoryAsMap().keySet());
+    }
+    for (long attempt = 0; attempt < domainSize; attempt++) {
+      long counter = nextCounter;
+      nextCounter = counter + 1 == domainSize ? 0 : counter + 1;
+      String shortId = encode(permute(counter));
+      if (shortLinkRepository.getShortLinkByShortID(shortId).isEmpty()) {
+        return shortId;
+      }
+    }
+    throw new IllegalStateException(
+        "Все возможные короткие ID длины "
+            + shortIdLength
+            + " уже заняты. Увеличьте длину короткой ссылки или набор символов в настройках.");
+  }
+
+  /**
+   * Метод пересчитывает параметры перестановки под новые символы и длину и восстанавливает счётчик
+   * по существующим shortID.
+   */
+  private void configure(char[] alphabet, int shortIdLength, Collection<String> existingShortIds) {
+    this.alphabet = alphabet;
+    this.shortIdLength = shortIdLength;
+    domainSize = 1;
+    for (int i = 0; i < shortIdLength && domainSize < MAX_DOMAIN_SIZE; i++) {
+      domainSize =
+          domainSize > MAX_DOMAIN_SIZE / alphabet.length
+              ? MAX_DOMAIN_SIZE
+              : domainSize * alphabet.length;
+    }
+    int bits = 64 - Long.numberOfLeadingZeros(domainSize - 1);
+    halfBits = Math.max(1, (bits + 1) / 2);
+    halfMask = (1L << halfBits) - 1;
+
+    long maxCounter = -1;
+    for (String shortId : existingShortIds) {
+      long value = decode(shortId);
+      if (value >= 0) {
+        maxCounter = Math.max(maxCounter, unpermute(value));
+      }
+    }
+    nextCounter = maxCounter + 1 == domainSize ? 0 : maxCounter + 1;
+  }
+
+  /*
+   * Перестановка чисел от 0 до domainSize - 1.
+   * */
+
+  /**
+   * Сеть Фейстеля переставляет числа из 2 * halfBits бит, а значения за пределами пространства
+   * shortID пропускаются повторным применением перестановки (cycle walking).
+   */
+  private long permute(long value) {
+    long result = feistel(value);
+    while (result >= domainSize) {
+      result = feistel(result);
+    }
+    return result;
+  }
+
+  private long unpermute(long value) {
+    long result = inverseFeistel(value);
+    while (result >= domainSize) {
+      result = inverseFeistel(result);
+    }
+    return result;
+  }
+
+  private long feistel(long value) {
+    long left = value >>> halfBits;
+    long right = value & halfMask;
+    for (long roundKey : roundKeys) {
+      long newRight = left ^ (mix(right ^ roundKey) & halfMask);
+      left = right;
+      right = newRight;
+    }
+    return (left << halfBits) | right;
+  }
+
+  private long inverseFeistel(long value) {
+    long left = value >>> halfBits;
+    long right = value & halfMask;
+    for (int round = ROUNDS - 1; round >= 0; round--) {
+      long newLeft = right ^ (mix(left ^ roundKeys[round]) & halfMask);
+      right = left;
+      left = newLeft;
+    }
+    return (left << halfBits) | right;
+  }
+
+  /** Перемешивающая функция раунда (финализатор SplitMix64). */
+  private static long mix(long value) {
+    long z = value;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /*
+   * Запись чисел символами shortID.
+   * */
+
+  private String encode(long value) {
+    char[] shortIdChars = new char[shortIdLength];
+    long rest = value;
+    for (int i = shortIdLength - 1; i >= 0; i--) {
+      shortIdChars[i] = alphabet[(int) (rest % alphabet.length)];
+      rest /= alphabet.length;
+    }
+    return new String(shortIdChars);
+  }
+
+  /** Метод возвращает -1 для shortID, которые не могли быть созданы с текущими настройками. */
+  private long decode(String shortId) {
+    if (shortId.length() != shortIdLength) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = 0; i < shortIdLength; i++) {
+      int digit = indexOf(shortId.charAt(i));
+      if (digit < 0 || value > (MAX_DOMAIN_SIZE - digit) / alphabet.length) {
+        return -1;
+      }
+      value = value * alphabet.length + digit;
+    }
+    return value < domainSize ? value : -1;
+  }
+
+  private int indexOf(char character) {
+    for (int i = 0; i < alphabet.length; i++) {
+      if (alphabet[i] == character) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -11,16 +11,14 @@ import com.github.yuyuvu.urlshortener.exceptions.UsagesLimitReachedException;
 import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
 import java.awt.Desktop;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.LocalDateTime;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 import java.util.UUID;
-import java.util.regex.Pattern;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * LinkService отвечает за операции, совершаемые со ссылками и URL (прежде всего с объектом
@@ -31,10 +29,120 @@ public class LinkService {
   private final ShortLinkRepository shortLinkRepository;
   private final ConfigManager configManager;
 
-  /** Сервис зависит от NotificationRepository и ConfigManager. */
+  /**
+   * Слушатели событий коротких ссылок (например, создание уведомлений об израсходовании лимита).
+   */
+  private final List<ShortLinkEventListener> shortLinkEventListeners = new CopyOnWriteArrayList<>();
+
+  /** Стратегия генерации коротких ID новых ссылок. */
+  private final ShortIdGenerator shortIdGenerator;
+
+  /** Наибольшая длина коротких ID, до которой она увеличивается при заполнении пространства ID. */
+  private static final int MAX_SHORT_ID_LENGTH = 20;
+
+  /**
+   * Длина коротких ID, до которой она уже увеличивалась за время работы сервиса. Длина только
+   * растёт, чтобы стратегия генерации не перестраивалась туда и обратно при удалении ссылок.
+   */
+  private final AtomicInteger grownShortIdLength = new AtomicInteger();
+
+  /** Префиксное дерево по service URL из настроек, по которым оно было построено. */
+  private volatile ServiceBaseURLMatcher serviceBaseURLMatcher;
+
+  /**
+   * Кэш подготовленных редиректов. Все изменения и удаления ссылок в LinkService удаляют из него
+   * запись ссылки.
+   */
+  private final RedirectCache redirectCache = new RedirectCache();
+
+  /**
+   * Фоновая обработка событий переходов по ссылкам. Если не задана, счётчик использований
+   * сохраняется в хранилище сразу при переходе.
+   */
+  private volatile ClickEventPipeline clickEventPipeline;
+
+  /**
+   * Сервис зависит от ShortLinkRepository и ConfigManager. Способ генерации коротких ID выбирается
+   * по настройкам при создании сервиса.
+   */
   public LinkService(ShortLinkRepository shortLinkRepository, ConfigManager configManager) {
+    this(shortLinkRepository, configManager, makeShortIdGenerator(configManager));
+  }
+
+  /** Конструктор позволяет подставить собственную стратегию генерации коротких ID. */
+  public LinkService(
+      ShortLinkRepository shortLinkRepository,
+      ConfigManager configManager,
+      ShortIdGenerator shortIdGenerator) {
     this.shortLinkRepository = shortLinkRepository;
     this.configManager = configManager;
+    this.shortIdGenerator = shortIdGenerator;
+  }
+
+  private static ShortIdGenerator makeShortIdGenerator(ConfigManager configManager) {
+    ShortIdGenerator shortIdGenerator;
+    if (configManager.getShortLinkIdGeneratorProperty()
+        == ConfigManager.ShortIdGeneratorType.RANDOM) {
+      shortIdGenerator = new RandomShortIdGenerator();
+    } else {
+      shortIdGenerator = new FeistelShortIdGenerator(configManager.getShortLinkIdKeyProperty());
+    }
+    int poolHighWatermark = configManager.getShortLinkIdPoolHighWatermarkProperty();
+    if (poolHighWatermark > 0) {
+      int poolLowWatermark =
+          Math.min(configManager.getShortLinkIdPoolLowWatermarkProperty(), poolHighWatermark);
+      shortIdGenerator =
+          new PooledShortIdGenerator(shortIdGenerator, poolLowWatermark, poolHighWatermark);
+    }
+    return shortIdGenerator;
+  }
+
+  /** Метод возвращает метрики пула коротких ID, если пул включён в настройках. */
+  public Optional<PooledShortIdGenerator.Metrics> getShortIdPoolMetrics() {
+    if (shortIdGenerator instanceof PooledShortIdGenerator pooledShortIdGenerator) {
+      return Optional.of(pooledShortIdGenerator.getMetrics());
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Метод передаёт сохранение счётчиков использований при переходах по ссылкам фоновой обработке
+   * событий переходов.
+   */
+  public void setClickEventPipeline(ClickEventPipeline clickEventPipeline) {
+    this.clickEventPipeline = clickEventPipeline;
+  }
+
+  /** Метод возвращает метрики фоновой обработки событий переходов, если она включена. */
+  public Optional<ClickEventPipeline.Metrics> getClickEventMetrics() {
+    ClickEventPipeline pipeline = clickEventPipeline;
+    return pipeline == null ? Optional.empty() : Optional.of(pipeline.getMetrics());
+  }
+
+  /** Метод возвращает метрики кэша подготовленных редиректов. */
+  public RedirectCache.Metrics getRedirectCacheMetrics() {
+    return redirectCache.getMetrics();
+  }
+
+  /**
+   * Заполненность пространства коротких ID текущей длины.
+   *
+   * @param shortIdLength длина коротких ID новых ссылок
+   * @param occupiedShortIds количество ссылок с короткими ID этой длины
+   * @param keyspaceSize количество всех возможных коротких ID этой длины
+   * @param occupancy доля занятых коротких ID от 0 до 1
+   * @param expectedRandomAttempts ожидаемое число попыток случайной генерации одного свободного ID
+   */
+  public record ShortIdKeyspaceStats(
+      int shortIdLength,
+      long occupiedShortIds,
+      double keyspaceSize,
+      double occupancy,
+      double expectedRandomAttempts) {}
+
+  /** Метод для подписки на события коротких ссылок. */
+  public void addShortLinkEventListener(ShortLinkEventListener shortLinkEventListener) {
+    shortLinkEventListeners.add(shortLinkEventListener);
   }
 
   /**
@@ -77,62 +185,17 @@ public class LinkService {
    * (http, https, ftp), а также, что URL соответствует всем синтаксическим правилам стандарта
    * RFC2396 + подходит для сервиса сокращения ссылок.
    */
-  @SuppressWarnings("ResultOfMethodCallIgnored")
   public void validateURLFormat(String originalURL) throws InvalidOriginalLinkException {
     // Корректная валидация на URL встроенными методами Java +
-    // дополнительные проверки через свои regex, чтобы не принимать неподходящие
+    // дополнительные проверки, чтобы не принимать неподходящие
     // для сервиса сокращения URL ссылки.
     // Можно было также заменить на проверку через Regex по более новому RFC 3987, например,
     // используя полноценный готовый длинный regex из класса android.util.Patterns.WEB_URL
     // из Android API, но это не добавлено, чтобы отразить авторский характер решения.
     // Поддержка mailto и ftp была оставлена (так как это тоже протоколы URL).
+    // Обычные URL проверяются за один проход без создания объектов, см. UrlFormatValidator.
     // См. тесты в validateURLFormatTest в LinkServiceTest.
-    try {
-      // Следующие два вызова выбросят Exception, если переданное значение не является URI и URL
-      URI uri = new URI(originalURL);
-      uri.toURL();
-
-      // Дополнительно проверяем, что после указания протокола хост не пустой
-      // и название доменной зоны тоже не пустое (либо указан ip)
-      Pattern urlHasContent = Pattern.compile("[^.]+\\.[^.]+");
-      String hostAfterScheme = originalURL.substring(originalURL.indexOf("//") + 2);
-      if (!urlHasContent.matcher(hostAfterScheme).find()) {
-        throw new MalformedURLException();
-      }
-
-      // Дополнительно проверяем, что после протокола есть слеши
-      // и нет дефиса в начале или конце названия домена или поддоменов
-      if (originalURL.startsWith("http:")
-          || originalURL.startsWith("https:")
-          || originalURL.startsWith("ftp:")) {
-        String schemeMid = originalURL.substring(originalURL.indexOf(":") + 1);
-        if (!schemeMid.startsWith("//")) {
-          throw new MalformedURLException();
-        } else {
-          schemeMid = schemeMid.substring(2);
-          if (schemeMid.contains("@")) {
-            schemeMid = schemeMid.substring(schemeMid.indexOf("@") + 1);
-          }
-          if (schemeMid.contains(":")) {
-            schemeMid = schemeMid.substring(0, schemeMid.lastIndexOf(":"));
-          }
-          if (schemeMid.contains("/")) {
-            schemeMid = schemeMid.substring(0, schemeMid.indexOf("/"));
-          }
-          // Дополнительно проверяем, что внутри URL нет множества последовательных точек
-          Pattern urlHasStrangeDots = Pattern.compile("\\.{2,}");
-          if (urlHasStrangeDots.matcher(schemeMid).find()) {
-            throw new MalformedURLException();
-          }
-          for (String domain : schemeMid.split("[.]")) {
-            if (domain.startsWith("-") || domain.endsWith("-")) {
-              throw new MalformedURLException();
-            }
-          }
-        }
-      }
-
-    } catch (URISyntaxException | IllegalArgumentException | MalformedURLException e) {
+    if (!UrlFormatValidator.isValid(originalURL)) {
       throw new InvalidOriginalLinkException(
           "Переданный URL ("
               + originalURL
@@ -149,14 +212,15 @@ public class LinkService {
       throws OriginalLinkNotFoundException, InvalidShortLinkException {
     shortLinkFullURL = shortLinkFullURL.strip();
     // Проверка на то, что короткая ссылка начинается с serviceBaseURL
-    if (checkShortLinkDoesNotStartWithServiceBaseURL(shortLinkFullURL)) {
+    Optional<SplitShortURL> recognizedShortURL = recognizeShortLink(shortLinkFullURL);
+    if (recognizedShortURL.isEmpty()) {
       throw new InvalidShortLinkException(
           "Переданная ссылка не была создана в данном сервисе сокращения ссылок "
               + "(переданное значение не распознаётся как короткая ссылка сервиса).");
     }
 
     // Проверка на то, что короткая ссылка существует, активна и ведёт на какой-то длинный URL
-    SplitShortURL splitShortURL = splitShortLinkAndServiceBaseURL(shortLinkFullURL);
+    SplitShortURL splitShortURL = recognizedShortURL.get();
     Optional<ShortLink> originalUrl =
         shortLinkRepository.getShortLinkByShortID(splitShortURL.shortID);
     if (originalUrl.isEmpty()) {
@@ -175,23 +239,9 @@ public class LinkService {
    * сервиса.
    */
   public boolean checkShortLinkDoesNotStartWithServiceBaseURL(String shortLinkFullURL) {
-    String activeServiceURL = configManager.getDefaultServiceBaseURLProperty();
-    String[] legacyServiceURLs = configManager.getLegacyServiceBaseURLProperty();
-
-    // Начало с текущего serviceBaseURL
-    if (shortLinkFullURL.startsWith(activeServiceURL)) {
-      return false;
-    }
-
-    // Начало с одного из старых serviceBaseURL нашего сервиса (полезно при переезде на новый домен)
-    if (Arrays.stream(legacyServiceURLs).noneMatch(String::isBlank)) {
-      for (String legacyServiceURL : legacyServiceURLs) {
-        if (shortLinkFullURL.startsWith(legacyServiceURL)) {
-          return false;
-        }
-      }
-    }
-    return true;
+    // Начало с текущего serviceBaseURL или с одного из старых serviceBaseURL нашего сервиса
+    // (полезно при переезде на новый домен)
+    return serviceBaseURLMatcher().match(shortLinkFullURL) == ServiceBaseURLMatcher.NO_MATCH;
   }
 
   /*
@@ -204,22 +254,45 @@ public class LinkService {
    * checkShortLinkDoesNotStartWithServiceBaseURL.
    */
   public SplitShortURL splitShortLinkAndServiceBaseURL(String shortLinkFullURL) {
-    String activeServiceURL = configManager.getDefaultServiceBaseURLProperty();
-    String[] legacyServiceURLs = configManager.getLegacyServiceBaseURLProperty();
+    ServiceBaseURLMatcher matcher = serviceBaseURLMatcher();
+    int serviceURLIndex = matcher.match(shortLinkFullURL);
+
+    // Случай active service base URL без предварительной проверки
+    String serviceURL =
+        serviceURLIndex == ServiceBaseURLMatcher.NO_MATCH
+            ? matcher.activeServiceURL()
+            : matcher.serviceURL(serviceURLIndex);
+    return new SplitShortURL(serviceURL, shortLinkFullURL.substring(serviceURL.length()));
+  }
 
-    // Случай legacy service base URL
-    if (Arrays.stream(legacyServiceURLs).noneMatch(String::isBlank)) {
-      for (String legacyServiceURL : legacyServiceURLs) {
-        if (shortLinkFullURL.startsWith(legacyServiceURL)) {
-          String shortLinkId = shortLinkFullURL.substring(legacyServiceURL.length());
-          return new SplitShortURL(legacyServiceURL, shortLinkId);
-        }
-      }
+  /**
+   * Метод за один проход проверяет, что короткий URL начинается с одного из распознаваемых нами URL
+   * сервиса, и делит его на URL сервиса и ID короткой ссылки.
+   */
+  private Optional<SplitShortURL> recognizeShortLink(String shortLinkFullURL) {
+    ServiceBaseURLMatcher matcher = serviceBaseURLMatcher();
+    int serviceURLIndex = matcher.match(shortLinkFullURL);
+    if (serviceURLIndex == ServiceBaseURLMatcher.NO_MATCH) {
+      return Optional.empty();
     }
+    String serviceURL = matcher.serviceURL(serviceURLIndex);
+    return Optional.of(
+        new SplitShortURL(serviceURL, shortLinkFullURL.substring(serviceURL.length())));
+  }
 
-    // Случай active service base URL
-    String shortLinkId = shortLinkFullURL.substring(activeServiceURL.length());
-    return new SplitShortURL(activeServiceURL, shortLinkId);
+  /**
+   * Метод возвращает префиксное дерево по текущим service URL из настроек. Дерево строится заново
+   * только после перезагрузки настроек, когда ConfigManager отдаёт новые объекты URL.
+   */
+  private ServiceBaseURLMatcher serviceBaseURLMatcher() {
+    String activeServiceURL = configManager.getDefaultServiceBaseURLProperty();
+    String[] legacyServiceURLs = configManager.getLegacyServiceBaseURLProperty();
+    ServiceBaseURLMatcher matcher = serviceBaseURLMatcher;
+    if (matcher == null || !matcher.isBuiltFrom(activeServiceURL, legacyServiceURLs)) {
+      matcher = new ServiceBaseURLMatcher(activeServiceURL, legacyServiceURLs);
+      serviceBaseURLMatcher = matcher;
+    }
+    return matcher;
   }
 
   /*
@@ -229,7 +302,9 @@ public class LinkService {
   /**
    * Метод makeNewShortLink создаёт новый объект ShortLink. Все значения берутся из конфигурации:
    * единица измерения TTL, стандартное значение TTL, стандартное значение лимита использований.
-   * Внутренний короткий ID ссылки генерируется в generateShortLinkID.
+   * Внутренний короткий ID ссылки генерируется в generateShortLinkID. <br>
+   * При идемпотентном сокращении (см. настройки), если у владельца уже есть действующая ссылка на
+   * тот же URL, вместо новой возвращается она (см. isSavedShortLink).
    */
   public ShortLink makeNewShortLink(String originalURL, UUID ownerOfShortLink)
       throws InvalidOriginalLinkException {
@@ -243,6 +318,15 @@ public class LinkService {
             "Нельзя создавать короткие ссылки на другие короткие ссылки сервиса.");
       }
 
+      // Повторное сокращение того же URL возвращает уже созданную действующую ссылку
+      if (configManager.getShortLinkShortenIdempotentProperty()) {
+        Optional<ShortLink> existingShortLink =
+            findActiveShortLinkByOriginalURL(originalURL, ownerOfShortLink);
+        if (existingShortLink.isPresent()) {
+          return existingShortLink.get();
+        }
+      }
+
       // Получаем дату создания ссылки
       LocalDateTime creationDateTime = LocalDateTime.now();
 
@@ -288,10 +372,36 @@ public class LinkService {
     return expirationDateTime;
   }
 
+  /**
+   * Метод ищет действующую (не истёкшую и не заблокированную по лимиту) ссылку владельца на
+   * некоторый URL по индексу URL в shortLinkRepository.
+   */
+  public Optional<ShortLink> findActiveShortLinkByOriginalURL(
+      String originalURL, UUID ownerOfShortLink) {
+    for (ShortLink shortLink :
+        shortLinkRepository.getShortLinksByOwnerAndOriginalURL(ownerOfShortLink, originalURL)) {
+      if (!shortLink.isExpired() && !shortLink.isLimitReached()) {
+        return Optional.of(shortLink);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Метод проверяет, что именно этот объект ShortLink уже сохранён в shortLinkRepository (например,
+   * его вернул makeNewShortLink при повторном сокращении того же URL).
+   */
+  public boolean isSavedShortLink(ShortLink shortLink) {
+    return shortLinkRepository.getShortLinkByShortID(shortLink.getShortId()).orElse(null)
+        == shortLink;
+  }
+
   /** Метод saveNewShortLink помещает новый объект ShortLink в shortLinkRepository. */
   @SuppressWarnings("UnusedReturnValue")
   public ShortLink saveNewShortLink(ShortLink shortLink) {
-    return shortLinkRepository.saveShortLink(shortLink);
+    ShortLink savedShortLink = shortLinkRepository.saveShortLink(shortLink);
+    redirectCache.invalidate(shortLink.getShortId());
+    return savedShortLink;
   }
 
   /**
@@ -301,36 +411,52 @@ public class LinkService {
    * Никакие короткие коды URL не могут быть сгенерированы повторно, пока они ещё есть в качестве
    * ключа в ShortLinkRepository. Таким образом, какая-либо короткая ссылка вне зависимости от
    * владельца не может вести ни на один и тот же сайт, ни на разные сайты. Это нужно, чтобы другие
-   * пользователи могли создавать и использовать (!) ссылки друг друга без коллизий. Так как мы
-   * используем реализацию ShortLinkRepository на основе HashMap (InMemoryShortLinkRepository),
-   * поиск по shortID будет очень быстрым.
+   * пользователи могли создавать и использовать (!) ссылки друг друга без коллизий. Сам код создаёт
+   * стратегия ShortIdGenerator (по умолчанию без коллизий, см. FeistelShortIdGenerator).
    */
   public String generateShortLinkID() {
-    Random random = new Random();
-
-    // Получаем массив разрешённых символов для генерации ID из конфига
-    final char[] allowedCharacters = configManager.getShortLinkAllowedCharactersProperty();
-
-    // Получаем разрешённую длину короткого кода ссылки для генерации из конфига
-    final int shortIdLength = configManager.getDefaultShortLinkIdLengthProperty();
-    char[] shortIdGeneratedChars = new char[shortIdLength];
-
-    // В цикле проверяем, что сгенерированный код не является имеющимся ключом и ещё не отвечает
-    // за какую-либо ссылку в ShortLinkRepository
-    while (true) {
-      // Генерируем shortID
-      for (int i = 0; i < shortIdLength; i++) {
-        int randomCharIndex = random.nextInt(allowedCharacters.length);
-        shortIdGeneratedChars[i] = allowedCharacters[randomCharIndex];
-      }
+    // Получаем массив разрешённых символов и разрешённую длину короткого кода ссылки из конфига
+    char[] allowedCharacters = configManager.getShortLinkAllowedCharactersProperty();
+    return shortIdGenerator.nextShortId(
+        allowedCharacters, currentShortIdLength(allowedCharacters.length), shortLinkRepository);
+  }
 
-      // Проверяем наличие такого shortID в ShortLinkRepository, если есть - генерируем снова
-      String shortIdString = new String(shortIdGeneratedChars);
-      if (shortLinkRepository.getShortLinkByShortID(shortIdString).isPresent()) {
-        continue;
-      }
-      return shortIdString;
+  /**
+   * Метод возвращает заполненность пространства коротких ID, из которого создаются новые ссылки.
+   */
+  public ShortIdKeyspaceStats getShortIdKeyspaceStats() {
+    int alphabetSize = configManager.getShortLinkAllowedCharactersProperty().length;
+    int shortIdLength = currentShortIdLength(alphabetSize);
+    long occupiedShortIds = shortLinkRepository.countShortLinksByShortIdLength(shortIdLength);
+    double keyspaceSize = Math.pow(alphabetSize, shortIdLength);
+    double occupancy = Math.min(1, occupiedShortIds / keyspaceSize);
+    return new ShortIdKeyspaceStats(
+        shortIdLength, occupiedShortIds, keyspaceSize, occupancy, 1 / (1 - occupancy));
+  }
+
+  /**
+   * Метод определяет длину коротких ID новых ссылок. Если пространство ID длины из настроек занято
+   * больше чем на заданный процент, новые ссылки получают ID на символ длиннее (и так далее), а
+   * ссылки с более короткими ID продолжают работать, так как поиск по shortID не зависит от длины.
+   * Так число повторных попыток случайной генерации (и риск исчерпания пространства ID) не растёт
+   * вместе с количеством ссылок.
+   */
+  private int currentShortIdLength(int alphabetSize) {
+    int configuredShortIdLength = configManager.getDefaultShortLinkIdLengthProperty();
+    int growthOccupancyPercent = configManager.getShortLinkLengthGrowthOccupancyPercentProperty();
+    if (growthOccupancyPercent == 0) {
+      return configuredShortIdLength;
+    }
+    int shortIdLength = Math.max(configuredShortIdLength, grownShortIdLength.get());
+    while (shortIdLength < MAX_SHORT_ID_LENGTH
+        && shortLinkRepository.countShortLinksByShortIdLength(shortIdLength) * 100.0
+            >= growthOccupancyPercent * Math.pow(alphabetSize, shortIdLength)) {
+      shortIdLength++;
     }
+    if (shortIdLength > configuredShortIdLength) {
+      grownShortIdLength.accumulateAndGet(shortIdLength, Math::max);
+    }
+    return shortIdLength;
   }
 
   /**
@@ -345,54 +471,127 @@ public class LinkService {
           UsagesLimitReachedException {
     shortLinkFullURL = shortLinkFullURL.strip();
     // Проверка, что переданное значение - это возможная короткая ссылка нашего сервиса
-    if (checkShortLinkDoesNotStartWithServiceBaseURL(shortLinkFullURL)) {
+    Optional<SplitShortURL> recognizedShortURL = recognizeShortLink(shortLinkFullURL);
+    if (recognizedShortURL.isEmpty()) {
       throw new InvalidShortLinkException(
           "Переданный URL не был распознан в качестве короткой ссылки данного сервиса"
               + " сокращения ссылок.");
     }
 
+    String originalURLAddress =
+        useShortLink(
+            recognizedShortURL.get().shortID,
+            shortLinkFullURL,
+            ClickEventPipeline.ClickSource.CONSOLE);
+    try {
+      if (notInvokedInTests) {
+        Desktop.getDesktop().browse(new URI(originalURLAddress));
+      }
+      return originalURLAddress;
+    } catch (URISyntaxException e) {
+      throw new InvalidOriginalLinkException(
+          "Адрес оригинальной ссылки имеет некорректный формат. Невозможно перейти.");
+    } catch (IOException e) {
+      throw new IOException(
+          "На вашем устройстве не обнаружено средство для открытия ссылок, "
+              + "например браузер. Установите его.");
+    }
+  }
+
+  /**
+   * Метод отвечает за редирект по короткому ID без открытия браузера (например, для ответа на
+   * HTTP-запрос). Проверки и учёт использований те же, что и при редиректе по короткому URL.
+   *
+   * @return оригинальный URL, на который нужно перенаправить
+   */
+  public String redirectByShortId(String shortId)
+      throws OriginalLinkNotFoundException,
+          InvalidShortLinkException,
+          InvalidOriginalLinkException,
+          UsagesLimitReachedException {
+    return useShortLink(shortId, shortId, ClickEventPipeline.ClickSource.HTTP);
+  }
+
+  /**
+   * Метод проверяет, что по короткому ID можно перейти, и учитывает использование ссылки. Если
+   * редирект уже подготовлен в кэше, переход - это одно чтение из кэша и увеличение счётчика
+   * использований.
+   *
+   * @param shortLinkForMessages короткая ссылка в том виде, в котором её передал пользователь
+   * @param clickSource откуда пришёл переход, для статистики переходов
+   */
+  private String useShortLink(
+      String shortId, String shortLinkForMessages, ClickEventPipeline.ClickSource clickSource)
+      throws OriginalLinkNotFoundException,
+          InvalidShortLinkException,
+          InvalidOriginalLinkException,
+          UsagesLimitReachedException {
+    RedirectCache.PreparedRedirect preparedRedirect = redirectCache.get(shortId);
+    if (preparedRedirect == null) {
+      preparedRedirect = prepareRedirect(shortId, shortLinkForMessages);
+    }
+
+    // Увеличиваем счётчик использования коротких ссылок
+    // (метод счётчика выбрасывает исключение, если лимит использований уже израсходован,
+    // поэтому он должен стоять перед фактическим редиректом).
+    // При включённой фоновой обработке счётчик сохраняется в хранилище позже, пачкой
+    ShortLink shortLink = preparedRedirect.shortLink();
+    boolean usageLimitReached = shortLink.incrementUsageCounter();
+    ClickEventPipeline pipeline = clickEventPipeline;
+    if (pipeline != null) {
+      pipeline.publish(shortId, clickSource);
+    } else {
+      shortLinkRepository.updateUsageCounter(shortLink);
+    }
+    if (usageLimitReached) {
+      publishUsageLimitReached(shortLink);
+    }
+    return preparedRedirect.originalURLAddress();
+  }
+
+  /**
+   * Метод проверяет ссылку в хранилище и готовит по ней редирект. Подготовленный редирект
+   * сохраняется в кэш, если он включён в настройках.
+   */
+  private RedirectCache.PreparedRedirect prepareRedirect(
+      String shortId, String shortLinkForMessages)
+      throws OriginalLinkNotFoundException,
+          InvalidShortLinkException,
+          InvalidOriginalLinkException {
     // Проверка на то, что короткая ссылка существует, активна и ведёт на какой-то длинный URL
-    SplitShortURL splitShortURL = splitShortLinkAndServiceBaseURL(shortLinkFullURL);
-    Optional<ShortLink> shortLinkData =
-        shortLinkRepository.getShortLinkByShortID(splitShortURL.shortID);
+    Optional<ShortLink> shortLinkData = shortLinkRepository.getShortLinkByShortID(shortId);
     if (shortLinkData.isEmpty()) {
       throw new OriginalLinkNotFoundException(
           "Короткая ссылка "
-              + shortLinkFullURL
+              + shortLinkForMessages
               + " не ведёт ни на какую длинную ссылку. Данной короткой ссылки не существует, "
               + "или её срок жизни истёк.");
-    } else {
-      try {
-        // Проверка, что срок действия ссылки истёк, но она пока ещё не была удалена
-        if (shortLinkData.get().isExpired()) {
-          throw new InvalidShortLinkException(
-              "Срок действия данной короткой ссылки истёк. По ней больше нельзя перейти. "
-                  + "Она будет удалена в течение 15 секунд.");
-        }
+    }
 
-        // На всякий случай дополнительно перепроверяем логику создания коротких ссылок для
-        // выявления транзитивных ошибок
-        String originalURLAddress = shortLinkData.get().getOriginalURLAddress();
-        validateURLFormat(originalURLAddress);
-
-        // Увеличиваем счётчик использования коротких ссылок и переходим по оригинальному URL
-        // (метод счётчика выбрасывает исключение, если лимит использований уже израсходован,
-        // поэтому он должен стоять перед фактическим редиректом)
-        shortLinkData.get().incrementUsageCounter();
-        if (notInvokedInTests) {
-          Desktop.getDesktop().browse(new URI(originalURLAddress));
-        }
+    // Проверка, что срок действия ссылки истёк, но она пока ещё не была удалена
+    if (shortLinkData.get().isExpired()) {
+      redirectCache.invalidate(shortId);
+      throw new InvalidShortLinkException(
+          "Срок действия данной короткой ссылки истёк. По ней больше нельзя перейти. "
+              + "Она будет удалена в течение 15 секунд.");
+    }
 
-        return originalURLAddress;
-      } catch (URISyntaxException e) {
-        throw new InvalidOriginalLinkException(
-            "Адрес оригинальной ссылки имеет некорректный формат. Невозможно перейти.");
-      } catch (IOException e) {
-        throw new IOException(
-            "На вашем устройстве не обнаружено средство для открытия ссылок, "
-                + "например браузер. Установите его.");
-      }
+    // На всякий случай дополнительно перепроверяем логику создания коротких ссылок для
+    // выявления транзитивных ошибок
+    String originalURLAddress = shortLinkData.get().getOriginalURLAddress();
+    validateURLFormat(originalURLAddress);
+
+    RedirectCache.PreparedRedirect preparedRedirect =
+        RedirectCache.prepare(shortLinkData.get(), originalURLAddress);
+    int redirectCacheMaxEntries = configManager.getRedirectCacheMaxEntriesProperty();
+    if (redirectCacheMaxEntries > 0) {
+      redirectCache.put(
+          shortId,
+          preparedRedirect,
+          redirectCacheMaxEntries,
+          id -> shortLinkRepository.getShortLinkByShortID(id).orElse(null));
     }
+    return preparedRedirect;
   }
 
   /**
@@ -442,7 +641,14 @@ public class LinkService {
                   + "Используйте команду удаления ссылок.");
         }
 
-        shortLinkToManage.setUsageLimitAmount(newUsageLimit);
+        // Проверки выше повторяются атомарно вместе со сменой лимита, так как параллельные
+        // переходы по ссылке могли израсходовать лимит после них
+        if (!shortLinkToManage.trySetUsageLimitAmount(newUsageLimit)) {
+          throw new IllegalCommandParameterException(
+              "Лимит использований ссылки был израсходован во время его изменения. "
+                  + "Ссылка будет удалена в скором времени либо можете удалить её вручную.");
+        }
+        updateManagedShortLink(shortLinkToManage, shortLinkFullURL);
         return shortLinkToManage;
       } else {
         throw new IllegalCommandParameterException(
@@ -489,6 +695,7 @@ public class LinkService {
       }
 
       shortLinkToManage.setOriginalURLAddress(originalURL);
+      updateManagedShortLink(shortLinkToManage, shortLinkFullURL);
       return shortLinkToManage;
     } else {
       throw new NotEnoughPermissionsException();
@@ -556,6 +763,7 @@ public class LinkService {
         }
 
         shortLinkToManage.setExpirationDateTime(newExpirationDateTime);
+        updateManagedShortLink(shortLinkToManage, shortLinkFullURL);
         return newExpirationDateTime;
       } else {
         throw new IllegalCommandParameterException(
@@ -572,6 +780,23 @@ public class LinkService {
     }
   }
 
+  /**
+   * Метод сохраняет изменения ссылки, которой управляет пользователь. Ссылка могла быть удалена
+   * (например, автоудалением после истечения срока) после её проверки, тогда изменения не
+   * сохраняются, чтобы не вернуть удалённую ссылку в хранилище.
+   */
+  private void updateManagedShortLink(ShortLink shortLinkToManage, String shortLinkFullURL)
+      throws OriginalLinkNotFoundException {
+    boolean updated = shortLinkRepository.updateShortLinkIfPresent(shortLinkToManage);
+    redirectCache.invalidate(shortLinkToManage.getShortId());
+    if (!updated) {
+      throw new OriginalLinkNotFoundException(
+          "Короткая ссылка "
+              + shortLinkFullURL
+              + " была удалена во время изменения её параметров.");
+    }
+  }
+
   /**
    * Метод calculateNewExpirationDateTimeForShortLinkToChange вычисляет дату и время истечения срока
    * действия уже существующей короткой ссылки, для которой запрошено изменение TTL.
@@ -611,7 +836,9 @@ public class LinkService {
 
     // Проверяем, что пользователь собирается управлять своей короткой ссылкой, а не чужой
     if (isUUIDOwnerOfShortLink(shortLinkToManage, userUUID)) {
-      return shortLinkRepository.deleteShortLink(shortLinkToManage.getShortId());
+      boolean deleted = shortLinkRepository.deleteShortLink(shortLinkToManage.getShortId());
+      redirectCache.invalidate(shortLinkToManage.getShortId());
+      return deleted;
     } else {
       throw new NotEnoughPermissionsException();
     }
@@ -635,13 +862,52 @@ public class LinkService {
    */
   @SuppressWarnings("UnusedReturnValue")
   public boolean uncheckedDeleteShortLinkByShortId(String shortLinkId) {
-    return shortLinkRepository.deleteShortLink(shortLinkId);
+    boolean deleted = shortLinkRepository.deleteShortLink(shortLinkId);
+    redirectCache.invalidate(shortLinkId);
+    return deleted;
+  }
+
+  /**
+   * Метод для установки отметки о том, что уведомление об израсходовании лимита использований
+   * ссылки уже было создано. Изменение сохраняется в репозиторий, чтобы пережить перезапуск
+   * сервиса, но только если ссылка ещё не удалена: уведомление создаётся в фоне, и владелец мог
+   * удалить ссылку с израсходованным лимитом раньше.
+   *
+   * @return true, если отметка сохранена в репозиторий
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  public boolean markShortLinkLimitNotified(ShortLink shortLink) {
+    shortLink.setLimitNotified(true);
+    return shortLinkRepository.updateShortLinkIfPresent(shortLink);
+  }
+
+  /**
+   * Метод для получения списка коротких ссылок с истёкшим сроком действия. Используется для
+   * автоудаления таких ссылок без перебора всего репозитория.
+   */
+  public List<ShortLink> listExpiredShortLinks() {
+    return shortLinkRepository.getExpiredShortLinks(LocalDateTime.now());
   }
 
   /**
-   * Метод для получения списка всех коротких ссылок из репозитория. Используется для автопроверок
-   * на израсходование лимита использования или на окончание срока действия ссылки.
+   * Метод один раз при запуске сервиса публикует события для ссылок, лимит которых был израсходован
+   * до перезапуска, но уведомление об этом не успело быть создано.
    */
+  public void publishPendingUsageLimitReachedEvents() {
+    for (ShortLink shortLink : shortLinkRepository.getAllShortLinks()) {
+      if (shortLink.isLimitReached() && !shortLink.isLimitNotified()) {
+        publishUsageLimitReached(shortLink);
+      }
+    }
+  }
+
+  private void publishUsageLimitReached(ShortLink shortLink) {
+    for (ShortLinkEventListener listener : shortLinkEventListeners) {
+      listener.onUsageLimitReached(shortLink);
+    }
+  }
+
+  /** Метод для получения списка всех коротких ссылок из репозитория. */
   public List<ShortLink> listAllShortLinks() {
     return shortLinkRepository.getAllShortLinks();
   }
@@ -63,4 +63,10 @@ public class NotificationService {
   public boolean deleteNotification(Notification notification) {
     return notificationRepository.deleteNotification(notification);
   }
+
+  /** Метод для удаления всех прочитанных уведомлений всех пользователей. */
+  @SuppressWarnings("UnusedReturnValue")
+  public int deleteReadNotifications() {
+    return notificationRepository.deleteReadNotifications();
+  }
 }
@@ -0,0 +1,191 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пул заранее сгенерированных shortID перед другой стратегией генерации. Фоновый поток пополняет
+ * пул до верхней границы, как только в нём остаётся меньше нижней границы, поэтому создание ссылки
+ * (в том числе серия созданий подряд) только забирает готовый shortID из очереди за O(1). <br>
+ * shortID в пуле зарезервированы: пока shortID лежит в пуле, повторно он не выдаётся ни из пула, ни
+ * при генерации в обход пула, когда пул опустел. Пул привязан к символам и длине shortID из
+ * настроек и сбрасывается при их изменении.
+ */
+public class PooledShortIdGenerator implements ShortIdGenerator, AutoCloseable {
+
+  /**
+   * Снимок метрик пула.
+   *
+   * @param depth текущее количество готовых shortID в пуле
+   * @param hits количество shortID, выданных из пула
+   * @param misses количество shortID, сгенерированных в обход опустевшего пула
+   * @param refills количество завершённых пополнений пула
+   */
+  public record Metrics(int depth, long hits, long misses, long refills) {}
+
+  /** Готовые shortID для одного набора символов, длины и хранилища. */
+  private static final class Pool {
+    private final char[] allowedCharacters;
+    private final int shortIdLength;
+    private final ShortLinkRepository shortLinkRepository;
+    private final Queue<String> shortIds = new ConcurrentLinkedQueue<>();
+    private final Set<String> reservedShortIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private Pool(
+        char[] allowedCharacters, int shortIdLength, ShortLinkRepository shortLinkRepository) {
+      this.allowedCharacters = allowedCharacters;
+      this.shortIdLength = shortIdLength;
+      this.shortLinkRepository = shortLinkRepository;
+    }
+
+    private boolean matches(
+        char[] allowedCharacters, int shortIdLength, ShortLinkRepository shortLinkRepository) {
+      return this.shortIdLength == shortIdLength
+          && this.shortLinkRepository == shortLinkRepository
+          && Arrays.equals(this.allowedCharacters, allowedCharacters);
+    }
+
+    private String poll() {
+      String shortId = shortIds.poll();
+      if (shortId != null) {
+        depth.decrementAndGet();
+        reservedShortIds.remove(shortId);
+      }
+      return shortId;
+    }
+
+    private void offer(String shortId) {
+      if (reservedShortIds.add(shortId)) {
+        shortIds.add(shortId);
+        depth.incrementAndGet();
+      }
+    }
+  }
+
+  private final ShortIdGenerator delegate;
+  private final int lowWatermark;
+  private final int highWatermark;
+  private final ExecutorService refillExecutor;
+  private final AtomicBoolean refillScheduled = new AtomicBoolean();
+  private volatile Pool pool;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder refills = new LongAdder();
+
+  /**
+   * Конструктор пула поверх стратегии delegate. Пул пополняется до highWatermark shortID, когда в
+   * нём остаётся меньше lowWatermark.
+   */
+  public PooledShortIdGenerator(ShortIdGenerator delegate, int lowWatermark, int highWatermark) {
+    if (highWatermark <= 0 || lowWatermark < 0 || lowWatermark > highWatermark) {
+      throw new IllegalArgumentException(
+          "некорректные границы пула: " + lowWatermark + ", " + highWatermark);
+    }
+    this.delegate = delegate;
+    this.lowWatermark = lowWatermark;
+    this.highWatermark = highWatermark;
+    this.refillExecutor =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "short-id-pool-refill");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @Override
+  public String nextShortId(
+      char[] allowedCharacters, int shortIdLength, ShortLinkRepository shortLinkRepository) {
+    Pool currentPool = currentPool(allowedCharacters, shortIdLength, shortLinkRepository);
+    try {
+      String shortId;
+      while ((shortId = currentPool.poll()) != null) {
+        // shortID проверяется ещё раз на случай, если ссылку с ним сохранили в обход генератора
+        if (shortLinkRepository.getShortLinkByShortID(shortId).isEmpty()) {
+          hits.increment();
+          return shortId;
+        }
+      }
+      // Пул опустел: генерируем shortID в вызывающем потоке, не выдавая зарезервированные в пуле
+      misses.increment();
+      do {
+        shortId = delegate.nextShortId(allowedCharacters, shortIdLength, shortLinkRepository);
+      } while (currentPool.reservedShortIds.contains(shortId));
+      return shortId;
+    } finally {
+      scheduleRefillIfLow(currentPool);
+    }
+  }
+
+  /** Метод возвращает снимок метрик пула. */
+  public Metrics getMetrics() {
+    Pool currentPool = pool;
+    return new Metrics(
+        currentPool == null ? 0 : currentPool.depth.get(), hits.sum(), misses.sum(), refills.sum());
+  }
+
+  /** Метод останавливает фоновое пополнение пула. */
+  @Override
+  public void close() {
+    refillExecutor.shutdownNow();
+  }
+
+  private Pool currentPool(
+      char[] allowedCharacters, int shortIdLength, ShortLinkRepository shortLinkRepository) {
+    Pool currentPool = pool;
+    if (currentPool != null
+        && currentPool.matches(allowedCharacters, shortIdLength, shortLinkRepository)) {
+      return currentPool;
+    }
+    synchronized (this) {
+      currentPool = pool;
+      if (currentPool == null
+          || !currentPool.matches(allowedCharacters, shortIdLength, shortLinkRepository)) {
+        // shortID старого пула просто отбрасываются: ни одна ссылка с ними ещё не создана
+        currentPool = new Pool(allowedCharacters.clone(), shortIdLength, shortLinkRepository);
+        pool = currentPool;
+      }
+      return currentPool;
+    }
+  }
+
+  private void scheduleRefillIfLow(Pool currentPool) {
+    if (currentPool.depth.get() < lowWatermark
+        && !refillExecutor.isShutdown()
+        && refillScheduled.compareAndSet(false, true)) {
+      refillExecutor.execute(() -> refill(currentPool));
+    }
+  }
+
+  @SuppressWarnings("CallToPrintStackTrace")
+  private void refill(Pool refilledPool) {
+    try {
+      while (pool == refilledPool
+          && refilledPool.depth.get() < highWatermark
+          && !Thread.currentThread().isInterrupted()) {
+        refilledPool.offer(
+            delegate.nextShortId(
+                refilledPool.allowedCharacters,
+                refilledPool.shortIdLength,
+                refilledPool.shortLinkRepository));
+      }
+      refills.increment();
+    } catch (RuntimeException e) {
+      // Например, все shortID заняты: вызывающий поток получит ту же ошибку при генерации
+      e.printStackTrace();
+    } finally {
+      refillScheduled.set(false);
+    }
+  }
+}
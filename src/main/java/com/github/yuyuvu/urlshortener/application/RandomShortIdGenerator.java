@@ -0,0 +1,35 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Генерация shortID из случайных символов. Так как случайный shortID может совпасть с уже
+ * существующим, он проверяется по ShortLinkRepository и при совпадении генерируется заново.
+ * Количество повторов растёт по мере заполнения пространства shortID.
+ */
+public class RandomShortIdGenerator implements ShortIdGenerator {
+
+  @Override
+  public String nextShortId(
+      char[] allowedCharacters, int shortIdLength, ShortLinkRepository shortLinkRepository) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    char[] shortIdGeneratedChars = new char[shortIdLength];
+
+    // В цикле проверяем, что сгенерированный код не является имеющимся ключом и ещё не отвечает
+    // за какую-либо ссылку в ShortLinkRepository
+    while (true) {
+      // Генерируем shortID
+      for (int i = 0; i < shortIdLength; i++) {
+        int randomCharIndex = random.nextInt(allowedCharacters.length);
+        shortIdGeneratedChars[i] = allowedCharacters[randomCharIndex];
+      }
+
+      // Проверяем наличие такого shortID в ShortLinkRepository, если есть - генерируем снова
+      String shortIdString = new String(shortIdGeneratedChars);
+      if (shortLinkRepository.getShortLinkByShortID(shortIdString).isEmpty()) {
+        return shortIdString;
+      }
+    }
+  }
+}
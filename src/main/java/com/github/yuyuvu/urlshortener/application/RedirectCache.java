@@ -0,0 +1,174 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Кэш подготовленных редиректов по shortID. Подготовленный редирект хранит саму ссылку (для учёта
+ * использований), уже проверенный длинный URL и срок действия в миллисекундах, поэтому переход по
+ * ссылке из кэша не обращается к хранилищу и не проверяет формат URL заново. <br>
+ * Записи удаляются методом invalidate при изменении или удалении ссылки в LinkService, а запись с
+ * наступившим сроком действия не выдаётся. <br>
+ * Когда кэш заполнен, место для новой записи освобождается по алгоритму CLOCK: стрелка обходит
+ * записи по кругу, удаляет записи с истёкшим сроком и записи, по которым не было переходов с
+ * прошлого обхода, а у остальных снимает отметку о переходе. Часто используемые ссылки остаются в
+ * кэше, а новые ссылки не ждут, пока место освободится само.
+ */
+public final class RedirectCache {
+  /**
+   * Подготовленный редирект.
+   *
+   * @param shortLink ссылка из хранилища, счётчик использований которой увеличивается при переходе
+   * @param originalURLAddress проверенный длинный URL, на который ведёт ссылка
+   * @param expirationDateTime срок действия ссылки, по которому подготовлен редирект
+   * @param expirationEpochMillis тот же срок действия в миллисекундах для быстрой проверки
+   */
+  record PreparedRedirect(
+      ShortLink shortLink,
+      String originalURLAddress,
+      LocalDateTime expirationDateTime,
+      long expirationEpochMillis) {
+
+    /** Метод проверяет, действует ли ещё подготовленный редирект в заданный момент. */
+    boolean isActiveAt(long nowEpochMillis) {
+      return nowEpochMillis <= expirationEpochMillis;
+    }
+
+    /**
+     * Метод проверяет, что ссылка не менялась с момента подготовки редиректа (сравниваются сами
+     * объекты URL и срока действия, а не их значения).
+     */
+    boolean matches(ShortLink currentShortLink) {
+      return currentShortLink == shortLink
+          && currentShortLink.getOriginalURLAddress() == originalURLAddress
+          && currentShortLink.getExpirationDateTime() == expirationDateTime;
+    }
+  }
+
+  /**
+   * Метрики кэша подготовленных редиректов.
+   *
+   * @param hits переходы по ссылкам из кэша
+   * @param misses переходы, для которых редирект пришлось подготовить заново
+   * @param invalidations удаления записей из-за изменения или удаления ссылок
+   * @param evictions удаления записей, чтобы освободить место в заполненном кэше
+   * @param size текущее количество записей
+   */
+  public record Metrics(long hits, long misses, long invalidations, long evictions, int size) {}
+
+  /** Запись кэша с отметкой о переходе по ссылке с прошлого обхода стрелки CLOCK. */
+  private static final class CachedRedirect {
+    private final PreparedRedirect preparedRedirect;
+    private volatile boolean referenced;
+
+    private CachedRedirect(PreparedRedirect preparedRedirect) {
+      this.preparedRedirect = preparedRedirect;
+    }
+  }
+
+  private final ConcurrentHashMap<String, CachedRedirect> cachedRedirects =
+      new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /** Стрелка CLOCK, двигается только под блокировкой кэша при вытеснении. */
+  private Iterator<Map.Entry<String, CachedRedirect>> clockHand;
+
+  /** Метод возвращает действующий подготовленный редирект или null. */
+  PreparedRedirect get(String shortId) {
+    CachedRedirect cachedRedirect = cachedRedirects.get(shortId);
+    if (cachedRedirect != null
+        && cachedRedirect.preparedRedirect.isActiveAt(System.currentTimeMillis())) {
+      // Отметка пишется, только если её ещё нет, чтобы частые переходы не писали в память
+      if (!cachedRedirect.referenced) {
+        cachedRedirect.referenced = true;
+      }
+      hits.increment();
+      return cachedRedirect.preparedRedirect;
+    }
+    misses.increment();
+    return null;
+  }
+
+  /** Метод готовит запись кэша для ссылки с уже проверенным длинным URL. */
+  static PreparedRedirect prepare(ShortLink shortLink, String originalURLAddress) {
+    LocalDateTime expirationDateTime = shortLink.getExpirationDateTime();
+    return new PreparedRedirect(
+        shortLink,
+        originalURLAddress,
+        expirationDateTime,
+        expirationDateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+  }
+
+  /**
+   * Метод кладёт подготовленный редирект в кэш, при заполненном кэше сначала вытесняя из него
+   * записи. Запись удаляется снова, если ссылка успела измениться, пока редирект готовился:
+   * изменение вызывает invalidate после сохранения ссылки, поэтому либо оно удалит запись, либо
+   * повторная проверка увидит изменение.
+   *
+   * @param currentShortLink функция повторного чтения ссылки из хранилища после записи в кэш
+   */
+  void put(
+      String shortId,
+      PreparedRedirect preparedRedirect,
+      int maxEntries,
+      Function<String, ShortLink> currentShortLink) {
+    if (cachedRedirects.size() >= maxEntries && !evict(maxEntries)) {
+      return;
+    }
+    CachedRedirect cachedRedirect = new CachedRedirect(preparedRedirect);
+    cachedRedirects.put(shortId, cachedRedirect);
+    if (!preparedRedirect.matches(currentShortLink.apply(shortId))) {
+      cachedRedirects.remove(shortId, cachedRedirect);
+    }
+  }
+
+  /**
+   * Метод двигает стрелку CLOCK, пока в кэше не освободится место для одной записи. Каждая запись
+   * проверяется не больше двух раз: за первый проход снимаются отметки о переходах, за второй
+   * запись точно удаляется, если по ней за это время не переходили.
+   *
+   * @return true, если место освободилось
+   */
+  private synchronized boolean evict(int maxEntries) {
+    long nowEpochMillis = System.currentTimeMillis();
+    long steps = 2L * cachedRedirects.size();
+    while (cachedRedirects.size() >= maxEntries && steps-- > 0) {
+      if (clockHand == null || !clockHand.hasNext()) {
+        clockHand = cachedRedirects.entrySet().iterator();
+        if (!clockHand.hasNext()) {
+          break;
+        }
+      }
+      Map.Entry<String, CachedRedirect> entry = clockHand.next();
+      CachedRedirect cachedRedirect = entry.getValue();
+      if (cachedRedirect.referenced && cachedRedirect.preparedRedirect.isActiveAt(nowEpochMillis)) {
+        cachedRedirect.referenced = false;
+      } else if (cachedRedirects.remove(entry.getKey(), cachedRedirect)) {
+        evictions.increment();
+      }
+    }
+    return cachedRedirects.size() < maxEntries;
+  }
+
+  /** Метод удаляет подготовленный редирект ссылки после её изменения или удаления. */
+  void invalidate(String shortId) {
+    if (cachedRedirects.remove(shortId) != null) {
+      invalidations.increment();
+    }
+  }
+
+  /** Метод возвращает метрики кэша. */
+  Metrics getMetrics() {
+    return new Metrics(
+        hits.sum(), misses.sum(), invalidations.sum(), evictions.sum(), cachedRedirects.size());
+  }
+}
@@ -0,0 +1,140 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Префиксное дерево по текущему и устаревшим service URL сервиса. Дерево строится один раз для
+ * набора URL из настроек и за один проход по символам переданной строки находит service URL, с
+ * которого она начинается, а значит, и смещение короткого ID в ней. <br>
+ * Порядок выбора совпадает с прежней последовательной проверкой через startsWith: сначала
+ * устаревшие URL в порядке из настроек, затем текущий. Устаревшие URL не учитываются, если среди
+ * них есть пустые (так в настройках обозначается их отсутствие).
+ */
+final class ServiceBaseURLMatcher {
+  /** Результат поиска для строки, которая не начинается ни с одного service URL. */
+  static final int NO_MATCH = -1;
+
+  private final String activeServiceURL;
+  private final String[] legacyServiceURLs;
+
+  /** Service URL в порядке приоритета: индекс в массиве и есть результат поиска. */
+  private final String[] serviceURLs;
+
+  /*
+   * Дерево хранится в плоских массивах: рёбра узла node занимают индексы
+   * с firstEdge[node] по firstEdge[node + 1] - 1 и отсортированы по символу.
+   * */
+  private final int[] firstEdge;
+  private final char[] edgeChars;
+  private final int[] edgeTargets;
+
+  /** Самый приоритетный service URL, заканчивающийся в узле, или NO_MATCH. */
+  private final int[] terminalServiceURLs;
+
+  ServiceBaseURLMatcher(String activeServiceURL, String[] legacyServiceURLs) {
+    this.activeServiceURL = activeServiceURL;
+    this.legacyServiceURLs = legacyServiceURLs;
+
+    List<String> orderedServiceURLs = new ArrayList<>();
+    if (Arrays.stream(legacyServiceURLs).noneMatch(String::isBlank)) {
+      orderedServiceURLs.addAll(Arrays.asList(legacyServiceURLs));
+    }
+    orderedServiceURLs.add(activeServiceURL);
+    this.serviceURLs = orderedServiceURLs.toArray(new String[0]);
+
+    // Сначала строим дерево на словарях, затем переносим его в массивы
+    List<TreeMap<Character, Integer>> children = new ArrayList<>();
+    List<Integer> terminals = new ArrayList<>();
+    children.add(new TreeMap<>());
+    terminals.add(NO_MATCH);
+    for (int index = 0; index < serviceURLs.length; index++) {
+      int node = 0;
+      for (char c : serviceURLs[index].toCharArray()) {
+        Integer child = children.get(node).get(c);
+        if (child == null) {
+          child = children.size();
+          children.get(node).put(c, child);
+          children.add(new TreeMap<>());
+          terminals.add(NO_MATCH);
+        }
+        node = child;
+      }
+      if (terminals.get(node) == NO_MATCH) {
+        terminals.set(node, index);
+      }
+    }
+
+    int nodes = children.size();
+    this.firstEdge = new int[nodes + 1];
+    this.edgeChars = new char[nodes - 1];
+    this.edgeTargets = new int[nodes - 1];
+    this.terminalServiceURLs = new int[nodes];
+    int edge = 0;
+    for (int node = 0; node < nodes; node++) {
+      firstEdge[node] = edge;
+      terminalServiceURLs[node] = terminals.get(node);
+      for (Map.Entry<Character, Integer> child : children.get(node).entrySet()) {
+        edgeChars[edge] = child.getKey();
+        edgeTargets[edge] = child.getValue();
+        edge++;
+      }
+    }
+    firstEdge[nodes] = edge;
+  }
+
+  /** Метод проверяет, что дерево построено по тем же объектам настроек (без сравнения строк). */
+  boolean isBuiltFrom(String activeServiceURL, String[] legacyServiceURLs) {
+    return this.activeServiceURL == activeServiceURL && this.legacyServiceURLs == legacyServiceURLs;
+  }
+
+  /**
+   * Метод возвращает индекс service URL, с которого начинается строка, или NO_MATCH. Если строка
+   * начинается с нескольких service URL, выбирается самый приоритетный из них.
+   */
+  int match(CharSequence url) {
+    int node = 0;
+    int matched = terminalServiceURLs[0];
+    for (int i = 0; i < url.length(); i++) {
+      node = child(node, url.charAt(i));
+      if (node < 0) {
+        break;
+      }
+      int terminal = terminalServiceURLs[node];
+      if (terminal != NO_MATCH && (matched == NO_MATCH || terminal < matched)) {
+        matched = terminal;
+      }
+    }
+    return matched;
+  }
+
+  /** Метод возвращает service URL по индексу из результата match. */
+  String serviceURL(int index) {
+    return serviceURLs[index];
+  }
+
+  /** Метод возвращает текущий service URL. */
+  String activeServiceURL() {
+    return activeServiceURL;
+  }
+
+  private int child(int node, char c) {
+    int low = firstEdge[node];
+    int high = firstEdge[node + 1] - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      char middleChar = edgeChars[middle];
+      if (middleChar < c) {
+        low = middle + 1;
+      } else if (middleChar > c) {
+        high = middle - 1;
+      } else {
+        return edgeTargets[middle];
+      }
+    }
+    return -1;
+  }
+}
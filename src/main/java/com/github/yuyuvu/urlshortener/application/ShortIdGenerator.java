@@ -0,0 +1,19 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+
+/**
+ * Стратегия генерации коротких ID (shortID) для новых коротких ссылок. LinkService получает её в
+ * конструкторе, поэтому способ генерации можно заменить, не меняя сам сервис. Встроенные стратегии:
+ * FeistelShortIdGenerator (по умолчанию) и RandomShortIdGenerator.
+ */
+public interface ShortIdGenerator {
+
+  /**
+   * Метод возвращает новый shortID длины shortIdLength из символов allowedCharacters, который не
+   * занят ни одной ссылкой в shortLinkRepository. Набор символов и длина берутся из настроек при
+   * каждом вызове и могут меняться между вызовами.
+   */
+  String nextShortId(
+      char[] allowedCharacters, int shortIdLength, ShortLinkRepository shortLinkRepository);
+}
@@ -0,0 +1,18 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+
+/**
+ * Слушатель событий жизненного цикла коротких ссылок, которые публикует LinkService. Позволяет
+ * реагировать на событие в момент, когда оно произошло, а не находить его периодическим перебором
+ * всех ссылок.
+ */
+public interface ShortLinkEventListener {
+
+  /**
+   * Вызывается ровно один раз для ссылки, когда очередной переход израсходовал её лимит
+   * использований. Вызывается в потоке, совершившем переход, поэтому реализация не должна выполнять
+   * в нём долгую работу.
+   */
+  void onUsageLimitReached(ShortLink shortLink);
+}
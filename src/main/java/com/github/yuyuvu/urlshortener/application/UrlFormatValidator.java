@@ -0,0 +1,272 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка формата длинных URL для LinkService.validateURLFormat. <br>
+ * Обычные адреса http, https и ftp (хост из латинских букв, цифр и дефисов, необязательный порт,
+ * путь, query и fragment из ASCII-символов) проверяются за один проход по CharSequence без создания
+ * объектов. Всё, что быстрая проверка не может подтвердить (IP-адреса, userinfo, национальные
+ * символы, другие схемы, а также некорректные URL), проверяется прежним способом через java.net.URI
+ * и дополнительные правила сервиса, поэтому набор допустимых URL не меняется (см.
+ * UrlFormatValidatorTest).
+ */
+public final class UrlFormatValidator {
+  private static final Pattern URL_HAS_CONTENT = Pattern.compile("[^.]+\\.[^.]+");
+  private static final Pattern URL_HAS_STRANGE_DOTS = Pattern.compile("\\.{2,}");
+
+  private UrlFormatValidator() {}
+
+  /** Метод проверяет, что URL подходит для сокращения в сервисе. */
+  public static boolean isValid(CharSequence url) {
+    return isValidFast(url) || isValidByURI(url.toString());
+  }
+
+  /**
+   * Быстрая проверка за один проход без создания объектов. Возвращает true, только если URL точно
+   * допустим; false означает, что URL нужно проверить через isValidByURI.
+   */
+  public static boolean isValidFast(CharSequence url) {
+    int n = url.length();
+    int schemeLength = schemeLength(url);
+    if (schemeLength < 0) {
+      return false;
+    }
+    int authorityStart = schemeLength + 3;
+
+    // Хост: метки из латинских букв, цифр и дефисов через одну точку, как в java.net.URI
+    int p = authorityStart;
+    int lastLabelStart;
+    while (true) {
+      if (p >= n || !isAlphanumeric(url.charAt(p))) {
+        return false;
+      }
+      lastLabelStart = p;
+      while (p < n && (isAlphanumeric(url.charAt(p)) || url.charAt(p) == '-')) {
+        p++;
+      }
+      if (url.charAt(p - 1) == '-') {
+        return false;
+      }
+      if (p < n && url.charAt(p) == '.') {
+        p++;
+      } else {
+        break;
+      }
+    }
+    // Последняя метка с буквы, чтобы хост не разбирался как IP-адрес
+    if (!isAsciiLetter(url.charAt(lastLabelStart))) {
+      return false;
+    }
+
+    // Порт
+    if (p < n && url.charAt(p) == ':') {
+      p++;
+      int portStart = p;
+      int port = 0;
+      while (p < n && isDigit(url.charAt(p))) {
+        if (p - portStart == 5) {
+          return false;
+        }
+        port = port * 10 + (url.charAt(p) - '0');
+        p++;
+      }
+      if (p == portStart || port > 65535) {
+        return false;
+      }
+    }
+    if (p < n && url.charAt(p) != '/' && url.charAt(p) != '?' && url.charAt(p) != '#') {
+      return false;
+    }
+
+    // Путь, query и fragment
+    p = scanComponent(url, p, n, true);
+    if (p < n && url.charAt(p) == '?') {
+      p = scanComponent(url, p + 1, n, false);
+    }
+    if (p < n && url.charAt(p) == '#') {
+      p = scanComponent(url, p + 1, n, false);
+    }
+    if (p != n) {
+      return false;
+    }
+
+    return hasContentAfterScheme(url, authorityStart, n) && hasValidDomains(url, authorityStart, n);
+  }
+
+  /**
+   * Прежняя проверка: разбор через java.net.URI и java.net.URL и дополнительные правила сервиса.
+   * Используется для URL, которые не подтвердила быстрая проверка.
+   */
+  @SuppressWarnings("ResultOfMethodCallIgnored")
+  public static boolean isValidByURI(String originalURL) {
+    try {
+      // Следующие два вызова выбросят Exception, если переданное значение не является URI и URL
+      URI uri = new URI(originalURL);
+      uri.toURL();
+
+      // Дополнительно проверяем, что после указания протокола хост не пустой
+      // и название доменной зоны тоже не пустое (либо указан ip)
+      String hostAfterScheme = originalURL.substring(originalURL.indexOf("//") + 2);
+      if (!URL_HAS_CONTENT.matcher(hostAfterScheme).find()) {
+        return false;
+      }
+
+      // Дополнительно проверяем, что после протокола есть слеши
+      // и нет дефиса в начале или конце названия домена или поддоменов
+      if (originalURL.startsWith("http:")
+          || originalURL.startsWith("https:")
+          || originalURL.startsWith("ftp:")) {
+        String schemeMid = originalURL.substring(originalURL.indexOf(":") + 1);
+        if (!schemeMid.startsWith("//")) {
+          return false;
+        }
+        schemeMid = schemeMid.substring(2);
+        if (schemeMid.contains("@")) {
+          schemeMid = schemeMid.substring(schemeMid.indexOf("@") + 1);
+        }
+        if (schemeMid.contains(":")) {
+          schemeMid = schemeMid.substring(0, schemeMid.lastIndexOf(":"));
+        }
+        if (schemeMid.contains("/")) {
+          schemeMid = schemeMid.substring(0, schemeMid.indexOf("/"));
+        }
+        // Дополнительно проверяем, что внутри URL нет множества последовательных точек
+        if (URL_HAS_STRANGE_DOTS.matcher(schemeMid).find()) {
+          return false;
+        }
+        for (String domain : schemeMid.split("[.]")) {
+          if (domain.startsWith("-") || domain.endsWith("-")) {
+            return false;
+          }
+        }
+      }
+      return true;
+    } catch (URISyntaxException | IllegalArgumentException | MalformedURLException e) {
+      return false;
+    }
+  }
+
+  /** Длина схемы http, https или ftp, за которой следует "://", иначе -1. */
+  private static int schemeLength(CharSequence url) {
+    int schemeLength;
+    if (startsWith(url, "https://")) {
+      schemeLength = 5;
+    } else if (startsWith(url, "http://")) {
+      schemeLength = 4;
+    } else if (startsWith(url, "ftp://")) {
+      schemeLength = 3;
+    } else {
+      schemeLength = -1;
+    }
+    return schemeLength;
+  }
+
+  /**
+   * Метод проходит путь (path) или query/fragment до следующего разделителя и возвращает его
+   * позицию. На недопустимом символе проход останавливается на нём.
+   */
+  private static int scanComponent(CharSequence url, int p, int n, boolean isPath) {
+    while (p < n) {
+      char c = url.charAt(p);
+      if (c == '#' || (isPath && c == '?')) {
+        return p;
+      }
+      if (c == '%') {
+        if (p + 2 >= n || !isHexDigit(url.charAt(p + 1)) || !isHexDigit(url.charAt(p + 2))) {
+          return p;
+        }
+        p += 3;
+      } else if (isAlphanumeric(c) || "-_.!~*'();/:@&=+$,".indexOf(c) >= 0) {
+        p++;
+      } else if (!isPath && (c == '?' || c == '[' || c == ']')) {
+        p++;
+      } else {
+        return p;
+      }
+    }
+    return p;
+  }
+
+  /** Аналог поиска [^.]+\.[^.]+ после "//": есть точка, окружённая не точками. */
+  private static boolean hasContentAfterScheme(CharSequence url, int start, int n) {
+    for (int i = start + 1; i < n - 1; i++) {
+      if (url.charAt(i) == '.' && url.charAt(i - 1) != '.' && url.charAt(i + 1) != '.') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Аналог проверки доменов в isValidByURI: та же часть URL (после первого '@', до последнего ':' и
+   * первого '/') не содержит двух точек подряд и частей между точками с дефисом по краям.
+   */
+  private static boolean hasValidDomains(CharSequence url, int start, int n) {
+    int segmentStart = start;
+    for (int i = start; i < n; i++) {
+      if (url.charAt(i) == '@') {
+        segmentStart = i + 1;
+        break;
+      }
+    }
+    int segmentEnd = n;
+    for (int i = n - 1; i >= segmentStart; i--) {
+      if (url.charAt(i) == ':') {
+        segmentEnd = i;
+        break;
+      }
+    }
+    for (int i = segmentStart; i < segmentEnd; i++) {
+      if (url.charAt(i) == '/') {
+        segmentEnd = i;
+        break;
+      }
+    }
+    for (int i = segmentStart; i < segmentEnd; i++) {
+      char c = url.charAt(i);
+      if (c == '.' && i + 1 < segmentEnd && url.charAt(i + 1) == '.') {
+        return false;
+      }
+      if (c == '-'
+          && (i == segmentStart
+              || url.charAt(i - 1) == '.'
+              || i == segmentEnd - 1
+              || url.charAt(i + 1) == '.')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean startsWith(CharSequence url, String prefix) {
+    if (url.length() < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (url.charAt(i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isAsciiLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isAlphanumeric(char c) {
+    return isAsciiLetter(c) || isDigit(c);
+  }
+
+  private static boolean isHexDigit(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+}
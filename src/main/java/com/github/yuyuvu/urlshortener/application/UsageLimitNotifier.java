@@ -0,0 +1,65 @@
+package com.github.yuyuvu.urlshortener.application;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Обработчик события израсходования лимита использований ссылки. Создаёт уведомление владельцу
+ * ссылки асинхронно в переданном Executor, чтобы не задерживать сам переход по ссылке, и сразу
+ * отправляет непрочитанные уведомления текущему пользователю.
+ */
+public class UsageLimitNotifier implements ShortLinkEventListener {
+  private final LinkService linkService;
+  private final NotificationService notificationService;
+  private final Executor executor;
+  private final Runnable showNotificationsTask;
+
+  /** Обработчик зависит от LinkService и NotificationService. */
+  public UsageLimitNotifier(
+      LinkService linkService,
+      NotificationService notificationService,
+      Executor executor,
+      Runnable showNotificationsTask) {
+    this.linkService = linkService;
+    this.notificationService = notificationService;
+    this.executor = executor;
+    this.showNotificationsTask = showNotificationsTask;
+  }
+
+  /** Метод ставит создание уведомления об израсходовании лимита в очередь Executor. */
+  @Override
+  public void onUsageLimitReached(ShortLink shortLink) {
+    try {
+      executor.execute(() -> notifyOwner(shortLink));
+    } catch (RejectedExecutionException e) {
+      // Сервис выключается: событие будет опубликовано повторно при следующем запуске
+      System.err.println(
+          "Уведомление об израсходовании лимита ссылки "
+              + shortLink.getShortId()
+              + " будет создано после перезапуска сервиса.");
+    }
+  }
+
+  /**
+   * Отметка о созданном уведомлении ставится только после его сохранения, поэтому при аварийном
+   * завершении между ними событие будет опубликовано повторно при следующем запуске сервиса.
+   */
+  @SuppressWarnings("CallToPrintStackTrace")
+  private void notifyOwner(ShortLink shortLink) {
+    try {
+      // Владелец мог удалить ссылку, пока задание ждало своей очереди
+      if (shortLink.isLimitNotified() || !linkService.isSavedShortLink(shortLink)) {
+        return;
+      }
+      Notification notification =
+          notificationService.makeNewShortLinkLimitReachedNotification(shortLink);
+      notificationService.saveNewNotification(notification);
+      linkService.markShortLinkLimitNotified(shortLink);
+      showNotificationsTask.run();
+    } catch (Exception e) {
+      e.printStackTrace(); // Ошибка не должна останавливать поток Executor
+    }
+  }
+}
@@ -37,6 +37,15 @@ public class UserService {
     return userRepository.saveUser(user);
   }
 
+  /**
+   * Метод для сохранения изменений уже существующего пользователя (например, счётчика созданных им
+   * ссылок) в репозиторий.
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  public User updateUser(User user) {
+    return userRepository.saveUser(user);
+  }
+
   /** Метод для получения пользователя по UUID. */
   public Optional<User> getUserByUUID(UUID uuid) {
     return userRepository.getUserByUUID(uuid);
@@ -6,6 +6,7 @@ import com.github.yuyuvu.urlshortener.cli.commands.CommandHandler;
 import com.github.yuyuvu.urlshortener.cli.viewmodels.ViewModel;
 import com.github.yuyuvu.urlshortener.cli.viewmodels.impl.ErrorViewModel;
 import com.github.yuyuvu.urlshortener.cli.viewmodels.impl.SuccessViewModel;
+import com.github.yuyuvu.urlshortener.domain.model.User;
 import com.github.yuyuvu.urlshortener.exceptions.InvalidShortLinkException;
 import com.github.yuyuvu.urlshortener.exceptions.NotEnoughPermissionsException;
 import com.github.yuyuvu.urlshortener.exceptions.OriginalLinkNotFoundException;
@@ -51,7 +52,9 @@ public class DeleteCommandHandler implements CommandHandler {
       // или удалённая короткая ссылка, или команда вызывается не владельцем короткой ссылки
       if (linkService.deleteShortLink(commandArgs[0], currentUserUUID)) {
         if (userService.getUserByUUID(currentUserUUID).isPresent()) {
-          userService.getUserByUUID(currentUserUUID).get().decrementAmountOfMadeShortLinks();
+          User user = userService.getUserByUUID(currentUserUUID).get();
+          user.decrementAmountOfMadeShortLinks();
+          userService.updateUser(user);
         }
         return new SuccessViewModel("Вы успешно удалили короткую ссылку: " + commandArgs[0]);
       } else {
@@ -75,6 +75,14 @@ public class ShortenCommandHandler implements CommandHandler {
 
         // Создаём новый объект короткой ссылки, не сохраняя его
         ShortLink shortLink = linkService.makeNewShortLink(originalURL, user.getUUID());
+        String serviceBaseURL = configManager.getDefaultServiceBaseURLProperty();
+
+        // При повторном сокращении того же URL возвращается уже сохранённая ссылка пользователя,
+        // она не создаётся заново и не расходует его лимит ссылок
+        if (!isNewUser && linkService.isSavedShortLink(shortLink)) {
+          return new CreatedLinkViewModel(
+              user.getUUID(), serviceBaseURL + shortLink.getShortId(), false, originalURL);
+        }
 
         // Проверяем, сколько активных в одном моменте ссылок может иметь один пользователь
         int linksPerUserLimit = configManager.getDefaultShortLinkMaxAmountPerUserProperty();
@@ -91,15 +99,15 @@ public class ShortenCommandHandler implements CommandHandler {
           if (isNewUser) {
             userService.saveNewUser(user);
             this.onNewUserCreationDo.accept(user.getUUID());
+          } else {
+            userService.updateUser(user);
           }
 
           // Сохраняем объект короткой ссылки в репозиторий
           linkService.saveNewShortLink(shortLink);
 
-          // Получаем из настроек service URL и сообщаем пользователю, что за ссылка для него была
-          // создана
+          // Сообщаем пользователю, что за ссылка для него была создана
           // и, опционально, какой UUID ему присвоен
-          String serviceBaseURL = configManager.getDefaultServiceBaseURLProperty();
           return new CreatedLinkViewModel(
               user.getUUID(), serviceBaseURL + shortLink.getShortId(), isNewUser, originalURL);
         }
@@ -3,6 +3,8 @@ package com.github.yuyuvu.urlshortener.domain.model;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.github.yuyuvu.urlshortener.exceptions.UsagesLimitReachedException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
@@ -22,6 +24,26 @@ import java.util.UUID;
  * действия, наличия уже созданных уведомлений по ней и увеличения счётчика использования.
  */
 public class ShortLink {
+  private static final VarHandle USAGE_STATE;
+
+  static {
+    try {
+      USAGE_STATE = MethodHandles.lookup().findVarHandle(ShortLink.class, "usageState", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /** Результат попытки использовать короткую ссылку (перейти по ней). */
+  public enum UsageAdmission {
+    /** Использование засчитано, лимит ещё не израсходован. */
+    ADMITTED,
+    /** Использование засчитано и израсходовало лимит: это последний разрешённый переход. */
+    ADMITTED_LIMIT_REACHED,
+    /** Лимит уже был израсходован, использование не засчитано. */
+    REJECTED
+  }
+
   /** UUID создателя-владельца ссылки. */
   private final UUID ownerOfShortURL;
 
@@ -42,11 +64,13 @@ public class ShortLink {
    */
   private LocalDateTime expirationDateTime;
 
-  /** Счётчик использований короткой ссылки. */
-  private int usageCounter;
-
-  /** Максимальное количество использований короткой ссылки. */
-  private int usageLimitAmount;
+  /**
+   * Счётчик использований (младшие 32 бита) и максимальное количество использований (старшие 32
+   * бита) короткой ссылки. Оба значения хранятся в одном long и меняются одной операцией CAS,
+   * поэтому параллельные переходы не превышают лимит и не теряют использований, а изменение лимита
+   * не может проскочить между проверкой лимита и увеличением счётчика.
+   */
+  private volatile long usageState;
 
   /** Флаг, свидетельствующий о том, что уведомление об израсходовании лимита уже было создано. */
   private boolean isLimitNotified;
@@ -77,8 +101,7 @@ public class ShortLink {
     this.shortId = shortId;
     this.creationDateTime = creationDateTime;
     this.expirationDateTime = expirationDateTime;
-    this.usageCounter = usageCounter;
-    this.usageLimitAmount = usageLimitAmount;
+    this.usageState = packUsageState(usageCounter, usageLimitAmount);
     this.ownerOfShortURL = ownerOfShortURL;
     this.isLimitNotified = isLimitNotified;
   }
@@ -90,7 +113,8 @@ public class ShortLink {
 
   /** Метод для проверки того, что лимит использований ссылки был израсходован. */
   public boolean isLimitReached() {
-    return usageCounter >= usageLimitAmount;
+    long state = usageState;
+    return usageCounter(state) >= usageLimitAmount(state);
   }
 
   /**
@@ -109,12 +133,39 @@ public class ShortLink {
     this.isLimitNotified = isLimitNotified;
   }
 
+  /**
+   * Метод атомарно засчитывает одно использование короткой ссылки, если лимит ещё не израсходован.
+   * Не выбрасывает исключений, поэтому подходит для обработки переходов из нескольких потоков.
+   *
+   * @return ADMITTED_LIMIT_REACHED ровно для одного использования, израсходовавшего лимит, REJECTED
+   *     для всех попыток после него
+   */
+  public UsageAdmission tryAdmitUsage() {
+    while (true) {
+      long state = usageState;
+      int counter = usageCounter(state);
+      int limit = usageLimitAmount(state);
+      if (counter >= limit) {
+        return UsageAdmission.REJECTED;
+      }
+      if (USAGE_STATE.compareAndSet(this, state, packUsageState(counter + 1, limit))) {
+        return counter + 1 >= limit
+            ? UsageAdmission.ADMITTED_LIMIT_REACHED
+            : UsageAdmission.ADMITTED;
+      }
+    }
+  }
+
   /**
    * Метод для увеличения счётчика использований короткой ссылки. Бросает
    * UsagesLimitReachedException при израсходованном лимите. Используется при редиректах.
+   *
+   * @return true, если именно это использование израсходовало лимит (такое происходит для ссылки
+   *     ровно один раз, так как дальше счётчик не увеличивается)
    */
-  public void incrementUsageCounter() throws UsagesLimitReachedException {
-    if (isLimitReached()) {
+  public boolean incrementUsageCounter() throws UsagesLimitReachedException {
+    UsageAdmission usageAdmission = tryAdmitUsage();
+    if (usageAdmission == UsageAdmission.REJECTED) {
       throw new UsagesLimitReachedException(
           "Лимит переходов по данной ссылке исчерпан. Ей больше нельзя воспользоваться."
               + "\nОна будет удалена в "
@@ -124,7 +175,39 @@ public class ShortLink {
                           .withLocale(Locale.forLanguageTag("ru-RU")))
               + ".");
     }
-    usageCounter++;
+    return usageAdmission == UsageAdmission.ADMITTED_LIMIT_REACHED;
+  }
+
+  /**
+   * Метод атомарно устанавливает новый лимит использований, только если текущий лимит ещё не
+   * израсходован и счётчик использований меньше нового лимита. Так параллельный переход не может
+   * израсходовать лимит между проверками в LinkService и сменой лимита.
+   *
+   * @return false, если условие не выполнено и лимит не изменён
+   */
+  public boolean trySetUsageLimitAmount(int newUsageLimitAmount) {
+    while (true) {
+      long state = usageState;
+      int counter = usageCounter(state);
+      if (counter >= usageLimitAmount(state) || counter >= newUsageLimitAmount) {
+        return false;
+      }
+      if (USAGE_STATE.compareAndSet(this, state, packUsageState(counter, newUsageLimitAmount))) {
+        return true;
+      }
+    }
+  }
+
+  private static long packUsageState(int usageCounter, int usageLimitAmount) {
+    return ((long) usageLimitAmount << 32) | (usageCounter & 0xFFFFFFFFL);
+  }
+
+  private static int usageCounter(long usageState) {
+    return (int) usageState;
+  }
+
+  private static int usageLimitAmount(long usageState) {
+    return (int) (usageState >>> 32);
   }
 
   /*
@@ -163,15 +246,22 @@ public class ShortLink {
   }
 
   public int getUsageLimitAmount() {
-    return usageLimitAmount;
+    return usageLimitAmount(usageState);
   }
 
+  /** Метод безусловно меняет лимит использований, не трогая счётчик. */
   public void setUsageLimitAmount(int usageLimitAmount) {
-    this.usageLimitAmount = usageLimitAmount;
+    while (true) {
+      long state = usageState;
+      long newState = packUsageState(usageCounter(state), usageLimitAmount);
+      if (USAGE_STATE.compareAndSet(this, state, newState)) {
+        return;
+      }
+    }
   }
 
   public int getUsageCounter() {
-    return usageCounter;
+    return usageCounter(usageState);
   }
 
   public UUID getOwnerOfShortURL() {
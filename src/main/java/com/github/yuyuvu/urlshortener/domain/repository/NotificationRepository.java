@@ -22,9 +22,22 @@ public interface NotificationRepository {
    */
   List<Notification> getUnreadNotificationsByUserUUID(UUID userUUID);
 
+  /**
+   * Метод для получения всех уведомлений пользователя (прочитанных и непрочитанных) в порядке
+   * создания, используется для сохранения изменений уведомлений одного пользователя.
+   */
+  List<Notification> getNotificationsByUserUUID(UUID userUUID);
+
   /** Метод для установления отметки, что непрочитанные уведомления были прочитаны. */
   void markUnreadNotificationsAsRead(List<Notification> notifications);
 
   /** Метод для удаления прочитанных уведомлений. */
   boolean deleteNotification(Notification notification);
+
+  /**
+   * Метод для удаления всех прочитанных уведомлений всех пользователей.
+   *
+   * @return количество удалённых уведомлений
+   */
+  int deleteReadNotifications();
 }
@@ -1,6 +1,7 @@
 package com.github.yuyuvu.urlshortener.domain.repository;
 
 import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -12,6 +13,15 @@ public interface ShortLinkRepository {
   /** Метод для сохранения новой короткой ссылки в хранилище. */
   ShortLink saveShortLink(ShortLink shortLink);
 
+  /**
+   * Метод для сохранения изменений в уже сохранённой короткой ссылке. Изменения сохраняются, только
+   * если в хранилище лежит этот же объект ссылки, поэтому удалённая за это время ссылка не
+   * возвращается в хранилище.
+   *
+   * @return true, если изменения сохранены
+   */
+  boolean updateShortLinkIfPresent(ShortLink shortLink);
+
   /** Метод для получения всех коротких ссылок из хранилища. */
   List<ShortLink> getAllShortLinks();
 
@@ -28,6 +38,31 @@ public interface ShortLinkRepository {
    */
   List<ShortLink> getShortLinksByOwnerUUID(UUID uuid);
 
+  /**
+   * Метод для получения всех коротких ссылок пользователя, ведущих на некоторый URL. URL
+   * сравниваются после нормализации (регистр схемы и хоста, порт по умолчанию, пустой путь), чтобы
+   * одинаковые по смыслу адреса находили одни и те же ссылки.
+   */
+  List<ShortLink> getShortLinksByOwnerAndOriginalURL(UUID uuid, String originalURL);
+
+  /**
+   * Метод для фиксации изменившегося счётчика использований короткой ссылки после редиректа.
+   * Отделён от saveShortLink, так как вызывается гораздо чаще и меняет только одно поле.
+   */
+  void updateUsageCounter(ShortLink shortLink);
+
+  /**
+   * Метод для получения коротких ссылок, срок действия которых истёк к моменту now. Используется
+   * для периодического удаления устаревших ссылок без перебора всего хранилища.
+   */
+  List<ShortLink> getExpiredShortLinks(LocalDateTime now);
+
+  /**
+   * Метод для получения количества коротких ссылок с shortID заданной длины. Используется для
+   * оценки заполненности пространства shortID этой длины.
+   */
+  long countShortLinksByShortIdLength(int shortIdLength);
+
   /** Метод для удаления короткой ссылки из хранилища по shortID. */
   boolean deleteShortLink(String shortId);
 
@@ -0,0 +1,185 @@
+package com.github.yuyuvu.urlshortener.http;
+
+import com.github.yuyuvu.urlshortener.application.LinkService;
+import com.github.yuyuvu.urlshortener.exceptions.InvalidOriginalLinkException;
+import com.github.yuyuvu.urlshortener.exceptions.InvalidShortLinkException;
+import com.github.yuyuvu.urlshortener.exceptions.OriginalLinkNotFoundException;
+import com.github.yuyuvu.urlshortener.exceptions.UsagesLimitReachedException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP-сервер редиректов по коротким ссылкам на встроенном в JDK com.sun.net.httpserver. На запрос
+ * GET /shortID отвечает кодом 302 с заголовком Location, содержащим длинный URL. Проверки ссылки и
+ * учёт лимита использований выполняет LinkService, так же как при редиректе через консоль. <br>
+ * Запросы обрабатываются в виртуальных потоках, если их поддерживает JDK, на котором запущен сервис
+ * (Java 21+), иначе в пуле обычных потоков.
+ */
+public class RedirectHttpServer implements AutoCloseable {
+  /** Количество обычных потоков на ядро процессора, если виртуальные потоки недоступны. */
+  private static final int PLATFORM_THREADS_PER_CORE = 8;
+
+  /** Очередь ещё не принятых соединений, чтобы всплеск клиентов не получал отказ в соединении. */
+  private static final int CONNECTION_BACKLOG = 1024;
+
+  /** Сколько байт тела запроса GET дочитывается, чтобы соединение можно было использовать снова. */
+  private static final int MAX_DRAINED_REQUEST_BODY_BYTES = 4096;
+
+  private final LinkService linkService;
+  private final HttpServer httpServer;
+  private final ExecutorService handlerExecutor;
+  private final boolean virtualThreads;
+
+  /**
+   * Конструктор занимает порт и готовит сервер, приём запросов начинается методом start.
+   *
+   * @param address адрес и порт сервера (порт 0 - любой свободный)
+   */
+  public RedirectHttpServer(LinkService linkService, InetSocketAddress address) throws IOException {
+    this.linkService = linkService;
+    this.httpServer = HttpServer.create(address, CONNECTION_BACKLOG);
+    ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+    this.virtualThreads = virtualThreadExecutor != null;
+    this.handlerExecutor = virtualThreads ? virtualThreadExecutor : newPlatformThreadExecutor();
+    httpServer.setExecutor(handlerExecutor);
+    httpServer.createContext("/", this::handle);
+  }
+
+  /** Метод начинает приём HTTP-запросов. */
+  public void start() {
+    httpServer.start();
+  }
+
+  /** Метод возвращает порт, на котором сервер принимает запросы. */
+  public int getPort() {
+    return httpServer.getAddress().getPort();
+  }
+
+  /** Метод сообщает, обрабатываются ли запросы в виртуальных потоках. */
+  public boolean usesVirtualThreads() {
+    return virtualThreads;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      // HEAD тоже не поддерживается: проверка ссылки не должна расходовать её лимит. Тело таких
+      // запросов не читается (после ответа сервер JDK сам дочитывает не больше
+      // sun.net.httpserver.drainAmount байт), а соединение закрывается
+      if (!exchange.getRequestMethod().equals("GET")) {
+        exchange.getResponseHeaders().set("Allow", "GET");
+        exchange.getResponseHeaders().set("Connection", "close");
+        sendText(exchange, 405, "Поддерживаются только запросы GET.");
+        return;
+      }
+
+      // Тело запроса дочитывается до ответа: на JDK 17 сервер проверяет, прочитан ли запрос, сразу
+      // после отправки ответа и закрывает соединение, которое клиент уже использует повторно,
+      // если запрос ещё не дочитан. Слишком большое тело не читается, соединение закрывается
+      if (!drainRequestBody(exchange)) {
+        exchange.getResponseHeaders().set("Connection", "close");
+      }
+
+      // Короткий ID - единственный сегмент пути
+      String shortId = exchange.getRequestURI().getPath().substring(1);
+      if (shortId.isEmpty() || shortId.indexOf('/') >= 0) {
+        sendText(exchange, 404, "Запрос должен иметь вид /ID_короткой_ссылки.");
+        return;
+      }
+
+      try {
+        String originalURLAddress = linkService.redirectByShortId(shortId);
+        // Ответ не кэшируется, иначе повторные переходы не попадут в счётчик использований
+        exchange.getResponseHeaders().set("Location", originalURLAddress);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(302, -1);
+      } catch (OriginalLinkNotFoundException e) {
+        sendText(exchange, 404, e.getMessage());
+      } catch (InvalidShortLinkException | UsagesLimitReachedException e) {
+        // Ссылка существовала, но больше не действует: истёк срок или израсходован лимит
+        sendText(exchange, 410, e.getMessage());
+      } catch (InvalidOriginalLinkException e) {
+        sendText(exchange, 500, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Метод дочитывает тело запроса, но не больше MAX_DRAINED_REQUEST_BODY_BYTES байт. Закрытие
+   * потока пропускает не больше sun.net.httpserver.drainAmount байт остатка, как это делает сервер
+   * JDK 21 перед ответом без тела: иначе на JDK 17 соединение с непрочитанными данными сбрасывается
+   * раньше, чем клиент получит ответ.
+   *
+   * @return true, если тело запроса прочитано полностью
+   */
+  private static boolean drainRequestBody(HttpExchange exchange) throws IOException {
+    try (InputStream requestBody = exchange.getRequestBody()) {
+      return requestBody.readNBytes(MAX_DRAINED_REQUEST_BODY_BYTES + 1).length
+          <= MAX_DRAINED_REQUEST_BODY_BYTES;
+    }
+  }
+
+  private static void sendText(HttpExchange exchange, int statusCode, String text)
+      throws IOException {
+    byte[] body = text.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    // Ответ на HEAD не содержит тела
+    if (exchange.getRequestMethod().equals("HEAD")) {
+      exchange.sendResponseHeaders(statusCode, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(statusCode, body.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+
+  /**
+   * Метод создаёт исполнитель с виртуальным потоком на каждую задачу. Сервис компилируется под Java
+   * 17, поэтому метод JDK 21 вызывается через рефлексию.
+   *
+   * @return исполнитель или null, если JDK не поддерживает виртуальные потоки
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  private static ExecutorService newPlatformThreadExecutor() {
+    AtomicInteger threadNumber = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors() * PLATFORM_THREADS_PER_CORE,
+        runnable -> {
+          Thread thread = new Thread(runnable, "http-redirect-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /** Метод останавливает сервер, давая начатым запросам до секунды на завершение. */
+  @Override
+  public void close() {
+    httpServer.stop(1);
+    handlerExecutor.shutdown();
+    try {
+      if (!handlerExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+        handlerExecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      handlerExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
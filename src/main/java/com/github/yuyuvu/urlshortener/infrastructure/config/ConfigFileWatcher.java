@@ -0,0 +1,119 @@
+package com.github.yuyuvu.urlshortener.infrastructure.config;
+
+import static com.github.yuyuvu.urlshortener.cli.presenters.ColorPrinter.printlnCyan;
+import static com.github.yuyuvu.urlshortener.cli.presenters.ColorPrinter.printlnRed;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс следит за файлом конфигурации через WatchService и перезагружает настройки после его
+ * изменения. Редакторы обычно пишут файл несколькими операциями, поэтому перезагрузка откладывается
+ * до тех пор, пока файл не перестанет меняться на время задержки. <br>
+ * События файловой системы принимает отдельный поток, а разбор и проверка настроек выполняются в
+ * потоке перезагрузки, поэтому консоль и редиректы не ждут перезагрузки: они продолжают читать
+ * прежний снимок настроек, пока ConfigManager не опубликует новый.
+ */
+public class ConfigFileWatcher implements AutoCloseable {
+  private final ConfigManager configManager;
+  private final Path pathToConfigFile;
+  private final long debounceMillis;
+  private final WatchService watchService;
+  private final Thread watchThread;
+  private final ScheduledExecutorService reloadExecutor =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "config-reload");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** Отложенная перезагрузка, которая переносится при каждом новом изменении файла. */
+  private ScheduledFuture<?> pendingReload;
+
+  /**
+   * Конструктор создаёт наблюдателя за файлом конфигурации, наблюдение начинается методом start.
+   */
+  public ConfigFileWatcher(ConfigManager configManager, Path pathToConfigFile, long debounceMillis)
+      throws IOException {
+    this.configManager = configManager;
+    this.pathToConfigFile = pathToConfigFile.toAbsolutePath();
+    this.debounceMillis = debounceMillis;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.watchThread = new Thread(this::watch, "config-file-watcher");
+    this.watchThread.setDaemon(true);
+  }
+
+  /** Метод начинает следить за изменениями файла конфигурации. */
+  public void start() throws IOException {
+    // Следить можно только за папкой, события других файлов в ней отбрасываются
+    pathToConfigFile
+        .getParent()
+        .register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+    watchThread.start();
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey watchKey = watchService.take();
+        for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+          if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW
+              || pathToConfigFile.getFileName().equals(watchEvent.context())) {
+            scheduleReload();
+          }
+        }
+        if (!watchKey.reset()) {
+          printlnRed(
+              "Папка с файлом конфигурации больше недоступна: "
+                  + pathToConfigFile.getParent()
+                  + ". Автоматическая перезагрузка настроек остановлена.");
+          return;
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Наблюдение остановлено методом close
+    }
+  }
+
+  private synchronized void scheduleReload() {
+    if (reloadExecutor.isShutdown()) {
+      return;
+    }
+    if (pendingReload != null) {
+      pendingReload.cancel(false);
+    }
+    pendingReload = reloadExecutor.schedule(this::reload, debounceMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void reload() {
+    try {
+      if (configManager.reloadConfigIfChanged()) {
+        printlnCyan("Файл конфигурации изменён, настройки перезагружены автоматически.");
+      }
+    } catch (RuntimeException e) {
+      printlnRed("Не удалось автоматически перезагрузить настройки: " + e.getMessage());
+    }
+  }
+
+  /** Метод останавливает наблюдение за файлом конфигурации. */
+  @Override
+  public synchronized void close() throws IOException {
+    reloadExecutor.shutdownNow();
+    watchService.close();
+    watchThread.interrupt();
+  }
+}
@@ -9,7 +9,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Класс для загрузки конфигурации приложения из текстового файла и получения значений настраиваемых
@@ -25,9 +30,27 @@ public class ConfigManager {
   /** Поле с загруженными настройками приложения. */
   private Properties appProperties;
 
+  /**
+   * Случайный ключ перестановки коротких ID, один на всё время работы сервиса. Сохраняется в файл
+   * конфигурации, если ключа там ещё нет.
+   */
+  private final String generatedShortLinkIdKey = String.valueOf(new SecureRandom().nextLong());
+
   /** Поле с настройками по-умолчанию. */
   private final Properties defaultProperties = makeDefaultProperties();
 
+  /**
+   * Разобранные настройки из appProperties. Заменяется целиком при перезагрузке, поэтому методы
+   * получения отдельных настроек только читают поля снимка.
+   */
+  private volatile ConfigSnapshot snapshot;
+
+  /** Текст файла конфигурации, из которого был разобран текущий снимок настроек. */
+  private String loadedConfigText;
+
+  /** Слушатели перезагрузки настроек, получают каждый новый снимок после его публикации. */
+  private final List<Consumer<ConfigSnapshot>> configReloadListeners = new CopyOnWriteArrayList<>();
+
   /** Перечисление возможных настроек приложения с мэппингом на ключи в файле конфигурации. */
   public enum ConfigProperty {
     DEFAULT_LINK_TTL_UNITS("default.link.ttl.units"),
@@ -40,7 +63,30 @@ public class ConfigManager {
     DEFAULT_SHORT_LINK_MAX_AMOUNT_PER_USER("default.short.link.amount.per.user"),
     DEFAULT_FILE_STORAGE_PATH("default.file.storage.path"),
     DEFAULT_SERVICE_BASE_URL("default.service.base.url"),
-    LEGACY_SERVICE_BASE_URLS("legacy.service.base.urls");
+    LEGACY_SERVICE_BASE_URLS("legacy.service.base.urls"),
+    STORAGE_WAL_ENABLED("storage.wal.enabled"),
+    STORAGE_WAL_GROUP_COMMIT_MILLIS("storage.wal.group.commit.millis"),
+    STORAGE_WAL_CHECKPOINT_SIZE_MB("storage.wal.checkpoint.size.mb"),
+    STORAGE_SNAPSHOT_INCREMENTAL_ENABLED("storage.snapshot.incremental.enabled"),
+    STORAGE_SNAPSHOT_MERGE_DELTAS("storage.snapshot.merge.deltas"),
+    STORAGE_CHECKPOINT_INTERVAL_SECONDS("storage.checkpoint.interval.seconds"),
+    STORAGE_LOAD_THREADS("storage.load.threads"),
+    STORAGE_FORMAT("storage.format"),
+    STORAGE_SNAPSHOT_GENERATIONS("storage.snapshot.generations"),
+    STORAGE_COMPRESSION("storage.compression"),
+    STORAGE_COMPRESSION_LEVEL("storage.compression.level"),
+    STORAGE_SNAPSHOT_SHARDS("storage.snapshot.shards"),
+    STORAGE_LOAD_LAZY("storage.load.lazy"),
+    SHORT_LINK_ID_GENERATOR("short.link.id.generator"),
+    SHORT_LINK_ID_KEY("short.link.id.key"),
+    SHORT_LINK_ID_POOL_LOW_WATERMARK("short.link.id.pool.low.watermark"),
+    SHORT_LINK_ID_POOL_HIGH_WATERMARK("short.link.id.pool.high.watermark"),
+    SHORT_LINK_LENGTH_GROWTH_OCCUPANCY_PERCENT("short.link.length.growth.occupancy.percent"),
+    SHORT_LINK_SHORTEN_IDEMPOTENT("short.link.shorten.idempotent"),
+    CONFIG_HOT_RELOAD_DEBOUNCE_MILLIS("config.hot.reload.debounce.millis"),
+    HTTP_REDIRECT_PORT("http.redirect.port"),
+    REDIRECT_CACHE_MAX_ENTRIES("redirect.cache.max.entries"),
+    CLICK_EVENTS_BUFFER_SIZE("click.events.buffer.size");
 
     private final String key;
 
@@ -87,6 +133,91 @@ public class ConfigManager {
     }
   }
 
+  /** Перечисление возможных форматов файла внешнего постоянного хранилища. */
+  public enum StorageFormat {
+    JSON("json"),
+    BINARY("binary");
+
+    private final String key;
+
+    StorageFormat(String key) {
+      this.key = key;
+    }
+
+    /** Метод для получения строкового представления константы StorageFormat. */
+    public String key() {
+      return key;
+    }
+
+    // Получение константы по строковому ключу,
+    // выбрасывание ошибки в случае некорректного ключа
+    static StorageFormat getStorageFormat(String value) {
+      for (StorageFormat storageFormat : StorageFormat.values()) {
+        if (storageFormat.key.equals(value)) {
+          return storageFormat;
+        }
+      }
+      throw new IllegalArgumentException(value);
+    }
+  }
+
+  /** Перечисление возможных способов сжатия файла внешнего постоянного хранилища. */
+  public enum StorageCompression {
+    NONE("none"),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private final String key;
+
+    StorageCompression(String key) {
+      this.key = key;
+    }
+
+    /** Метод для получения строкового представления константы StorageCompression. */
+    public String key() {
+      return key;
+    }
+
+    // Получение константы по строковому ключу,
+    // выбрасывание ошибки в случае некорректного ключа
+    static StorageCompression getStorageCompression(String value) {
+      for (StorageCompression storageCompression : StorageCompression.values()) {
+        if (storageCompression.key.equals(value)) {
+          return storageCompression;
+        }
+      }
+      throw new IllegalArgumentException(value);
+    }
+  }
+
+  /** Перечисление возможных способов генерации коротких ID для новых коротких ссылок. */
+  public enum ShortIdGeneratorType {
+    FEISTEL("feistel"),
+    RANDOM("random");
+
+    private final String key;
+
+    ShortIdGeneratorType(String key) {
+      this.key = key;
+    }
+
+    /** Метод для получения строкового представления константы ShortIdGeneratorType. */
+    public String key() {
+      return key;
+    }
+
+    // Получение константы по строковому ключу,
+    // выбрасывание ошибки в случае некорректного ключа
+    static ShortIdGeneratorType getShortIdGeneratorType(String value) {
+      for (ShortIdGeneratorType shortIdGeneratorType : ShortIdGeneratorType.values()) {
+        if (shortIdGeneratorType.key.equals(value)) {
+          return shortIdGeneratorType;
+        }
+      }
+      throw new IllegalArgumentException(value);
+    }
+  }
+
   /**
    * Метод задаёт стандартные настройки приложения, которые используются если файла настроек нет или
    * в нём заданы не все настройки (в таком случае отсюда берутся незаданные).
@@ -135,6 +266,80 @@ public class ConfigManager {
     // Устаревшие URL нашего сервиса сокращения ссылок, которые мы ещё распознаём для редиректов
     defaultProperties.setProperty(ConfigProperty.LEGACY_SERVICE_BASE_URLS.key(), "");
 
+    // Журнал упреждающей записи: каждое изменение данных сразу дописывается в журнал на диске
+    defaultProperties.setProperty(ConfigProperty.STORAGE_WAL_ENABLED.key(), "true");
+
+    // Сколько миллисекунд журнал копит записи перед одним общим сбросом на диск (group commit)
+    defaultProperties.setProperty(ConfigProperty.STORAGE_WAL_GROUP_COMMIT_MILLIS.key(), "5");
+
+    // Размер журнала в мегабайтах, после которого при сохранении делается полный снимок данных
+    defaultProperties.setProperty(ConfigProperty.STORAGE_WAL_CHECKPOINT_SIZE_MB.key(), "64");
+
+    // Инкрементальные снимки данных: сохраняются только изменённые записи в отдельные файлы-дельты
+    defaultProperties.setProperty(
+        ConfigProperty.STORAGE_SNAPSHOT_INCREMENTAL_ENABLED.key(), "true");
+
+    // Количество файлов-дельт, после которого они сливаются в полный снимок данных
+    defaultProperties.setProperty(ConfigProperty.STORAGE_SNAPSHOT_MERGE_DELTAS.key(), "16");
+
+    // Период фонового сохранения изменений данных в секундах (0 - только при выключении)
+    defaultProperties.setProperty(ConfigProperty.STORAGE_CHECKPOINT_INTERVAL_SECONDS.key(), "60");
+
+    // Количество потоков для загрузки данных при запуске сервиса (0 - по числу ядер процессора)
+    defaultProperties.setProperty(ConfigProperty.STORAGE_LOAD_THREADS.key(), "0");
+
+    // Формат файла внешнего постоянного хранилища
+    defaultProperties.setProperty(ConfigProperty.STORAGE_FORMAT.key(), "json");
+
+    // Количество предыдущих версий файла данных, к которым можно откатиться при его повреждении
+    defaultProperties.setProperty(ConfigProperty.STORAGE_SNAPSHOT_GENERATIONS.key(), "2");
+
+    // Сжатие файла данных сервиса и уровень сжатия (от 1 - быстрее до 9 - сильнее)
+    defaultProperties.setProperty(ConfigProperty.STORAGE_COMPRESSION.key(), "none");
+    defaultProperties.setProperty(ConfigProperty.STORAGE_COMPRESSION_LEVEL.key(), "6");
+
+    // Количество файлов-шардов, на которые делятся данные в JSON-снимке (1 - один файл)
+    defaultProperties.setProperty(ConfigProperty.STORAGE_SNAPSHOT_SHARDS.key(), "1");
+
+    // Загрузка пользователей и уведомлений в фоне после коротких ссылок при запуске сервиса
+    defaultProperties.setProperty(ConfigProperty.STORAGE_LOAD_LAZY.key(), "false");
+
+    // Генерация коротких ID перестановкой счётчика без коллизий (feistel) или случайно (random)
+    defaultProperties.setProperty(ConfigProperty.SHORT_LINK_ID_GENERATOR.key(), "feistel");
+
+    // Секретный ключ перестановки коротких ID, случайный для каждой установки сервиса (записывается
+    // в файл конфигурации при его создании или дописывается в существующий файл без ключа)
+    defaultProperties.setProperty(ConfigProperty.SHORT_LINK_ID_KEY.key(), generatedShortLinkIdKey);
+
+    // Пул заранее сгенерированных коротких ID пополняется в фоне до верхней границы, когда в нём
+    // остаётся меньше нижней границы (верхняя граница 0 - пул отключён)
+    defaultProperties.setProperty(ConfigProperty.SHORT_LINK_ID_POOL_LOW_WATERMARK.key(), "256");
+    defaultProperties.setProperty(ConfigProperty.SHORT_LINK_ID_POOL_HIGH_WATERMARK.key(), "1024");
+
+    // Заполненность пространства shortID текущей длины в процентах, после которой новые ссылки
+    // получают shortID на символ длиннее (0 - длина не меняется)
+    defaultProperties.setProperty(
+        ConfigProperty.SHORT_LINK_LENGTH_GROWTH_OCCUPANCY_PERCENT.key(), "10");
+
+    // Повторное сокращение того же URL тем же пользователем возвращает его действующую ссылку
+    // (false - каждое сокращение создаёт новую ссылку, как и раньше)
+    defaultProperties.setProperty(ConfigProperty.SHORT_LINK_SHORTEN_IDEMPOTENT.key(), "false");
+
+    // Изменения файла настроек применяются автоматически через столько миллисекунд после
+    // последней правки файла (0 - только командой config reload)
+    defaultProperties.setProperty(ConfigProperty.CONFIG_HOT_RELOAD_DEBOUNCE_MILLIS.key(), "500");
+
+    // Порт HTTP-сервера, отвечающего на запросы GET /shortID редиректом на длинный URL
+    // (0 - HTTP-сервер не запускается, редиректы только через консоль)
+    defaultProperties.setProperty(ConfigProperty.HTTP_REDIRECT_PORT.key(), "0");
+
+    // Сколько ссылок хранится в кэше подготовленных редиректов (0 - кэш отключён)
+    defaultProperties.setProperty(ConfigProperty.REDIRECT_CACHE_MAX_ENTRIES.key(), "100000");
+
+    // Размер буфера событий переходов по ссылкам, которые сохраняются в хранилище в фоне пачками
+    // (0 - счётчик использований сохраняется сразу при каждом переходе)
+    defaultProperties.setProperty(ConfigProperty.CLICK_EVENTS_BUFFER_SIZE.key(), "65536");
+
     if (defaultProperties.size() != ConfigProperty.values().length) {
       throw new RuntimeException(
           "Критическая ошибка: не задана одна из настроек по-умолчанию, ожидалось "
@@ -163,9 +368,9 @@ public class ConfigManager {
 
   /**
    * Метод перезагружает настройки из файла конфигурации, отсутствующие в файле настройки задаёт по
-   * умолчанию.
+   * умолчанию. Новые настройки становятся видны всем потокам разом после разбора.
    */
-  public void reloadConfig() {
+  public synchronized void reloadConfig() {
     // Создание директории для файлов данных сервиса
     try {
       Files.createDirectories(pathToAppdataDirectory);
@@ -197,7 +402,9 @@ public class ConfigManager {
             StandardOpenOption.CREATE,
             StandardOpenOption.WRITE);
       }
-      loadedProperties = Files.readString(pathToConfigFile, StandardCharsets.UTF_8);
+      loadedProperties =
+          appendShortLinkIdKeyIfMissing(Files.readString(pathToConfigFile, StandardCharsets.UTF_8));
+      loadedConfigText = loadedProperties;
     } catch (IOException e) {
       appProperties = makeDefaultProperties();
       printlnRed(
@@ -230,6 +437,93 @@ public class ConfigManager {
     checkConfigValidity();
   }
 
+  /**
+   * Метод дописывает в файл конфигурации ключ перестановки коротких ID, если ключа в файле нет
+   * (например, файл создан версией сервиса без этой настройки). Иначе ключ был бы новым при каждом
+   * запуске, и генератор не смог бы восстановить свой счётчик по уже выданным коротким ID.
+   *
+   * @return текст файла конфигурации вместе с дописанным ключом
+   */
+  private String appendShortLinkIdKeyIfMissing(String configText) {
+    String configKey = ConfigProperty.SHORT_LINK_ID_KEY.key();
+    Properties fileProperties = new Properties();
+    try {
+      fileProperties.load(new StringReader(configText));
+    } catch (IOException | IllegalArgumentException e) {
+      // Ошибку разбора файла покажет загрузка настроек
+      return configText;
+    }
+    if (fileProperties.containsKey(configKey)) {
+      return configText;
+    }
+
+    String keyLine =
+        (configText.isEmpty() || configText.endsWith("\n") ? "" : "\n")
+            + configKey
+            + "="
+            + defaultProperties.getProperty(configKey)
+            + "\n";
+    try {
+      Files.writeString(
+          pathToConfigFile, keyLine, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+      return configText + keyLine;
+    } catch (IOException e) {
+      printlnRed(
+          "Не удалось сохранить ключ перестановки коротких ID в файл конфигурации: "
+              + pathToConfigFile
+              + " "
+              + e.getMessage()
+              + ".\n"
+              + "На время текущего запуска сервиса будет установлен случайный ключ.");
+      return configText;
+    }
+  }
+
+  /**
+   * Метод перезагружает настройки, только если текст файла конфигурации изменился с прошлой
+   * загрузки. Используется при автоматической перезагрузке, чтобы повторные события об изменении
+   * файла не перезагружали одни и те же настройки.
+   *
+   * @return true, если настройки были перезагружены
+   */
+  public synchronized boolean reloadConfigIfChanged() {
+    String configText;
+    try {
+      configText = Files.readString(pathToConfigFile, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      // Ошибку чтения покажет сама перезагрузка
+      configText = null;
+    }
+    if (configText != null && configText.equals(loadedConfigText)) {
+      return false;
+    }
+    reloadConfig();
+    return true;
+  }
+
+  /**
+   * Метод запускает автоматическую перезагрузку настроек при изменении файла конфигурации, если она
+   * включена в настройках.
+   */
+  public Optional<ConfigFileWatcher> startConfigFileWatcher() throws IOException {
+    int debounceMillis = getConfigHotReloadDebounceMillisProperty();
+    if (debounceMillis == 0) {
+      return Optional.empty();
+    }
+    ConfigFileWatcher configFileWatcher =
+        new ConfigFileWatcher(this, pathToConfigFile, debounceMillis);
+    configFileWatcher.start();
+    return Optional.of(configFileWatcher);
+  }
+
+  /**
+   * Метод для подписки на перезагрузку настроек. Слушатель вызывается в потоке, выполнившем
+   * перезагрузку, после публикации нового снимка.
+   */
+  public void addConfigReloadListener(Consumer<ConfigSnapshot> configReloadListener) {
+    configReloadListeners.add(configReloadListener);
+  }
+
   @SuppressWarnings({"FieldCanBeLocal", "SpellCheckingInspection"})
   private final String configFileHelp =
       """
@@ -251,9 +545,52 @@ public class ConfigManager {
       # "default.file.storage.path" - путь до файла, где хранится состояние сервиса во время выключений или перезагрузок
       # "default.service.base.url" - текущий URL нашего сервиса сокращения ссылок, который везде используется и отображается
       # "legacy.service.base.urls" - устаревшие URL нашего сервиса сокращения ссылок, которые мы всё ещё распознаём для редиректов
+      # "storage.wal.enabled" - включение журнала упреждающей записи (true или false), все изменения данных сразу дописываются на диск
+      # "storage.wal.group.commit.millis" - сколько миллисекунд журнал копит изменения перед одним общим сбросом на диск
+      # "storage.wal.checkpoint.size.mb" - размер журнала в мегабайтах, после которого при сохранении делается полный снимок данных
+      # "storage.snapshot.incremental.enabled" - сохранение только изменённых данных в файлы-дельты (true или false)
+      # "storage.snapshot.merge.deltas" - количество файлов-дельт, после которого они сливаются в полный снимок данных
+      # "storage.checkpoint.interval.seconds" - период фонового сохранения изменений в секундах (0 - только при выключении сервиса)
+      # "storage.load.threads" - количество потоков для загрузки данных при запуске сервиса и записи шардов \
+      (0 - по числу ядер процессора)
+      # "storage.format" - формат файла с данными сервиса: json или binary (компактный двоичный, \
+      существующий JSON-файл переводится в него автоматически)
+      # "storage.snapshot.generations" - количество хранимых предыдущих версий файла данных, \
+      которые загружаются при повреждении последней версии
+      # "storage.compression" - сжатие файла данных сервиса: none, gzip или deflate (при загрузке \
+      сжатие определяется автоматически)
+      # "storage.compression.level" - уровень сжатия от 1 (быстрее) до 9 (сильнее)
+      # "storage.snapshot.shards" - количество файлов-шардов, на которые делятся короткие ссылки, \
+      пользователи и уведомления в JSON-снимке для параллельной записи и загрузки \
+      (1 - все данные в одном файле)
+      # "storage.load.lazy" - при запуске сервиса сначала загружаются только короткие ссылки, \
+      а пользователи и уведомления догружаются в фоне (true или false)
+      # "short.link.id.generator" - способ генерации коротких ID: feistel (перестановка счётчика, \
+      без коллизий и повторных попыток) или random (случайные символы)
+      # "short.link.id.key" - секретный ключ перестановки коротких ID для feistel (целое число), \
+      смена ключа не затрагивает уже созданные ссылки
+      # "short.link.id.pool.low.watermark" - количество заранее сгенерированных коротких ID в пуле, \
+      при котором пул начинает пополняться в фоне
+      # "short.link.id.pool.high.watermark" - количество коротких ID, до которого пополняется пул \
+      (0 - пул отключён и короткие ID генерируются при создании каждой ссылки)
+      # "short.link.length.growth.occupancy.percent" - заполненность в процентах всех возможных \
+      коротких ID текущей длины, после которой новые ссылки получают ID на символ длиннее, \
+      а существующие продолжают работать (0 - длина не меняется)
+      # "short.link.shorten.idempotent" - повторное сокращение того же URL тем же пользователем \
+      возвращает его действующую короткую ссылку вместо создания новой (true или false)
+      # "config.hot.reload.debounce.millis" - через сколько миллисекунд после последней правки этого файла \
+      настройки перезагружаются автоматически (0 - только командой config reload; само значение \
+      применяется после перезапуска сервиса)
+      # "http.redirect.port" - порт HTTP-сервера, который отвечает на запросы GET /ID_короткой_ссылки \
+      редиректом на длинный URL (0 - HTTP-сервер не запускается; применяется после перезапуска сервиса)
+      # "redirect.cache.max.entries" - сколько коротких ссылок хранится в кэше подготовленных редиректов \
+      с уже проверенным длинным URL (0 - кэш отключён)
+      # "click.events.buffer.size" - размер буфера событий переходов по ссылкам, из которого счётчики \
+      использований сохраняются в хранилище в фоне пачками (0 - сохранение сразу при каждом переходе; \
+      применяется после перезапуска сервиса)
       # Настройки задаются далее:""";
 
-  // Получение отдельных настроек
+  // Получение отдельных настроек из последнего разобранного снимка настроек
 
   private Path getAppdataDirectoryPathProperty() {
     return pathToAppdataDirectory;
@@ -263,94 +600,22 @@ public class ConfigManager {
    * Метод для получения пути до файла, в котором на постоянной основе хранятся все данные сервиса.
    */
   public Path getFileStoragePathProperty() {
-    String configKey = ConfigProperty.DEFAULT_FILE_STORAGE_PATH.key();
-    String defaultValue = defaultProperties.getProperty(configKey);
-    String configValue = appProperties.getProperty(configKey);
-    try {
-      return Path.of(configValue).toAbsolutePath();
-    } catch (Exception e) {
-      printlnRed(
-          "В файле конфигурации обнаружен некорректный путь до директории "
-              + "с файловой базой данных сервиса: "
-              + configValue
-              + ".\n"
-              + "Будет установлено стандартное значение: "
-              + defaultValue);
-      appProperties.setProperty(configKey, defaultValue);
-      return Path.of(appProperties.getProperty(configKey));
-    }
+    return snapshot.fileStoragePath();
   }
 
   /** Метод для получения TTL, который задаётся сервисом для любой новой короткой ссылки. */
   public int getDefaultShortLinkTTLInUnitsProperty() {
-    String configKey = ConfigProperty.DEFAULT_LINK_TTL_UNITS.key();
-    String defaultValue = defaultProperties.getProperty(configKey);
-    String configValue = appProperties.getProperty(configKey);
-    try {
-      if (Integer.parseInt(configValue) <= 0) {
-        throw new NumberFormatException();
-      }
-      return Integer.parseInt(configValue);
-    } catch (NumberFormatException e) {
-      printlnRed(
-          "В файле конфигурации обнаружено некорректное время действия ссылки по-умолчанию: "
-              + configValue
-              + ".\n"
-              + "Укажите значение одним положительным числом больше нуля "
-              + "в формате 24, 5, 1 и т.д. См. параметр time.unit для выбора "
-              + "единицы измерения TTL.\n"
-              + "На время текущего запуска сервиса будет установлено стандартное значение: "
-              + defaultValue);
-      appProperties.setProperty(configKey, defaultValue);
-      return Integer.parseInt(appProperties.getProperty(configKey));
-    }
+    return snapshot.defaultShortLinkTTLInUnits();
   }
 
   /** Метод для получения TTL, который максимально может задать пользователь при изменении TTL. */
   public int getUserSetShortLinkMaxTTLInUnitsProperty() {
-    String configKey = ConfigProperty.USER_SET_LINK_MAX_TTL_UNITS.key();
-    String defaultValue = defaultProperties.getProperty(configKey);
-    String configValue = appProperties.getProperty(configKey);
-    try {
-      if (Integer.parseInt(configValue) <= 0) {
-        throw new NumberFormatException();
-      }
-      return Integer.parseInt(configValue);
-    } catch (NumberFormatException e) {
-      printlnRed(
-          "В файле конфигурации обнаружен некорректный лимит TTL, на который пользователь может "
-              + "заменить стандартное время действия ссылки: "
-              + configValue
-              + ".\n"
-              + "Укажите значение одним положительным числом больше нуля "
-              + "в формате 24, 5, 1 и т.д. См. параметр time.unit для выбора "
-              + "единицы измерения TTL.\n"
-              + "На время текущего запуска сервиса будет установлено стандартное значение: "
-              + defaultValue);
-      appProperties.setProperty(configKey, defaultValue);
-      return Integer.parseInt(appProperties.getProperty(configKey));
-    }
+    return snapshot.userSetShortLinkMaxTTLInUnits();
   }
 
   /** Метод для получения текущей единицы измерения TTL коротких ссылок. */
   public TimeUnit getDefaultShortLinkTTLTimeUnitProperty() {
-    String configKey = ConfigProperty.DEFAULT_LINK_TTL_TIME_UNIT.key();
-    String defaultValue = defaultProperties.getProperty(configKey);
-    String configValue = appProperties.getProperty(configKey);
-    try {
-      return TimeUnit.getTimeUnit(configValue);
-    } catch (IllegalArgumentException e) {
-      printlnRed(
-          "В файле конфигурации обнаружено некорректное значение единицы измерения TTL "
-              + "для расчётов время действия ссылки: "
-              + configValue
-              + ".\n"
-              + "Допустимые значения параметра: часы, минуты, секунды или дни.\n"
-              + "На время текущего запуска сервиса будет установлено стандартное значение: "
-              + defaultValue);
-      appProperties.setProperty(configKey, defaultValue);
-      return TimeUnit.getTimeUnit(appProperties.getProperty(configKey));
-    }
+    return snapshot.defaultShortLinkTTLTimeUnit();
   }
 
   /**
@@ -358,27 +623,7 @@ public class ConfigManager {
    * новой короткой ссылки.
    */
   public int getDefaultShortLinkUsageLimitProperty() {
-    String configKey = ConfigProperty.DEFAULT_LINK_USAGE_LIMIT.key();
-    String defaultValue = defaultProperties.getProperty(configKey);
-    String configValue = appProperties.getProperty(configKey);
-    try {
-      if (Integer.parseInt(configValue) <= 0) {
-        throw new NumberFormatException();
-      }
-      return Integer.parseInt(configValue);
-    } catch (NumberFormatException e) {
-      printlnRed(
-          "В файле конфигурации обнаружено некорректное количество "
-              + "максимальных использований ссылки: "
-              + configValue
-              + ".\n"
-              + "Укажите количество одним положительным числом больше нуля, "
-              + "например, 5, 10, 244 и т.д.\n"
-              + "На время текущего запуска сервиса будет установлено стандартное значение: "
-              + defaultValue);
-      appProperties.setProperty(configKey, defaultValue);
-      return Integer.parseInt(appProperties.getProperty(configKey));
-    }
+    return snapshot.defaultShortLinkUsageLimit();
   }
 
   /**
@@ -386,27 +631,7 @@ public class ConfigManager {
    * изменении TTL.
    */
   public int getUserSetShortLinkUsageLimitProperty() {
-    String configKey = ConfigProperty.USER_SET_LINK_USAGE_LIMIT.key();
-    String defaultValue = defaultProperties.getProperty(configKey);
-    String configValue = appProperties.getProperty(configKey);
-    try {
-      if (Integer.parseInt(configValue) <= 0) {
-        throw new NumberFormatException();
-      }
-      return Integer.parseInt(configValue);
-    } catch (NumberFormatException e) {
-      printlnRed(
-          "В файле конфигурации обнаружен некорректный лимит использований ссылки,"
-              + " на который пользователь может поменять лимит по умолчанию: "
-              + configValue
-              + ".\n"
-              + "Укажите количество одним положительным числом больше нуля, "
-              + "например, 5, 10, 244 и т.д.\n"
-              + "На время текущего запуска сервиса будет установлено стандартное значение: "
-              + defaultValue);
-      appProperties.setProperty(configKey, defaultValue);
-      return Integer.parseInt(appProperties.getProperty(configKey));
-    }
+    return snapshot.userSetShortLinkUsageLimit();
   }
 
   /**
@@ -414,49 +639,654 @@ public class ConfigManager {
    * используется сервисом при генерации ID любой новой короткой ссылки.
    */
   public int getDefaultShortLinkIdLengthProperty() {
-    String configKey = ConfigProperty.DEFAULT_SHORT_LINK_LENGTH.key();
-    String defaultValue = defaultProperties.getProperty(configKey);
-    String configValue = appProperties.getProperty(configKey);
-    try {
-      if (Integer.parseInt(configValue) < 4 || Integer.parseInt(configValue) > 20) {
-        throw new NumberFormatException();
-      }
-      return Integer.parseInt(configValue);
-    } catch (NumberFormatException e) {
-      printlnRed(
-          "В файле конфигурации обнаружена некорректная максимальная длина ID короткой ссылки: "
-              + configValue
-              + ".\n"
-              + "Укажите длину одним положительным числом от 4 до 20, "
-              + "например, 5, 10, 20 и т.д.\n"
-              + "На время текущего запуска сервиса будет установлено стандартное значение: "
-              + defaultValue);
-      appProperties.setProperty(configKey, defaultValue);
-      return Integer.parseInt(appProperties.getProperty(configKey));
+    return snapshot.defaultShortLinkIdLength();
+  }
+
+  /**
+   * Метод для получения ограничения количества активных коротких ссылок, которые может создать один
+   * пользователь в сервисе.
+   */
+  public int getDefaultShortLinkMaxAmountPerUserProperty() {
+    return snapshot.defaultShortLinkMaxAmountPerUser();
+  }
+
+  /** Метод для получения текущего service URL, который подставляется перед ID короткой ссылки. */
+  public String getDefaultServiceBaseURLProperty() {
+    return snapshot.defaultServiceBaseURL();
+  }
+
+  /**
+   * Метод для получения устаревших service URL, редирект по которым будет работать даже при смене
+   * основного домена сервиса (используется только для редиректов).
+   */
+  public String[] getLegacyServiceBaseURLProperty() {
+    return snapshot.legacyServiceBaseURLs();
+  }
+
+  /**
+   * Метод для получения перечня всех символов, которые может использовать сервис для генерации ID
+   * любой новой короткой ссылки.
+   */
+  public char[] getShortLinkAllowedCharactersProperty() {
+    return snapshot.shortLinkAllowedCharacters();
+  }
+
+  /**
+   * Метод для получения признака того, что все изменения данных сервиса должны сразу дописываться в
+   * журнал упреждающей записи на диске.
+   */
+  public boolean getStorageWriteAheadLogEnabledProperty() {
+    return snapshot.storageWriteAheadLogEnabled();
+  }
+
+  /**
+   * Метод для получения времени в миллисекундах, в течение которого журнал упреждающей записи копит
+   * изменения перед одним общим сбросом на диск.
+   */
+  public int getStorageWriteAheadLogGroupCommitMillisProperty() {
+    return snapshot.storageWriteAheadLogGroupCommitMillis();
+  }
+
+  /**
+   * Метод для получения размера журнала упреждающей записи в мегабайтах, после превышения которого
+   * при сохранении данных делается их полный снимок, а журнал очищается.
+   */
+  public int getStorageWriteAheadLogCheckpointSizeMbProperty() {
+    return snapshot.storageWriteAheadLogCheckpointSizeMb();
+  }
+
+  /**
+   * Метод для получения признака того, что при сохранении данных записываются только изменённые с
+   * прошлого сохранения записи, а не все данные сервиса.
+   */
+  public boolean getStorageIncrementalSnapshotEnabledProperty() {
+    return snapshot.storageIncrementalSnapshotEnabled();
+  }
+
+  /**
+   * Метод для получения количества файлов-дельт с изменениями данных, после накопления которого они
+   * сливаются в полный снимок данных.
+   */
+  public int getStorageSnapshotMergeDeltasProperty() {
+    return snapshot.storageSnapshotMergeDeltas();
+  }
+
+  /**
+   * Метод для получения периода в секундах, с которым изменения данных сервиса сохраняются во
+   * внешнее постоянное хранилище в фоновом режиме. При 0 данные сохраняются только при выключении.
+   */
+  public int getStorageCheckpointIntervalSecondsProperty() {
+    return snapshot.storageCheckpointIntervalSeconds();
+  }
+
+  /**
+   * Метод для получения количества потоков, в которых данные сервиса загружаются из внешнего
+   * постоянного хранилища при запуске, а также записываются файлы-шарды снимка данных. При 0
+   * используется количество ядер процессора.
+   */
+  public int getStorageLoadThreadsProperty() {
+    return snapshot.storageLoadThreads();
+  }
+
+  /** Метод для получения формата файла, в котором хранятся данные сервиса между запусками. */
+  public StorageFormat getStorageFormatProperty() {
+    return snapshot.storageFormat();
+  }
+
+  /**
+   * Метод для получения количества предыдущих версий файла данных сервиса, которые сохраняются
+   * рядом с ним и загружаются, если последняя версия файла повреждена.
+   */
+  public int getStorageSnapshotGenerationsProperty() {
+    return snapshot.storageSnapshotGenerations();
+  }
+
+  /** Метод для получения способа сжатия файла, в котором хранятся данные сервиса. */
+  public StorageCompression getStorageCompressionProperty() {
+    return snapshot.storageCompression();
+  }
+
+  /** Метод для получения уровня сжатия файла данных сервиса (от 1 до 9). */
+  public int getStorageCompressionLevelProperty() {
+    return snapshot.storageCompressionLevel();
+  }
+
+  /**
+   * Метод для получения количества файлов-шардов, на которые делятся короткие ссылки, пользователи
+   * и уведомления при сохранении данных сервиса в JSON. При 1 все данные сохраняются в одном файле.
+   */
+  public int getStorageSnapshotShardsProperty() {
+    return snapshot.storageSnapshotShards();
+  }
+
+  /**
+   * Метод для получения признака ленивой загрузки данных: при запуске сервиса сначала загружаются
+   * короткие ссылки, а пользователи и уведомления догружаются в фоне.
+   */
+  public boolean getStorageLoadLazyProperty() {
+    return snapshot.storageLoadLazy();
+  }
+
+  /** Метод для получения способа генерации коротких ID для новых коротких ссылок. */
+  public ShortIdGeneratorType getShortLinkIdGeneratorProperty() {
+    return snapshot.shortLinkIdGenerator();
+  }
+
+  /** Метод для получения секретного ключа перестановки коротких ID. */
+  public long getShortLinkIdKeyProperty() {
+    return snapshot.shortLinkIdKey();
+  }
+
+  /** Метод для получения количества коротких ID в пуле, при котором пул начинает пополняться. */
+  public int getShortLinkIdPoolLowWatermarkProperty() {
+    return snapshot.shortLinkIdPoolLowWatermark();
+  }
+
+  /** Метод для получения количества коротких ID, до которого пополняется пул (0 - пул отключён). */
+  public int getShortLinkIdPoolHighWatermarkProperty() {
+    return snapshot.shortLinkIdPoolHighWatermark();
+  }
+
+  /**
+   * Метод для получения заполненности пространства коротких ID в процентах, после которой длина
+   * новых коротких ID увеличивается (0 - длина не меняется).
+   */
+  public int getShortLinkLengthGrowthOccupancyPercentProperty() {
+    return snapshot.shortLinkLengthGrowthOccupancyPercent();
+  }
+
+  /**
+   * Метод для получения признака идемпотентного сокращения: повторное сокращение того же URL тем же
+   * пользователем возвращает его действующую короткую ссылку.
+   */
+  public boolean getShortLinkShortenIdempotentProperty() {
+    return snapshot.shortLinkShortenIdempotent();
+  }
+
+  /**
+   * Метод для получения задержки автоматической перезагрузки настроек после последней правки файла
+   * конфигурации в миллисекундах (0 - автоматическая перезагрузка отключена).
+   */
+  public int getConfigHotReloadDebounceMillisProperty() {
+    return snapshot.configHotReloadDebounceMillis();
+  }
+
+  /**
+   * Метод для получения порта HTTP-сервера редиректов по коротким ссылкам (0 - HTTP-сервер не
+   * запускается).
+   */
+  public int getHttpRedirectPortProperty() {
+    return snapshot.httpRedirectPort();
+  }
+
+  /**
+   * Метод для получения наибольшего количества ссылок в кэше подготовленных редиректов (0 - кэш
+   * отключён).
+   */
+  public int getRedirectCacheMaxEntriesProperty() {
+    return snapshot.redirectCacheMaxEntries();
+  }
+
+  /**
+   * Метод для получения размера буфера событий переходов по ссылкам (0 - события не буферизуются,
+   * счётчик использований сохраняется при каждом переходе).
+   */
+  public int getClickEventsBufferSizeProperty() {
+    return snapshot.clickEventsBufferSize();
+  }
+
+  // Разбор отдельных настроек при перезагрузке, некорректные значения заменяются стандартными
+
+  private Path parseFileStoragePathProperty() {
+    String configKey = ConfigProperty.DEFAULT_FILE_STORAGE_PATH.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      return Path.of(configValue).toAbsolutePath();
+    } catch (Exception e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный путь до директории "
+              + "с файловой базой данных сервиса: "
+              + configValue
+              + ".\n"
+              + "Будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Path.of(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseDefaultShortLinkTTLInUnitsProperty() {
+    String configKey = ConfigProperty.DEFAULT_LINK_TTL_UNITS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) <= 0) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружено некорректное время действия ссылки по-умолчанию: "
+              + configValue
+              + ".\n"
+              + "Укажите значение одним положительным числом больше нуля "
+              + "в формате 24, 5, 1 и т.д. См. параметр time.unit для выбора "
+              + "единицы измерения TTL.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseUserSetShortLinkMaxTTLInUnitsProperty() {
+    String configKey = ConfigProperty.USER_SET_LINK_MAX_TTL_UNITS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) <= 0) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный лимит TTL, на который пользователь может "
+              + "заменить стандартное время действия ссылки: "
+              + configValue
+              + ".\n"
+              + "Укажите значение одним положительным числом больше нуля "
+              + "в формате 24, 5, 1 и т.д. См. параметр time.unit для выбора "
+              + "единицы измерения TTL.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private TimeUnit parseDefaultShortLinkTTLTimeUnitProperty() {
+    String configKey = ConfigProperty.DEFAULT_LINK_TTL_TIME_UNIT.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      return TimeUnit.getTimeUnit(configValue);
+    } catch (IllegalArgumentException e) {
+      printlnRed(
+          "В файле конфигурации обнаружено некорректное значение единицы измерения TTL "
+              + "для расчётов время действия ссылки: "
+              + configValue
+              + ".\n"
+              + "Допустимые значения параметра: часы, минуты, секунды или дни.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return TimeUnit.getTimeUnit(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseDefaultShortLinkUsageLimitProperty() {
+    String configKey = ConfigProperty.DEFAULT_LINK_USAGE_LIMIT.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) <= 0) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружено некорректное количество "
+              + "максимальных использований ссылки: "
+              + configValue
+              + ".\n"
+              + "Укажите количество одним положительным числом больше нуля, "
+              + "например, 5, 10, 244 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseUserSetShortLinkUsageLimitProperty() {
+    String configKey = ConfigProperty.USER_SET_LINK_USAGE_LIMIT.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) <= 0) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный лимит использований ссылки,"
+              + " на который пользователь может поменять лимит по умолчанию: "
+              + configValue
+              + ".\n"
+              + "Укажите количество одним положительным числом больше нуля, "
+              + "например, 5, 10, 244 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseDefaultShortLinkIdLengthProperty() {
+    String configKey = ConfigProperty.DEFAULT_SHORT_LINK_LENGTH.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 4 || Integer.parseInt(configValue) > 20) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружена некорректная максимальная длина ID короткой ссылки: "
+              + configValue
+              + ".\n"
+              + "Укажите длину одним положительным числом от 4 до 20, "
+              + "например, 5, 10, 20 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseDefaultShortLinkMaxAmountPerUserProperty() {
+    String configKey = ConfigProperty.DEFAULT_SHORT_LINK_MAX_AMOUNT_PER_USER.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) <= 0) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный лимит количества "
+              + "коротких ссылок на одного владельца: "
+              + configValue
+              + ".\n"
+              + "Укажите количество одним положительным числом больше нуля, "
+              + "например, 5, 10, 244 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  @SuppressWarnings("ResultOfMethodCallIgnored")
+  private String parseDefaultServiceBaseURLProperty() {
+    String configKey = ConfigProperty.DEFAULT_SERVICE_BASE_URL.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      new URI(configValue.strip()).toURL();
+      return configValue.strip();
+    } catch (Exception e) {
+      printlnRed(
+          "В файле конфигурации задан некорректный базовый URL сервиса сокращения ссылок: "
+              + configValue
+              + ".\n"
+              + "Укажите URL со схемой http:// или https://, в формате https://google.com/ "
+              + "(со слэшем в конце).\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return appProperties.getProperty(configKey);
+    }
+  }
+
+  @SuppressWarnings("ResultOfMethodCallIgnored")
+  private String[] parseLegacyServiceBaseURLProperty() {
+    String configKey = ConfigProperty.LEGACY_SERVICE_BASE_URLS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      String[] legacyServiceURLs = configValue.strip().split(",");
+      if (!legacyServiceURLs[0].isBlank() || legacyServiceURLs.length > 1) {
+        for (String legacyServiceURL : legacyServiceURLs) {
+          new URI(legacyServiceURL).toURL();
+        }
+      }
+      return legacyServiceURLs;
+    } catch (Exception e) {
+      printlnRed(
+          "В файле конфигурации задан некорректный список старых доменов сервиса: "
+              + configValue
+              + ".\n"
+              + "Укажите список URL со схемой http:// или https://, в формате https://google.com/ "
+              + "(со слэшем в конце). Указывайте эти URL через запятую.\n"
+              + "На время текущего запуска сервиса будет работать перенаправление "
+              + "только по новому домену: "
+              + parseDefaultServiceBaseURLProperty());
+      appProperties.setProperty(configKey, defaultValue);
+      return appProperties.getProperty(configKey).split(",");
+    }
+  }
+
+  private char[] parseShortLinkAllowedCharactersProperty() {
+    String configKey = ConfigProperty.DEFAULT_SHORT_LINK_ALLOWED_CHARACTERS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (configValue.isBlank()) {
+        throw new Exception();
+      }
+      return configValue.strip().replaceAll("\\s", "").toCharArray();
+    } catch (Exception e) {
+      printlnRed(
+          "В файле конфигурации не задан список разрешённых символов для короткой ссылки: "
+              + configValue
+              + ".\n"
+              + "Укажите список разрешённых символов одной строкой без пробелов.\n"
+              + "На время текущего запуска сервиса ID коротких ссылок будут кодироваться "
+              + "через base58 символы: "
+              + parseDefaultServiceBaseURLProperty());
+      appProperties.setProperty(configKey, defaultValue);
+      return appProperties.getProperty(configKey).toCharArray();
+    }
+  }
+
+  private boolean parseStorageWriteAheadLogEnabledProperty() {
+    String configKey = ConfigProperty.STORAGE_WAL_ENABLED.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (!configValue.strip().equals("true") && !configValue.strip().equals("false")) {
+        throw new IllegalArgumentException();
+      }
+      return Boolean.parseBoolean(configValue.strip());
+    } catch (Exception e) {
+      printlnRed(
+          "В файле конфигурации обнаружено некорректное значение включения журнала "
+              + "упреждающей записи: "
+              + configValue
+              + ".\n"
+              + "Допустимые значения параметра: true или false.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Boolean.parseBoolean(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseStorageWriteAheadLogGroupCommitMillisProperty() {
+    String configKey = ConfigProperty.STORAGE_WAL_GROUP_COMMIT_MILLIS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 1000) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружена некорректная задержка сброса журнала на диск: "
+              + configValue
+              + ".\n"
+              + "Укажите количество миллисекунд одним числом от 0 до 1000, "
+              + "например, 0, 5, 20 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseStorageWriteAheadLogCheckpointSizeMbProperty() {
+    String configKey = ConfigProperty.STORAGE_WAL_CHECKPOINT_SIZE_MB.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный размер журнала упреждающей записи: "
+              + configValue
+              + ".\n"
+              + "Укажите количество мегабайт одним неотрицательным числом, "
+              + "например, 0, 16, 64 и т.д. При 0 снимок данных делается при каждом сохранении.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private boolean parseStorageIncrementalSnapshotEnabledProperty() {
+    String configKey = ConfigProperty.STORAGE_SNAPSHOT_INCREMENTAL_ENABLED.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (!configValue.strip().equals("true") && !configValue.strip().equals("false")) {
+        throw new IllegalArgumentException();
+      }
+      return Boolean.parseBoolean(configValue.strip());
+    } catch (Exception e) {
+      printlnRed(
+          "В файле конфигурации обнаружено некорректное значение включения инкрементальных "
+              + "снимков данных: "
+              + configValue
+              + ".\n"
+              + "Допустимые значения параметра: true или false.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Boolean.parseBoolean(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseStorageSnapshotMergeDeltasProperty() {
+    String configKey = ConfigProperty.STORAGE_SNAPSHOT_MERGE_DELTAS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 1) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружено некорректное количество файлов-дельт до слияния: "
+              + configValue
+              + ".\n"
+              + "Укажите количество одним положительным числом, например, 1, 16, 100 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseStorageCheckpointIntervalSecondsProperty() {
+    String configKey = ConfigProperty.STORAGE_CHECKPOINT_INTERVAL_SECONDS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный период фонового сохранения данных: "
+              + configValue
+              + ".\n"
+              + "Укажите количество секунд одним неотрицательным числом, "
+              + "например, 0, 30, 60 и т.д. При 0 данные сохраняются только при выключении.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseStorageLoadThreadsProperty() {
+    String configKey = ConfigProperty.STORAGE_LOAD_THREADS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 256) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружено некорректное количество потоков загрузки данных: "
+              + configValue
+              + ".\n"
+              + "Укажите количество потоков одним числом от 0 до 256, например, 0, 1, 4 и т.д. "
+              + "При 0 используется количество ядер процессора.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
     }
   }
 
-  /**
-   * Метод для получения ограничения количества активных коротких ссылок, которые может создать один
-   * пользователь в сервисе.
-   */
-  public int getDefaultShortLinkMaxAmountPerUserProperty() {
-    String configKey = ConfigProperty.DEFAULT_SHORT_LINK_MAX_AMOUNT_PER_USER.key();
+  private StorageFormat parseStorageFormatProperty() {
+    String configKey = ConfigProperty.STORAGE_FORMAT.key();
     String defaultValue = defaultProperties.getProperty(configKey);
     String configValue = appProperties.getProperty(configKey);
     try {
-      if (Integer.parseInt(configValue) <= 0) {
+      return StorageFormat.getStorageFormat(configValue);
+    } catch (IllegalArgumentException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный формат файла данных сервиса: "
+              + configValue
+              + ".\n"
+              + "Допустимые значения параметра: json или binary.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return StorageFormat.getStorageFormat(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseStorageSnapshotGenerationsProperty() {
+    String configKey = ConfigProperty.STORAGE_SNAPSHOT_GENERATIONS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 100) {
         throw new NumberFormatException();
       }
       return Integer.parseInt(configValue);
     } catch (NumberFormatException e) {
       printlnRed(
-          "В файле конфигурации обнаружен некорректный лимит количества "
-              + "коротких ссылок на одного владельца: "
+          "В файле конфигурации обнаружено некорректное количество предыдущих версий файла данных: "
               + configValue
               + ".\n"
-              + "Укажите количество одним положительным числом больше нуля, "
-              + "например, 5, 10, 244 и т.д.\n"
+              + "Укажите количество одним числом от 0 до 100, например, 0, 2, 5 и т.д.\n"
               + "На время текущего запуска сервиса будет установлено стандартное значение: "
               + defaultValue);
       appProperties.setProperty(configKey, defaultValue);
@@ -464,106 +1294,351 @@ public class ConfigManager {
     }
   }
 
-  /** Метод для получения текущего service URL, который подставляется перед ID короткой ссылки. */
-  @SuppressWarnings("ResultOfMethodCallIgnored")
-  public String getDefaultServiceBaseURLProperty() {
-    String configKey = ConfigProperty.DEFAULT_SERVICE_BASE_URL.key();
+  private StorageCompression parseStorageCompressionProperty() {
+    String configKey = ConfigProperty.STORAGE_COMPRESSION.key();
     String defaultValue = defaultProperties.getProperty(configKey);
     String configValue = appProperties.getProperty(configKey);
     try {
-      new URI(configValue.strip()).toURL();
-      return configValue.strip();
-    } catch (Exception e) {
+      return StorageCompression.getStorageCompression(configValue);
+    } catch (IllegalArgumentException e) {
       printlnRed(
-          "В файле конфигурации задан некорректный базовый URL сервиса сокращения ссылок: "
+          "В файле конфигурации обнаружен некорректный способ сжатия файла данных сервиса: "
               + configValue
               + ".\n"
-              + "Укажите URL со схемой http:// или https://, в формате https://google.com/ "
-              + "(со слэшем в конце).\n"
+              + "Допустимые значения параметра: none, gzip или deflate.\n"
               + "На время текущего запуска сервиса будет установлено стандартное значение: "
               + defaultValue);
       appProperties.setProperty(configKey, defaultValue);
-      return appProperties.getProperty(configKey);
+      return StorageCompression.getStorageCompression(appProperties.getProperty(configKey));
     }
   }
 
-  /**
-   * Метод для получения устаревших service URL, редирект по которым будет работать даже при смене
-   * основного домена сервиса (используется только для редиректов).
-   */
-  @SuppressWarnings("ResultOfMethodCallIgnored")
-  public String[] getLegacyServiceBaseURLProperty() {
-    String configKey = ConfigProperty.LEGACY_SERVICE_BASE_URLS.key();
+  private int parseStorageCompressionLevelProperty() {
+    String configKey = ConfigProperty.STORAGE_COMPRESSION_LEVEL.key();
     String defaultValue = defaultProperties.getProperty(configKey);
     String configValue = appProperties.getProperty(configKey);
     try {
-      String[] legacyServiceURLs = configValue.strip().split(",");
-      if (!legacyServiceURLs[0].isBlank() || legacyServiceURLs.length > 1) {
-        for (String legacyServiceURL : legacyServiceURLs) {
-          new URI(legacyServiceURL).toURL();
-        }
+      if (Integer.parseInt(configValue) < 1 || Integer.parseInt(configValue) > 9) {
+        throw new NumberFormatException();
       }
-      return legacyServiceURLs;
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный уровень сжатия файла данных сервиса: "
+              + configValue
+              + ".\n"
+              + "Укажите уровень одним числом от 1 до 9, например, 1, 6, 9 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseStorageSnapshotShardsProperty() {
+    String configKey = ConfigProperty.STORAGE_SNAPSHOT_SHARDS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 1 || Integer.parseInt(configValue) > 1024) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружено некорректное количество файлов-шардов данных: "
+              + configValue
+              + ".\n"
+              + "Укажите количество одним числом от 1 до 1024, например, 1, 16, 64 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private boolean parseStorageLoadLazyProperty() {
+    String configKey = ConfigProperty.STORAGE_LOAD_LAZY.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (!configValue.strip().equals("true") && !configValue.strip().equals("false")) {
+        throw new IllegalArgumentException();
+      }
+      return Boolean.parseBoolean(configValue.strip());
     } catch (Exception e) {
       printlnRed(
-          "В файле конфигурации задан некорректный список старых доменов сервиса: "
+          "В файле конфигурации обнаружено некорректное значение включения ленивой загрузки "
+              + "данных: "
               + configValue
               + ".\n"
-              + "Укажите список URL со схемой http:// или https://, в формате https://google.com/ "
-              + "(со слэшем в конце). Указывайте эти URL через запятую.\n"
-              + "На время текущего запуска сервиса будет работать перенаправление "
-              + "только по новому домену: "
-              + getDefaultServiceBaseURLProperty());
+              + "Допустимые значения параметра: true или false.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
       appProperties.setProperty(configKey, defaultValue);
-      return appProperties.getProperty(configKey).split(",");
+      return Boolean.parseBoolean(appProperties.getProperty(configKey));
     }
   }
 
-  /**
-   * Метод для получения перечня всех символов, которые может использовать сервис для генерации ID
-   * любой новой короткой ссылки.
-   */
-  public char[] getShortLinkAllowedCharactersProperty() {
-    String configKey = ConfigProperty.DEFAULT_SHORT_LINK_ALLOWED_CHARACTERS.key();
+  private ShortIdGeneratorType parseShortLinkIdGeneratorProperty() {
+    String configKey = ConfigProperty.SHORT_LINK_ID_GENERATOR.key();
     String defaultValue = defaultProperties.getProperty(configKey);
     String configValue = appProperties.getProperty(configKey);
     try {
-      if (configValue.isBlank()) {
-        throw new Exception();
+      return ShortIdGeneratorType.getShortIdGeneratorType(configValue);
+    } catch (IllegalArgumentException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный способ генерации коротких ID: "
+              + configValue
+              + ".\n"
+              + "Допустимые значения параметра: feistel или random.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return ShortIdGeneratorType.getShortIdGeneratorType(appProperties.getProperty(configKey));
+    }
+  }
+
+  private long parseShortLinkIdKeyProperty() {
+    String configKey = ConfigProperty.SHORT_LINK_ID_KEY.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      return Long.parseLong(configValue.strip());
+    } catch (Exception e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный ключ перестановки коротких ID: "
+              + configValue
+              + ".\n"
+              + "Укажите ключ одним целым числом, например, 7340923512.\n"
+              + "На время текущего запуска сервиса будет установлен случайный ключ.");
+      appProperties.setProperty(configKey, defaultValue);
+      return Long.parseLong(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseShortLinkIdPoolLowWatermarkProperty() {
+    return parseShortLinkIdPoolWatermarkProperty(
+        ConfigProperty.SHORT_LINK_ID_POOL_LOW_WATERMARK, "нижняя граница пула коротких ID");
+  }
+
+  private int parseShortLinkIdPoolHighWatermarkProperty() {
+    return parseShortLinkIdPoolWatermarkProperty(
+        ConfigProperty.SHORT_LINK_ID_POOL_HIGH_WATERMARK, "верхняя граница пула коротких ID");
+  }
+
+  private int parseShortLinkIdPoolWatermarkProperty(ConfigProperty property, String description) {
+    String configKey = property.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 1_000_000) {
+        throw new NumberFormatException();
       }
-      return configValue.strip().replaceAll("\\s", "").toCharArray();
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружена некорректная "
+              + description
+              + ": "
+              + configValue
+              + ".\n"
+              + "Укажите количество одним числом от 0 до 1000000, например, 256, 1024 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseShortLinkLengthGrowthOccupancyPercentProperty() {
+    String configKey = ConfigProperty.SHORT_LINK_LENGTH_GROWTH_OCCUPANCY_PERCENT.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 100) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружена некорректная заполненность пространства коротких ID "
+              + "для увеличения их длины: "
+              + configValue
+              + ".\n"
+              + "Укажите процент одним числом от 0 до 100, например, 10, 50 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private boolean parseShortLinkShortenIdempotentProperty() {
+    String configKey = ConfigProperty.SHORT_LINK_SHORTEN_IDEMPOTENT.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (!configValue.strip().equals("true") && !configValue.strip().equals("false")) {
+        throw new IllegalArgumentException();
+      }
+      return Boolean.parseBoolean(configValue.strip());
     } catch (Exception e) {
       printlnRed(
-          "В файле конфигурации не задан список разрешённых символов для короткой ссылки: "
+          "В файле конфигурации обнаружено некорректное значение включения идемпотентного "
+              + "сокращения ссылок: "
               + configValue
               + ".\n"
-              + "Укажите список разрешённых символов одной строкой без пробелов.\n"
-              + "На время текущего запуска сервиса ID коротких ссылок будут кодироваться "
-              + "через base58 символы: "
-              + getDefaultServiceBaseURLProperty());
+              + "Допустимые значения параметра: true или false.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
       appProperties.setProperty(configKey, defaultValue);
-      return appProperties.getProperty(configKey).toCharArray();
+      return Boolean.parseBoolean(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseConfigHotReloadDebounceMillisProperty() {
+    String configKey = ConfigProperty.CONFIG_HOT_RELOAD_DEBOUNCE_MILLIS.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 60000) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружена некорректная задержка автоматической перезагрузки "
+              + "настроек: "
+              + configValue
+              + ".\n"
+              + "Укажите количество миллисекунд одним числом от 0 до 60000, "
+              + "например, 0, 500, 2000 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseHttpRedirectPortProperty() {
+    String configKey = ConfigProperty.HTTP_REDIRECT_PORT.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 65535) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный порт HTTP-сервера редиректов: "
+              + configValue
+              + ".\n"
+              + "Укажите порт одним числом от 0 до 65535, например, 0, 8080 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseRedirectCacheMaxEntriesProperty() {
+    String configKey = ConfigProperty.REDIRECT_CACHE_MAX_ENTRIES.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 10000000) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный размер кэша подготовленных редиректов: "
+              + configValue
+              + ".\n"
+              + "Укажите количество ссылок одним числом от 0 до 10000000, "
+              + "например, 0, 100000 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
+    }
+  }
+
+  private int parseClickEventsBufferSizeProperty() {
+    String configKey = ConfigProperty.CLICK_EVENTS_BUFFER_SIZE.key();
+    String defaultValue = defaultProperties.getProperty(configKey);
+    String configValue = appProperties.getProperty(configKey);
+    try {
+      if (Integer.parseInt(configValue) < 0 || Integer.parseInt(configValue) > 16777216) {
+        throw new NumberFormatException();
+      }
+      return Integer.parseInt(configValue);
+    } catch (NumberFormatException e) {
+      printlnRed(
+          "В файле конфигурации обнаружен некорректный размер буфера событий переходов: "
+              + configValue
+              + ".\n"
+              + "Укажите количество событий одним числом от 0 до 16777216, "
+              + "например, 0, 65536 и т.д.\n"
+              + "На время текущего запуска сервиса будет установлено стандартное значение: "
+              + defaultValue);
+      appProperties.setProperty(configKey, defaultValue);
+      return Integer.parseInt(appProperties.getProperty(configKey));
     }
   }
 
+  /** Метод возвращает снимок всех настроек, чтобы прочитать несколько настроек согласованно. */
+  public ConfigSnapshot getConfigSnapshot() {
+    return snapshot;
+  }
+
   /**
    * Метод для проверки валидности заданных значений настроек сразу после перезагрузки настроек.
    * Добавлен для того, чтобы ошибки были видны сразу, а не при попытке вызвать какую-либо команду
-   * или при редиректе. Приводит к разовому выводу всех ошибок. Во время вызовов всех методов
-   * ConfigManager для получения отдельных настроек неправильные значения сами исправляются на
-   * значения по умолчанию внутри них.
-   */
-  public void checkConfigValidity() {
-    getDefaultShortLinkTTLTimeUnitProperty();
-    getDefaultShortLinkTTLInUnitsProperty();
-    getUserSetShortLinkMaxTTLInUnitsProperty();
-    getDefaultShortLinkUsageLimitProperty();
-    getUserSetShortLinkUsageLimitProperty();
-    getShortLinkAllowedCharactersProperty();
-    getDefaultShortLinkIdLengthProperty();
-    getFileStoragePathProperty();
-    getDefaultServiceBaseURLProperty();
-    getLegacyServiceBaseURLProperty();
-    getDefaultShortLinkMaxAmountPerUserProperty();
+   * или при редиректе. Приводит к разовому выводу всех ошибок. Неправильные значения при разборе
+   * исправляются на значения по умолчанию, а разобранные настройки публикуются одним снимком.
+   */
+  public synchronized void checkConfigValidity() {
+    snapshot =
+        new ConfigSnapshot(
+            parseDefaultShortLinkTTLTimeUnitProperty(),
+            parseDefaultShortLinkTTLInUnitsProperty(),
+            parseUserSetShortLinkMaxTTLInUnitsProperty(),
+            parseDefaultShortLinkUsageLimitProperty(),
+            parseUserSetShortLinkUsageLimitProperty(),
+            parseShortLinkAllowedCharactersProperty(),
+            parseDefaultShortLinkIdLengthProperty(),
+            parseFileStoragePathProperty(),
+            parseDefaultServiceBaseURLProperty(),
+            parseLegacyServiceBaseURLProperty(),
+            parseDefaultShortLinkMaxAmountPerUserProperty(),
+            parseStorageWriteAheadLogEnabledProperty(),
+            parseStorageWriteAheadLogGroupCommitMillisProperty(),
+            parseStorageWriteAheadLogCheckpointSizeMbProperty(),
+            parseStorageIncrementalSnapshotEnabledProperty(),
+            parseStorageSnapshotMergeDeltasProperty(),
+            parseStorageCheckpointIntervalSecondsProperty(),
+            parseStorageLoadThreadsProperty(),
+            parseStorageFormatProperty(),
+            parseStorageSnapshotGenerationsProperty(),
+            parseStorageCompressionProperty(),
+            parseStorageCompressionLevelProperty(),
+            parseStorageSnapshotShardsProperty(),
+            parseStorageLoadLazyProperty(),
+            parseShortLinkIdGeneratorProperty(),
+            parseShortLinkIdKeyProperty(),
+            parseShortLinkIdPoolLowWatermarkProperty(),
+            parseShortLinkIdPoolHighWatermarkProperty(),
+            parseShortLinkLengthGrowthOccupancyPercentProperty(),
+            parseShortLinkShortenIdempotentProperty(),
+            parseConfigHotReloadDebounceMillisProperty(),
+            parseHttpRedirectPortProperty(),
+            parseRedirectCacheMaxEntriesProperty(),
+            parseClickEventsBufferSizeProperty());
+    for (Consumer<ConfigSnapshot> configReloadListener : configReloadListeners) {
+      configReloadListener.accept(snapshot);
+    }
   }
 }
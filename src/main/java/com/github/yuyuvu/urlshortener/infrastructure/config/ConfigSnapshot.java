@@ -0,0 +1,47 @@
+package com.github.yuyuvu.urlshortener.infrastructure.config;
+
+import java.nio.file.Path;
+
+/**
+ * Неизменяемый снимок разобранных и проверенных настроек сервиса. Создаётся один раз при каждой
+ * перезагрузке настроек в ConfigManager и публикуется целиком, поэтому чтение настроек не разбирает
+ * строки заново, а перезагрузка не бывает видна наполовину. <br>
+ * Массивы shortLinkAllowedCharacters и legacyServiceBaseURLs общие для всех читателей снимка и не
+ * должны изменяться. Значения компонентов описаны в одноимённых методах получения настроек
+ * ConfigManager.
+ */
+public record ConfigSnapshot(
+    ConfigManager.TimeUnit defaultShortLinkTTLTimeUnit,
+    int defaultShortLinkTTLInUnits,
+    int userSetShortLinkMaxTTLInUnits,
+    int defaultShortLinkUsageLimit,
+    int userSetShortLinkUsageLimit,
+    char[] shortLinkAllowedCharacters,
+    int defaultShortLinkIdLength,
+    Path fileStoragePath,
+    String defaultServiceBaseURL,
+    String[] legacyServiceBaseURLs,
+    int defaultShortLinkMaxAmountPerUser,
+    boolean storageWriteAheadLogEnabled,
+    int storageWriteAheadLogGroupCommitMillis,
+    int storageWriteAheadLogCheckpointSizeMb,
+    boolean storageIncrementalSnapshotEnabled,
+    int storageSnapshotMergeDeltas,
+    int storageCheckpointIntervalSeconds,
+    int storageLoadThreads,
+    ConfigManager.StorageFormat storageFormat,
+    int storageSnapshotGenerations,
+    ConfigManager.StorageCompression storageCompression,
+    int storageCompressionLevel,
+    int storageSnapshotShards,
+    boolean storageLoadLazy,
+    ConfigManager.ShortIdGeneratorType shortLinkIdGenerator,
+    long shortLinkIdKey,
+    int shortLinkIdPoolLowWatermark,
+    int shortLinkIdPoolHighWatermark,
+    int shortLinkLengthGrowthOccupancyPercent,
+    boolean shortLinkShortenIdempotent,
+    int configHotReloadDebounceMillis,
+    int httpRedirectPort,
+    int redirectCacheMaxEntries,
+    int clickEventsBufferSize) {}
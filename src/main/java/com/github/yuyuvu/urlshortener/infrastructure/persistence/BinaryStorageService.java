@@ -0,0 +1,401 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import static com.github.yuyuvu.urlshortener.cli.presenters.ColorPrinter.printlnCyan;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.domain.repository.NotificationRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Класс реализующий методы для чтения и записи StorageState в компактном двоичном формате. <br>
+ * В отличие от JSON имена полей не повторяются в каждой записи, числа записываются в формате
+ * varint, даты - секундами от эпохи, UUID - двумя long, а UUID владельцев ссылок хранятся один раз
+ * в словаре, на который ссылки ссылаются по номеру. <br>
+ * Файл состоит из заголовка (сигнатура и версия формата) и секций вида [номер секции][данные
+ * блоками с длиной], поэтому неизвестные секции из более новых версий можно пропустить.
+ */
+public class BinaryStorageService implements StorageService {
+  /** Начало двоичного файла хранилища ("USBN"). */
+  private static final int FILE_MAGIC = 0x5553424E;
+
+  /** Во второй версии формата после каждой секции записывается её контрольная сумма CRC32C. */
+  private static final byte FORMAT_VERSION = 2;
+
+  private static final byte FORMAT_VERSION_WITHOUT_CHECKSUMS = 1;
+
+  /* Номера секций файла. */
+  private static final byte END_OF_FILE = 0;
+  private static final byte UUID_DICTIONARY_SECTION = 1;
+  private static final byte SHORT_LINKS_SECTION = 2;
+  private static final byte USERS_SECTION = 3;
+  private static final byte NOTIFICATIONS_SECTION = 4;
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final ConfigManager configManager;
+
+  /** Конструктор объекта для чтения и записи StorageState в двоичном формате. */
+  public BinaryStorageService(ConfigManager configManager) {
+    this.configManager = configManager;
+  }
+
+  /**
+   * Метод собирает состояние всех репозиториев и сохраняет его в двоичный файл рядом с файлом,
+   * указанным в настройках (с расширением .bin). Данные копируются на момент начала сохранения, а
+   * файл заменяется атомарно с сохранением предыдущих версий, как и в FileStorageService.
+   */
+  @Override
+  public void saveStorageState(
+      UserRepository userRepository,
+      ShortLinkRepository shortLinkRepository,
+      NotificationRepository notificationRepository)
+      throws StorageStatePersistenceException {
+    StorageState storageState =
+        StorageStateSnapshot.capture(userRepository, shortLinkRepository, notificationRepository);
+    writeState(
+        resolveBinaryStoragePath(),
+        storageState.getExistingShortLinks().values(),
+        storageState.getExistingUsers().values(),
+        storageState.getUnreadNotifications());
+  }
+
+  /**
+   * Метод считывает состояние данных сервиса из самой новой неповреждённой версии двоичного файла.
+   * Если двоичного файла ещё нет, но есть JSON-файл хранилища, то он автоматически переводится в
+   * двоичный формат.
+   */
+  @Override
+  public Optional<StorageState> loadState() throws StorageStatePersistenceException {
+    Path binaryStoragePath = resolveBinaryStoragePath();
+    int previousGenerations = configManager.getStorageSnapshotGenerationsProperty();
+    if (!SnapshotFiles.existingGenerations(binaryStoragePath, previousGenerations).isEmpty()) {
+      return Optional.of(
+          SnapshotFiles.readWithFallback(
+              binaryStoragePath, previousGenerations, BinaryStorageService::readState));
+    }
+
+    Path jsonStoragePath = configManager.getFileStoragePathProperty();
+    if (Files.exists(jsonStoragePath) && !jsonStoragePath.equals(binaryStoragePath)) {
+      StorageState storageState = convertFromJsonFile(jsonStoragePath);
+      printlnCyan(
+          "Файл данных сервиса "
+              + jsonStoragePath
+              + " переведён в двоичный формат: "
+              + binaryStoragePath
+              + ". Исходный файл сохранён без изменений.");
+      return Optional.of(storageState);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Метод переводит JSON-файл хранилища в двоичный формат и возвращает прочитанные из него данные.
+   * Исходный файл не изменяется.
+   */
+  public StorageState convertFromJsonFile(Path jsonStoragePath)
+      throws StorageStatePersistenceException {
+    StorageState storageState;
+    try {
+      storageState = new StorageStateStreamReader(new ObjectMapper(), 1).read(jsonStoragePath);
+    } catch (JacksonException | IOException | IllegalArgumentException | IllegalStateException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с чтением JSON-файла данных сервиса для перевода в двоичный формат: "
+              + jsonStoragePath
+              + " "
+              + e.getMessage());
+    }
+    writeState(
+        resolveBinaryStoragePath(),
+        storageState.getExistingShortLinks().values(),
+        storageState.getExistingUsers().values(),
+        storageState.getUnreadNotifications());
+    return storageState;
+  }
+
+  /** Двоичный файл лежит рядом с указанным в настройках файлом и имеет расширение .bin. */
+  private Path resolveBinaryStoragePath() {
+    Path storagePath = configManager.getFileStoragePathProperty();
+    String fileName = storagePath.getFileName().toString();
+    if (fileName.endsWith(".json")) {
+      fileName = fileName.substring(0, fileName.length() - ".json".length());
+    }
+    return storagePath.resolveSibling(fileName + ".bin");
+  }
+
+  /*
+   * Запись файла.
+   * */
+
+  private void writeState(
+      Path binaryStoragePath,
+      Collection<ShortLink> shortLinks,
+      Collection<User> users,
+      List<Notification> notifications)
+      throws StorageStatePersistenceException {
+    try {
+      SnapshotFiles.writeAtomically(
+          binaryStoragePath,
+          configManager,
+          out ->
+              writeState(
+                  new BufferedOutputStream(out, BUFFER_SIZE), shortLinks, users, notifications));
+    } catch (IOException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с сохранением двоичного файла данных сервиса: "
+              + binaryStoragePath
+              + " "
+              + e.getMessage()
+              + "\nДанные не были сохранены.");
+    }
+  }
+
+  /** Метод записывает заголовок и все секции файла в поток. */
+  static void writeState(
+      OutputStream fileOut,
+      Collection<ShortLink> shortLinks,
+      Collection<User> users,
+      List<Notification> notifications)
+      throws IOException {
+    DataOutputStream out = new DataOutputStream(fileOut);
+    out.writeInt(FILE_MAGIC);
+    out.writeByte(FORMAT_VERSION);
+
+    // Словарь всех UUID, на которые ссылаются ссылки и уведомления
+    Map<UUID, Integer> uuidIndexes = new HashMap<>();
+    List<UUID> uuidDictionary = new ArrayList<>();
+    for (ShortLink shortLink : shortLinks) {
+      addToDictionary(shortLink.getOwnerOfShortURL(), uuidIndexes, uuidDictionary);
+    }
+    for (Notification notification : notifications) {
+      addToDictionary(notification.getUserUUID(), uuidIndexes, uuidDictionary);
+      addToDictionary(
+          notification.getShortLink().getOwnerOfShortURL(), uuidIndexes, uuidDictionary);
+    }
+
+    writeSection(
+        out,
+        UUID_DICTIONARY_SECTION,
+        section -> {
+          StorageRecordCodec.writeVarLong(section, uuidDictionary.size());
+          for (UUID uuid : uuidDictionary) {
+            StorageRecordCodec.writeUUID(section, uuid);
+          }
+        });
+    writeSection(
+        out,
+        SHORT_LINKS_SECTION,
+        section -> {
+          StorageRecordCodec.writeVarLong(section, shortLinks.size());
+          for (ShortLink shortLink : shortLinks) {
+            writeShortLink(section, shortLink, uuidIndexes);
+          }
+        });
+    writeSection(
+        out,
+        USERS_SECTION,
+        section -> {
+          StorageRecordCodec.writeVarLong(section, users.size());
+          for (User user : users) {
+            StorageRecordCodec.writeUUID(section, user.getUUID());
+            StorageRecordCodec.writeSignedVarLong(section, user.getAmountOfMadeShortLinks());
+          }
+        });
+    writeSection(
+        out,
+        NOTIFICATIONS_SECTION,
+        section -> {
+          StorageRecordCodec.writeVarLong(section, notifications.size());
+          for (Notification notification : notifications) {
+            writeShortLink(section, notification.getShortLink(), uuidIndexes);
+            StorageRecordCodec.writeVarLong(section, uuidIndexes.get(notification.getUserUUID()));
+            section.writeByte(notification.getType().ordinal());
+            section.writeBoolean(notification.isRead());
+          }
+        });
+    out.writeByte(END_OF_FILE);
+    out.flush();
+  }
+
+  /** Функция, записывающая содержимое секции. */
+  @FunctionalInterface
+  private interface SectionWriter {
+    void write(DataOutputStream section) throws IOException;
+  }
+
+  private static void writeSection(DataOutputStream out, byte sectionId, SectionWriter writer)
+      throws IOException {
+    out.writeByte(sectionId);
+    try (SectionOutputStream sectionOut = new SectionOutputStream(out)) {
+      DataOutputStream section = new DataOutputStream(sectionOut);
+      writer.write(section);
+      section.flush();
+    }
+  }
+
+  private static void addToDictionary(
+      UUID uuid, Map<UUID, Integer> uuidIndexes, List<UUID> uuidDictionary) {
+    if (uuidIndexes.putIfAbsent(uuid, uuidDictionary.size()) == null) {
+      uuidDictionary.add(uuid);
+    }
+  }
+
+  /**
+   * Запись короткой ссылки. Дата окончания действия записывается разницей с датой создания, которая
+   * обычно укладывается в 2-3 байта.
+   */
+  private static void writeShortLink(
+      DataOutputStream out, ShortLink shortLink, Map<UUID, Integer> uuidIndexes)
+      throws IOException {
+    long creationEpochSecond = shortLink.getCreationDateTime().toEpochSecond(ZoneOffset.UTC);
+    long expirationEpochSecond = shortLink.getExpirationDateTime().toEpochSecond(ZoneOffset.UTC);
+    StorageRecordCodec.writeVarString(out, shortLink.getShortId());
+    StorageRecordCodec.writeVarString(out, shortLink.getOriginalURLAddress());
+    StorageRecordCodec.writeSignedVarLong(out, creationEpochSecond);
+    StorageRecordCodec.writeVarLong(out, shortLink.getCreationDateTime().getNano());
+    StorageRecordCodec.writeSignedVarLong(out, expirationEpochSecond - creationEpochSecond);
+    StorageRecordCodec.writeVarLong(out, shortLink.getExpirationDateTime().getNano());
+    StorageRecordCodec.writeSignedVarLong(out, shortLink.getUsageCounter());
+    StorageRecordCodec.writeSignedVarLong(out, shortLink.getUsageLimitAmount());
+    StorageRecordCodec.writeVarLong(out, uuidIndexes.get(shortLink.getOwnerOfShortURL()));
+    out.writeBoolean(shortLink.isLimitNotified());
+  }
+
+  /*
+   * Чтение файла.
+   * */
+
+  private static StorageState readState(Path binaryStoragePath)
+      throws StorageStatePersistenceException {
+    try (InputStream fileIn = SnapshotFiles.openForReading(binaryStoragePath)) {
+      return readState(fileIn);
+    } catch (IOException | RuntimeException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с загрузкой двоичного файла данных сервиса: "
+              + binaryStoragePath
+              + " "
+              + e.getMessage()
+              + "\nСервис не будет запущен при наличии файла данных "
+              + "и одновременной невозможности считывания / загрузки ранее сохранённых данных.");
+    }
+  }
+
+  /** Метод читает заголовок и все секции файла из потока. */
+  static StorageState readState(InputStream fileIn) throws IOException {
+    DataInputStream in = new DataInputStream(fileIn);
+    if (in.readInt() != FILE_MAGIC) {
+      throw new IOException("файл не является двоичным файлом данных сервиса");
+    }
+    byte version = in.readByte();
+    if (version != FORMAT_VERSION && version != FORMAT_VERSION_WITHOUT_CHECKSUMS) {
+      throw new IOException("неподдерживаемая версия формата " + version);
+    }
+
+    StorageState storageState = new StorageState();
+    UUID[] uuidDictionary = new UUID[0];
+    byte sectionId;
+    while ((sectionId = in.readByte()) != END_OF_FILE) {
+      try (SectionInputStream sectionIn = new SectionInputStream(in, version == FORMAT_VERSION)) {
+        DataInputStream section = new DataInputStream(sectionIn);
+        switch (sectionId) {
+          case UUID_DICTIONARY_SECTION -> {
+            uuidDictionary = new UUID[StorageRecordCodec.readVarInt(section)];
+            for (int i = 0; i < uuidDictionary.length; i++) {
+              uuidDictionary[i] = StorageRecordCodec.readUUID(section);
+            }
+          }
+          case SHORT_LINKS_SECTION -> {
+            int count = StorageRecordCodec.readVarInt(section);
+            ConcurrentHashMap<String, ShortLink> shortLinks = new ConcurrentHashMap<>(count);
+            for (int i = 0; i < count; i++) {
+              ShortLink shortLink = readShortLink(section, uuidDictionary);
+              shortLinks.put(shortLink.getShortId(), shortLink);
+            }
+            storageState.setExistingShortLinks(shortLinks);
+          }
+          case USERS_SECTION -> {
+            int count = StorageRecordCodec.readVarInt(section);
+            ConcurrentHashMap<UUID, User> users = new ConcurrentHashMap<>(count);
+            for (int i = 0; i < count; i++) {
+              UUID uuid = StorageRecordCodec.readUUID(section);
+              users.put(uuid, new User(uuid, (int) StorageRecordCodec.readSignedVarLong(section)));
+            }
+            storageState.setExistingUsers(users);
+          }
+          case NOTIFICATIONS_SECTION -> {
+            int count = StorageRecordCodec.readVarInt(section);
+            List<Notification> notifications = new ArrayList<>(count);
+            Notification.NotificationType[] types = Notification.NotificationType.values();
+            for (int i = 0; i < count; i++) {
+              ShortLink shortLink = readShortLink(section, uuidDictionary);
+              UUID userUUID = uuidDictionary[StorageRecordCodec.readVarInt(section)];
+              int typeOrdinal = section.readUnsignedByte();
+              if (typeOrdinal >= types.length) {
+                throw new IOException("неизвестный тип уведомления " + typeOrdinal);
+              }
+              notifications.add(
+                  new Notification(shortLink, userUUID, types[typeOrdinal], section.readBoolean()));
+            }
+            storageState.setUnreadNotifications(notifications);
+          }
+          default -> {
+            // Секция из более новой версии формата, пропускаем её при закрытии потока
+          }
+        }
+      }
+    }
+    return storageState;
+  }
+
+  private static ShortLink readShortLink(DataInputStream in, UUID[] uuidDictionary)
+      throws IOException {
+    String shortId = StorageRecordCodec.readVarString(in);
+    String originalURLAddress = StorageRecordCodec.readVarString(in);
+    long creationEpochSecond = StorageRecordCodec.readSignedVarLong(in);
+    LocalDateTime creationDateTime =
+        LocalDateTime.ofEpochSecond(
+            creationEpochSecond, StorageRecordCodec.readVarInt(in), ZoneOffset.UTC);
+    LocalDateTime expirationDateTime =
+        LocalDateTime.ofEpochSecond(
+            creationEpochSecond + StorageRecordCodec.readSignedVarLong(in),
+            StorageRecordCodec.readVarInt(in),
+            ZoneOffset.UTC);
+    int usageCounter = (int) StorageRecordCodec.readSignedVarLong(in);
+    int usageLimitAmount = (int) StorageRecordCodec.readSignedVarLong(in);
+    UUID ownerOfShortURL = uuidDictionary[StorageRecordCodec.readVarInt(in)];
+    boolean isLimitNotified = in.readBoolean();
+    return new ShortLink(
+        originalURLAddress,
+        shortId,
+        creationDateTime,
+        expirationDateTime,
+        usageCounter,
+        usageLimitAmount,
+        ownerOfShortURL,
+        isLimitNotified);
+  }
+}
@@ -0,0 +1,125 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Считающий фильтр Блума для строковых ключей. Вместо битов используются 4-битные счётчики (по 16 в
+ * одном long), поэтому ключи можно не только добавлять, но и удалять. Счётчик, дошедший до 15,
+ * больше не меняется, чтобы переполнение не приводило к ложноотрицательным ответам. <br>
+ * Ответ "ключа нет" всегда верен, ответ "ключ может быть" ошибочен с вероятностью около 1% при
+ * количестве ключей не больше ёмкости фильтра. Методы потокобезопасны без блокировок.
+ */
+final class CountingBloomFilter {
+  private static final int COUNTER_BITS = 4;
+  private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+  private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+  /** 10 счётчиков на ключ и 7 хеш-функций дают вероятность ложноположительного ответа около 1%. */
+  private static final int COUNTERS_PER_KEY = 10;
+
+  private static final int HASH_FUNCTIONS = 7;
+
+  private final int capacity;
+  private final long counterMask;
+  private final AtomicLongArray words;
+  private final AtomicLong size = new AtomicLong();
+
+  /** Конструктор фильтра, рассчитанного на capacity ключей. */
+  CountingBloomFilter(int capacity) {
+    this.capacity = capacity;
+    // Количество счётчиков округляется до степени двойки, чтобы брать индекс по маске
+    long counters = Long.highestOneBit(Math.max(64L, (long) capacity * COUNTERS_PER_KEY - 1) << 1);
+    this.counterMask = counters - 1;
+    this.words = new AtomicLongArray((int) (counters / COUNTERS_PER_WORD));
+  }
+
+  /** Метод добавляет ключ в фильтр. */
+  void add(String key) {
+    long hash = hash(key);
+    long step = (hash >>> 32) | 1;
+    for (int i = 0; i < HASH_FUNCTIONS; i++) {
+      updateCounter((hash + i * step) & counterMask, 1);
+    }
+    size.incrementAndGet();
+  }
+
+  /** Метод удаляет из фильтра ключ, который был в него добавлен. */
+  void remove(String key) {
+    long hash = hash(key);
+    long step = (hash >>> 32) | 1;
+    for (int i = 0; i < HASH_FUNCTIONS; i++) {
+      updateCounter((hash + i * step) & counterMask, -1);
+    }
+    size.decrementAndGet();
+  }
+
+  /** Метод возвращает false, только если ключа точно нет в фильтре. */
+  boolean mightContain(String key) {
+    long hash = hash(key);
+    long step = (hash >>> 32) | 1;
+    for (int i = 0; i < HASH_FUNCTIONS; i++) {
+      if (counter((hash + i * step) & counterMask) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Метод возвращает количество ключей в фильтре. */
+  long size() {
+    return size.get();
+  }
+
+  /** Метод возвращает количество ключей, на которое рассчитан фильтр. */
+  int capacity() {
+    return capacity;
+  }
+
+  /** Метод возвращает расчётную вероятность ложноположительного ответа при текущем числе ключей. */
+  double expectedFalsePositiveRate() {
+    double counters = counterMask + 1.0;
+    return Math.pow(1 - Math.exp(-HASH_FUNCTIONS * (double) size() / counters), HASH_FUNCTIONS);
+  }
+
+  /** Метод возвращает объём памяти, занимаемый счётчиками фильтра, в байтах. */
+  long memoryBytes() {
+    return (long) words.length() * Long.BYTES;
+  }
+
+  private long counter(long index) {
+    long word = words.get((int) (index / COUNTERS_PER_WORD));
+    return (word >>> shift(index)) & COUNTER_MASK;
+  }
+
+  private void updateCounter(long index, int delta) {
+    int wordIndex = (int) (index / COUNTERS_PER_WORD);
+    int shift = shift(index);
+    long word;
+    long updatedWord;
+    do {
+      word = words.get(wordIndex);
+      long counter = (word >>> shift) & COUNTER_MASK;
+      // Насыщенный счётчик не меняется, пустой не уменьшается
+      if (counter == COUNTER_MASK || (counter == 0 && delta < 0)) {
+        return;
+      }
+      updatedWord = word + ((long) delta << shift);
+    } while (!words.compareAndSet(wordIndex, word, updatedWord));
+  }
+
+  private static int shift(long index) {
+    return (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+  }
+
+  /** 64-битный хеш FNV-1a по символам ключа с финальным перемешиванием SplitMix64. */
+  private static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+    }
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+    return hash ^ (hash >>> 31);
+  }
+}
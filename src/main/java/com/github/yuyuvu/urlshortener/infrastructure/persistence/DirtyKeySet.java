@@ -0,0 +1,46 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Потокобезопасный набор ключей изменённых записей для InMemory-репозиториев. Отметка ключа,
+ * сделанная во время выгрузки набора, не теряется и попадает в следующую выгрузку. Пока
+ * отслеживание не включено, ключи не запоминаются, чтобы набор не рос без ограничений, когда
+ * изменения никто не выгружает.
+ */
+final class DirtyKeySet<K> {
+  private final Set<K> dirtyKeys = ConcurrentHashMap.newKeySet();
+  private volatile boolean enabled;
+
+  boolean enable() {
+    boolean wasEnabled = enabled;
+    enabled = true;
+    return wasEnabled;
+  }
+
+  void mark(K key) {
+    if (enabled) {
+      dirtyKeys.add(key);
+    }
+  }
+
+  void markAll(Collection<K> keys) {
+    if (enabled) {
+      dirtyKeys.addAll(keys);
+    }
+  }
+
+  Set<K> drain() {
+    Set<K> drainedKeys = new HashSet<>();
+    Iterator<K> iterator = dirtyKeys.iterator();
+    while (iterator.hasNext()) {
+      drainedKeys.add(iterator.next());
+      iterator.remove();
+    }
+    return drainedKeys;
+  }
+}
@@ -0,0 +1,46 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Репозиторий, который запоминает ключи записей, изменённых или удалённых с момента последнего
+ * сохранения данных. Позволяет внешнему постоянному хранилищу сохранять только изменения, а не все
+ * данные сервиса целиком.
+ *
+ * @param <K> тип ключа записи (например, shortID для коротких ссылок или UUID для пользователей)
+ */
+public interface DirtyTrackingRepository<K> {
+
+  /**
+   * Метод включает отслеживание изменённых записей. До включения изменения не запоминаются, поэтому
+   * при первом включении (метод вернул false) нужно сохранить все данные целиком.
+   *
+   * @return true, если отслеживание уже было включено ранее
+   */
+  boolean enableDirtyTracking();
+
+  /**
+   * Метод возвращает ключи всех изменённых с прошлого вызова записей и сбрасывает их отметку. Если
+   * записи по ключу больше нет в репозитории, значит она была удалена.
+   */
+  Set<K> drainDirtyKeys();
+
+  /**
+   * Метод заново помечает ключи как изменённые. Используется, если сохранение изменений не удалось,
+   * чтобы они попали в следующее сохранение.
+   */
+  void markDirtyKeys(Collection<K> keys);
+
+  /**
+   * Метод возвращает репозиторий как DirtyTrackingRepository, если он отслеживает изменённые
+   * записи, иначе null.
+   */
+  @SuppressWarnings("unchecked")
+  static <K> DirtyTrackingRepository<K> asDirtyTracking(Object repository) {
+    if (repository instanceof DirtyTrackingRepository<?> dirtyTrackingRepository) {
+      return (DirtyTrackingRepository<K>) dirtyTrackingRepository;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,146 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Иерархическое колесо таймеров для отслеживания истечения сроков действия. Время измеряется в
+ * тиках (целых секундах). Каждый уровень колеса состоит из 64 ячеек, ячейка уровня L покрывает 64^L
+ * тиков. Ключ попадает на уровень по старшему различающемуся разряду (по основанию 64) между его
+ * сроком и текущим тиком, а при приближении срока опускается на уровни ниже. <br>
+ * Поэтому продвижение колеса затрагивает только ключи, срок которых наступил, и ключи, которые
+ * переносятся между уровнями (каждый ключ переносится не больше числа уровней раз), а не все
+ * отслеживаемые ключи. Участки времени без ключей пропускаются целиком.
+ */
+final class ExpirationTimingWheel<K> {
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+
+  /** 11 уровней по 6 бит покрывают любой неотрицательный long. */
+  private static final int LEVELS = 11;
+
+  /** Индекс ячейки для ключей, срок которых уже наступил к моменту постановки на колесо. */
+  private static final int OVERDUE = -1;
+
+  private record Timer(long tick, int slotIndex) {}
+
+  private final Map<K, Timer> timers = new HashMap<>();
+  private final List<Set<K>> slots = new ArrayList<>(LEVELS * SLOTS);
+  private final Set<K> overdueKeys = new LinkedHashSet<>();
+  private final int[] levelSizes = new int[LEVELS];
+  private long currentTick;
+
+  ExpirationTimingWheel(long startTick) {
+    this.currentTick = startTick;
+    for (int i = 0; i < LEVELS * SLOTS; i++) {
+      slots.add(null);
+    }
+  }
+
+  /**
+   * Метод ставит (или переставляет) ключ на заданный тик. Ключ с уже наступившим сроком будет
+   * возвращён при следующем продвижении колеса, даже если текущий тик не изменится.
+   */
+  synchronized void schedule(K key, long deadlineTick) {
+    cancel(key);
+    if (deadlineTick <= currentTick) {
+      overdueKeys.add(key);
+      timers.put(key, new Timer(deadlineTick, OVERDUE));
+    } else {
+      place(key, deadlineTick);
+    }
+  }
+
+  /** Метод снимает ключ с колеса. */
+  synchronized void cancel(K key) {
+    Timer timer = timers.remove(key);
+    if (timer != null && timer.slotIndex() == OVERDUE) {
+      overdueKeys.remove(key);
+    } else if (timer != null) {
+      slots.get(timer.slotIndex()).remove(key);
+      levelSizes[timer.slotIndex() / SLOTS]--;
+    }
+  }
+
+  /**
+   * Метод продвигает колесо до заданного тика включительно, снимает с него и возвращает все ключи,
+   * срок которых наступил. Тик раньше текущего колесо не откатывает.
+   */
+  synchronized List<K> advance(long nowTick) {
+    List<K> dueKeys = new ArrayList<>(overdueKeys);
+    for (K key : overdueKeys) {
+      timers.remove(key);
+    }
+    overdueKeys.clear();
+    while (currentTick < nowTick) {
+      int lowestLevel = lowestNonEmptyLevel();
+      if (lowestLevel < 0) {
+        currentTick = nowTick;
+        break;
+      }
+      // До ближайшей границы ячеек самого нижнего занятого уровня ничего не происходит
+      int shift = SLOT_BITS * lowestLevel;
+      long nextEventTick = ((currentTick >>> shift) + 1) << shift;
+      if (nextEventTick > nowTick) {
+        currentTick = nowTick;
+        break;
+      }
+      currentTick = nextEventTick;
+      for (int level = LEVELS - 1; level > 0; level--) {
+        long levelShift = (long) SLOT_BITS * level;
+        if ((currentTick & ((1L << levelShift) - 1)) == 0) {
+          cascade(level, (int) ((currentTick >>> levelShift) & SLOT_MASK));
+        }
+      }
+      Set<K> dueSlot = slots.set((int) (currentTick & SLOT_MASK), null);
+      if (dueSlot != null) {
+        for (K key : dueSlot) {
+          timers.remove(key);
+        }
+        levelSizes[0] -= dueSlot.size();
+        dueKeys.addAll(dueSlot);
+      }
+    }
+    return dueKeys;
+  }
+
+  /** Метод переносит ключи из наступившей ячейки верхнего уровня на уровни ниже. */
+  private void cascade(int level, int slot) {
+    Set<K> keys = slots.set(level * SLOTS + slot, null);
+    if (keys == null) {
+      return;
+    }
+    levelSizes[level] -= keys.size();
+    for (K key : keys) {
+      place(key, timers.remove(key).tick());
+    }
+  }
+
+  private void place(K key, long tick) {
+    long difference = tick ^ currentTick;
+    int level = difference == 0 ? 0 : (63 - Long.numberOfLeadingZeros(difference)) / SLOT_BITS;
+    int slotIndex = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    Set<K> slot = slots.get(slotIndex);
+    if (slot == null) {
+      slot = new LinkedHashSet<>();
+      slots.set(slotIndex, slot);
+    }
+    slot.add(key);
+    levelSizes[level]++;
+    timers.put(key, new Timer(tick, slotIndex));
+  }
+
+  private int lowestNonEmptyLevel() {
+    for (int level = 0; level < LEVELS; level++) {
+      if (levelSizes[level] > 0) {
+        return level;
+      }
+    }
+    return -1;
+  }
+}
@@ -5,8 +5,8 @@ import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
 import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
 import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
 import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Optional;
@@ -15,6 +15,8 @@ import tools.jackson.databind.ObjectMapper;
 
 /** Класс реализующий методы для чтения и записи StorageState в формате файла. */
 public class FileStorageService implements StorageService {
+  private static final int BUFFER_SIZE = 256 * 1024;
+
   private final ObjectMapper objectMapper = new ObjectMapper();
   private Path storagePath;
   private final ConfigManager configManager;
@@ -26,7 +28,11 @@ public class FileStorageService implements StorageService {
 
   /**
    * Метод собирает состояние всех репозиториев и сохраняет в JSON согласно структуре объекта
-   * StorageState при выключении сервиса.
+   * StorageState при выключении сервиса. <br>
+   * Данные репозиториев копируются на момент начала сохранения без остановки редиректов, файл
+   * записывается во временный файл с контрольными суммами секций (при необходимости сжимая его),
+   * сбрасывается на диск и атомарно заменяет предыдущую версию, которая сохраняется для отката.
+   * Если в настройках задано несколько шардов, данные записываются в набор файлов параллельно.
    */
   @Override
   public void saveStorageState(
@@ -36,21 +42,27 @@ public class FileStorageService implements StorageService {
       throws StorageStatePersistenceException {
     // Получаем путь до файла внешнего постоянного хранилища из настроек
     storagePath = configManager.getFileStoragePathProperty();
-    StorageState storageState = new StorageState();
 
-    // Получаем все данные для сохранения во внешнее постоянное хранилище
-    storageState.setExistingUsers(userRepository.getRepositoryAsMap());
-    storageState.setExistingShortLinks(shortLinkRepository.getRepositoryAsMap());
-    storageState.setUnreadNotifications(notificationRepository.getRepositoryAsList());
+    // Получаем копию всех данных для сохранения во внешнее постоянное хранилище
+    StorageState storageState =
+        StorageStateSnapshot.capture(userRepository, shortLinkRepository, notificationRepository);
 
     try {
-      // Создаём директории для файла, если их ещё нет
-      if (!Files.exists(storagePath)) {
-        Files.createDirectories(storagePath.getParent());
+      int shardCount = configManager.getStorageSnapshotShardsProperty();
+      if (shardCount > 1) {
+        // Записываем StorageState в несколько файлов параллельно
+        new ShardedSnapshotStore(objectMapper, configManager, storagePath)
+            .save(storageState, shardCount, resolveThreads());
+        return;
       }
 
-      // Сериализуем StorageState в формате JSON и записываем результат в файл
-      objectMapper.writeValue(storagePath.toFile(), storageState);
+      // Сериализуем StorageState в формате JSON и атомарно заменяем им файл
+      SnapshotFiles.writeAtomically(
+          storagePath,
+          configManager,
+          out ->
+              new StorageStateStreamWriter(objectMapper)
+                  .write(new BufferedOutputStream(out, BUFFER_SIZE), storageState));
     } catch (JacksonException | IOException e) {
       throw new StorageStatePersistenceException(
           "Проблемы с сериализацией и сохранением файла данных сервиса: "
@@ -67,25 +79,75 @@ public class FileStorageService implements StorageService {
 
   /**
    * Метод считывает состояние данных сервиса в виде StorageState из файла и возвращает объект, из
-   * которого репозитории потом могут загрузить нужные им данные при включении сервиса.
+   * которого репозитории потом могут загрузить нужные им данные при включении сервиса. <br>
+   * Файл читается потоково по одной записи, а короткие ссылки и пользователи преобразуются в
+   * объекты параллельно в заданном в настройках количестве потоков. Если последняя версия файла
+   * повреждена, загружается самая новая из сохранённых предыдущих версий. Шардированный снимок
+   * загружается, если он был сохранён позже одиночного файла.
    */
   @Override
   public Optional<StorageState> loadState() throws StorageStatePersistenceException {
     // Получаем путь до файла внешнего постоянного хранилища из настроек
     storagePath = configManager.getFileStoragePathProperty();
 
-    // Если это первый запуск и файла ещё нет, возвращаем пустое состояние
-    if (!Files.exists(storagePath)) {
-      return Optional.empty();
+    // Если последним сохранялся шардированный снимок, параллельно загружаем его файлы
+    int threads = resolveThreads();
+    ShardedSnapshotStore shardedSnapshotStore =
+        new ShardedSnapshotStore(objectMapper, configManager, storagePath);
+    try {
+      if (shardedSnapshotStore.isNewerThan(storagePath)) {
+        return Optional.ofNullable(shardedSnapshotStore.load(threads));
+      }
+    } catch (IOException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с чтением файлов данных сервиса: " + storagePath + " " + e.getMessage());
+    }
+
+    // Потоково десериализуем StorageState из самой новой неповреждённой версии файла,
+    // если это первый запуск и файла ещё нет, возвращаем пустое состояние
+    StorageStateStreamReader reader = new StorageStateStreamReader(objectMapper, threads);
+    return Optional.ofNullable(
+        SnapshotFiles.readWithFallback(
+            storagePath,
+            configManager.getStorageSnapshotGenerationsProperty(),
+            path -> readStorageFile(reader, path)));
+  }
+
+  /**
+   * Метод загружает шардированный снимок по частям: короткие ссылки сразу, а пользователей и
+   * уведомления в фоне по шардам. Одиночный файл проверяется по контрольным суммам только целиком,
+   * поэтому он загружается полностью, как в loadState().
+   */
+  @Override
+  public Optional<StagedStorageState> loadStateStaged() throws StorageStatePersistenceException {
+    storagePath = configManager.getFileStoragePathProperty();
+    ShardedSnapshotStore shardedSnapshotStore =
+        new ShardedSnapshotStore(objectMapper, configManager, storagePath);
+    try {
+      if (shardedSnapshotStore.isNewerThan(storagePath)) {
+        return Optional.ofNullable(shardedSnapshotStore.loadStaged(resolveThreads()));
+      }
+    } catch (IOException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с чтением файлов данных сервиса: " + storagePath + " " + e.getMessage());
     }
+    return loadState().map(StagedStorageState::completed);
+  }
+
+  /** Количество потоков загрузки из настроек, при 0 - по числу ядер процессора. */
+  private int resolveThreads() {
+    int threads = configManager.getStorageLoadThreadsProperty();
+    return threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+  }
 
-    // Иначе десериализуем StorageState из файла
+  private static StorageState readStorageFile(StorageStateStreamReader reader, Path path)
+      throws StorageStatePersistenceException {
     try {
-      return Optional.of(objectMapper.readValue(storagePath.toFile(), StorageState.class));
-    } catch (JacksonException e) {
+      return reader.read(path);
+    } catch (JacksonException | IOException | IllegalArgumentException | IllegalStateException e) {
       throw new StorageStatePersistenceException(
           "Проблемы с десериализацией и загрузкой файла данных сервиса: "
-              + storagePath
+              + path
               + " "
               + e.getMessage()
               + "\nСервис не будет запущен при наличии файла данных "
@@ -3,20 +3,85 @@ package com.github.yuyuvu.urlshortener.infrastructure.persistence;
 import com.github.yuyuvu.urlshortener.domain.model.Notification;
 import com.github.yuyuvu.urlshortener.domain.repository.NotificationRepository;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Реализация NotificationRepository на ArrayList для хранения уведомлений внутри оперативной
- * памяти.
+ * Реализация NotificationRepository для хранения уведомлений внутри оперативной памяти. <br>
+ * Уведомления каждого пользователя лежат в отдельной очереди в порядке создания, а
+ * ConcurrentHashMap связывает UUID пользователя с его очередью. Очередь блокируется только на время
+ * работы с ней, поэтому получение, прочтение и удаление уведомлений одного пользователя не зависят
+ * от общего количества уведомлений и не мешают работе с уведомлениями других пользователей. <br>
+ * При ленивой загрузке данных уведомления догружаются в фоне по шардам, а в очереди добавляются при
+ * первом обращении к шарду, поэтому получение уведомлений пользователя ждёт загрузки только шарда
+ * этого пользователя.
  */
-public class InMemoryNotificationRepository implements NotificationRepository {
+public class InMemoryNotificationRepository
+    implements NotificationRepository, DirtyTrackingRepository<UUID> {
 
-  private final List<Notification> unreadNotifications = new ArrayList<>();
+  private final ConcurrentHashMap<UUID, UserNotifications> notificationsByUser =
+      new ConcurrentHashMap<>();
+
+  /** UUID пользователей, у которых есть прочитанные, но ещё не удалённые уведомления. */
+  private final Set<UUID> usersWithReadNotifications = ConcurrentHashMap.newKeySet();
+
+  /** Слушатели изменений данных репозитория (например, журнал упреждающей записи). */
+  private final List<StorageChangeListener> storageChangeListeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * UUID пользователей, уведомления которых изменились с прошлого сохранения данных. У уведомлений
+   * нет собственного ID, поэтому при сохранении изменений записываются сразу все уведомления
+   * пользователя, которых обычно немного.
+   */
+  private final DirtyKeySet<UUID> dirtyUserUUIDs = new DirtyKeySet<>();
+
+  /** Загружаемые шарды уведомлений, ещё не добавленные в очереди (null - шард уже добавлен). */
+  private final AtomicReferenceArray<CompletableFuture<List<Notification>>> loadingShards;
+
+  private volatile int loadingShardsCount;
+
+  private final CompletableFuture<Void> allShardsLoaded;
 
   /** Конструктор для загрузки всех данных после перезапуска из StorageState. */
   public InMemoryNotificationRepository(List<Notification> unreadNotifications) {
-    this.unreadNotifications.addAll(unreadNotifications);
+    addLoadedNotifications(unreadNotifications);
+    this.loadingShards = new AtomicReferenceArray<>(0);
+    this.allShardsLoaded = CompletableFuture.completedFuture(null);
+  }
+
+  /** Конструктор для ленивой загрузки данных после перезапуска из StagedStorageState. */
+  public InMemoryNotificationRepository(StagedStorageState stagedStorageState) {
+    List<CompletableFuture<List<Notification>>> notificationShards =
+        stagedStorageState.getNotificationShards();
+    this.loadingShards = new AtomicReferenceArray<>(notificationShards.toArray(newShardArray(0)));
+    this.loadingShardsCount = loadingShards.length();
+    this.allShardsLoaded =
+        CompletableFuture.allOf(notificationShards.toArray(new CompletableFuture<?>[0]));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static CompletableFuture<List<Notification>>[] newShardArray(int length) {
+    return (CompletableFuture<List<Notification>>[]) new CompletableFuture<?>[length];
+  }
+
+  /** Метод возвращает задачу, которая завершается после загрузки всех шардов уведомлений. */
+  public CompletableFuture<Void> whenLoaded() {
+    return allShardsLoaded;
+  }
+
+  /** Метод для подписки на все последующие изменения данных репозитория. */
+  public void addStorageChangeListener(StorageChangeListener storageChangeListener) {
+    storageChangeListeners.add(storageChangeListener);
   }
 
   /**
@@ -25,13 +90,22 @@ public class InMemoryNotificationRepository implements NotificationRepository {
    */
   @Override
   public List<Notification> getRepositoryAsList() {
-    return new ArrayList<>(unreadNotifications);
+    awaitAllShards();
+    List<Notification> notifications = new ArrayList<>();
+    for (UserNotifications userNotifications : notificationsByUser.values()) {
+      userNotifications.copyTo(notifications);
+    }
+    return notifications;
   }
 
-  /** Метод для сохранения нового уведомления в хранилище. */
+  /**
+   * Метод для сохранения нового уведомления в хранилище. Ждёт загрузки шарда пользователя, чтобы
+   * новое уведомление встало в очередь после загруженных, а не перед ними.
+   */
   @Override
   public Notification saveNotification(Notification notification) {
-    unreadNotifications.add(notification);
+    awaitShard(notification.getUserUUID());
+    addToUserQueue(notification, true);
     return notification;
   }
 
@@ -40,23 +114,275 @@ public class InMemoryNotificationRepository implements NotificationRepository {
    */
   @Override
   public List<Notification> getUnreadNotificationsByUserUUID(UUID userUUID) {
-    return unreadNotifications.stream()
-        .filter(notification -> notification.getUserUUID().equals(userUUID))
-        .filter(notification -> !notification.isRead())
-        .toList();
+    awaitShard(userUUID);
+    UserNotifications userNotifications = notificationsByUser.get(userUUID);
+    return userNotifications == null ? List.of() : userNotifications.unread();
+  }
+
+  /**
+   * Метод для получения всех уведомлений пользователя (прочитанных и непрочитанных) в порядке
+   * создания. Ждёт загрузки только шарда этого пользователя.
+   */
+  @Override
+  public List<Notification> getNotificationsByUserUUID(UUID userUUID) {
+    awaitShard(userUUID);
+    UserNotifications userNotifications = notificationsByUser.get(userUUID);
+    if (userNotifications == null) {
+      return List.of();
+    }
+    List<Notification> notifications = new ArrayList<>();
+    userNotifications.copyTo(notifications);
+    return Collections.unmodifiableList(notifications);
   }
 
   /** Метод для установления отметки, что непрочитанные уведомления были прочитаны. */
   @Override
   public void markUnreadNotificationsAsRead(List<Notification> notifications) {
+    Map<UUID, List<Notification>> notificationsByUserUUID = new LinkedHashMap<>();
     for (Notification notification : notifications) {
-      notification.setRead(true);
+      notificationsByUserUUID
+          .computeIfAbsent(notification.getUserUUID(), uuid -> new ArrayList<>())
+          .add(notification);
+    }
+    for (Map.Entry<UUID, List<Notification>> entry : notificationsByUserUUID.entrySet()) {
+      List<Notification> userReadNotifications = entry.getValue();
+      notificationsByUser.compute(
+          entry.getKey(),
+          (userUUID, userNotifications) -> {
+            if (userNotifications != null) {
+              userNotifications.markRead(userReadNotifications);
+            } else {
+              userReadNotifications.forEach(notification -> notification.setRead(true));
+            }
+            dirtyUserUUIDs.mark(userUUID);
+            for (StorageChangeListener listener : storageChangeListeners) {
+              listener.onNotificationsMarkedAsRead(userReadNotifications);
+            }
+            return userNotifications;
+          });
+      usersWithReadNotifications.add(entry.getKey());
     }
   }
 
   /** Метод для удаления прочитанных уведомлений. */
   @Override
   public boolean deleteNotification(Notification notification) {
-    return unreadNotifications.remove(notification);
+    awaitShard(notification.getUserUUID());
+    boolean[] deleted = new boolean[1];
+    notificationsByUser.computeIfPresent(
+        notification.getUserUUID(),
+        (userUUID, userNotifications) -> {
+          if (!userNotifications.remove(notification)) {
+            return userNotifications;
+          }
+          dirtyUserUUIDs.mark(userUUID);
+          for (StorageChangeListener listener : storageChangeListeners) {
+            listener.onNotificationDeleted(notification);
+          }
+          deleted[0] = true;
+          return userNotifications.isEmpty() ? null : userNotifications;
+        });
+    return deleted[0];
+  }
+
+  /**
+   * Метод удаляет все прочитанные уведомления. Просматриваются только очереди пользователей, у
+   * которых с прошлого вызова появились прочитанные уведомления.
+   */
+  @Override
+  public int deleteReadNotifications() {
+    int[] deletedCount = new int[1];
+    for (UUID userUUID : usersWithReadNotifications) {
+      usersWithReadNotifications.remove(userUUID);
+      notificationsByUser.computeIfPresent(
+          userUUID,
+          (uuid, userNotifications) -> {
+            List<Notification> deletedNotifications = userNotifications.removeRead();
+            if (deletedNotifications.isEmpty()) {
+              return userNotifications;
+            }
+            dirtyUserUUIDs.mark(uuid);
+            for (Notification notification : deletedNotifications) {
+              for (StorageChangeListener listener : storageChangeListeners) {
+                listener.onNotificationDeleted(notification);
+              }
+            }
+            deletedCount[0] += deletedNotifications.size();
+            return userNotifications.isEmpty() ? null : userNotifications;
+          });
+    }
+    return deletedCount[0];
+  }
+
+  /** Метод включает отслеживание изменённых уведомлений для сохранения только изменений. */
+  @Override
+  public boolean enableDirtyTracking() {
+    return dirtyUserUUIDs.enable();
+  }
+
+  /** Метод возвращает UUID всех пользователей, уведомления которых изменились с прошлого вызова. */
+  @Override
+  public Set<UUID> drainDirtyKeys() {
+    return dirtyUserUUIDs.drain();
+  }
+
+  /** Метод заново помечает уведомления пользователей как изменённые после неудачного сохранения. */
+  @Override
+  public void markDirtyKeys(Collection<UUID> keys) {
+    dirtyUserUUIDs.markAll(keys);
+  }
+
+  /*
+   * Очереди уведомлений пользователей.
+   * */
+
+  private void addLoadedNotifications(List<Notification> notifications) {
+    for (Notification notification : notifications) {
+      addToUserQueue(notification, false);
+    }
+  }
+
+  /**
+   * Очередь создаётся и дополняется под блокировкой ключа, поэтому не может потерять запись. Все
+   * изменения очереди и вызовы слушателей идут под блокировкой ключа пользователя, чтобы записи
+   * журнала об уведомлениях одного пользователя шли в том же порядке, что и сами изменения.
+   */
+  private void addToUserQueue(Notification notification, boolean isNewNotification) {
+    notificationsByUser.compute(
+        notification.getUserUUID(),
+        (userUUID, userNotifications) -> {
+          UserNotifications queue =
+              userNotifications == null ? new UserNotifications() : userNotifications;
+          queue.add(notification);
+          if (isNewNotification) {
+            dirtyUserUUIDs.mark(userUUID);
+            for (StorageChangeListener listener : storageChangeListeners) {
+              listener.onNotificationSaved(notification);
+            }
+          }
+          return queue;
+        });
+    if (notification.isRead()) {
+      usersWithReadNotifications.add(notification.getUserUUID());
+    }
+  }
+
+  /**
+   * Уведомления одного пользователя в порядке создания. Все уведомления до readWatermark уже
+   * прочитаны, поэтому поиск непрочитанных начинается с него, а не с начала очереди.
+   */
+  private static final class UserNotifications {
+    private final List<Notification> notifications = new ArrayList<>();
+    private int readWatermark;
+
+    synchronized void add(Notification notification) {
+      notifications.add(notification);
+      advanceReadWatermark();
+    }
+
+    synchronized List<Notification> unread() {
+      List<Notification> unread = new ArrayList<>();
+      for (int i = readWatermark; i < notifications.size(); i++) {
+        if (!notifications.get(i).isRead()) {
+          unread.add(notifications.get(i));
+        }
+      }
+      return Collections.unmodifiableList(unread);
+    }
+
+    synchronized void markRead(List<Notification> readNotifications) {
+      for (Notification notification : readNotifications) {
+        notification.setRead(true);
+      }
+      advanceReadWatermark();
+    }
+
+    /** Уведомления сравниваются по ссылке на объект, как и в ArrayList.remove(). */
+    synchronized boolean remove(Notification notification) {
+      int index = notifications.indexOf(notification);
+      if (index < 0) {
+        return false;
+      }
+      notifications.remove(index);
+      if (index < readWatermark) {
+        readWatermark--;
+      }
+      advanceReadWatermark();
+      return true;
+    }
+
+    synchronized List<Notification> removeRead() {
+      List<Notification> removed = new ArrayList<>();
+      notifications.removeIf(
+          notification -> {
+            if (notification.isRead()) {
+              removed.add(notification);
+              return true;
+            }
+            return false;
+          });
+      readWatermark = 0;
+      advanceReadWatermark();
+      return removed;
+    }
+
+    synchronized void copyTo(List<Notification> target) {
+      target.addAll(notifications);
+    }
+
+    synchronized boolean isEmpty() {
+      return notifications.isEmpty();
+    }
+
+    private void advanceReadWatermark() {
+      while (readWatermark < notifications.size() && notifications.get(readWatermark).isRead()) {
+        readWatermark++;
+      }
+    }
+  }
+
+  /*
+   * Ленивая загрузка шардов.
+   * */
+
+  private void awaitShard(UUID userUUID) {
+    if (loadingShardsCount > 0) {
+      addLoadedShard(StagedStorageState.shardOf(userUUID, loadingShards.length()));
+    }
+  }
+
+  private void awaitAllShards() {
+    if (loadingShardsCount > 0) {
+      for (int shard = 0; shard < loadingShards.length(); shard++) {
+        addLoadedShard(shard);
+      }
+    }
+  }
+
+  /**
+   * Метод дожидается загрузки шарда и добавляет его уведомления в очереди пользователей. Ожидание
+   * идёт без блокировки, поэтому обращения к разным шардам не ждут друг друга. Шард отмечается
+   * добавленным только после добавления всех его уведомлений.
+   */
+  private void addLoadedShard(int shard) {
+    CompletableFuture<List<Notification>> loading = loadingShards.get(shard);
+    if (loading == null) {
+      return;
+    }
+    List<Notification> loadedNotifications;
+    try {
+      loadedNotifications = loading.join();
+    } catch (CompletionException e) {
+      throw new IllegalStateException(
+          "Уведомления пользователей не были загружены: " + e.getCause().getMessage(),
+          e.getCause());
+    }
+    synchronized (loadingShards) {
+      if (loadingShards.get(shard) == loading) {
+        addLoadedNotifications(loadedNotifications);
+        loadingShards.set(shard, null);
+        loadingShardsCount--;
+      }
+    }
   }
 }
@@ -2,32 +2,207 @@ package com.github.yuyuvu.urlshortener.infrastructure.persistence;
 
 import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
 import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Реализация ShortLinkRepository на ConcurrentHashMap для хранения всех данных о коротких ссылках
- * внутри оперативной памяти.
+ * внутри оперативной памяти. <br>
+ * Дополнительно поддерживается индекс владельцев (UUID - множество shortID его ссылок), поэтому
+ * получение ссылок пользователя не требует перебора всего хранилища. <br>
+ * Сроки действия ссылок отслеживаются иерархическим колесом таймеров, поэтому поиск ссылок с
+ * истёкшим сроком затрагивает только ссылки, срок которых наступил. <br>
+ * Количество ссылок по длине shortID также поддерживается при каждом изменении хранилища. <br>
+ * Индекс URL (владелец и нормализованный URL - shortID) позволяет найти уже созданные ссылки
+ * пользователя на тот же адрес без перебора его ссылок. <br>
+ * Перед обращением к хранилищу по shortID проверяется считающий фильтр Блума, поэтому поиск
+ * несуществующих shortID (проверки коллизий при генерации, редиректы по неизвестным ссылкам) чаще
+ * всего завершается без обращения к ConcurrentHashMap.
  */
-public class InMemoryShortLinkRepository implements ShortLinkRepository {
+public class InMemoryShortLinkRepository
+    implements ShortLinkRepository, DirtyTrackingRepository<String> {
 
-  private final ConcurrentHashMap<String, ShortLink> existingShortLinks = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ShortLink> existingShortLinks;
 
-  /** Конструктор для загрузки всех данных после перезапуска из StorageState. */
+  /** Индекс владельцев: UUID пользователя - shortID всех его ссылок. */
+  private final ConcurrentHashMap<UUID, Set<String>> shortIdsByOwner = new ConcurrentHashMap<>();
+
+  /** Колесо таймеров истечения сроков действия ссылок по shortID. */
+  private final ExpirationTimingWheel<String> expirationWheel =
+      new ExpirationTimingWheel<>(toTick(LocalDateTime.now()));
+
+  /** Владелец ссылки и нормализованный URL, на который она ведёт. */
+  private record OwnerOriginalURL(UUID owner, String normalizedOriginalURL) {}
+
+  /** Индекс URL: владелец и нормализованный URL - shortID всех таких ссылок. */
+  private final ConcurrentHashMap<OwnerOriginalURL, Set<String>> shortIdsByOwnerOriginalURL =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Обратный индекс URL: shortID - под каким ключом ссылка учтена в индексе URL. Нужен, так как URL
+   * меняется в самом объекте ссылки до её повторного сохранения.
+   */
+  private final ConcurrentHashMap<String, OwnerOriginalURL> ownerOriginalURLByShortId =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Метрики фильтра Блума по shortID.
+   *
+   * @param lookups количество поисков ссылок по shortID
+   * @param definiteMisses количество поисков, на которые фильтр ответил "ссылки точно нет"
+   * @param falsePositives количество поисков, пропущенных фильтром, но не нашедших ссылку
+   * @param observedFalsePositiveRate доля ложноположительных ответов среди поисков отсутствующих
+   *     ссылок
+   * @param expectedFalsePositiveRate расчётная вероятность ложноположительного ответа
+   * @param capacity количество ссылок, на которое сейчас рассчитан фильтр
+   * @param memoryBytes объём памяти счётчиков фильтра в байтах
+   */
+  public record ShortIdFilterMetrics(
+      long lookups,
+      long definiteMisses,
+      long falsePositives,
+      double observedFalsePositiveRate,
+      double expectedFalsePositiveRate,
+      int capacity,
+      long memoryBytes) {}
+
+  /** Наименьшая ёмкость фильтра Блума по shortID. */
+  private static final int MIN_FILTER_CAPACITY = 1024;
+
+  /**
+   * Фильтр Блума по shortID. Меняется вместе с хранилищем под блокировкой чтения filterLock; при
+   * переполнении фильтр пересоздаётся с удвоенной ёмкостью под блокировкой записи, поэтому ни одна
+   * сохранённая ссылка не пропадает из фильтра.
+   */
+  private volatile CountingBloomFilter shortIdFilter;
+
+  private final ReadWriteLock filterLock = new ReentrantReadWriteLock();
+  private final LongAdder filterLookups = new LongAdder();
+  private final LongAdder filterDefiniteMisses = new LongAdder();
+  private final LongAdder filterFalsePositives = new LongAdder();
+
+  /** Количество ссылок по длине shortID. */
+  private final ConcurrentHashMap<Integer, AtomicLong> shortLinkCountsByShortIdLength =
+      new ConcurrentHashMap<>();
+
+  /** Слушатели изменений данных репозитория (например, журнал упреждающей записи). */
+  private final List<StorageChangeListener> storageChangeListeners = new CopyOnWriteArrayList<>();
+
+  /** shortID ссылок, изменённых или удалённых с прошлого сохранения данных. */
+  private final DirtyKeySet<String> dirtyShortIds = new DirtyKeySet<>();
+
+  /**
+   * Конструктор для загрузки всех данных после перезапуска из StorageState. Если данные уже
+   * загружены в ConcurrentHashMap, то она используется репозиторием напрямую без копирования.
+   */
   public InMemoryShortLinkRepository(Map<String, ShortLink> existingShortLinks) {
-    this.existingShortLinks.putAll(existingShortLinks);
+    if (existingShortLinks instanceof ConcurrentHashMap<String, ShortLink> concurrentHashMap) {
+      this.existingShortLinks = concurrentHashMap;
+    } else {
+      this.existingShortLinks = new ConcurrentHashMap<>(existingShortLinks);
+    }
+    this.shortIdFilter = makeShortIdFilter(this.existingShortLinks.size());
+    for (ShortLink shortLink : this.existingShortLinks.values()) {
+      shortIdFilter.add(shortLink.getShortId());
+      addToOwnerIndex(shortLink);
+      addToOriginalURLIndex(shortLink);
+      scheduleExpiration(shortLink);
+      countByShortIdLength(shortLink.getShortId(), 1);
+    }
   }
 
-  /** Метод для сохранения новой короткой ссылки в хранилище. */
+  /** Метод для подписки на все последующие изменения данных репозитория. */
+  public void addStorageChangeListener(StorageChangeListener storageChangeListener) {
+    storageChangeListeners.add(storageChangeListener);
+  }
+
+  /** Метод для сохранения новой или изменённой короткой ссылки в хранилище. */
   @Override
   public ShortLink saveShortLink(ShortLink shortLink) {
-    existingShortLinks.put(shortLink.getShortId(), shortLink);
+    // Ссылка, индексы, фильтр Блума и колесо таймеров меняются под блокировкой одного ключа
+    // ConcurrentHashMap, а блокировка чтения не даёт пересоздать фильтр Блума, пока ссылка ещё не
+    // попала в хранилище. Слушатели тоже вызываются под блокировкой ключа, чтобы записи журнала
+    // об изменениях одной ссылки шли в том же порядке, что и сами изменения
+    filterLock.readLock().lock();
+    try {
+      existingShortLinks.compute(
+          shortLink.getShortId(),
+          (shortId, previousShortLink) -> {
+            if (previousShortLink != null
+                && !previousShortLink.getOwnerOfShortURL().equals(shortLink.getOwnerOfShortURL())) {
+              removeFromOwnerIndex(previousShortLink);
+            }
+            if (previousShortLink == null) {
+              countByShortIdLength(shortId, 1);
+              updateShortIdFilter(shortId, true);
+            }
+            addToOwnerIndex(shortLink);
+            addToOriginalURLIndex(shortLink);
+            scheduleExpiration(shortLink);
+            dirtyShortIds.mark(shortId);
+            for (StorageChangeListener listener : storageChangeListeners) {
+              listener.onShortLinkSaved(shortLink);
+            }
+            return shortLink;
+          });
+    } finally {
+      filterLock.readLock().unlock();
+    }
+    growShortIdFilterIfFull();
     return shortLink;
   }
 
+  /**
+   * Метод для сохранения изменений в уже сохранённой короткой ссылке. Индексы обновляются под
+   * блокировкой ключа, только если в хранилище лежит этот же объект ссылки.
+   */
+  @Override
+  public boolean updateShortLinkIfPresent(ShortLink shortLink) {
+    boolean[] updated = new boolean[1];
+    existingShortLinks.computeIfPresent(
+        shortLink.getShortId(),
+        (shortId, currentShortLink) -> {
+          if (currentShortLink != shortLink) {
+            return currentShortLink;
+          }
+          addToOriginalURLIndex(shortLink);
+          scheduleExpiration(shortLink);
+          dirtyShortIds.mark(shortId);
+          for (StorageChangeListener listener : storageChangeListeners) {
+            listener.onShortLinkSaved(shortLink);
+          }
+          updated[0] = true;
+          return shortLink;
+        });
+    return updated[0];
+  }
+
+  /** Метод для фиксации изменившегося счётчика использований короткой ссылки после редиректа. */
+  @Override
+  public void updateUsageCounter(ShortLink shortLink) {
+    dirtyShortIds.mark(shortLink.getShortId());
+    for (StorageChangeListener listener : storageChangeListeners) {
+      listener.onShortLinkUsageUpdated(shortLink);
+    }
+  }
+
   /** Метод для получения всех коротких ссылок из хранилища. */
   @Override
   public List<ShortLink> getAllShortLinks() {
@@ -40,25 +215,133 @@ public class InMemoryShortLinkRepository implements ShortLinkRepository {
    */
   @Override
   public Optional<ShortLink> getShortLinkByShortID(String shortId) {
-    return Optional.ofNullable(existingShortLinks.get(shortId));
+    filterLookups.increment();
+    if (!shortIdFilter.mightContain(shortId)) {
+      filterDefiniteMisses.increment();
+      return Optional.empty();
+    }
+    ShortLink shortLink = existingShortLinks.get(shortId);
+    if (shortLink == null) {
+      filterFalsePositives.increment();
+    }
+    return Optional.ofNullable(shortLink);
+  }
+
+  /** Метод возвращает метрики фильтра Блума по shortID. */
+  public ShortIdFilterMetrics getShortIdFilterMetrics() {
+    CountingBloomFilter filter = shortIdFilter;
+    long definiteMisses = filterDefiniteMisses.sum();
+    long falsePositives = filterFalsePositives.sum();
+    long misses = definiteMisses + falsePositives;
+    return new ShortIdFilterMetrics(
+        filterLookups.sum(),
+        definiteMisses,
+        falsePositives,
+        misses == 0 ? 0 : (double) falsePositives / misses,
+        filter.expectedFalsePositiveRate(),
+        filter.capacity(),
+        filter.memoryBytes());
   }
 
   /**
-   * Метод для получения всех коротких ссылок, принадлежащих некоторому UUID. Несмотря на
-   * необходимость перебора всего хранилища, позволяет избежать дублирования данных о ссылках,
-   * которыми владеет пользователь, в его объекте.
+   * Метод для получения всех коротких ссылок, принадлежащих некоторому UUID. Ссылки находятся по
+   * индексу владельцев, поэтому время работы зависит только от количества ссылок пользователя.
    */
   @Override
   public List<ShortLink> getShortLinksByOwnerUUID(UUID uuid) {
-    return existingShortLinks.values().stream()
-        .filter(shortLink -> shortLink.getOwnerOfShortURL().equals(uuid))
-        .toList();
+    Set<String> shortIds = shortIdsByOwner.get(uuid);
+    if (shortIds == null) {
+      return List.of();
+    }
+    List<ShortLink> shortLinks = new ArrayList<>(shortIds.size());
+    for (String shortId : shortIds) {
+      ShortLink shortLink = existingShortLinks.get(shortId);
+      // Ссылка могла быть удалена или заменена другой между чтением индекса и хранилища
+      if (shortLink != null && shortLink.getOwnerOfShortURL().equals(uuid)) {
+        shortLinks.add(shortLink);
+      }
+    }
+    return Collections.unmodifiableList(shortLinks);
+  }
+
+  /**
+   * Метод для получения всех коротких ссылок пользователя, ведущих на некоторый URL. Ссылки
+   * находятся по индексу URL после нормализации переданного URL.
+   */
+  @Override
+  public List<ShortLink> getShortLinksByOwnerAndOriginalURL(UUID uuid, String originalURL) {
+    Set<String> shortIds =
+        shortIdsByOwnerOriginalURL.get(
+            new OwnerOriginalURL(uuid, normalizeOriginalURL(originalURL)));
+    if (shortIds == null) {
+      return List.of();
+    }
+    List<ShortLink> shortLinks = new ArrayList<>(shortIds.size());
+    for (String shortId : shortIds) {
+      ShortLink shortLink = existingShortLinks.get(shortId);
+      if (shortLink != null && shortLink.getOwnerOfShortURL().equals(uuid)) {
+        shortLinks.add(shortLink);
+      }
+    }
+    return Collections.unmodifiableList(shortLinks);
+  }
+
+  /**
+   * Метод для получения коротких ссылок, срок действия которых истёк к моменту now. Колесо таймеров
+   * продвигается до now, и проверяются только ссылки, срок которых наступил. Ссылка с истёкшим
+   * сроком остаётся на колесе и возвращается при каждом вызове, пока не будет удалена.
+   */
+  @Override
+  public List<ShortLink> getExpiredShortLinks(LocalDateTime now) {
+    List<ShortLink> expiredShortLinks = new ArrayList<>();
+    for (String dueShortId : expirationWheel.advance(toTick(now))) {
+      ShortLink shortLink =
+          existingShortLinks.computeIfPresent(
+              dueShortId,
+              (shortId, currentShortLink) -> {
+                // Срок мог быть изменён в объекте ссылки без повторного сохранения
+                scheduleExpiration(currentShortLink);
+                return currentShortLink;
+              });
+      if (shortLink != null && shortLink.getExpirationDateTime().isBefore(now)) {
+        expiredShortLinks.add(shortLink);
+      }
+    }
+    return expiredShortLinks;
+  }
+
+  /** Метод для получения количества коротких ссылок с shortID заданной длины. */
+  @Override
+  public long countShortLinksByShortIdLength(int shortIdLength) {
+    AtomicLong count = shortLinkCountsByShortIdLength.get(shortIdLength);
+    return count == null ? 0 : count.get();
   }
 
   /** Метод для удаления короткой ссылки из хранилища по shortID. */
   @Override
   public boolean deleteShortLink(String shortId) {
-    return existingShortLinks.remove(shortId) != null;
+    boolean[] deleted = new boolean[1];
+    filterLock.readLock().lock();
+    try {
+      existingShortLinks.computeIfPresent(
+          shortId,
+          (id, shortLink) -> {
+            removeFromOwnerIndex(shortLink);
+            removeFromOriginalURLIndex(id);
+            expirationWheel.cancel(id);
+            countByShortIdLength(id, -1);
+            updateShortIdFilter(id, false);
+            dirtyShortIds.mark(id);
+            for (StorageChangeListener listener : storageChangeListeners) {
+              listener.onShortLinkDeleted(id);
+            }
+            deleted[0] = true;
+            return null;
+          });
+    } finally {
+      filterLock.readLock().unlock();
+    }
+    return deleted[0];
   }
 
   /**
@@ -70,4 +353,198 @@ public class InMemoryShortLinkRepository implements ShortLinkRepository {
   public Map<String, ShortLink> getRepositoryAsMap() {
     return existingShortLinks;
   }
+
+  /** Метод включает отслеживание изменённых ссылок для сохранения только изменений. */
+  @Override
+  public boolean enableDirtyTracking() {
+    return dirtyShortIds.enable();
+  }
+
+  /** Метод возвращает shortID всех изменённых или удалённых с прошлого вызова ссылок. */
+  @Override
+  public Set<String> drainDirtyKeys() {
+    return dirtyShortIds.drain();
+  }
+
+  /** Метод заново помечает ссылки как изменённые после неудачного сохранения. */
+  @Override
+  public void markDirtyKeys(Collection<String> keys) {
+    dirtyShortIds.markAll(keys);
+  }
+
+  /*
+   * Фильтр Блума.
+   * */
+
+  private static CountingBloomFilter makeShortIdFilter(int shortLinksAmount) {
+    return new CountingBloomFilter(Math.max(MIN_FILTER_CAPACITY, shortLinksAmount * 2));
+  }
+
+  /** Вызывается под блокировкой ключа ConcurrentHashMap и блокировкой чтения filterLock. */
+  private void updateShortIdFilter(String shortId, boolean added) {
+    if (added) {
+      shortIdFilter.add(shortId);
+    } else {
+      shortIdFilter.remove(shortId);
+    }
+  }
+
+  /**
+   * Переполненный фильтр пересоздаётся по всем shortID хранилища. Изменения фильтра на это время
+   * ждут блокировку, а поиск продолжает пользоваться старым фильтром, который до замены остаётся
+   * верным.
+   */
+  private void growShortIdFilterIfFull() {
+    if (shortIdFilter.size() <= shortIdFilter.capacity()) {
+      return;
+    }
+    filterLock.writeLock().lock();
+    try {
+      if (shortIdFilter.size() <= shortIdFilter.capacity()) {
+        return;
+      }
+      CountingBloomFilter grownFilter = makeShortIdFilter(existingShortLinks.size());
+      for (String shortId : existingShortLinks.keySet()) {
+        grownFilter.add(shortId);
+      }
+      shortIdFilter = grownFilter;
+    } finally {
+      filterLock.writeLock().unlock();
+    }
+  }
+
+  private void countByShortIdLength(String shortId, long delta) {
+    shortLinkCountsByShortIdLength
+        .computeIfAbsent(shortId.length(), length -> new AtomicLong())
+        .addAndGet(delta);
+  }
+
+  /*
+   * Колесо таймеров.
+   * */
+
+  /**
+   * Ссылка истекает, когда её срок строго раньше текущего момента, поэтому таймер ставится на
+   * первую целую секунду после срока.
+   */
+  private void scheduleExpiration(ShortLink shortLink) {
+    expirationWheel.schedule(shortLink.getShortId(), toTick(shortLink.getExpirationDateTime()) + 1);
+  }
+
+  /** Сроки действия хранятся в LocalDateTime, поэтому тики считаются без учёта часового пояса. */
+  private static long toTick(LocalDateTime dateTime) {
+    return dateTime.toEpochSecond(ZoneOffset.UTC);
+  }
+
+  /*
+   * Индекс владельцев.
+   * */
+
+  private void addToOwnerIndex(ShortLink shortLink) {
+    shortIdsByOwner.compute(
+        shortLink.getOwnerOfShortURL(),
+        (owner, shortIds) -> {
+          Set<String> ownerShortIds = shortIds == null ? ConcurrentHashMap.newKeySet() : shortIds;
+          ownerShortIds.add(shortLink.getShortId());
+          return ownerShortIds;
+        });
+  }
+
+  /** Пустое множество удаляется из индекса, чтобы он не рос вместе с числом бывших владельцев. */
+  private void removeFromOwnerIndex(ShortLink shortLink) {
+    shortIdsByOwner.computeIfPresent(
+        shortLink.getOwnerOfShortURL(),
+        (owner, shortIds) -> {
+          shortIds.remove(shortLink.getShortId());
+          return shortIds.isEmpty() ? null : shortIds;
+        });
+  }
+
+  /*
+   * Индекс URL.
+   * */
+
+  private void addToOriginalURLIndex(ShortLink shortLink) {
+    String shortId = shortLink.getShortId();
+    OwnerOriginalURL key =
+        new OwnerOriginalURL(
+            shortLink.getOwnerOfShortURL(),
+            normalizeOriginalURL(shortLink.getOriginalURLAddress()));
+    OwnerOriginalURL previousKey = ownerOriginalURLByShortId.put(shortId, key);
+    if (key.equals(previousKey)) {
+      return;
+    }
+    if (previousKey != null) {
+      removeFromOriginalURLIndex(previousKey, shortId);
+    }
+    shortIdsByOwnerOriginalURL.compute(
+        key,
+        (ownerOriginalURL, shortIds) -> {
+          Set<String> indexedShortIds = shortIds == null ? ConcurrentHashMap.newKeySet() : shortIds;
+          indexedShortIds.add(shortId);
+          return indexedShortIds;
+        });
+  }
+
+  private void removeFromOriginalURLIndex(String shortId) {
+    OwnerOriginalURL key = ownerOriginalURLByShortId.remove(shortId);
+    if (key != null) {
+      removeFromOriginalURLIndex(key, shortId);
+    }
+  }
+
+  private void removeFromOriginalURLIndex(OwnerOriginalURL key, String shortId) {
+    shortIdsByOwnerOriginalURL.computeIfPresent(
+        key,
+        (ownerOriginalURL, shortIds) -> {
+          shortIds.remove(shortId);
+          return shortIds.isEmpty() ? null : shortIds;
+        });
+  }
+
+  /**
+   * URL приводится к одному виду: схема и хост в нижнем регистре, без порта по умолчанию, пустой
+   * путь заменяется на "/". URL без хоста (например, mailto) сравниваются как есть.
+   */
+  private static String normalizeOriginalURL(String originalURL) {
+    String strippedURL = originalURL.strip();
+    try {
+      URI uri = new URI(strippedURL);
+      if (uri.getScheme() == null || uri.getHost() == null) {
+        return strippedURL;
+      }
+      String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+      StringBuilder normalizedURL = new StringBuilder(strippedURL.length()).append(scheme);
+      normalizedURL.append("://");
+      if (uri.getRawUserInfo() != null) {
+        normalizedURL.append(uri.getRawUserInfo()).append('@');
+      }
+      normalizedURL.append(uri.getHost().toLowerCase(Locale.ROOT));
+      if (uri.getPort() != -1 && uri.getPort() != defaultPort(scheme)) {
+        normalizedURL.append(':').append(uri.getPort());
+      }
+      String rawPath = uri.getRawPath();
+      normalizedURL.append(rawPath == null || rawPath.isEmpty() ? "/" : rawPath);
+      if (uri.getRawQuery() != null) {
+        normalizedURL.append('?').append(uri.getRawQuery());
+      }
+      if (uri.getRawFragment() != null) {
+        normalizedURL.append('#').append(uri.getRawFragment());
+      }
+      return normalizedURL.toString();
+    } catch (URISyntaxException e) {
+      return strippedURL;
+    }
+  }
+
+  private static int defaultPort(String scheme) {
+    if (scheme.equals("http")) {
+      return 80;
+    } else if (scheme.equals("https")) {
+      return 443;
+    } else if (scheme.equals("ftp")) {
+      return 21;
+    }
+    return -1;
+  }
 }
@@ -2,34 +2,103 @@ package com.github.yuyuvu.urlshortener.infrastructure.persistence;
 
 import com.github.yuyuvu.urlshortener.domain.model.User;
 import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Реализация UserRepository на ConcurrentHashMap для хранения всех данных о созданных UUID и
- * связанных с ними данных внутри оперативной памяти.
+ * связанных с ними данных внутри оперативной памяти. <br>
+ * При ленивой загрузке данных пользователи догружаются в фоне по шардам, и обращение по UUID ждёт
+ * загрузки только того шарда, в котором лежит пользователь.
  */
-public class InMemoryUserRepository implements UserRepository {
+public class InMemoryUserRepository implements UserRepository, DirtyTrackingRepository<UUID> {
 
-  private final Map<UUID, User> existingUsers = new ConcurrentHashMap<>();
+  private final Map<UUID, User> existingUsers;
 
-  /** Конструктор для загрузки всех данных после перезапуска из StorageState. */
+  /** Слушатели изменений данных репозитория (например, журнал упреждающей записи). */
+  private final List<StorageChangeListener> storageChangeListeners = new CopyOnWriteArrayList<>();
+
+  /** UUID пользователей, изменённых или удалённых с прошлого сохранения данных. */
+  private final DirtyKeySet<UUID> dirtyUserUUIDs = new DirtyKeySet<>();
+
+  /** Загрузка шардов пользователей, пустой список - все данные загружены сразу. */
+  private final List<CompletableFuture<Void>> loadingShards;
+
+  private final CompletableFuture<Void> allShardsLoaded;
+
+  /**
+   * Конструктор для загрузки всех данных после перезапуска из StorageState. Если данные уже
+   * загружены в ConcurrentHashMap, то она используется репозиторием напрямую без копирования.
+   */
   public InMemoryUserRepository(Map<UUID, User> existingUsers) {
-    this.existingUsers.putAll(existingUsers);
+    if (existingUsers instanceof ConcurrentHashMap<UUID, User> concurrentHashMap) {
+      this.existingUsers = concurrentHashMap;
+    } else {
+      this.existingUsers = new ConcurrentHashMap<>(existingUsers);
+    }
+    this.loadingShards = List.of();
+    this.allShardsLoaded = CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Конструктор для ленивой загрузки данных после перезапуска из StagedStorageState. Каждый шард
+   * добавляется в репозиторий сразу после своей загрузки, а до этого обращения к его пользователям
+   * ждут её завершения.
+   */
+  public InMemoryUserRepository(StagedStorageState stagedStorageState) {
+    List<CompletableFuture<Map<UUID, User>>> userShards = stagedStorageState.getUserShards();
+    this.existingUsers = new ConcurrentHashMap<>();
+    List<CompletableFuture<Void>> shards = new ArrayList<>(userShards.size());
+    for (CompletableFuture<Map<UUID, User>> userShard : userShards) {
+      shards.add(userShard.thenAccept(existingUsers::putAll));
+    }
+    this.loadingShards = List.copyOf(shards);
+    this.allShardsLoaded = CompletableFuture.allOf(shards.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /** Метод возвращает задачу, которая завершается после загрузки всех шардов пользователей. */
+  public CompletableFuture<Void> whenLoaded() {
+    return allShardsLoaded;
+  }
+
+  /** Метод для подписки на все последующие изменения данных репозитория. */
+  public void addStorageChangeListener(StorageChangeListener storageChangeListener) {
+    storageChangeListeners.add(storageChangeListener);
   }
 
-  /** Метод для сохранения нового пользователя в хранилище. */
+  /** Метод для сохранения нового или изменённого пользователя в хранилище. */
   @Override
   public User saveUser(User user) {
-    return existingUsers.put(user.getUUID(), user);
+    awaitShard(user.getUUID());
+    User[] previousUser = new User[1];
+    // Слушатели вызываются под блокировкой ключа, чтобы записи журнала об изменениях одного
+    // пользователя шли в том же порядке, что и сами изменения
+    existingUsers.compute(
+        user.getUUID(),
+        (uuid, currentUser) -> {
+          previousUser[0] = currentUser;
+          dirtyUserUUIDs.mark(uuid);
+          for (StorageChangeListener listener : storageChangeListeners) {
+            listener.onUserSaved(user);
+          }
+          return user;
+        });
+    return previousUser[0];
   }
 
   /** Метод для получения всех пользователей из хранилища. */
   @Override
   public List<User> getAllUsers() {
+    awaitLoaded(allShardsLoaded);
     return existingUsers.values().stream().toList();
   }
 
@@ -39,13 +108,26 @@ public class InMemoryUserRepository implements UserRepository {
    */
   @Override
   public Optional<User> getUserByUUID(UUID uuid) {
+    awaitShard(uuid);
     return Optional.ofNullable(existingUsers.get(uuid));
   }
 
   /** Метод для удаления пользователя из хранилища. */
   @Override
   public boolean deleteUser(UUID uuid) {
-    return existingUsers.remove(uuid) != null;
+    awaitShard(uuid);
+    boolean[] deleted = new boolean[1];
+    existingUsers.computeIfPresent(
+        uuid,
+        (id, currentUser) -> {
+          dirtyUserUUIDs.mark(id);
+          for (StorageChangeListener listener : storageChangeListeners) {
+            listener.onUserDeleted(id);
+          }
+          deleted[0] = true;
+          return null;
+        });
+    return deleted[0];
   }
 
   /**
@@ -55,6 +137,41 @@ public class InMemoryUserRepository implements UserRepository {
    */
   @Override
   public Map<UUID, User> getRepositoryAsMap() {
+    awaitLoaded(allShardsLoaded);
     return existingUsers;
   }
+
+  /** Метод включает отслеживание изменённых пользователей для сохранения только изменений. */
+  @Override
+  public boolean enableDirtyTracking() {
+    return dirtyUserUUIDs.enable();
+  }
+
+  /** Метод возвращает UUID всех изменённых или удалённых с прошлого вызова пользователей. */
+  @Override
+  public Set<UUID> drainDirtyKeys() {
+    return dirtyUserUUIDs.drain();
+  }
+
+  /** Метод заново помечает пользователей как изменённых после неудачного сохранения. */
+  @Override
+  public void markDirtyKeys(Collection<UUID> keys) {
+    dirtyUserUUIDs.markAll(keys);
+  }
+
+  /** Метод дожидается загрузки шарда, в котором лежит пользователь с заданным UUID. */
+  private void awaitShard(UUID uuid) {
+    if (!loadingShards.isEmpty()) {
+      awaitLoaded(loadingShards.get(StagedStorageState.shardOf(uuid, loadingShards.size())));
+    }
+  }
+
+  private static void awaitLoaded(CompletableFuture<Void> loading) {
+    try {
+      loading.join();
+    } catch (CompletionException e) {
+      throw new IllegalStateException(
+          "Данные пользователей не были загружены: " + e.getCause().getMessage(), e.getCause());
+    }
+  }
 }
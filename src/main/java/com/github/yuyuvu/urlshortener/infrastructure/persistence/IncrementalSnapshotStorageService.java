@@ -0,0 +1,444 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.domain.repository.NotificationRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Реализация StorageService, которая при каждом сохранении записывает только изменённые с прошлого
+ * сохранения записи в отдельный файл-дельту. Когда дельт накапливается больше заданного в
+ * настройках количества, они сливаются в полный снимок данных через другой StorageService
+ * (например, FileStorageService). Благодаря этому стоимость сохранения зависит от количества
+ * изменений, а не от общего объёма данных сервиса. <br>
+ * Изменённые записи берутся из InMemory-репозиториев, которые реализуют DirtyTrackingRepository.
+ * Для остальных репозиториев всегда делается полный снимок.
+ */
+public class IncrementalSnapshotStorageService implements StorageService {
+  /* Типы записей файла-дельты. */
+  private static final byte END_OF_DELTA = 0;
+  private static final byte SHORT_LINK_SAVED = 1;
+  private static final byte SHORT_LINK_DELETED = 2;
+  private static final byte USER_SAVED = 3;
+  private static final byte USER_DELETED = 4;
+  private static final byte USER_NOTIFICATIONS_REPLACED = 5;
+
+  /** Начало каждого файла-дельты ("USDL") для проверки, что это действительно дельта. */
+  private static final int DELTA_MAGIC = 0x5553444C;
+
+  private static final byte DELTA_FORMAT_VERSION = 1;
+  private static final String DELTA_FILE_SUFFIX = ".delta";
+
+  /** Хранилище полных снимков данных, в которые сливаются дельты. */
+  private final StorageService baseStorageService;
+
+  private final ConfigManager configManager;
+
+  private long lastDeltaNumber = -1;
+
+  /**
+   * Конструктор хранилища инкрементальных снимков поверх хранилища полных снимков данных. Путь до
+   * дельт вычисляется из пути до файла хранилища в настройках.
+   */
+  public IncrementalSnapshotStorageService(
+      StorageService baseStorageService, ConfigManager configManager) {
+    this.baseStorageService = baseStorageService;
+    this.configManager = configManager;
+  }
+
+  /** Метод загружает последний полный снимок данных и применяет к нему все дельты по порядку. */
+  @Override
+  public synchronized Optional<StorageState> loadState() throws StorageStatePersistenceException {
+    Optional<StagedStorageState> storageState =
+        applyDeltas(baseStorageService.loadState().map(StagedStorageState::completed));
+    return storageState.isEmpty() ? Optional.empty() : Optional.of(storageState.get().join());
+  }
+
+  /**
+   * Метод загружает полный снимок данных по частям и применяет к нему все дельты. Изменения
+   * коротких ссылок применяются сразу, а изменения пользователей и уведомлений - к каждому шарду
+   * после его загрузки.
+   */
+  @Override
+  public synchronized Optional<StagedStorageState> loadStateStaged()
+      throws StorageStatePersistenceException {
+    return applyDeltas(baseStorageService.loadStateStaged());
+  }
+
+  private Optional<StagedStorageState> applyDeltas(Optional<StagedStorageState> baseSnapshot)
+      throws StorageStatePersistenceException {
+    List<Path> deltas = listDeltas(resolveDeltaDirectory());
+    lastDeltaNumber = deltas.isEmpty() ? 0 : deltaNumber(deltas.get(deltas.size() - 1));
+    if (deltas.isEmpty()) {
+      return baseSnapshot;
+    }
+
+    StagedStorageState storageState =
+        baseSnapshot.orElseGet(() -> StagedStorageState.completed(new StorageState()));
+    // Итоговые изменения каждого шарда: null вместо пользователя или пустой список уведомлений
+    // означают удаление
+    int shardCount = storageState.shardCount();
+    List<Map<UUID, User>> userChanges = new ArrayList<>(shardCount);
+    List<Map<UUID, List<Notification>>> notificationChanges = new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      userChanges.add(new LinkedHashMap<>());
+      notificationChanges.add(new LinkedHashMap<>());
+    }
+    for (Path delta : deltas) {
+      applyDelta(delta, storageState.getExistingShortLinks(), userChanges, notificationChanges);
+    }
+
+    for (int shard = 0; shard < shardCount; shard++) {
+      Map<UUID, User> shardUserChanges = userChanges.get(shard);
+      if (!shardUserChanges.isEmpty()) {
+        storageState.updateUserShard(
+            shard,
+            users ->
+                shardUserChanges.forEach(
+                    (uuid, user) -> {
+                      if (user == null) {
+                        users.remove(uuid);
+                      } else {
+                        users.put(uuid, user);
+                      }
+                    }));
+      }
+      Map<UUID, List<Notification>> shardNotificationChanges = notificationChanges.get(shard);
+      if (!shardNotificationChanges.isEmpty()) {
+        storageState.updateNotificationShard(
+            shard, notifications -> replaceNotifications(notifications, shardNotificationChanges));
+      }
+    }
+    return Optional.of(storageState);
+  }
+
+  /**
+   * Метод заменяет уведомления пользователей, сохранённые в дельтах, сохраняя порядок остальных.
+   */
+  private static void replaceNotifications(
+      List<Notification> notifications, Map<UUID, List<Notification>> replacements) {
+    Map<UUID, List<Notification>> notificationsByUser = new LinkedHashMap<>();
+    for (Notification notification : notifications) {
+      notificationsByUser
+          .computeIfAbsent(notification.getUserUUID(), uuid -> new ArrayList<>())
+          .add(notification);
+    }
+    replacements.forEach(
+        (userUUID, userNotifications) -> {
+          if (userNotifications.isEmpty()) {
+            notificationsByUser.remove(userUUID);
+          } else {
+            notificationsByUser.put(userUUID, userNotifications);
+          }
+        });
+    notifications.clear();
+    notificationsByUser.values().forEach(notifications::addAll);
+  }
+
+  /**
+   * Метод записывает все изменённые с прошлого сохранения записи в новый файл-дельту. Если дельт
+   * стало не меньше заданного в настройках количества, делает полный снимок данных и удаляет
+   * дельты. <br>
+   * Перед полным снимком всегда пишется дельта, поэтому если сбой произойдёт после снимка, но до
+   * удаления дельт, их повторное применение вернёт данные не дальше момента последней дельты.
+   */
+  @Override
+  public synchronized void saveStorageState(
+      UserRepository userRepository,
+      ShortLinkRepository shortLinkRepository,
+      NotificationRepository notificationRepository)
+      throws StorageStatePersistenceException {
+    DirtyTrackingRepository<UUID> dirtyUsers =
+        DirtyTrackingRepository.asDirtyTracking(userRepository);
+    DirtyTrackingRepository<String> dirtyShortLinks =
+        DirtyTrackingRepository.asDirtyTracking(shortLinkRepository);
+    DirtyTrackingRepository<UUID> dirtyNotifications =
+        DirtyTrackingRepository.asDirtyTracking(notificationRepository);
+    if (dirtyUsers == null || dirtyShortLinks == null || dirtyNotifications == null) {
+      mergeIntoBaseSnapshot(userRepository, shortLinkRepository, notificationRepository);
+      return;
+    }
+    // При первом сохранении репозитории ещё не знают, что изменилось, поэтому сохраняем всё
+    boolean trackingWasEnabled =
+        dirtyUsers.enableDirtyTracking()
+            & dirtyShortLinks.enableDirtyTracking()
+            & dirtyNotifications.enableDirtyTracking();
+    if (!trackingWasEnabled) {
+      mergeIntoBaseSnapshot(userRepository, shortLinkRepository, notificationRepository);
+      return;
+    }
+
+    Set<UUID> userUUIDs = dirtyUsers.drainDirtyKeys();
+    Set<String> shortIds = dirtyShortLinks.drainDirtyKeys();
+    Set<UUID> notificationUserUUIDs = dirtyNotifications.drainDirtyKeys();
+    if (!userUUIDs.isEmpty() || !shortIds.isEmpty() || !notificationUserUUIDs.isEmpty()) {
+      try {
+        writeDelta(
+            encodeDelta(
+                userRepository,
+                userUUIDs,
+                shortLinkRepository,
+                shortIds,
+                notificationRepository,
+                notificationUserUUIDs));
+      } catch (StorageStatePersistenceException | RuntimeException e) {
+        // Изменения должны попасть в следующее сохранение
+        dirtyUsers.markDirtyKeys(userUUIDs);
+        dirtyShortLinks.markDirtyKeys(shortIds);
+        dirtyNotifications.markDirtyKeys(notificationUserUUIDs);
+        throw e;
+      }
+    }
+
+    List<Path> deltas = listDeltas(resolveDeltaDirectory());
+    if (!deltas.isEmpty()
+        && deltas.size() >= configManager.getStorageSnapshotMergeDeltasProperty()) {
+      mergeIntoBaseSnapshot(userRepository, shortLinkRepository, notificationRepository);
+    }
+  }
+
+  /** Метод делает полный снимок данных и удаляет все покрываемые им дельты. */
+  private void mergeIntoBaseSnapshot(
+      UserRepository userRepository,
+      ShortLinkRepository shortLinkRepository,
+      NotificationRepository notificationRepository)
+      throws StorageStatePersistenceException {
+    baseStorageService.saveStorageState(
+        userRepository, shortLinkRepository, notificationRepository);
+    try {
+      for (Path delta : listDeltas(resolveDeltaDirectory())) {
+        Files.delete(delta);
+      }
+    } catch (IOException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с удалением файлов-дельт после полного снимка данных: " + e.getMessage());
+    }
+  }
+
+  /*
+   * Запись дельт.
+   * */
+
+  private static byte[] encodeDelta(
+      UserRepository userRepository,
+      Set<UUID> userUUIDs,
+      ShortLinkRepository shortLinkRepository,
+      Set<String> shortIds,
+      NotificationRepository notificationRepository,
+      Set<UUID> notificationUserUUIDs) {
+    // Уведомления читаются только из очередей пользователей с изменениями, поэтому дельта не
+    // зависит от общего количества уведомлений
+    Map<UUID, List<Notification>> notificationsByUser = new HashMap<>();
+    for (UUID userUUID : notificationUserUUIDs) {
+      notificationsByUser.put(
+          userUUID, notificationRepository.getNotificationsByUserUUID(userUUID));
+    }
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(DELTA_MAGIC);
+      out.writeByte(DELTA_FORMAT_VERSION);
+
+      for (String shortId : shortIds) {
+        Optional<ShortLink> shortLink = shortLinkRepository.getShortLinkByShortID(shortId);
+        if (shortLink.isPresent()) {
+          out.writeByte(SHORT_LINK_SAVED);
+          StorageRecordCodec.writeShortLink(out, shortLink.get());
+        } else {
+          out.writeByte(SHORT_LINK_DELETED);
+          StorageRecordCodec.writeString(out, shortId);
+        }
+      }
+      for (UUID userUUID : userUUIDs) {
+        Optional<User> user = userRepository.getUserByUUID(userUUID);
+        if (user.isPresent()) {
+          out.writeByte(USER_SAVED);
+          StorageRecordCodec.writeUser(out, user.get());
+        } else {
+          out.writeByte(USER_DELETED);
+          StorageRecordCodec.writeUUID(out, userUUID);
+        }
+      }
+      for (Map.Entry<UUID, List<Notification>> entry : notificationsByUser.entrySet()) {
+        out.writeByte(USER_NOTIFICATIONS_REPLACED);
+        StorageRecordCodec.writeUUID(out, entry.getKey());
+        out.writeInt(entry.getValue().size());
+        for (Notification notification : entry.getValue()) {
+          StorageRecordCodec.writeNotification(out, notification);
+        }
+      }
+      out.writeByte(END_OF_DELTA);
+
+      CRC32C crc = new CRC32C();
+      crc.update(bytes.toByteArray());
+      out.writeInt((int) crc.getValue());
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // Запись в память не выбрасывает IOException
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Метод записывает дельту во временный файл, сбрасывает его на диск и атомарно переименовывает,
+   * поэтому при загрузке недописанных дельт не бывает.
+   */
+  private void writeDelta(byte[] delta) throws StorageStatePersistenceException {
+    Path deltaDirectory = resolveDeltaDirectory();
+    if (lastDeltaNumber < 0) {
+      List<Path> deltas = listDeltas(deltaDirectory);
+      lastDeltaNumber = deltas.isEmpty() ? 0 : deltaNumber(deltas.get(deltas.size() - 1));
+    }
+    long deltaNumber = lastDeltaNumber + 1;
+    Path deltaPath =
+        deltaDirectory.resolve(String.format("%020d", deltaNumber) + DELTA_FILE_SUFFIX);
+    Path tempPath = deltaDirectory.resolve(deltaPath.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(deltaDirectory);
+      try (FileChannel channel =
+          FileChannel.open(
+              tempPath,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        channel.write(ByteBuffer.wrap(delta));
+        channel.force(true);
+      }
+      Files.move(tempPath, deltaPath, StandardCopyOption.ATOMIC_MOVE);
+      lastDeltaNumber = deltaNumber;
+    } catch (IOException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с записью файла-дельты изменений данных: " + deltaPath + " " + e.getMessage());
+    }
+  }
+
+  /*
+   * Чтение дельт.
+   * */
+
+  private static void applyDelta(
+      Path delta,
+      Map<String, ShortLink> shortLinks,
+      List<Map<UUID, User>> userChanges,
+      List<Map<UUID, List<Notification>>> notificationChanges)
+      throws StorageStatePersistenceException {
+    try {
+      byte[] bytes = Files.readAllBytes(delta);
+      if (bytes.length < Integer.BYTES) {
+        throw new IOException("файл слишком короткий");
+      }
+      CRC32C crc = new CRC32C();
+      crc.update(bytes, 0, bytes.length - Integer.BYTES);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      in.skipNBytes(bytes.length - Integer.BYTES);
+      if (in.readInt() != (int) crc.getValue()) {
+        throw new IOException("не совпадает контрольная сумма");
+      }
+
+      in = new DataInputStream(new ByteArrayInputStream(bytes));
+      if (in.readInt() != DELTA_MAGIC || in.readByte() != DELTA_FORMAT_VERSION) {
+        throw new IOException("неизвестный формат файла");
+      }
+      while (true) {
+        byte recordType = in.readByte();
+        switch (recordType) {
+          case END_OF_DELTA -> {
+            return;
+          }
+          case SHORT_LINK_SAVED -> {
+            ShortLink shortLink = StorageRecordCodec.readShortLink(in);
+            shortLinks.put(shortLink.getShortId(), shortLink);
+          }
+          case SHORT_LINK_DELETED -> shortLinks.remove(StorageRecordCodec.readString(in));
+          case USER_SAVED -> {
+            User user = StorageRecordCodec.readUser(in);
+            userChanges
+                .get(StagedStorageState.shardOf(user.getUUID(), userChanges.size()))
+                .put(user.getUUID(), user);
+          }
+          case USER_DELETED -> {
+            UUID uuid = StorageRecordCodec.readUUID(in);
+            userChanges.get(StagedStorageState.shardOf(uuid, userChanges.size())).put(uuid, null);
+          }
+          case USER_NOTIFICATIONS_REPLACED -> {
+            UUID userUUID = StorageRecordCodec.readUUID(in);
+            int count = in.readInt();
+            List<Notification> notifications = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+              notifications.add(StorageRecordCodec.readNotification(in));
+            }
+            notificationChanges
+                .get(StagedStorageState.shardOf(userUUID, notificationChanges.size()))
+                .put(userUUID, notifications);
+          }
+          default -> throw new IOException("неизвестный тип записи " + recordType);
+        }
+      }
+    } catch (IOException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с загрузкой файла-дельты изменений данных: "
+              + delta
+              + " "
+              + e.getMessage()
+              + "\nСервис не будет запущен, чтобы не потерять сохранённые ранее изменения.");
+    }
+  }
+
+  /*
+   * Файлы дельт.
+   * */
+
+  /** Дельты хранятся рядом с файлом хранилища в папке с тем же именем и суффиксом -delta. */
+  private Path resolveDeltaDirectory() {
+    Path storagePath = configManager.getFileStoragePathProperty();
+    return storagePath.resolveSibling(storagePath.getFileName() + "-delta");
+  }
+
+  private static long deltaNumber(Path delta) {
+    String fileName = delta.getFileName().toString();
+    return Long.parseLong(fileName.substring(0, fileName.length() - DELTA_FILE_SUFFIX.length()));
+  }
+
+  /** Метод возвращает все дельты по порядку их создания. */
+  private static List<Path> listDeltas(Path directory) throws StorageStatePersistenceException {
+    if (!Files.isDirectory(directory)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(file -> file.getFileName().toString().matches("\\d{20}\\.delta"))
+          .sorted()
+          .toList();
+    } catch (IOException e) {
+      throw new StorageStatePersistenceException(
+          "Проблемы с чтением папки файлов-дельт: " + directory + " " + e.getMessage());
+    }
+  }
+}
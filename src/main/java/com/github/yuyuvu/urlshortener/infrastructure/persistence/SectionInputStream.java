@@ -0,0 +1,137 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Поток чтения одной секции двоичного файла хранилища, записанной через SectionOutputStream.
+ * Возвращает конец потока на блоке нулевой длины. При закрытии дочитывает секцию до конца, чтобы
+ * нижележащий поток оказался в начале следующей секции, но сам его не закрывает. <br>
+ * Если секция записана с контрольной суммой, то по достижении конца секции сумма всех прочитанных
+ * данных сверяется с записанной, и при несовпадении выбрасывается IOException.
+ */
+final class SectionInputStream extends InputStream {
+  private static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+  private final InputStream in;
+  private final CRC32C checksum;
+  private int remainingInBlock;
+  private boolean finished;
+
+  /**
+   * Конструктор потока чтения секции.
+   *
+   * @param checksummed записана ли после секции контрольная сумма (в файлах первой версии формата
+   *     её нет)
+   */
+  SectionInputStream(InputStream in, boolean checksummed) {
+    this.in = in;
+    this.checksum = checksummed ? new CRC32C() : null;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!nextBlockIfNeeded()) {
+      return -1;
+    }
+    int b = in.read();
+    if (b < 0) {
+      throw new EOFException("Секция файла хранилища оборвана");
+    }
+    remainingInBlock--;
+    if (checksum != null) {
+      checksum.update(b);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (!nextBlockIfNeeded()) {
+      return -1;
+    }
+    int read = in.read(bytes, offset, Math.min(length, remainingInBlock));
+    if (read < 0) {
+      throw new EOFException("Секция файла хранилища оборвана");
+    }
+    remainingInBlock -= read;
+    if (checksum != null) {
+      checksum.update(bytes, offset, read);
+    }
+    return read;
+  }
+
+  /**
+   * Метод пропускает непрочитанный остаток секции. Если у секции есть контрольная сумма, остаток
+   * приходится прочитать, чтобы проверить её.
+   */
+  @Override
+  public void close() throws IOException {
+    if (checksum == null) {
+      while (nextBlockIfNeeded()) {
+        in.skipNBytes(remainingInBlock);
+        remainingInBlock = 0;
+      }
+      return;
+    }
+    byte[] skipped = new byte[MAX_BLOCK_SIZE];
+    while (read(skipped, 0, skipped.length) >= 0) {
+      // Читаем остаток секции только для подсчёта контрольной суммы
+    }
+  }
+
+  private boolean nextBlockIfNeeded() throws IOException {
+    if (finished) {
+      return false;
+    }
+    if (remainingInBlock == 0) {
+      remainingInBlock = readVarInt();
+      if (remainingInBlock == 0) {
+        finished = true;
+        verifyChecksum();
+        return false;
+      }
+      if (remainingInBlock > MAX_BLOCK_SIZE) {
+        throw new IOException("Некорректная длина блока секции: " + remainingInBlock);
+      }
+    }
+    return true;
+  }
+
+  private void verifyChecksum() throws IOException {
+    if (checksum == null) {
+      return;
+    }
+    int expected = 0;
+    for (int i = 0; i < 4; i++) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Секция файла хранилища оборвана");
+      }
+      expected = (expected << 8) | b;
+    }
+    if (expected != (int) checksum.getValue()) {
+      throw new IOException("Контрольная сумма секции файла хранилища не совпадает");
+    }
+  }
+
+  private int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Секция файла хранилища оборвана");
+      }
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Слишком длинное число varint");
+  }
+}
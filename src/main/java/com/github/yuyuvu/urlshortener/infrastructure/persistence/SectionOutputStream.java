@@ -0,0 +1,81 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Поток записи одной секции двоичного файла хранилища. Данные секции записываются блоками вида
+ * [длина блока в формате varint][байты блока], а конец секции обозначается блоком нулевой длины.
+ * Благодаря этому размер секции не нужно знать заранее, а секцию можно пропустить при чтении, не
+ * разбирая её содержимое. После признака конца секции записывается контрольная сумма CRC32C всех её
+ * данных. При закрытии нижележащий поток не закрывается.
+ */
+final class SectionOutputStream extends OutputStream {
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private final OutputStream out;
+  private final byte[] block = new byte[BLOCK_SIZE];
+  private final CRC32C checksum = new CRC32C();
+  private int blockLength;
+  private boolean closed;
+
+  SectionOutputStream(OutputStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (blockLength == BLOCK_SIZE) {
+      writeBlock();
+    }
+    block[blockLength++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (blockLength == BLOCK_SIZE) {
+        writeBlock();
+      }
+      int copied = Math.min(length, BLOCK_SIZE - blockLength);
+      System.arraycopy(bytes, offset, block, blockLength, copied);
+      blockLength += copied;
+      offset += copied;
+      length -= copied;
+    }
+  }
+
+  /** Метод дописывает последний блок, признак конца секции и контрольную сумму. */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (blockLength > 0) {
+      writeBlock();
+    }
+    writeVarInt(0);
+    int value = (int) checksum.getValue();
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  private void writeBlock() throws IOException {
+    writeVarInt(blockLength);
+    out.write(block, 0, blockLength);
+    checksum.update(block, 0, blockLength);
+    blockLength = 0;
+  }
+
+  private void writeVarInt(int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+}
@@ -0,0 +1,530 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+/**
+ * Полный JSON-снимок данных сервиса, разделённый на несколько файлов, которые записываются и
+ * читаются параллельно на ForkJoinPool. Короткие ссылки делятся на шарды по хешу shortID,
+ * пользователи и уведомления - на столько же шардов по хешу UUID пользователя. Каждый файл имеет ту
+ * же структуру и контрольные суммы секций, что и одиночный файл FileStorageService. <br>
+ * Файлы лежат в директории рядом с файлом хранилища:
+ *
+ * <pre>
+ * data_storage.json-shards/
+ *   manifest.json                      - описание текущего набора шардов
+ *   manifest.json.1, manifest.json.2   - предыдущие версии описания
+ *   snapshot-00000000000000000001/     - файлы одного снимка: links-0000.json, ...,
+ *                                        users-0000.json, ..., notifications-0000.json, ...
+ * </pre>
+ *
+ * <p>Каждый снимок пишется в новую директорию, и только после сброса всех его файлов на диск
+ * атомарно заменяется manifest.json. Поэтому сбой во время записи оставляет рабочим предыдущий
+ * снимок, а директории, на которые не ссылается ни одна версия manifest.json, удаляются.
+ */
+final class ShardedSnapshotStore {
+  /** Во второй версии описания пользователи и уведомления тоже разделены на шарды. */
+  private static final int MANIFEST_FORMAT_VERSION = 2;
+
+  private static final int MANIFEST_FORMAT_VERSION_WITHOUT_USER_SHARDS = 1;
+  private static final String MANIFEST_FILE_NAME = "manifest.json";
+  private static final String SNAPSHOT_DIRECTORY_PREFIX = "snapshot-";
+  private static final String USERS_FILE_NAME = "users.json";
+  private static final String NOTIFICATIONS_FILE_NAME = "notifications.json";
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final ObjectMapper objectMapper;
+  private final ConfigManager configManager;
+  private final Path shardsDirectory;
+  private final Path manifestPath;
+
+  /** Конструктор шардированного снимка, директория которого вычисляется из пути до хранилища. */
+  ShardedSnapshotStore(ObjectMapper objectMapper, ConfigManager configManager, Path storagePath) {
+    this.objectMapper = objectMapper;
+    this.configManager = configManager;
+    this.shardsDirectory = storagePath.resolveSibling(storagePath.getFileName() + "-shards");
+    this.manifestPath = shardsDirectory.resolve(MANIFEST_FILE_NAME);
+  }
+
+  /**
+   * Метод проверяет, нужно ли загружать данные из шардов, а не из одиночного файла: шардированный
+   * снимок есть и он сохранён не раньше одиночного. Так после смены настройки количества шардов
+   * всегда загружается последнее сохранение.
+   */
+  boolean isNewerThan(Path singleFilePath) throws IOException {
+    int previousGenerations = configManager.getStorageSnapshotGenerationsProperty();
+    List<Path> manifests = SnapshotFiles.existingGenerations(manifestPath, previousGenerations);
+    if (manifests.isEmpty()) {
+      return false;
+    }
+    List<Path> singleFiles = SnapshotFiles.existingGenerations(singleFilePath, previousGenerations);
+    if (singleFiles.isEmpty()) {
+      return true;
+    }
+    FileTime manifestTime = Files.getLastModifiedTime(manifests.get(0));
+    return manifestTime.compareTo(Files.getLastModifiedTime(singleFiles.get(0))) >= 0;
+  }
+
+  /*
+   * Запись снимка.
+   * */
+
+  /** Метод записывает снимок в новую директорию и переключает на неё manifest.json. */
+  void save(StorageState storageState, int shardCount, int threads) throws IOException {
+    Files.createDirectories(shardsDirectory);
+    String snapshotDirectoryName =
+        String.format("%s%020d", SNAPSHOT_DIRECTORY_PREFIX, lastSnapshotNumber() + 1);
+    Path snapshotDirectory = shardsDirectory.resolve(snapshotDirectoryName);
+    Files.createDirectories(snapshotDirectory);
+
+    List<Map<String, ShortLink>> shortLinkShards = new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      shortLinkShards.add(new HashMap<>());
+    }
+    for (ShortLink shortLink : storageState.getExistingShortLinks().values()) {
+      shortLinkShards
+          .get(Math.floorMod(shortLink.getShortId().hashCode(), shardCount))
+          .put(shortLink.getShortId(), shortLink);
+    }
+    List<Map<UUID, User>> userShards = new ArrayList<>(shardCount);
+    List<List<Notification>> notificationShards = new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      userShards.add(new HashMap<>());
+      notificationShards.add(new ArrayList<>());
+    }
+    for (User user : storageState.getExistingUsers().values()) {
+      userShards
+          .get(StagedStorageState.shardOf(user.getUUID(), shardCount))
+          .put(user.getUUID(), user);
+    }
+    for (Notification notification : storageState.getUnreadNotifications()) {
+      notificationShards
+          .get(StagedStorageState.shardOf(notification.getUserUUID(), shardCount))
+          .add(notification);
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int shard = 0; shard < shardCount; shard++) {
+      Map<String, ShortLink> shortLinks = shortLinkShards.get(shard);
+      Path shardPath = snapshotDirectory.resolve(shortLinkShardFileName(shard));
+      tasks.add(() -> writeFile(shardPath, shortLinks, Map.of(), List.of()));
+    }
+    for (int shard = 0; shard < shardCount; shard++) {
+      Map<UUID, User> users = userShards.get(shard);
+      Path usersPath = snapshotDirectory.resolve(userShardFileName(shard));
+      tasks.add(() -> writeFile(usersPath, Map.of(), users, List.of()));
+      List<Notification> notifications = notificationShards.get(shard);
+      Path notificationsPath = snapshotDirectory.resolve(notificationShardFileName(shard));
+      tasks.add(() -> writeFile(notificationsPath, Map.of(), Map.of(), notifications));
+    }
+    runInParallel(tasks, threads);
+    SnapshotFiles.forceDirectory(snapshotDirectory);
+
+    ObjectNode manifest = objectMapper.createObjectNode();
+    manifest.put("formatVersion", MANIFEST_FORMAT_VERSION);
+    manifest.put("snapshotDirectory", snapshotDirectoryName);
+    manifest.put("shortLinkShards", shardCount);
+    manifest.put("shortLinkCount", storageState.getExistingShortLinks().size());
+    manifest.put("userCount", storageState.getExistingUsers().size());
+    manifest.put("notificationCount", storageState.getUnreadNotifications().size());
+    ArrayNode userShardCounts = manifest.putArray("userShardCounts");
+    ArrayNode notificationShardCounts = manifest.putArray("notificationShardCounts");
+    for (int shard = 0; shard < shardCount; shard++) {
+      userShardCounts.add(userShards.get(shard).size());
+      notificationShardCounts.add(notificationShards.get(shard).size());
+    }
+    byte[] manifestBytes = objectMapper.writeValueAsBytes(manifest);
+    SnapshotFiles.writeAtomically(manifestPath, configManager, out -> out.write(manifestBytes));
+
+    deleteUnreferencedSnapshots();
+  }
+
+  private Void writeFile(
+      Path path,
+      Map<String, ShortLink> shortLinks,
+      Map<UUID, User> users,
+      List<Notification> notifications)
+      throws IOException {
+    StorageState fileState = new StorageState();
+    fileState.setExistingShortLinks(shortLinks);
+    fileState.setExistingUsers(users);
+    fileState.setUnreadNotifications(notifications);
+    SnapshotFiles.writeDurably(
+        path,
+        configManager,
+        out ->
+            new StorageStateStreamWriter(objectMapper)
+                .write(new BufferedOutputStream(out, BUFFER_SIZE), fileState));
+    return null;
+  }
+
+  /*
+   * Чтение снимка.
+   * */
+
+  /**
+   * Метод загружает снимок, на который ссылается самая новая неповреждённая версия manifest.json.
+   * Если шардированного снимка нет, возвращается null.
+   */
+  StorageState load(int threads) throws StorageStatePersistenceException {
+    return SnapshotFiles.readWithFallback(
+        manifestPath,
+        configManager.getStorageSnapshotGenerationsProperty(),
+        manifest -> readSnapshot(manifest, threads));
+  }
+
+  private StorageState readSnapshot(Path manifestFile, int threads)
+      throws StorageStatePersistenceException {
+    try {
+      JsonNode manifest = readManifest(manifestFile);
+      Path snapshotDirectory =
+          shardsDirectory.resolve(manifest.required("snapshotDirectory").asString());
+      List<Path> files = shortLinkShardFiles(manifest, snapshotDirectory);
+      files.addAll(userShardFiles(manifest, snapshotDirectory));
+      files.addAll(notificationShardFiles(manifest, snapshotDirectory));
+
+      int shortLinkCount = manifest.required("shortLinkCount").asInt();
+      int userCount = manifest.required("userCount").asInt();
+      ConcurrentHashMap<String, ShortLink> existingShortLinks =
+          new ConcurrentHashMap<>(Math.max(16, shortLinkCount * 4 / 3));
+      ConcurrentHashMap<UUID, User> existingUsers =
+          new ConcurrentHashMap<>(Math.max(16, userCount * 4 / 3));
+      List<Notification> unreadNotifications = Collections.synchronizedList(new ArrayList<>());
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (Path file : files) {
+        tasks.add(
+            () -> {
+              new StorageStateStreamReader(objectMapper, 1)
+                  .read(file, existingShortLinks, existingUsers, unreadNotifications);
+              return null;
+            });
+      }
+      runInParallel(tasks, threads);
+
+      // Файлы разных снимков не должны смешиваться, поэтому сверяем количество записей
+      if (existingShortLinks.size() != shortLinkCount
+          || existingUsers.size() != userCount
+          || unreadNotifications.size() != manifest.required("notificationCount").asInt()) {
+        throw new IllegalStateException(
+            "количество загруженных записей не совпадает с описанием шардов");
+      }
+
+      StorageState storageState = new StorageState();
+      storageState.setExistingShortLinks(existingShortLinks);
+      storageState.setExistingUsers(existingUsers);
+      storageState.setUnreadNotifications(new ArrayList<>(unreadNotifications));
+      return storageState;
+    } catch (JacksonException | IOException | IllegalArgumentException | IllegalStateException e) {
+      throw loadException(manifestFile, e);
+    }
+  }
+
+  /**
+   * Метод загружает снимок по частям: шарды коротких ссылок читаются сразу, а шарды пользователей и
+   * уведомлений - в фоне, каждый отдельно. Если шардированного снимка нет, возвращается null. <br>
+   * Откат к предыдущей версии manifest.json возможен, только пока не загружены короткие ссылки.
+   * Ошибка чтения шарда пользователей или уведомлений после этого завершает его загрузку с ошибкой,
+   * а не подменяет данные данными другого снимка.
+   */
+  StagedStorageState loadStaged(int threads) throws StorageStatePersistenceException {
+    return SnapshotFiles.readWithFallback(
+        manifestPath,
+        configManager.getStorageSnapshotGenerationsProperty(),
+        manifest -> readSnapshotStaged(manifest, threads));
+  }
+
+  private StagedStorageState readSnapshotStaged(Path manifestFile, int threads)
+      throws StorageStatePersistenceException {
+    try {
+      JsonNode manifest = readManifest(manifestFile);
+      Path snapshotDirectory =
+          shardsDirectory.resolve(manifest.required("snapshotDirectory").asString());
+      List<Path> userFiles = userShardFiles(manifest, snapshotDirectory);
+      List<Path> notificationFiles = notificationShardFiles(manifest, snapshotDirectory);
+      final List<Integer> userCounts = shardCounts(manifest, "userShardCounts", "userCount");
+      final List<Integer> notificationCounts =
+          shardCounts(manifest, "notificationShardCounts", "notificationCount");
+      for (Path file : userFiles) {
+        requireExists(file);
+      }
+      for (Path file : notificationFiles) {
+        requireExists(file);
+      }
+
+      int shortLinkCount = manifest.required("shortLinkCount").asInt();
+      ConcurrentHashMap<String, ShortLink> existingShortLinks =
+          new ConcurrentHashMap<>(Math.max(16, shortLinkCount * 4 / 3));
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (Path file : shortLinkShardFiles(manifest, snapshotDirectory)) {
+        tasks.add(
+            () -> {
+              new StorageStateStreamReader(objectMapper, 1)
+                  .read(file, existingShortLinks, new ConcurrentHashMap<>(), new ArrayList<>());
+              return null;
+            });
+      }
+      runInParallel(tasks, threads);
+      if (existingShortLinks.size() != shortLinkCount) {
+        throw new IllegalStateException(
+            "количество загруженных ссылок не совпадает с описанием шардов");
+      }
+
+      // Пользователи и уведомления догружаются в фоне на потоках-демонах ForkJoinPool
+      ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(threads, userFiles.size() * 2)));
+      List<CompletableFuture<Map<UUID, User>>> userShards = new ArrayList<>();
+      List<CompletableFuture<List<Notification>>> notificationShards = new ArrayList<>();
+      for (int shard = 0; shard < userFiles.size(); shard++) {
+        Path userFile = userFiles.get(shard);
+        int userCount = userCounts.get(shard);
+        userShards.add(
+            CompletableFuture.supplyAsync(
+                () -> readColdShard(manifestFile, userFile, userCount).getExistingUsers(), pool));
+        Path notificationFile = notificationFiles.get(shard);
+        int notificationCount = notificationCounts.get(shard);
+        notificationShards.add(
+            CompletableFuture.supplyAsync(
+                () ->
+                    readColdShard(manifestFile, notificationFile, notificationCount)
+                        .getUnreadNotifications(),
+                pool));
+      }
+      StagedStorageState stagedStorageState =
+          new StagedStorageState(existingShortLinks, userShards, notificationShards);
+      stagedStorageState.whenFullyLoaded().whenComplete((result, e) -> pool.shutdown());
+      return stagedStorageState;
+    } catch (JacksonException | IOException | IllegalArgumentException | IllegalStateException e) {
+      throw loadException(manifestFile, e);
+    }
+  }
+
+  /**
+   * Метод читает файл шарда пользователей или уведомлений и сверяет количество записей с описанием
+   * шардов. Выполняется в фоне, поэтому ошибка оборачивается в CompletionException.
+   */
+  private StorageState readColdShard(Path manifestFile, Path file, int expectedCount) {
+    try {
+      ConcurrentHashMap<UUID, User> users = new ConcurrentHashMap<>();
+      List<Notification> notifications = new ArrayList<>();
+      new StorageStateStreamReader(objectMapper, 1)
+          .read(file, new ConcurrentHashMap<>(), users, notifications);
+      if (users.size() + notifications.size() != expectedCount) {
+        throw new IllegalStateException(
+            "количество загруженных записей не совпадает с описанием шардов: " + file);
+      }
+      StorageState storageState = new StorageState();
+      storageState.setExistingUsers(users);
+      storageState.setUnreadNotifications(notifications);
+      return storageState;
+    } catch (JacksonException | IOException | IllegalArgumentException | IllegalStateException e) {
+      throw new CompletionException(loadException(manifestFile, e));
+    }
+  }
+
+  private static StorageStatePersistenceException loadException(Path manifestFile, Exception e) {
+    return new StorageStatePersistenceException(
+        "Проблемы с загрузкой шардированного снимка данных сервиса: "
+            + manifestFile
+            + " "
+            + e.getMessage()
+            + "\nСервис не будет запущен при наличии файла данных "
+            + "и одновременной невозможности считывания / загрузки ранее сохранённых данных.");
+  }
+
+  private JsonNode readManifest(Path manifestFile) throws IOException, JacksonException {
+    try (InputStream in = SnapshotFiles.openForReading(manifestFile)) {
+      return objectMapper.readTree(in);
+    }
+  }
+
+  /*
+   * Вспомогательные методы.
+   * */
+
+  private static String shortLinkShardFileName(int shard) {
+    return String.format("links-%04d.json", shard);
+  }
+
+  private static String userShardFileName(int shard) {
+    return String.format("users-%04d.json", shard);
+  }
+
+  private static String notificationShardFileName(int shard) {
+    return String.format("notifications-%04d.json", shard);
+  }
+
+  private static int formatVersion(JsonNode manifest) {
+    int formatVersion = manifest.required("formatVersion").asInt();
+    if (formatVersion != MANIFEST_FORMAT_VERSION
+        && formatVersion != MANIFEST_FORMAT_VERSION_WITHOUT_USER_SHARDS) {
+      throw new IllegalStateException("неподдерживаемая версия описания шардов " + formatVersion);
+    }
+    return formatVersion;
+  }
+
+  private static List<Path> shortLinkShardFiles(JsonNode manifest, Path snapshotDirectory) {
+    formatVersion(manifest);
+    List<Path> files = new ArrayList<>();
+    for (int shard = 0; shard < manifest.required("shortLinkShards").asInt(); shard++) {
+      files.add(snapshotDirectory.resolve(shortLinkShardFileName(shard)));
+    }
+    return files;
+  }
+
+  /** В первой версии описания все пользователи лежат в одном файле users.json. */
+  private static List<Path> userShardFiles(JsonNode manifest, Path snapshotDirectory) {
+    if (formatVersion(manifest) == MANIFEST_FORMAT_VERSION_WITHOUT_USER_SHARDS) {
+      return new ArrayList<>(List.of(snapshotDirectory.resolve(USERS_FILE_NAME)));
+    }
+    List<Path> files = new ArrayList<>();
+    for (int shard = 0; shard < manifest.required("shortLinkShards").asInt(); shard++) {
+      files.add(snapshotDirectory.resolve(userShardFileName(shard)));
+    }
+    return files;
+  }
+
+  /** В первой версии описания все уведомления лежат в одном файле notifications.json. */
+  private static List<Path> notificationShardFiles(JsonNode manifest, Path snapshotDirectory) {
+    if (formatVersion(manifest) == MANIFEST_FORMAT_VERSION_WITHOUT_USER_SHARDS) {
+      return new ArrayList<>(List.of(snapshotDirectory.resolve(NOTIFICATIONS_FILE_NAME)));
+    }
+    List<Path> files = new ArrayList<>();
+    for (int shard = 0; shard < manifest.required("shortLinkShards").asInt(); shard++) {
+      files.add(snapshotDirectory.resolve(notificationShardFileName(shard)));
+    }
+    return files;
+  }
+
+  /** Количество записей в каждом шарде, в первой версии описания шард один. */
+  private static List<Integer> shardCounts(
+      JsonNode manifest, String shardCountsField, String totalCountField) {
+    List<Integer> counts = new ArrayList<>();
+    if (formatVersion(manifest) == MANIFEST_FORMAT_VERSION_WITHOUT_USER_SHARDS) {
+      counts.add(manifest.required(totalCountField).asInt());
+      return counts;
+    }
+    for (JsonNode count : manifest.required(shardCountsField)) {
+      counts.add(count.asInt());
+    }
+    if (counts.size() != manifest.required("shortLinkShards").asInt()) {
+      throw new IllegalStateException("некорректное описание шардов: " + shardCountsField);
+    }
+    return counts;
+  }
+
+  private static void requireExists(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      throw new NoSuchFileException(file.toString());
+    }
+  }
+
+  /** Метод выполняет задачи на отдельном ForkJoinPool и пробрасывает первую возникшую ошибку. */
+  private static void runInParallel(List<Callable<Void>> tasks, int threads) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(threads, tasks.size())));
+    try {
+      for (Future<Void> future : pool.invokeAll(tasks)) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Запись или загрузка шардов была прервана.", e);
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException ioException) {
+            throw ioException;
+          }
+          if (e.getCause() instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+          }
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private long lastSnapshotNumber() throws IOException {
+    long lastSnapshotNumber = 0;
+    for (Path snapshotDirectory : listSnapshotDirectories()) {
+      String number =
+          snapshotDirectory.getFileName().toString().substring(SNAPSHOT_DIRECTORY_PREFIX.length());
+      try {
+        lastSnapshotNumber = Math.max(lastSnapshotNumber, Long.parseLong(number));
+      } catch (NumberFormatException e) {
+        // Чужая директория с похожим именем, номер снимка из неё не берём
+        continue;
+      }
+    }
+    return lastSnapshotNumber;
+  }
+
+  /**
+   * Метод удаляет директории снимков, на которые не ссылается ни одна из сохранённых версий
+   * manifest.json: старые снимки и снимки, запись которых была прервана.
+   */
+  private void deleteUnreferencedSnapshots() throws IOException {
+    Set<String> referencedDirectories = new HashSet<>();
+    for (Path manifest :
+        SnapshotFiles.existingGenerations(
+            manifestPath, configManager.getStorageSnapshotGenerationsProperty())) {
+      try {
+        referencedDirectories.add(readManifest(manifest).required("snapshotDirectory").asString());
+      } catch (JacksonException | IOException | IllegalArgumentException e) {
+        // На снимок из повреждённой версии описания откатиться всё равно нельзя
+        continue;
+      }
+    }
+    for (Path snapshotDirectory : listSnapshotDirectories()) {
+      if (!referencedDirectories.contains(snapshotDirectory.getFileName().toString())) {
+        try (Stream<Path> files = Files.walk(snapshotDirectory)) {
+          for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+            Files.delete(file);
+          }
+        }
+      }
+    }
+  }
+
+  private List<Path> listSnapshotDirectories() throws IOException {
+    if (!Files.isDirectory(shardsDirectory)) {
+      return List.of();
+    }
+    try (Stream<Path> paths = Files.list(shardsDirectory)) {
+      return paths
+          .filter(Files::isDirectory)
+          .filter(path -> path.getFileName().toString().startsWith(SNAPSHOT_DIRECTORY_PREFIX))
+          .toList();
+    }
+  }
+}
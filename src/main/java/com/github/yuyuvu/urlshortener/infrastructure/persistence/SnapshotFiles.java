@@ -0,0 +1,247 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import static com.github.yuyuvu.urlshortener.cli.presenters.ColorPrinter.printlnRed;
+
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager.StorageCompression;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Вспомогательные методы для безопасной записи файлов полных снимков данных сервиса. <br>
+ * Снимок сначала записывается во временный файл, который сбрасывается на диск и только потом
+ * атомарно переименовывается в основной файл. Поэтому сбой во время записи не может повредить
+ * последний сохранённый снимок. Предыдущие версии файла сохраняются рядом с ним под именами
+ * "имя.1", "имя.2" и т.д. и используются при загрузке, если более новая версия повреждена. <br>
+ * Снимок любого формата может потоково сжиматься через GZIP или Deflate, а при чтении сжатие
+ * определяется автоматически по первым байтам файла, поэтому настройку сжатия можно менять между
+ * запусками.
+ */
+final class SnapshotFiles {
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private SnapshotFiles() {}
+
+  /** Функция, записывающая содержимое снимка в поток. */
+  @FunctionalInterface
+  interface SnapshotWriter {
+    void write(OutputStream out) throws IOException;
+  }
+
+  /** Функция, читающая снимок из файла одной версии. */
+  @FunctionalInterface
+  interface SnapshotReader<T> {
+    T read(Path snapshotPath) throws StorageStatePersistenceException;
+  }
+
+  /**
+   * Метод записывает новую версию снимка во временный файл (сжимая его, если это задано в
+   * настройках), сбрасывает его на диск, сдвигает предыдущие версии и атомарно заменяет основной
+   * файл. Количество сохраняемых предыдущих версий файла задаётся в настройках.
+   */
+  static void writeAtomically(Path snapshotPath, ConfigManager configManager, SnapshotWriter writer)
+      throws IOException {
+    int previousGenerations = configManager.getStorageSnapshotGenerationsProperty();
+    Path directory = snapshotPath.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + TEMP_FILE_SUFFIX);
+    writeDurably(tempPath, configManager, writer);
+
+    // Сдвигаем предыдущие версии: самая старая удаляется, основной файл становится версией 1
+    if (previousGenerations > 0) {
+      Files.deleteIfExists(generationPath(snapshotPath, previousGenerations));
+      for (int generation = previousGenerations - 1; generation >= 1; generation--) {
+        Path generationPath = generationPath(snapshotPath, generation);
+        if (Files.exists(generationPath)) {
+          Files.move(
+              generationPath,
+              generationPath(snapshotPath, generation + 1),
+              StandardCopyOption.ATOMIC_MOVE);
+        }
+      }
+      if (Files.exists(snapshotPath)) {
+        Files.move(snapshotPath, generationPath(snapshotPath, 1), StandardCopyOption.ATOMIC_MOVE);
+      }
+    }
+    Files.move(
+        tempPath,
+        snapshotPath,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    forceDirectory(directory);
+  }
+
+  /**
+   * Метод записывает файл (сжимая его, если это задано в настройках) и сбрасывает его на диск. При
+   * ошибке недописанный файл удаляется.
+   */
+  static void writeDurably(Path path, ConfigManager configManager, SnapshotWriter writer)
+      throws IOException {
+    StorageCompression compression = configManager.getStorageCompressionProperty();
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      OutputStream out = Channels.newOutputStream(channel);
+      if (compression == null || compression == StorageCompression.NONE) {
+        writer.write(out);
+      } else {
+        writeCompressed(
+            out, compression, configManager.getStorageCompressionLevelProperty(), writer);
+      }
+      out.flush();
+      channel.force(true);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  /**
+   * Метод сжимает всё, что записывает writer. Поток сжатия не закрывается, так как вместе с ним
+   * закрылся бы файл до сброса на диск, поэтому он завершается и освобождает память Deflater явно.
+   */
+  private static void writeCompressed(
+      OutputStream out, StorageCompression compression, int level, SnapshotWriter writer)
+      throws IOException {
+    DeflaterOutputStream compressedOut;
+    Deflater deflater;
+    if (compression == StorageCompression.GZIP) {
+      LeveledGzipOutputStream gzipOut = new LeveledGzipOutputStream(out, level);
+      compressedOut = gzipOut;
+      deflater = gzipOut.deflater();
+    } else {
+      deflater = new Deflater(level);
+      compressedOut = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+    }
+    try {
+      writer.write(compressedOut);
+      compressedOut.finish();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Метод открывает файл снимка для чтения. Сжатый файл определяется по первым байтам: 1f 8b для
+   * GZIP и заголовок zlib для Deflate. Ни JSON, ни двоичный формат с них начинаться не могут.
+   */
+  static InputStream openForReading(Path snapshotPath) throws IOException {
+    InputStream in = new BufferedInputStream(Files.newInputStream(snapshotPath), BUFFER_SIZE);
+    try {
+      in.mark(2);
+      int firstByte = in.read();
+      int secondByte = in.read();
+      in.reset();
+      if (firstByte == 0x1f && secondByte == 0x8b) {
+        return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+      }
+      if ((firstByte & 0x0f) == Deflater.DEFLATED
+          && secondByte >= 0
+          && ((firstByte << 8) | secondByte) % 31 == 0) {
+        return new BufferedInputStream(new InflaterInputStream(in), BUFFER_SIZE);
+      }
+      return in;
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Метод читает самую новую неповреждённую версию снимка. Если ни одной версии нет, возвращается
+   * null. Если все имеющиеся версии повреждены, пробрасывается ошибка чтения самой новой из них.
+   */
+  static <T> T readWithFallback(
+      Path snapshotPath, int previousGenerations, SnapshotReader<T> reader)
+      throws StorageStatePersistenceException {
+    StorageStatePersistenceException firstException = null;
+    for (Path generationPath : existingGenerations(snapshotPath, previousGenerations)) {
+      try {
+        T snapshot = reader.read(generationPath);
+        if (firstException != null) {
+          printlnRed(
+              "Последняя версия файла данных сервиса повреждена, загружена предыдущая версия: "
+                  + generationPath
+                  + ". Изменения, сделанные после её сохранения, могли быть потеряны.");
+        }
+        return snapshot;
+      } catch (StorageStatePersistenceException e) {
+        if (firstException == null) {
+          firstException = e;
+        }
+      }
+    }
+    if (firstException != null) {
+      throw firstException;
+    }
+    return null;
+  }
+
+  /** Метод возвращает существующие версии снимка, начиная с самой новой. */
+  static List<Path> existingGenerations(Path snapshotPath, int previousGenerations) {
+    List<Path> generations = new ArrayList<>();
+    if (Files.exists(snapshotPath)) {
+      generations.add(snapshotPath);
+    }
+    for (int generation = 1; generation <= previousGenerations; generation++) {
+      Path generationPath = generationPath(snapshotPath, generation);
+      if (Files.exists(generationPath)) {
+        generations.add(generationPath);
+      }
+    }
+    return generations;
+  }
+
+  /** GZIPOutputStream с заданным уровнем сжатия, Deflater которого можно освободить без close. */
+  private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+    LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+      super(out, BUFFER_SIZE);
+      def.setLevel(level);
+    }
+
+    Deflater deflater() {
+      return def;
+    }
+  }
+
+  private static Path generationPath(Path snapshotPath, int generation) {
+    return snapshotPath.resolveSibling(snapshotPath.getFileName() + "." + generation);
+  }
+
+  /**
+   * Метод сбрасывает на диск запись директории, чтобы переименование файла пережило сбой питания.
+   * Не на всех ОС директорию можно открыть как файл, поэтому ошибка здесь не критична.
+   *
+   * @return была ли запись директории сброшена на диск
+   */
+  static boolean forceDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+      return true;
+    } catch (IOException e) {
+      // Файл уже переименован, на таких ОС остаётся полагаться на журнал файловой системы
+      return false;
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Состояние данных сервиса, загружаемое по частям. Короткие ссылки, нужные для редиректов, к
+ * моменту создания объекта уже загружены, а пользователи и уведомления могут ещё догружаться в
+ * фоне. <br>
+ * Пользователи и уведомления разделены на шарды по UUID пользователя, каждый шард догружается
+ * отдельно. Поэтому InMemory-репозиторий при поиске по UUID ждёт только нужный ему шард.
+ */
+public final class StagedStorageState {
+  private final Map<String, ShortLink> existingShortLinks;
+  private final List<CompletableFuture<Map<UUID, User>>> userShards;
+  private final List<CompletableFuture<List<Notification>>> notificationShards;
+
+  StagedStorageState(
+      Map<String, ShortLink> existingShortLinks,
+      List<CompletableFuture<Map<UUID, User>>> userShards,
+      List<CompletableFuture<List<Notification>>> notificationShards) {
+    if (userShards.isEmpty() || userShards.size() != notificationShards.size()) {
+      throw new IllegalArgumentException("количество шардов пользователей и уведомлений различно");
+    }
+    this.existingShortLinks = existingShortLinks;
+    this.userShards = new ArrayList<>(userShards);
+    this.notificationShards = new ArrayList<>(notificationShards);
+  }
+
+  /** Метод оборачивает полностью загруженный StorageState в состояние из одного готового шарда. */
+  public static StagedStorageState completed(StorageState storageState) {
+    return new StagedStorageState(
+        storageState.getExistingShortLinks(),
+        List.of(CompletableFuture.completedFuture(storageState.getExistingUsers())),
+        List.of(CompletableFuture.completedFuture(storageState.getUnreadNotifications())));
+  }
+
+  /** Метод возвращает номер шарда, в котором лежат данные пользователя с заданным UUID. */
+  static int shardOf(UUID userUUID, int shardCount) {
+    return Math.floorMod(userUUID.hashCode(), shardCount);
+  }
+
+  /** Метод для загрузки данных для репозитория ShortLinkRepository. */
+  public Map<String, ShortLink> getExistingShortLinks() {
+    return existingShortLinks;
+  }
+
+  /** Метод возвращает догружаемые шарды пользователей для репозитория UserRepository. */
+  public List<CompletableFuture<Map<UUID, User>>> getUserShards() {
+    return Collections.unmodifiableList(userShards);
+  }
+
+  /** Метод возвращает догружаемые шарды уведомлений для репозитория NotificationRepository. */
+  public List<CompletableFuture<List<Notification>>> getNotificationShards() {
+    return Collections.unmodifiableList(notificationShards);
+  }
+
+  int shardCount() {
+    return userShards.size();
+  }
+
+  /** Метод возвращает задачу, которая завершается после загрузки всех шардов. */
+  CompletableFuture<Void> whenFullyLoaded() {
+    List<CompletableFuture<?>> shards = new ArrayList<>(userShards);
+    shards.addAll(notificationShards);
+    return CompletableFuture.allOf(shards.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /**
+   * Метод добавляет изменение, которое применится к шарду пользователей сразу после его загрузки
+   * (например, записи журнала упреждающей записи, сделанные после снимка).
+   */
+  void updateUserShard(int shard, Consumer<Map<UUID, User>> update) {
+    userShards.set(
+        shard,
+        userShards
+            .get(shard)
+            .thenApply(
+                users -> {
+                  update.accept(users);
+                  return users;
+                }));
+  }
+
+  /** Метод добавляет изменение, которое применится к шарду уведомлений после его загрузки. */
+  void updateNotificationShard(int shard, Consumer<List<Notification>> update) {
+    notificationShards.set(
+        shard,
+        notificationShards
+            .get(shard)
+            .thenApply(
+                notifications -> {
+                  update.accept(notifications);
+                  return notifications;
+                }));
+  }
+
+  /**
+   * Метод дожидается загрузки всех шардов и собирает обычный StorageState. Ошибка загрузки любого
+   * шарда пробрасывается как ошибка загрузки данных.
+   */
+  public StorageState join() throws StorageStatePersistenceException {
+    StorageState storageState = new StorageState();
+    storageState.setExistingShortLinks(existingShortLinks);
+    try {
+      if (userShards.size() == 1) {
+        storageState.setExistingUsers(userShards.get(0).join());
+        storageState.setUnreadNotifications(notificationShards.get(0).join());
+        return storageState;
+      }
+      Map<UUID, User> users = new ConcurrentHashMap<>();
+      List<Notification> notifications = new ArrayList<>();
+      for (int shard = 0; shard < userShards.size(); shard++) {
+        users.putAll(userShards.get(shard).join());
+        notifications.addAll(notificationShards.get(shard).join());
+      }
+      storageState.setExistingUsers(users);
+      storageState.setUnreadNotifications(notifications);
+      return storageState;
+    } catch (CompletionException e) {
+      throw asPersistenceException(e);
+    }
+  }
+
+  /** Метод достаёт исходную ошибку загрузки шарда из CompletionException. */
+  private static StorageStatePersistenceException asPersistenceException(CompletionException e) {
+    if (e.getCause() instanceof StorageStatePersistenceException persistenceException) {
+      return persistenceException;
+    }
+    return new StorageStatePersistenceException(
+        "Проблемы с загрузкой данных сервиса: " + e.getCause());
+  }
+}
@@ -0,0 +1,44 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Слушатель изменений данных внутри InMemory-репозиториев. Позволяет внешнему постоянному хранилищу
+ * узнавать о каждой мутации сразу в момент её совершения, а не только при выключении сервиса
+ * (например, для записи в журнал упреждающей записи). Все методы по умолчанию ничего не делают,
+ * реализация переопределяет только нужные ей.
+ *
+ * <p>Методы вызываются под блокировкой ключа изменяемой записи, поэтому изменения одного ключа
+ * приходят в том же порядке, в котором применяются к данным. Реализация не должна ждать диска или
+ * обращаться к репозиториям.
+ */
+public interface StorageChangeListener {
+
+  /** Вызывается после сохранения новой или изменения существующей короткой ссылки. */
+  default void onShortLinkSaved(ShortLink shortLink) {}
+
+  /** Вызывается после изменения счётчика использований короткой ссылки при редиректе. */
+  default void onShortLinkUsageUpdated(ShortLink shortLink) {}
+
+  /** Вызывается после удаления короткой ссылки по shortID. */
+  default void onShortLinkDeleted(String shortId) {}
+
+  /** Вызывается после сохранения нового или изменения существующего пользователя. */
+  default void onUserSaved(User user) {}
+
+  /** Вызывается после удаления пользователя по UUID. */
+  default void onUserDeleted(UUID uuid) {}
+
+  /** Вызывается после сохранения нового уведомления. */
+  default void onNotificationSaved(Notification notification) {}
+
+  /** Вызывается после установки отметки о прочтении уведомлений. */
+  default void onNotificationsMarkedAsRead(List<Notification> notifications) {}
+
+  /** Вызывается после удаления прочитанного уведомления. */
+  default void onNotificationDeleted(Notification notification) {}
+}
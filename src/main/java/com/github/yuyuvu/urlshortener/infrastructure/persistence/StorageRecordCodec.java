@@ -0,0 +1,208 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Компактное двоичное представление объектов сервиса для внешних хранилищ, которым не нужен JSON
+ * (например, для журнала упреждающей записи). Даты хранятся секундами от эпохи и наносекундами,
+ * UUID - двумя long, строки - длиной и байтами UTF-8.
+ */
+final class StorageRecordCodec {
+
+  private StorageRecordCodec() {}
+
+  /** Запись строки произвольной длины (writeUTF ограничен 64 КБ, а URL может быть длиннее). */
+  static void writeString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /** Чтение строки, записанной через writeString. */
+  static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Отрицательная длина строки: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Запись неотрицательного числа в формате varint: по 7 бит на байт, старший бит означает, что за
+   * ним следует ещё байт. Небольшие числа (длины, счётчики) занимают 1-2 байта вместо 4-8.
+   */
+  static void writeVarLong(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /** Чтение числа, записанного через writeVarLong. */
+  static long readVarLong(DataInput in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Слишком длинное число varint");
+  }
+
+  /** Запись числа со знаком в формате varint (zigzag: маленькие по модулю числа - короткие). */
+  static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+    writeVarLong(out, (value << 1) ^ (value >> 63));
+  }
+
+  /** Чтение числа, записанного через writeSignedVarLong. */
+  static long readSignedVarLong(DataInput in) throws IOException {
+    long value = readVarLong(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /** Чтение неотрицательного числа varint, которое должно помещаться в int. */
+  static int readVarInt(DataInput in) throws IOException {
+    long value = readVarLong(in);
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IOException("Некорректное число varint: " + value);
+    }
+    return (int) value;
+  }
+
+  /** Запись строки с длиной в формате varint. */
+  static void writeVarString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarLong(out, bytes.length);
+    out.write(bytes);
+  }
+
+  /** Чтение строки, записанной через writeVarString. */
+  static String readVarString(DataInput in) throws IOException {
+    byte[] bytes = new byte[readVarInt(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static void writeUUID(DataOutput out, UUID uuid) throws IOException {
+    out.writeLong(uuid.getMostSignificantBits());
+    out.writeLong(uuid.getLeastSignificantBits());
+  }
+
+  static UUID readUUID(DataInput in) throws IOException {
+    return new UUID(in.readLong(), in.readLong());
+  }
+
+  static void writeDateTime(DataOutput out, LocalDateTime dateTime) throws IOException {
+    out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+    out.writeInt(dateTime.getNano());
+  }
+
+  static LocalDateTime readDateTime(DataInput in) throws IOException {
+    return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+  }
+
+  /** Запись всех полей короткой ссылки. */
+  static void writeShortLink(DataOutput out, ShortLink shortLink) throws IOException {
+    writeString(out, shortLink.getShortId());
+    writeString(out, shortLink.getOriginalURLAddress());
+    writeDateTime(out, shortLink.getCreationDateTime());
+    writeDateTime(out, shortLink.getExpirationDateTime());
+    out.writeInt(shortLink.getUsageCounter());
+    out.writeInt(shortLink.getUsageLimitAmount());
+    writeUUID(out, shortLink.getOwnerOfShortURL());
+    out.writeBoolean(shortLink.isLimitNotified());
+  }
+
+  /** Чтение короткой ссылки, записанной через writeShortLink. */
+  static ShortLink readShortLink(DataInput in) throws IOException {
+    String shortId = readString(in);
+    String originalURLAddress = readString(in);
+    LocalDateTime creationDateTime = readDateTime(in);
+    LocalDateTime expirationDateTime = readDateTime(in);
+    int usageCounter = in.readInt();
+    int usageLimitAmount = in.readInt();
+    UUID ownerOfShortURL = readUUID(in);
+    boolean isLimitNotified = in.readBoolean();
+    return new ShortLink(
+        originalURLAddress,
+        shortId,
+        creationDateTime,
+        expirationDateTime,
+        usageCounter,
+        usageLimitAmount,
+        ownerOfShortURL,
+        isLimitNotified);
+  }
+
+  /**
+   * Копия короткой ссылки с другим значением счётчика использований. Счётчик в ShortLink меняется
+   * только через редирект, поэтому при восстановлении данных ссылка пересоздаётся.
+   */
+  static ShortLink withUsageCounter(ShortLink shortLink, int usageCounter) {
+    return new ShortLink(
+        shortLink.getOriginalURLAddress(),
+        shortLink.getShortId(),
+        shortLink.getCreationDateTime(),
+        shortLink.getExpirationDateTime(),
+        usageCounter,
+        shortLink.getUsageLimitAmount(),
+        shortLink.getOwnerOfShortURL(),
+        shortLink.isLimitNotified());
+  }
+
+  static void writeUser(DataOutput out, User user) throws IOException {
+    writeUUID(out, user.getUUID());
+    out.writeInt(user.getAmountOfMadeShortLinks());
+  }
+
+  static User readUser(DataInput in) throws IOException {
+    return new User(readUUID(in), in.readInt());
+  }
+
+  static void writeNotification(DataOutput out, Notification notification) throws IOException {
+    writeShortLink(out, notification.getShortLink());
+    writeUUID(out, notification.getUserUUID());
+    out.writeByte(notification.getType().ordinal());
+    out.writeBoolean(notification.isRead());
+  }
+
+  static Notification readNotification(DataInput in) throws IOException {
+    ShortLink shortLink = readShortLink(in);
+    UUID userUUID = readUUID(in);
+    int typeOrdinal = in.readUnsignedByte();
+    Notification.NotificationType[] types = Notification.NotificationType.values();
+    if (typeOrdinal >= types.length) {
+      throw new IOException("Неизвестный тип уведомления: " + typeOrdinal);
+    }
+    return new Notification(shortLink, userUUID, types[typeOrdinal], in.readBoolean());
+  }
+
+  /**
+   * Ключ, по которому уведомление можно найти при восстановлении данных. У уведомлений нет
+   * собственного ID, но пара тип + ссылка (с датой её создания, так как shortID может быть
+   * переиспользован) + получатель однозначно определяет уведомление.
+   */
+  static String notificationKey(Notification notification) {
+    return notification.getUserUUID()
+        + "/"
+        + notification.getType()
+        + "/"
+        + notification.getShortLink().getShortId()
+        + "/"
+        + notification.getShortLink().getCreationDateTime();
+  }
+}
@@ -27,4 +27,19 @@ public interface StorageService {
    * включении сервиса.
    */
   Optional<StorageState> loadState() throws StorageStatePersistenceException;
+
+  /**
+   * Метод считывает состояние данных сервиса по частям: короткие ссылки загружаются сразу, а
+   * пользователи и уведомления могут догружаться в фоне после возврата из метода. По умолчанию все
+   * данные загружаются сразу через loadState().
+   */
+  default Optional<StagedStorageState> loadStateStaged() throws StorageStatePersistenceException {
+    return loadState().map(StagedStorageState::completed);
+  }
+
+  /**
+   * Метод освобождает ресурсы внешнего постоянного хранилища (файлы, фоновые потоки) при выключении
+   * сервиса. Вызывается после последнего сохранения данных.
+   */
+  default void close() throws StorageStatePersistenceException {}
 }
@@ -0,0 +1,60 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.domain.repository.NotificationRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Снимок данных репозиториев на момент начала сохранения. <br>
+ * Объекты ShortLink и User изменяемые: счётчик использований растёт при редиректах, а настройки
+ * ссылок меняются из консоли. Поэтому перед записью файла репозитории не блокируются, а каждая
+ * запись копируется. Копирование занимает намного меньше времени, чем сериализация и запись на
+ * диск, и после него файл записывается из неизменяемых копий, пока сервис продолжает работу.
+ */
+final class StorageStateSnapshot {
+  private StorageStateSnapshot() {}
+
+  /** Метод копирует текущие данные репозиториев в новый объект StorageState. */
+  static StorageState capture(
+      UserRepository userRepository,
+      ShortLinkRepository shortLinkRepository,
+      NotificationRepository notificationRepository) {
+    Map<String, ShortLink> shortLinks = new HashMap<>();
+    for (ShortLink shortLink : shortLinkRepository.getRepositoryAsMap().values()) {
+      shortLinks.put(shortLink.getShortId(), copyOf(shortLink));
+    }
+
+    Map<UUID, User> users = new HashMap<>();
+    for (User user : userRepository.getRepositoryAsMap().values()) {
+      users.put(user.getUUID(), new User(user.getUUID(), user.getAmountOfMadeShortLinks()));
+    }
+
+    List<Notification> notifications = new ArrayList<>();
+    for (Notification notification : notificationRepository.getRepositoryAsList()) {
+      notifications.add(
+          new Notification(
+              copyOf(notification.getShortLink()),
+              notification.getUserUUID(),
+              notification.getType(),
+              notification.isRead()));
+    }
+
+    StorageState storageState = new StorageState();
+    storageState.setExistingShortLinks(shortLinks);
+    storageState.setExistingUsers(users);
+    storageState.setUnreadNotifications(notifications);
+    return storageState;
+  }
+
+  private static ShortLink copyOf(ShortLink shortLink) {
+    return StorageRecordCodec.withUsageCounter(shortLink, shortLink.getUsageCounter());
+  }
+}
@@ -0,0 +1,289 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.TreeNode;
+import tools.jackson.core.exc.StreamReadException;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Потоковое чтение StorageState из JSON-файла на уровне токенов JsonParser. В отличие от
+ * objectMapper.readValue() файл не разбирается целиком в промежуточные объекты: каждая запись
+ * читается по отдельности и сразу кладётся в итоговую ConcurrentHashMap, которую потом без
+ * копирования забирает InMemory-репозиторий. <br>
+ * Разбор токенов идёт в одном потоке, а преобразование прочитанных записей в объекты ShortLink и
+ * User может распределяться пачками между несколькими рабочими потоками. <br>
+ * Если в файле есть секция контрольных сумм (её записывает StorageStateStreamWriter), то после
+ * разбора байты каждой секции сверяются с записанной для неё суммой CRC32C.
+ */
+final class StorageStateStreamReader {
+  /* Имена секций файла. */
+  static final String SHORT_LINKS_SECTION = "existingShortLinks";
+  static final String USERS_SECTION = "existingUsers";
+  static final String NOTIFICATIONS_SECTION = "unreadNotifications";
+  static final String CHECKSUMS_SECTION = "sectionChecksums";
+
+  /** Количество записей в одной пачке, передаваемой рабочему потоку. */
+  private static final int BATCH_SIZE = 1024;
+
+  private final ObjectMapper objectMapper;
+  private final int threads;
+
+  /**
+   * Конструктор потокового чтения StorageState.
+   *
+   * @param threads количество рабочих потоков для преобразования записей, при 1 и меньше всё
+   *     выполняется в вызывающем потоке
+   */
+  StorageStateStreamReader(ObjectMapper objectMapper, int threads) {
+    this.objectMapper = objectMapper;
+    this.threads = threads;
+  }
+
+  /**
+   * Метод читает StorageState из файла, структура которого задаётся геттерами StorageState. Сжатый
+   * файл распаковывается на лету.
+   */
+  StorageState read(Path file) throws IOException, JacksonException {
+    ConcurrentHashMap<String, ShortLink> existingShortLinks = new ConcurrentHashMap<>();
+    ConcurrentHashMap<UUID, User> existingUsers = new ConcurrentHashMap<>();
+    List<Notification> unreadNotifications = new ArrayList<>();
+    read(file, existingShortLinks, existingUsers, unreadNotifications);
+
+    StorageState storageState = new StorageState();
+    storageState.setExistingShortLinks(existingShortLinks);
+    storageState.setExistingUsers(existingUsers);
+    storageState.setUnreadNotifications(unreadNotifications);
+    return storageState;
+  }
+
+  /**
+   * Метод читает записи из файла в переданные коллекции. Используется для загрузки нескольких
+   * файлов-шардов одного снимка в общие ConcurrentHashMap из разных потоков.
+   */
+  void read(
+      Path file,
+      ConcurrentHashMap<String, ShortLink> existingShortLinks,
+      ConcurrentHashMap<UUID, User> existingUsers,
+      List<Notification> unreadNotifications)
+      throws IOException, JacksonException {
+    // Границы байтов значения каждой секции в файле и записанные для них контрольные суммы
+    Map<String, long[]> sectionRanges = new HashMap<>();
+    Map<String, Long> sectionChecksums = new HashMap<>();
+
+    try (InputStream in = SnapshotFiles.openForReading(file);
+        JsonParser parser = objectMapper.createParser(in);
+        BatchBinder binder = new BatchBinder(threads)) {
+      expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+        String section = parser.currentName();
+        JsonToken sectionStart = parser.nextToken();
+        long sectionStartOffset = parser.currentTokenLocation().getByteOffset();
+        switch (section) {
+          case SHORT_LINKS_SECTION -> {
+            expect(parser, sectionStart, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+              String shortId = parser.currentName();
+              parser.nextToken();
+              binder.add(
+                  parser.readValueAsTree(),
+                  node ->
+                      existingShortLinks.put(
+                          shortId, objectMapper.treeToValue(node, ShortLink.class)));
+            }
+          }
+          case USERS_SECTION -> {
+            expect(parser, sectionStart, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+              UUID uuid = UUID.fromString(parser.currentName());
+              parser.nextToken();
+              binder.add(
+                  parser.readValueAsTree(),
+                  node -> existingUsers.put(uuid, objectMapper.treeToValue(node, User.class)));
+            }
+          }
+          case NOTIFICATIONS_SECTION -> {
+            // Уведомлений немного, и их порядок сохраняется, поэтому читаем их последовательно
+            expect(parser, sectionStart, JsonToken.START_ARRAY);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+              unreadNotifications.add(
+                  objectMapper.treeToValue(parser.readValueAsTree(), Notification.class));
+            }
+          }
+          case CHECKSUMS_SECTION -> {
+            expect(parser, sectionStart, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+              String checksumSection = parser.currentName();
+              parser.nextToken();
+              sectionChecksums.put(checksumSection, parser.getLongValue());
+            }
+          }
+          default -> parser.skipChildren();
+        }
+        sectionRanges.put(
+            section,
+            new long[] {sectionStartOffset, parser.currentTokenLocation().getByteOffset() + 1});
+      }
+      binder.awaitAll();
+    }
+    verifyChecksums(file, sectionRanges, sectionChecksums);
+  }
+
+  /**
+   * Метод сверяет байты каждой секции файла с записанной для неё контрольной суммой. Файл читается
+   * повторно одним последовательным проходом, чтобы проверка работала и для сжатых файлов. Файлы,
+   * сохранённые до появления контрольных сумм, не проверяются.
+   */
+  private static void verifyChecksums(
+      Path file, Map<String, long[]> sectionRanges, Map<String, Long> sectionChecksums)
+      throws IOException {
+    if (sectionChecksums.isEmpty()) {
+      return;
+    }
+    List<Map.Entry<String, long[]>> checkedRanges = new ArrayList<>();
+    for (String section : sectionChecksums.keySet()) {
+      long[] range = sectionRanges.get(section);
+      if (range == null) {
+        throw new IllegalStateException("В файле отсутствует секция " + section);
+      }
+      checkedRanges.add(Map.entry(section, range));
+    }
+    checkedRanges.sort(Map.Entry.comparingByValue(Comparator.comparingLong(range -> range[0])));
+
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = SnapshotFiles.openForReading(file)) {
+      long position = 0;
+      for (Map.Entry<String, long[]> checkedRange : checkedRanges) {
+        long[] range = checkedRange.getValue();
+        in.skipNBytes(range[0] - position);
+        CRC32C checksum = new CRC32C();
+        for (long remaining = range[1] - range[0]; remaining > 0; ) {
+          int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+          if (read < 0) {
+            throw new IllegalStateException("Файл оборван в секции " + checkedRange.getKey());
+          }
+          checksum.update(buffer, 0, read);
+          remaining -= read;
+        }
+        position = range[1];
+        if (checksum.getValue() != sectionChecksums.get(checkedRange.getKey())) {
+          throw new IllegalStateException(
+              "Контрольная сумма секции " + checkedRange.getKey() + " не совпадает");
+        }
+      }
+    }
+  }
+
+  private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) {
+    if (actual != expected) {
+      throw new StreamReadException(parser, "Ожидался токен " + expected + ", получен " + actual);
+    }
+  }
+
+  /**
+   * Накопитель пачек прочитанных записей. Заполненная пачка отдаётся рабочему потоку, а количество
+   * одновременно обрабатываемых пачек ограничено, чтобы разбор файла не опережал преобразование
+   * записей и не держал в памяти весь файл в виде дерева.
+   */
+  private static final class BatchBinder implements AutoCloseable {
+    private final ExecutorService executor;
+    private final Semaphore batchesInFlight;
+    private final List<Future<?>> futures = new ArrayList<>();
+    private List<Runnable> currentBatch = new ArrayList<>(BATCH_SIZE);
+
+    BatchBinder(int threads) {
+      if (threads > 1) {
+        executor =
+            Executors.newFixedThreadPool(
+                threads,
+                runnable -> {
+                  Thread thread = new Thread(runnable, "storage-loader");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+        batchesInFlight = new Semaphore(threads * 2);
+      } else {
+        executor = null;
+        batchesInFlight = null;
+      }
+    }
+
+    void add(TreeNode node, Consumer<TreeNode> bindAndStore) {
+      if (executor == null) {
+        bindAndStore.accept(node);
+        return;
+      }
+      currentBatch.add(() -> bindAndStore.accept(node));
+      if (currentBatch.size() >= BATCH_SIZE) {
+        submitCurrentBatch();
+      }
+    }
+
+    private void submitCurrentBatch() {
+      if (currentBatch.isEmpty()) {
+        return;
+      }
+      List<Runnable> batch = currentBatch;
+      currentBatch = new ArrayList<>(BATCH_SIZE);
+      batchesInFlight.acquireUninterruptibly();
+      futures.add(
+          executor.submit(
+              () -> {
+                try {
+                  batch.forEach(Runnable::run);
+                } finally {
+                  batchesInFlight.release();
+                }
+              }));
+    }
+
+    /** Метод дожидается обработки всех пачек и пробрасывает первую возникшую в них ошибку. */
+    void awaitAll() {
+      if (executor == null) {
+        return;
+      }
+      submitCurrentBatch();
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Загрузка данных была прервана.", e);
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+          }
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Потоковая запись StorageState в JSON-файл по секциям. Структура файла совпадает с той, что
+ * получается при сериализации StorageState целиком, но каждая секция записывается отдельно и для её
+ * байтов считается контрольная сумма CRC32C. Суммы записываются в конце файла в секцию
+ * "sectionChecksums" и проверяются StorageStateStreamReader при загрузке, поэтому повреждение
+ * данных внутри файла, не нарушающее синтаксис JSON, тоже обнаруживается.
+ */
+final class StorageStateStreamWriter {
+  private final ObjectMapper objectMapper;
+
+  StorageStateStreamWriter(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  /** Метод записывает все секции StorageState и их контрольные суммы в поток. */
+  void write(OutputStream out, StorageState storageState) throws IOException, JacksonException {
+    ChecksumOutputStream checksumOut = new ChecksumOutputStream(out);
+    Map<String, Long> sectionChecksums = new LinkedHashMap<>();
+
+    writeAscii(out, "{");
+    writeSection(
+        checksumOut,
+        StorageStateStreamReader.SHORT_LINKS_SECTION,
+        storageState.getExistingShortLinks(),
+        sectionChecksums);
+    writeAscii(out, ",");
+    writeSection(
+        checksumOut,
+        StorageStateStreamReader.USERS_SECTION,
+        storageState.getExistingUsers(),
+        sectionChecksums);
+    writeAscii(out, ",");
+    writeSection(
+        checksumOut,
+        StorageStateStreamReader.NOTIFICATIONS_SECTION,
+        storageState.getUnreadNotifications(),
+        sectionChecksums);
+    writeAscii(out, ",\"" + StorageStateStreamReader.CHECKSUMS_SECTION + "\":");
+    objectMapper.writeValue(checksumOut, sectionChecksums);
+    writeAscii(out, "}");
+    out.flush();
+  }
+
+  /** В контрольную сумму секции входят только байты её значения, без имени. */
+  private void writeSection(
+      ChecksumOutputStream checksumOut,
+      String sectionName,
+      Object sectionValue,
+      Map<String, Long> sectionChecksums)
+      throws IOException {
+    writeAscii(checksumOut, "\"" + sectionName + "\":");
+    checksumOut.checksum.reset();
+    objectMapper.writeValue(checksumOut, sectionValue);
+    sectionChecksums.put(sectionName, checksumOut.checksum.getValue());
+  }
+
+  private static void writeAscii(OutputStream out, String text) throws IOException {
+    out.write(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Поток, считающий контрольную сумму всех проходящих через него байтов. Не закрывает нижележащий
+   * поток, так как ObjectMapper закрывает поток после записи каждого значения.
+   */
+  private static final class ChecksumOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final CRC32C checksum = new CRC32C();
+
+    ChecksumOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      checksum.update(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      out.write(bytes, offset, length);
+      checksum.update(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.flush();
+    }
+  }
+}
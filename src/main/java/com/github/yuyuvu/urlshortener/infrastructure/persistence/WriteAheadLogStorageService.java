@@ -0,0 +1,733 @@
+package com.github.yuyuvu.urlshortener.infrastructure.persistence;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.domain.repository.NotificationRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Реализация StorageService с журналом упреждающей записи (write-ahead log). Каждое изменение
+ * данных в репозиториях сразу кодируется в компактную двоичную запись и дописывается в конец
+ * журнала фоновым потоком, который сбрасывает на диск сразу пачку накопившихся записей (group
+ * commit). Полный снимок данных делегируется другому StorageService (например, FileStorageService)
+ * и делается только когда журнал становится слишком большим. <br>
+ * При запуске сервиса загружается последний снимок, а поверх него проигрываются все записи журнала,
+ * сделанные после него. Поэтому аварийное завершение теряет не больше нескольких миллисекунд
+ * изменений, а штатное выключение не требует пересохранения всех данных.
+ */
+public class WriteAheadLogStorageService implements StorageService, StorageChangeListener {
+  /* Типы записей журнала. */
+  private static final byte SHORT_LINK_SAVED = 1;
+  private static final byte SHORT_LINK_USAGE_UPDATED = 2;
+  private static final byte SHORT_LINK_DELETED = 3;
+  private static final byte USER_SAVED = 4;
+  private static final byte USER_DELETED = 5;
+  private static final byte NOTIFICATION_SAVED = 6;
+  private static final byte NOTIFICATION_MARKED_AS_READ = 7;
+  private static final byte NOTIFICATION_DELETED = 8;
+
+  /** Защита от чтения мусора вместо длины записи в повреждённом журнале. */
+  private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+  private static final String SEGMENT_FILE_SUFFIX = ".log";
+
+  /** Хранилище полных снимков данных, поверх которых проигрывается журнал. */
+  private final StorageService snapshotStorageService;
+
+  private final ConfigManager configManager;
+
+  /* Буфер ещё не записанных на диск записей и счётчики для ожидания их записи. */
+  private final Object bufferLock = new Object();
+  private final ByteArrayOutputStream pendingRecords = new ByteArrayOutputStream();
+  private long appendedRecordsCount;
+  private long writtenRecordsCount;
+  private IOException writeFailure;
+
+  /* Текущий файл-сегмент журнала, в который дописываются записи. */
+  private final Object segmentLock = new Object();
+  private Path walDirectory;
+  private FileChannel currentSegment;
+  private long currentSegmentNumber;
+  private long logSizeInBytes;
+
+  /*
+   * Ключи записей, восстановленных из журнала при запуске. Их ещё нет в снимке данных, поэтому
+   * перед ближайшим снимком они помечаются изменёнными в репозиториях.
+   * */
+  private final Set<String> replayedShortIds = new HashSet<>();
+  private final Set<UUID> replayedUserUUIDs = new HashSet<>();
+  private final Set<UUID> replayedNotificationUserUUIDs = new HashSet<>();
+
+  private Thread writerThread;
+  private volatile boolean running;
+
+  /**
+   * Конструктор журнала упреждающей записи поверх хранилища полных снимков данных. Путь до журнала
+   * вычисляется из пути до файла хранилища в настройках.
+   */
+  public WriteAheadLogStorageService(
+      StorageService snapshotStorageService, ConfigManager configManager) {
+    this.snapshotStorageService = snapshotStorageService;
+    this.configManager = configManager;
+  }
+
+  /*
+   * Методы StorageService.
+   * */
+
+  /**
+   * Метод загружает последний полный снимок данных и проигрывает поверх него все записи журнала.
+   * После этого журнал начинает принимать новые записи в новый сегмент.
+   */
+  @Override
+  public Optional<StorageState> loadState() throws StorageStatePersistenceException {
+    Optional<StagedStorageState> storageState =
+        replayLog(snapshotStorageService.loadState().map(StagedStorageState::completed));
+    return storageState.isEmpty() ? Optional.empty() : Optional.of(storageState.get().join());
+  }
+
+  /**
+   * Метод загружает снимок данных по частям и проигрывает поверх него журнал. Записи коротких
+   * ссылок применяются сразу, а записи пользователей и уведомлений - к каждому шарду после его
+   * загрузки.
+   */
+  @Override
+  public Optional<StagedStorageState> loadStateStaged() throws StorageStatePersistenceException {
+    return replayLog(snapshotStorageService.loadStateStaged());
+  }
+
+  private Optional<StagedStorageState> replayLog(Optional<StagedStorageState> snapshot)
+      throws StorageStatePersistenceException {
+    StagedStorageState storageState =
+        snapshot.orElseGet(() -> StagedStorageState.completed(new StorageState()));
+
+    // Записи пользователей и уведомлений откладываются до загрузки их шардов
+    int shardCount = storageState.shardCount();
+    List<Map<UUID, User>> userChanges = new ArrayList<>(shardCount);
+    List<List<Consumer<Map<String, Notification>>>> notificationChanges =
+        new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      userChanges.add(new LinkedHashMap<>());
+      notificationChanges.add(new ArrayList<>());
+    }
+    Path directory = resolveWalDirectory();
+    List<Path> segments = listSegments(directory);
+    for (Path segment : segments) {
+      replaySegment(
+          segment, storageState.getExistingShortLinks(), userChanges, notificationChanges);
+    }
+    for (int shard = 0; shard < shardCount; shard++) {
+      applyDeferredChanges(
+          storageState, shard, userChanges.get(shard), notificationChanges.get(shard));
+    }
+
+    synchronized (segmentLock) {
+      this.walDirectory = directory;
+      this.logSizeInBytes = sizeOf(segments);
+      this.currentSegmentNumber =
+          segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+    }
+    start();
+
+    if (snapshot.isEmpty() && segments.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(storageState);
+  }
+
+  /**
+   * Метод дожидается записи на диск всех изменений. Если журнал разросся больше заданного в
+   * настройках размера, то дополнительно делает полный снимок данных и удаляет старые сегменты
+   * журнала, которые им покрываются.
+   */
+  @Override
+  public void saveStorageState(
+      UserRepository userRepository,
+      ShortLinkRepository shortLinkRepository,
+      NotificationRepository notificationRepository)
+      throws StorageStatePersistenceException {
+    start();
+    sync();
+
+    long checkpointSizeInBytes =
+        configManager.getStorageWriteAheadLogCheckpointSizeMbProperty() * 1024L * 1024L;
+    long coveredSegmentNumber;
+    synchronized (segmentLock) {
+      if (logSizeInBytes < checkpointSizeInBytes) {
+        return;
+      }
+      // Все последующие записи пойдут в новый сегмент, а предыдущие покроются снимком
+      coveredSegmentNumber = currentSegmentNumber;
+      openNextSegment();
+    }
+
+    markReplayedKeysDirty(userRepository, shortLinkRepository, notificationRepository);
+    snapshotStorageService.saveStorageState(
+        userRepository, shortLinkRepository, notificationRepository);
+    deleteSegmentsUpTo(coveredSegmentNumber);
+  }
+
+  /**
+   * Метод помечает восстановленные из журнала записи как изменённые, чтобы инкрементальный снимок
+   * данных их сохранил до удаления покрываемых им сегментов журнала.
+   */
+  private void markReplayedKeysDirty(
+      UserRepository userRepository,
+      ShortLinkRepository shortLinkRepository,
+      NotificationRepository notificationRepository) {
+    DirtyTrackingRepository<UUID> dirtyUsers =
+        DirtyTrackingRepository.asDirtyTracking(userRepository);
+    DirtyTrackingRepository<String> dirtyShortLinks =
+        DirtyTrackingRepository.asDirtyTracking(shortLinkRepository);
+    DirtyTrackingRepository<UUID> dirtyNotifications =
+        DirtyTrackingRepository.asDirtyTracking(notificationRepository);
+    if (dirtyUsers != null) {
+      dirtyUsers.markDirtyKeys(replayedUserUUIDs);
+    }
+    if (dirtyShortLinks != null) {
+      dirtyShortLinks.markDirtyKeys(replayedShortIds);
+    }
+    if (dirtyNotifications != null) {
+      dirtyNotifications.markDirtyKeys(replayedNotificationUserUUIDs);
+    }
+    replayedUserUUIDs.clear();
+    replayedShortIds.clear();
+    replayedNotificationUserUUIDs.clear();
+  }
+
+  /** Метод дописывает на диск все накопленные записи и останавливает фоновый поток журнала. */
+  @Override
+  public void close() throws StorageStatePersistenceException {
+    Thread writer;
+    synchronized (bufferLock) {
+      writer = writerThread;
+      running = false;
+      bufferLock.notifyAll();
+    }
+    if (writer != null) {
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (segmentLock) {
+      try {
+        if (currentSegment != null) {
+          currentSegment.close();
+          currentSegment = null;
+        }
+      } catch (IOException e) {
+        throw persistenceException("Проблемы с закрытием журнала упреждающей записи", e);
+      }
+    }
+    synchronized (bufferLock) {
+      if (writeFailure != null) {
+        throw persistenceException("Часть изменений не была записана в журнал", writeFailure);
+      }
+    }
+  }
+
+  /*
+   * Методы StorageChangeListener, которые превращают изменения в записи журнала.
+   * */
+
+  @Override
+  public void onShortLinkSaved(ShortLink shortLink) {
+    append(SHORT_LINK_SAVED, out -> StorageRecordCodec.writeShortLink(out, shortLink));
+  }
+
+  @Override
+  public void onShortLinkUsageUpdated(ShortLink shortLink) {
+    append(
+        SHORT_LINK_USAGE_UPDATED,
+        out -> {
+          StorageRecordCodec.writeString(out, shortLink.getShortId());
+          out.writeInt(shortLink.getUsageCounter());
+        });
+  }
+
+  @Override
+  public void onShortLinkDeleted(String shortId) {
+    append(SHORT_LINK_DELETED, out -> StorageRecordCodec.writeString(out, shortId));
+  }
+
+  @Override
+  public void onUserSaved(User user) {
+    append(USER_SAVED, out -> StorageRecordCodec.writeUser(out, user));
+  }
+
+  @Override
+  public void onUserDeleted(UUID uuid) {
+    append(USER_DELETED, out -> StorageRecordCodec.writeUUID(out, uuid));
+  }
+
+  @Override
+  public void onNotificationSaved(Notification notification) {
+    append(NOTIFICATION_SAVED, out -> StorageRecordCodec.writeNotification(out, notification));
+  }
+
+  @Override
+  public void onNotificationsMarkedAsRead(List<Notification> notifications) {
+    for (Notification notification : notifications) {
+      append(
+          NOTIFICATION_MARKED_AS_READ,
+          out ->
+              StorageRecordCodec.writeString(
+                  out, StorageRecordCodec.notificationKey(notification)));
+    }
+  }
+
+  @Override
+  public void onNotificationDeleted(Notification notification) {
+    append(
+        NOTIFICATION_DELETED,
+        out ->
+            StorageRecordCodec.writeString(out, StorageRecordCodec.notificationKey(notification)));
+  }
+
+  /*
+   * Запись журнала.
+   * */
+
+  /** Функция, записывающая тело записи журнала определённого типа. */
+  @FunctionalInterface
+  private interface RecordBodyWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /**
+   * Метод кодирует запись в формате [длина тела][CRC32C тела][тип][данные] и помещает её в буфер,
+   * из которого фоновый поток сбрасывает записи на диск. Вызывающий поток не ждёт диска.
+   */
+  private void append(byte recordType, RecordBodyWriter bodyWriter) {
+    byte[] body;
+    try {
+      ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64);
+      DataOutputStream out = new DataOutputStream(bodyBytes);
+      out.writeByte(recordType);
+      bodyWriter.write(out);
+      out.flush();
+      body = bodyBytes.toByteArray();
+    } catch (IOException e) {
+      // Запись в память не выбрасывает IOException
+      throw new IllegalStateException(e);
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(body);
+
+    synchronized (bufferLock) {
+      writeInt(pendingRecords, body.length);
+      writeInt(pendingRecords, (int) crc.getValue());
+      pendingRecords.write(body, 0, body.length);
+      appendedRecordsCount++;
+      bufferLock.notifyAll();
+    }
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  /** Метод ожидает, пока все добавленные к этому моменту записи не окажутся на диске. */
+  private void sync() throws StorageStatePersistenceException {
+    synchronized (bufferLock) {
+      long target = appendedRecordsCount;
+      while (writtenRecordsCount < target && writeFailure == null && running) {
+        try {
+          bufferLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new StorageStatePersistenceException(
+              "Ожидание записи журнала упреждающей записи было прервано.");
+        }
+      }
+      if (writeFailure != null) {
+        throw persistenceException("Часть изменений не была записана в журнал", writeFailure);
+      }
+    }
+  }
+
+  /** Метод запускает фоновый поток журнала, если он ещё не запущен. */
+  private void start() throws StorageStatePersistenceException {
+    synchronized (segmentLock) {
+      if (walDirectory == null) {
+        walDirectory = resolveWalDirectory();
+        List<Path> segments = listSegments(walDirectory);
+        logSizeInBytes = sizeOf(segments);
+        currentSegmentNumber =
+            segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+      }
+      if (currentSegment == null) {
+        openNextSegment();
+      }
+    }
+    synchronized (bufferLock) {
+      if (writerThread == null) {
+        running = true;
+        writerThread = new Thread(this::runWriter, "wal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+      }
+    }
+  }
+
+  /**
+   * Цикл фонового потока: ждёт появления записей, даёт им накопиться в течение заданного в
+   * настройках времени, после чего одним вызовом записывает их и сбрасывает на диск (fsync).
+   */
+  private void runWriter() {
+    int groupCommitMillis = configManager.getStorageWriteAheadLogGroupCommitMillisProperty();
+    while (true) {
+      synchronized (bufferLock) {
+        while (pendingRecords.size() == 0 && running) {
+          try {
+            bufferLock.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+        if (pendingRecords.size() == 0) {
+          return;
+        }
+      }
+
+      // Даём набраться пачке записей, чтобы один fsync покрыл их все
+      if (groupCommitMillis > 0 && running) {
+        try {
+          Thread.sleep(groupCommitMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      byte[] batch;
+      long batchRecordsCount;
+      synchronized (bufferLock) {
+        batch = pendingRecords.toByteArray();
+        pendingRecords.reset();
+        batchRecordsCount = appendedRecordsCount;
+      }
+
+      IOException failure = null;
+      synchronized (segmentLock) {
+        try {
+          ByteBuffer buffer = ByteBuffer.wrap(batch);
+          while (buffer.hasRemaining()) {
+            currentSegment.write(buffer);
+          }
+          currentSegment.force(false);
+          logSizeInBytes += batch.length;
+        } catch (IOException e) {
+          failure = e;
+        }
+      }
+
+      synchronized (bufferLock) {
+        if (failure != null && writeFailure == null) {
+          writeFailure = failure;
+          System.err.println(
+              "Проблемы с записью журнала упреждающей записи: "
+                  + walDirectory
+                  + " "
+                  + failure.getMessage());
+        }
+        writtenRecordsCount = batchRecordsCount;
+        bufferLock.notifyAll();
+      }
+    }
+  }
+
+  /*
+   * Сегменты журнала.
+   * */
+
+  /** Журнал хранится рядом с файлом хранилища в папке с тем же именем и суффиксом -wal. */
+  private Path resolveWalDirectory() {
+    Path storagePath = configManager.getFileStoragePathProperty();
+    return storagePath.resolveSibling(storagePath.getFileName() + "-wal");
+  }
+
+  /** Метод закрывает текущий сегмент и открывает следующий. Вызывается под segmentLock. */
+  private void openNextSegment() throws StorageStatePersistenceException {
+    try {
+      if (currentSegment != null) {
+        currentSegment.close();
+      }
+      Files.createDirectories(walDirectory);
+      currentSegmentNumber++;
+      currentSegment =
+          FileChannel.open(
+              walDirectory.resolve(segmentFileName(currentSegmentNumber)),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw persistenceException("Проблемы с созданием сегмента журнала упреждающей записи", e);
+    }
+  }
+
+  private void deleteSegmentsUpTo(long segmentNumber) throws StorageStatePersistenceException {
+    long deletedBytes = 0;
+    try {
+      for (Path segment : listSegments(walDirectory)) {
+        if (segmentNumber(segment) <= segmentNumber) {
+          deletedBytes += Files.size(segment);
+          Files.delete(segment);
+        }
+      }
+    } catch (IOException e) {
+      throw persistenceException("Проблемы с удалением старых сегментов журнала", e);
+    } finally {
+      synchronized (segmentLock) {
+        logSizeInBytes = Math.max(0, logSizeInBytes - deletedBytes);
+      }
+    }
+  }
+
+  private static String segmentFileName(long segmentNumber) {
+    return String.format("%020d", segmentNumber) + SEGMENT_FILE_SUFFIX;
+  }
+
+  private static long segmentNumber(Path segment) {
+    String fileName = segment.getFileName().toString();
+    return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+  }
+
+  /** Метод возвращает все сегменты журнала по порядку их создания. */
+  private static List<Path> listSegments(Path directory) throws StorageStatePersistenceException {
+    if (!Files.isDirectory(directory)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(file -> file.getFileName().toString().matches("\\d{20}\\.log"))
+          .sorted()
+          .toList();
+    } catch (IOException e) {
+      throw persistenceException("Проблемы с чтением папки журнала: " + directory, e);
+    }
+  }
+
+  private static long sizeOf(List<Path> segments) throws StorageStatePersistenceException {
+    long size = 0;
+    try {
+      for (Path segment : segments) {
+        size += Files.size(segment);
+      }
+    } catch (IOException e) {
+      throw persistenceException("Проблемы с чтением сегментов журнала", e);
+    }
+    return size;
+  }
+
+  /*
+   * Восстановление данных из журнала.
+   * */
+
+  /**
+   * Метод последовательно применяет записи сегмента к коротким ссылкам и собирает по шардам
+   * изменения пользователей и уведомлений. Недописанная или повреждённая запись в конце сегмента
+   * (например, после аварийного выключения) и всё после неё пропускаются.
+   */
+  private void replaySegment(
+      Path segment,
+      Map<String, ShortLink> shortLinks,
+      List<Map<UUID, User>> userChanges,
+      List<List<Consumer<Map<String, Notification>>>> notificationChanges)
+      throws StorageStatePersistenceException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+      while (true) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        if (length <= 0 || length > MAX_RECORD_LENGTH) {
+          reportCorruptedTail(segment);
+          break;
+        }
+        int expectedCrc = in.readInt();
+        byte[] body = new byte[length];
+        in.readFully(body);
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        if ((int) crc.getValue() != expectedCrc) {
+          reportCorruptedTail(segment);
+          break;
+        }
+        applyRecord(body, shortLinks, userChanges, notificationChanges);
+      }
+    } catch (EOFException e) {
+      reportCorruptedTail(segment);
+    } catch (IOException e) {
+      throw persistenceException("Проблемы с чтением журнала упреждающей записи: " + segment, e);
+    }
+  }
+
+  private void applyRecord(
+      byte[] body,
+      Map<String, ShortLink> shortLinks,
+      List<Map<UUID, User>> userChanges,
+      List<List<Consumer<Map<String, Notification>>>> notificationChanges)
+      throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+    byte recordType = in.readByte();
+    switch (recordType) {
+      case SHORT_LINK_SAVED -> {
+        ShortLink shortLink = StorageRecordCodec.readShortLink(in);
+        shortLinks.put(shortLink.getShortId(), shortLink);
+        replayedShortIds.add(shortLink.getShortId());
+      }
+      case SHORT_LINK_USAGE_UPDATED -> {
+        String shortId = StorageRecordCodec.readString(in);
+        int usageCounter = in.readInt();
+        replayedShortIds.add(shortId);
+        ShortLink shortLink = shortLinks.get(shortId);
+        // Счётчик только растёт, а записи параллельных переходов могут попасть в журнал не по
+        // порядку, поэтому берётся наибольшее значение
+        if (shortLink != null && shortLink.getUsageCounter() < usageCounter) {
+          shortLinks.put(shortId, StorageRecordCodec.withUsageCounter(shortLink, usageCounter));
+        }
+      }
+      case SHORT_LINK_DELETED -> {
+        String shortId = StorageRecordCodec.readString(in);
+        shortLinks.remove(shortId);
+        replayedShortIds.add(shortId);
+      }
+      case USER_SAVED -> {
+        User user = StorageRecordCodec.readUser(in);
+        userChanges
+            .get(StagedStorageState.shardOf(user.getUUID(), userChanges.size()))
+            .put(user.getUUID(), user);
+        replayedUserUUIDs.add(user.getUUID());
+      }
+      case USER_DELETED -> {
+        UUID uuid = StorageRecordCodec.readUUID(in);
+        userChanges.get(StagedStorageState.shardOf(uuid, userChanges.size())).put(uuid, null);
+        replayedUserUUIDs.add(uuid);
+      }
+      case NOTIFICATION_SAVED -> {
+        Notification notification = StorageRecordCodec.readNotification(in);
+        String key = StorageRecordCodec.notificationKey(notification);
+        notificationChangesOf(notification.getUserUUID(), notificationChanges)
+            .add(notifications -> notifications.put(key, notification));
+      }
+      case NOTIFICATION_MARKED_AS_READ -> {
+        String key = StorageRecordCodec.readString(in);
+        notificationChangesOf(notificationUserUUID(key), notificationChanges)
+            .add(
+                notifications -> {
+                  Notification notification = notifications.get(key);
+                  if (notification != null) {
+                    notification.setRead(true);
+                  }
+                });
+      }
+      case NOTIFICATION_DELETED -> {
+        String key = StorageRecordCodec.readString(in);
+        notificationChangesOf(notificationUserUUID(key), notificationChanges)
+            .add(notifications -> notifications.remove(key));
+      }
+      default -> throw new IOException("Неизвестный тип записи журнала: " + recordType);
+    }
+  }
+
+  /** Метод возвращает отложенные изменения шарда уведомлений пользователя. */
+  private List<Consumer<Map<String, Notification>>> notificationChangesOf(
+      UUID userUUID, List<List<Consumer<Map<String, Notification>>>> notificationChanges) {
+    replayedNotificationUserUUIDs.add(userUUID);
+    return notificationChanges.get(
+        StagedStorageState.shardOf(userUUID, notificationChanges.size()));
+  }
+
+  /** Ключ уведомления начинается с UUID пользователя (см. StorageRecordCodec.notificationKey). */
+  private static UUID notificationUserUUID(String notificationKey) throws IOException {
+    int separator = notificationKey.indexOf('/');
+    try {
+      return UUID.fromString(notificationKey.substring(0, Math.max(separator, 0)));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Некорректный ключ уведомления в журнале: " + notificationKey, e);
+    }
+  }
+
+  /** Метод применяет отложенные записи журнала к шардам пользователей и уведомлений. */
+  private static void applyDeferredChanges(
+      StagedStorageState storageState,
+      int shard,
+      Map<UUID, User> userChanges,
+      List<Consumer<Map<String, Notification>>> notificationChanges) {
+    if (!userChanges.isEmpty()) {
+      storageState.updateUserShard(
+          shard,
+          users ->
+              userChanges.forEach(
+                  (uuid, user) -> {
+                    if (user == null) {
+                      users.remove(uuid);
+                    } else {
+                      users.put(uuid, user);
+                    }
+                  }));
+    }
+    if (!notificationChanges.isEmpty()) {
+      storageState.updateNotificationShard(
+          shard,
+          notifications -> {
+            Map<String, Notification> notificationsByKey = new LinkedHashMap<>();
+            for (Notification notification : notifications) {
+              notificationsByKey.put(
+                  StorageRecordCodec.notificationKey(notification), notification);
+            }
+            notificationChanges.forEach(change -> change.accept(notificationsByKey));
+            notifications.clear();
+            notifications.addAll(notificationsByKey.values());
+          });
+    }
+  }
+
+  private static void reportCorruptedTail(Path segment) {
+    System.err.println(
+        "В конце сегмента журнала упреждающей записи обнаружена недописанная запись: "
+            + segment
+            + ". Она и все последующие записи сегмента будут пропущены.");
+  }
+
+  private static StorageStatePersistenceException persistenceException(
+      String message, Exception e) {
+    return new StorageStatePersistenceException(message + ": " + e.getMessage());
+  }
+}
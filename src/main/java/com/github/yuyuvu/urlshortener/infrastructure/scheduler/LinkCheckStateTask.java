@@ -5,13 +5,13 @@ import com.github.yuyuvu.urlshortener.application.NotificationService;
 import com.github.yuyuvu.urlshortener.application.UserService;
 import com.github.yuyuvu.urlshortener.domain.model.Notification;
 import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
-import java.util.List;
+import com.github.yuyuvu.urlshortener.domain.model.User;
 
 /**
  * Класс представляет задание, которое периодически выполняется в параллельном режиме и включает в
- * себя: проверку истечения срока действия коротких ссылок и их удаление, отправку уведомлений, если
- * был израсходован лимит использований или срок действия ссылки истёк, а также очищение списка уже
- * прочитанных уведомлений.
+ * себя: проверку истечения срока действия коротких ссылок и их удаление, отправку уведомлений, а
+ * также очищение списка уже прочитанных уведомлений. Уведомления об израсходовании лимита
+ * использований создаются не этим заданием, а UsageLimitNotifier в момент перехода по ссылке.
  */
 public class LinkCheckStateTask implements Runnable {
   private final LinkService linkService;
@@ -22,8 +22,7 @@ public class LinkCheckStateTask implements Runnable {
   /**
    * Конструктор для создания задания, которое периодически выполняется в параллельном режиме и
    * включает в себя: проверку истечения срока действия коротких ссылок и их удаление, отправку
-   * уведомлений, если был израсходован лимит использований или срок действия ссылки истёк, а также
-   * очищение списка уже прочитанных уведомлений.
+   * уведомлений, а также очищение списка уже прочитанных уведомлений.
    */
   public LinkCheckStateTask(
       LinkService linkService,
@@ -38,55 +37,33 @@ public class LinkCheckStateTask implements Runnable {
 
   /**
    * Метод, который отвечает за проверку истечения срока действия коротких ссылок и их удаление,
-   * отправку уведомлений, если был израсходован лимит использований или срок действия ссылки истёк,
-   * а также очищение списка уже прочитанных уведомлений.
+   * отправку уведомлений, а также очищение списка уже прочитанных уведомлений.
    */
   @Override
   @SuppressWarnings("CallToPrintStackTrace")
   public void run() {
     try {
-      // Получаем все короткие ссылки сервиса
-      List<ShortLink> allServiceLinks = linkService.listAllShortLinks();
+      // Проходимся только по ссылкам с истёкшим сроком действия (они берутся из колеса таймеров
+      // репозитория, а не перебором всех ссылок)
+      for (ShortLink shortLink : linkService.listExpiredShortLinks()) {
+        // Создаём уведомление нужного типа, сохраняем его в репозиторий
+        Notification notification =
+            notificationService.makeNewShortLinkExpiredNotification(shortLink);
+        notificationService.saveNewNotification(notification);
 
-      // Проходимся по каждой короткой ссылке
-      for (ShortLink shortLink : allServiceLinks) {
+        // Удаляем короткую ссылку в оригинальном ShortLinkRepository через обращение в сервис
+        linkService.uncheckedDeleteShortLinkByShortId(shortLink.getShortId());
 
-        // Случай ссылки с истёкшим сроком действия
-        if (shortLink.isExpired()) {
-          // Создаём уведомление нужного типа, сохраняем его в репозиторий
-          Notification notification =
-              notificationService.makeNewShortLinkExpiredNotification(shortLink);
-          notificationService.saveNewNotification(notification);
-
-          // Удаляем короткую ссылку в оригинальном ShortLinkRepository через обращение в сервис
-          linkService.uncheckedDeleteShortLinkByShortId(shortLink.getShortId());
-
-          // Уменьшаем счётчик созданных коротких ссылок пользователя
-          if (userService.getUserByUUID(shortLink.getOwnerOfShortURL()).isPresent()) {
-            userService
-                .getUserByUUID(shortLink.getOwnerOfShortURL())
-                .get()
-                .decrementAmountOfMadeShortLinks();
-          }
-        }
-
-        // Случай ссылки с израсходованным лимитом использований
-        if (shortLink.isLimitReached() && !shortLink.isLimitNotified()) {
-          // Создаём уведомление нужного типа, сохраняем его в репозиторий, делаем отметку,
-          // что по данной ссылке уже есть уведомление
-          Notification notification =
-              notificationService.makeNewShortLinkLimitReachedNotification(shortLink);
-          notificationService.saveNewNotification(notification);
-          shortLink.setLimitNotified(true);
+        // Уменьшаем счётчик созданных коротких ссылок пользователя
+        if (userService.getUserByUUID(shortLink.getOwnerOfShortURL()).isPresent()) {
+          User owner = userService.getUserByUUID(shortLink.getOwnerOfShortURL()).get();
+          owner.decrementAmountOfMadeShortLinks();
+          userService.updateUser(owner);
         }
       }
 
       // Удаление уже прочитанных уведомлений всех пользователей
-      for (Notification notification : notificationService.listAllNotifications()) {
-        if (notification.isRead()) {
-          notificationService.deleteNotification(notification);
-        }
-      }
+      notificationService.deleteReadNotifications();
 
       // Отправка непрочитанных уведомлений текущему пользователю в коллбэке к ConsoleController
       this.showNotificationsTask.run();
@@ -0,0 +1,46 @@
+package com.github.yuyuvu.urlshortener.infrastructure.scheduler;
+
+import com.github.yuyuvu.urlshortener.domain.repository.NotificationRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
+import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageService;
+
+/**
+ * Класс представляет задание, которое периодически выполняется в параллельном режиме и сохраняет
+ * изменения данных сервиса во внешнее постоянное хранилище, не дожидаясь выключения сервиса.
+ */
+public class StorageCheckpointTask implements Runnable {
+  private final StorageService storageService;
+  private final UserRepository userRepository;
+  private final ShortLinkRepository shortLinkRepository;
+  private final NotificationRepository notificationRepository;
+
+  /**
+   * Конструктор для создания задания, которое периодически сохраняет изменения данных сервиса во
+   * внешнее постоянное хранилище.
+   */
+  public StorageCheckpointTask(
+      StorageService storageService,
+      UserRepository userRepository,
+      ShortLinkRepository shortLinkRepository,
+      NotificationRepository notificationRepository) {
+    this.storageService = storageService;
+    this.userRepository = userRepository;
+    this.shortLinkRepository = shortLinkRepository;
+    this.notificationRepository = notificationRepository;
+  }
+
+  /**
+   * Метод сохраняет изменения данных. Ошибка сохранения не останавливает задание: несохранённые
+   * изменения попадут в следующее сохранение.
+   */
+  @Override
+  public void run() {
+    try {
+      storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    } catch (StorageStatePersistenceException | RuntimeException e) {
+      System.err.println(e.getMessage());
+    }
+  }
+}
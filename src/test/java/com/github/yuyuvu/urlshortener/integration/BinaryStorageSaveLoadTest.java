@@ -0,0 +1,132 @@
+package com.github.yuyuvu.urlshortener.integration;
+
+import static org.mockito.Mockito.when;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.BinaryStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.FileStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryNotificationRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageState;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Класс для тестов сохранения состояния сервиса в двоичный файл, его загрузки и перевода в двоичный
+ * формат существующего JSON-файла.
+ */
+@ExtendWith(MockitoExtension.class)
+public class BinaryStorageSaveLoadTest {
+  private final Path testAppdata = Path.of("test_appdata_binary");
+  private final Path testStoragePath = testAppdata.resolve("test_storage.json");
+  private final Path testBinaryStoragePath = testAppdata.resolve("test_storage.bin");
+
+  @Mock private ConfigManager configManager;
+
+  /** Удаляем все файлы теста. */
+  @AfterEach
+  void cleanUp() throws IOException {
+    if (Files.exists(testAppdata)) {
+      try (Stream<Path> files = Files.walk(testAppdata)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Проверяем, что JSON-файл автоматически переводится в двоичный формат без потерь данных, а
+   * двоичный файл получается в несколько раз меньше.
+   */
+  @Test
+  void convertJsonFileAndLoadBinaryFile() throws StorageStatePersistenceException, IOException {
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+
+    // Сохраняем данные в JSON, как это делалось до появления двоичного формата
+    InMemoryUserRepository userRepository = new InMemoryUserRepository(new HashMap<>());
+    InMemoryShortLinkRepository shortLinkRepository =
+        new InMemoryShortLinkRepository(new HashMap<>());
+    InMemoryNotificationRepository notificationRepository =
+        new InMemoryNotificationRepository(new ArrayList<>());
+    LocalDateTime now = LocalDateTime.now();
+    for (int i = 0; i < 50; i++) {
+      User user = new User(UUID.randomUUID(), 20);
+      userRepository.saveUser(user);
+      for (int j = 0; j < 20; j++) {
+        shortLinkRepository.saveShortLink(
+            new ShortLink(
+                "https://github.com/yuyuvu/" + j,
+                "id" + i + "_" + j,
+                now,
+                now.plusHours(j),
+                j,
+                20,
+                user.getUUID(),
+                j % 2 == 0));
+      }
+    }
+    ShortLink notifiedLink = shortLinkRepository.getShortLinkByShortID("id7_3").orElseThrow();
+    notificationRepository.saveNotification(
+        new Notification(
+            notifiedLink,
+            notifiedLink.getOwnerOfShortURL(),
+            Notification.NotificationType.LIMIT_REACHED,
+            true));
+    new FileStorageService(configManager)
+        .saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+
+    // Первая загрузка переводит JSON в двоичный формат, исходный файл остаётся
+    BinaryStorageService binaryStorageService = new BinaryStorageService(configManager);
+    assertSameState(binaryStorageService.loadState().orElseThrow(), shortLinkRepository);
+    Assertions.assertTrue(Files.exists(testStoragePath));
+    Assertions.assertTrue(Files.exists(testBinaryStoragePath));
+    Assertions.assertTrue(Files.size(testBinaryStoragePath) * 3 < Files.size(testStoragePath));
+
+    // Повторно сохраняем и загружаем уже из двоичного файла
+    Files.delete(testStoragePath);
+    binaryStorageService.saveStorageState(
+        userRepository, shortLinkRepository, notificationRepository);
+    assertSameState(binaryStorageService.loadState().orElseThrow(), shortLinkRepository);
+  }
+
+  private static void assertSameState(
+      StorageState storageState, InMemoryShortLinkRepository shortLinkRepository) {
+    Assertions.assertEquals(50, storageState.getExistingUsers().size());
+    Assertions.assertEquals(1000, storageState.getExistingShortLinks().size());
+    for (ShortLink expected : shortLinkRepository.getAllShortLinks()) {
+      ShortLink actual = storageState.getExistingShortLinks().get(expected.getShortId());
+      Assertions.assertEquals(expected.getOriginalURLAddress(), actual.getOriginalURLAddress());
+      Assertions.assertEquals(expected.getCreationDateTime(), actual.getCreationDateTime());
+      Assertions.assertEquals(expected.getExpirationDateTime(), actual.getExpirationDateTime());
+      Assertions.assertEquals(expected.getUsageCounter(), actual.getUsageCounter());
+      Assertions.assertEquals(expected.getUsageLimitAmount(), actual.getUsageLimitAmount());
+      Assertions.assertEquals(expected.getOwnerOfShortURL(), actual.getOwnerOfShortURL());
+      Assertions.assertEquals(expected.isLimitNotified(), actual.isLimitNotified());
+    }
+
+    Assertions.assertEquals(1, storageState.getUnreadNotifications().size());
+    Notification notification = storageState.getUnreadNotifications().get(0);
+    Assertions.assertEquals("id7_3", notification.getShortLink().getShortId());
+    Assertions.assertEquals(Notification.NotificationType.LIMIT_REACHED, notification.getType());
+    Assertions.assertTrue(notification.isRead());
+  }
+}
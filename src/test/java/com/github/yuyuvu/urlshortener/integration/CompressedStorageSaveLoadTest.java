@@ -0,0 +1,142 @@
+package com.github.yuyuvu.urlshortener.integration;
+
+import static org.mockito.Mockito.when;
+
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.BinaryStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.FileStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryNotificationRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageState;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Класс для тестов сжатия файла данных сервиса и автоматического определения сжатия при загрузке.
+ */
+@ExtendWith(MockitoExtension.class)
+public class CompressedStorageSaveLoadTest {
+  private final Path testAppdata = Path.of("test_appdata_compressed");
+  private final Path testStoragePath = testAppdata.resolve("test_storage.json");
+
+  @Mock private ConfigManager configManager;
+
+  private final InMemoryUserRepository userRepository = new InMemoryUserRepository(new HashMap<>());
+  private final InMemoryShortLinkRepository shortLinkRepository =
+      new InMemoryShortLinkRepository(new HashMap<>());
+  private final InMemoryNotificationRepository notificationRepository =
+      new InMemoryNotificationRepository(new ArrayList<>());
+
+  /** Заполняем репозитории похожими друг на друга ссылками. */
+  @BeforeEach
+  void fillRepositories() {
+    LocalDateTime now = LocalDateTime.now();
+    for (int i = 0; i < 2000; i++) {
+      User user = new User(UUID.randomUUID(), 1);
+      userRepository.saveUser(user);
+      shortLinkRepository.saveShortLink(
+          new ShortLink(
+              "https://github.com/yuyuvu/url-shortener/issues/" + i,
+              "id" + i,
+              now,
+              now.plusDays(1),
+              i % 5,
+              10,
+              user.getUUID(),
+              false));
+    }
+  }
+
+  /** Удаляем все файлы теста. */
+  @AfterEach
+  void cleanUp() throws IOException {
+    if (Files.exists(testAppdata)) {
+      try (Stream<Path> files = Files.walk(testAppdata)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Проверяем, что JSON-файл сжимается через GZIP и загружается без потерь. Сжатие при загрузке
+   * определяется по самому файлу, настройки сжатия для этого не читаются.
+   */
+  @Test
+  void saveAndLoadGzipCompressedJsonFile() throws StorageStatePersistenceException, IOException {
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    FileStorageService storageService = new FileStorageService(configManager);
+
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    final long uncompressedSize = Files.size(testStoragePath);
+
+    when(configManager.getStorageCompressionProperty())
+        .thenReturn(ConfigManager.StorageCompression.GZIP);
+    when(configManager.getStorageCompressionLevelProperty()).thenReturn(9);
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    Assertions.assertArrayEquals(new byte[] {0x1f, (byte) 0x8b}, readFirstBytes(testStoragePath));
+    Assertions.assertTrue(Files.size(testStoragePath) * 5 < uncompressedSize);
+    assertLoadedState(storageService);
+  }
+
+  /** Проверяем сжатие двоичного файла через Deflate. */
+  @Test
+  void saveAndLoadDeflateCompressedBinaryFile()
+      throws StorageStatePersistenceException, IOException {
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    Path binaryStoragePath = testAppdata.resolve("test_storage.bin");
+    BinaryStorageService storageService = new BinaryStorageService(configManager);
+
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    final long uncompressedSize = Files.size(binaryStoragePath);
+
+    when(configManager.getStorageCompressionProperty())
+        .thenReturn(ConfigManager.StorageCompression.DEFLATE);
+    when(configManager.getStorageCompressionLevelProperty()).thenReturn(1);
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    Assertions.assertEquals(0x78, readFirstBytes(binaryStoragePath)[0]);
+    Assertions.assertTrue(Files.size(binaryStoragePath) < uncompressedSize);
+    assertLoadedState(storageService);
+  }
+
+  private void assertLoadedState(StorageService storageService)
+      throws StorageStatePersistenceException {
+    StorageState storageState = storageService.loadState().orElseThrow();
+    Assertions.assertEquals(2000, storageState.getExistingUsers().size());
+    Assertions.assertEquals(2000, storageState.getExistingShortLinks().size());
+    ShortLink loadedShortLink = storageState.getExistingShortLinks().get("id1234");
+    ShortLink savedShortLink = shortLinkRepository.getShortLinkByShortID("id1234").orElseThrow();
+    Assertions.assertEquals(
+        savedShortLink.getOriginalURLAddress(), loadedShortLink.getOriginalURLAddress());
+    Assertions.assertEquals(
+        savedShortLink.getExpirationDateTime(), loadedShortLink.getExpirationDateTime());
+    Assertions.assertEquals(savedShortLink.getUsageCounter(), loadedShortLink.getUsageCounter());
+  }
+
+  private static byte[] readFirstBytes(Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return in.readNBytes(2);
+    }
+  }
+}
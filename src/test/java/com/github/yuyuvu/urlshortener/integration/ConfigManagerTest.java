@@ -1,6 +1,8 @@
 package com.github.yuyuvu.urlshortener.integration;
 
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigFileWatcher;
 import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigSnapshot;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -8,7 +10,11 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -85,6 +91,131 @@ public class ConfigManagerTest {
     System.setOut(out);
   }
 
+  /**
+   * Проверяем, что настройки разбираются один раз при загрузке (повторное чтение отдаёт те же
+   * объекты), а перезагрузка публикует новый снимок настроек целиком.
+   */
+  @Test
+  void reloadSwapsParsedSnapshot() throws IOException {
+    Path testAppdata = Path.of("test_appdata_snapshot");
+    Path pathToConfigFile = testAppdata.resolve("url_shortener_test_config.properties");
+    try {
+      ConfigManager configManager = new ConfigManager(testAppdata, pathToConfigFile);
+      final ConfigSnapshot loadedSnapshot = configManager.getConfigSnapshot();
+      Assertions.assertSame(
+          configManager.getShortLinkAllowedCharactersProperty(),
+          configManager.getShortLinkAllowedCharactersProperty());
+      Assertions.assertSame(
+          configManager.getLegacyServiceBaseURLProperty(),
+          configManager.getLegacyServiceBaseURLProperty());
+      Assertions.assertEquals(6, configManager.getDefaultShortLinkIdLengthProperty());
+
+      String lengthKey = ConfigManager.ConfigProperty.DEFAULT_SHORT_LINK_LENGTH.key();
+      Files.writeString(
+          pathToConfigFile,
+          Files.readString(pathToConfigFile, StandardCharsets.UTF_8)
+              .replace(lengthKey + "=6", lengthKey + "=8"),
+          StandardCharsets.UTF_8);
+      // Файл изменён, но до перезагрузки действует прежний снимок
+      Assertions.assertEquals(6, configManager.getDefaultShortLinkIdLengthProperty());
+
+      configManager.reloadConfig();
+      Assertions.assertNotSame(loadedSnapshot, configManager.getConfigSnapshot());
+      Assertions.assertEquals(8, configManager.getConfigSnapshot().defaultShortLinkIdLength());
+      Assertions.assertEquals(8, configManager.getDefaultShortLinkIdLengthProperty());
+      Assertions.assertEquals(6, loadedSnapshot.defaultShortLinkIdLength());
+    } finally {
+      Files.deleteIfExists(pathToConfigFile);
+      Files.deleteIfExists(testAppdata);
+    }
+  }
+
+  /**
+   * Проверяем, что в файл конфигурации без ключа перестановки коротких ID (созданный прежней
+   * версией сервиса) ключ дописывается один раз и затем остаётся тем же при следующих запусках.
+   */
+  @Test
+  void shortLinkIdKeyIsAppendedToExistingConfigFile() throws IOException {
+    Path testAppdata = Path.of("test_appdata_id_key");
+    Path pathToConfigFile = testAppdata.resolve("url_shortener_test_config.properties");
+    String keyName = ConfigManager.ConfigProperty.SHORT_LINK_ID_KEY.key();
+    try {
+      Files.createDirectories(testAppdata);
+      Files.writeString(
+          pathToConfigFile,
+          ConfigManager.ConfigProperty.DEFAULT_SHORT_LINK_LENGTH.key() + "=7",
+          StandardCharsets.UTF_8);
+
+      ConfigManager configManager = new ConfigManager(testAppdata, pathToConfigFile);
+      final long shortLinkIdKey = configManager.getShortLinkIdKeyProperty();
+      String configText = Files.readString(pathToConfigFile, StandardCharsets.UTF_8);
+      Assertions.assertTrue(configText.contains(keyName + "=" + shortLinkIdKey));
+      Assertions.assertEquals(7, configManager.getDefaultShortLinkIdLengthProperty());
+
+      // Файл уже содержит ключ: следующие загрузки его не меняют и используют тот же ключ
+      Assertions.assertFalse(configManager.reloadConfigIfChanged());
+      ConfigManager restartedConfigManager = new ConfigManager(testAppdata, pathToConfigFile);
+      Assertions.assertEquals(shortLinkIdKey, restartedConfigManager.getShortLinkIdKeyProperty());
+      Assertions.assertEquals(
+          configText, Files.readString(pathToConfigFile, StandardCharsets.UTF_8));
+    } finally {
+      Files.deleteIfExists(pathToConfigFile);
+      Files.deleteIfExists(testAppdata);
+    }
+  }
+
+  /**
+   * Проверяем, что после серии правок файла конфигурации настройки перезагружаются автоматически
+   * один раз для всей серии, слушатели получают новый снимок, а сохранение файла без изменений
+   * настройки не перезагружает.
+   */
+  @Test
+  void configFileEditsAreReloadedAutomatically() throws Exception {
+    Path testAppdata = Path.of("test_appdata_hot_reload");
+    Path pathToConfigFile = testAppdata.resolve("url_shortener_test_config.properties");
+    ConfigManager configManager = new ConfigManager(testAppdata, pathToConfigFile);
+    List<ConfigSnapshot> reloadedSnapshots = new CopyOnWriteArrayList<>();
+    configManager.addConfigReloadListener(reloadedSnapshots::add);
+    Optional<ConfigFileWatcher> configFileWatcher = configManager.startConfigFileWatcher();
+    try {
+      Assertions.assertTrue(configFileWatcher.isPresent());
+      String lengthKey = ConfigManager.ConfigProperty.DEFAULT_SHORT_LINK_LENGTH.key();
+      String loadedConfigText = Files.readString(pathToConfigFile, StandardCharsets.UTF_8);
+      for (int length = 7; length <= 11; length++) {
+        Files.writeString(
+            pathToConfigFile,
+            loadedConfigText.replace(lengthKey + "=6", lengthKey + "=" + length),
+            StandardCharsets.UTF_8);
+      }
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (configManager.getDefaultShortLinkIdLengthProperty() != 11
+          && System.nanoTime() < deadline) {
+        Thread.sleep(20);
+      }
+      Assertions.assertEquals(11, configManager.getDefaultShortLinkIdLengthProperty());
+      Assertions.assertFalse(reloadedSnapshots.isEmpty());
+      Assertions.assertTrue(reloadedSnapshots.size() < 5);
+      Assertions.assertSame(
+          configManager.getConfigSnapshot(), reloadedSnapshots.get(reloadedSnapshots.size() - 1));
+
+      // Повторная запись того же текста не перезагружает настройки
+      int reloads = reloadedSnapshots.size();
+      Files.writeString(
+          pathToConfigFile,
+          Files.readString(pathToConfigFile, StandardCharsets.UTF_8),
+          StandardCharsets.UTF_8);
+      Thread.sleep(3L * configManager.getConfigHotReloadDebounceMillisProperty());
+      Assertions.assertEquals(reloads, reloadedSnapshots.size());
+    } finally {
+      if (configFileWatcher.isPresent()) {
+        configFileWatcher.get().close();
+      }
+      Files.deleteIfExists(pathToConfigFile);
+      Files.deleteIfExists(testAppdata);
+    }
+  }
+
   private static Properties makeIncorrectProperties() {
     Properties incorrectProperties = new Properties();
 
@@ -22,9 +22,13 @@ import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageState;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -143,4 +147,128 @@ public class FileStorageSaveLoadTest {
     Files.deleteIfExists(testStoragePath);
     Files.deleteIfExists(testAppdata);
   }
+
+  /**
+   * Проверяем, что при потоковой загрузке в несколько потоков все записи попадают в репозитории без
+   * потерь и с правильными значениями полей.
+   */
+  @Test
+  void loadLargeFileStorageInParallel() throws StorageStatePersistenceException, IOException {
+    Path testAppdata = Path.of("test_appdata_parallel");
+    Path testStoragePath = testAppdata.resolve("test_storage.json");
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    when(configManager.getStorageLoadThreadsProperty()).thenReturn(4);
+
+    // Записей больше, чем помещается в несколько пачек загрузки
+    InMemoryUserRepository userRepository = new InMemoryUserRepository(new HashMap<>());
+    InMemoryShortLinkRepository shortLinkRepository =
+        new InMemoryShortLinkRepository(new HashMap<>());
+    LocalDateTime now = LocalDateTime.now();
+    for (int i = 0; i < 5000; i++) {
+      User user = new User(UUID.randomUUID(), i);
+      userRepository.saveUser(user);
+      shortLinkRepository.saveShortLink(
+          new ShortLink(
+              "https://github.com/" + i,
+              "id" + i,
+              now,
+              now.plusMinutes(i),
+              i % 7,
+              10,
+              user.getUUID(),
+              false));
+    }
+
+    FileStorageService fileStorageService = new FileStorageService(configManager);
+    fileStorageService.saveStorageState(
+        userRepository, shortLinkRepository, new InMemoryNotificationRepository(new ArrayList<>()));
+    StorageState storageState = fileStorageService.loadState().orElseThrow();
+
+    Assertions.assertEquals(5000, storageState.getExistingUsers().size());
+    Assertions.assertEquals(5000, storageState.getExistingShortLinks().size());
+    ShortLink loadedShortLink = storageState.getExistingShortLinks().get("id4321");
+    Assertions.assertEquals("https://github.com/4321", loadedShortLink.getOriginalURLAddress());
+    Assertions.assertEquals(now.plusMinutes(4321), loadedShortLink.getExpirationDateTime());
+    Assertions.assertEquals(4321 % 7, loadedShortLink.getUsageCounter());
+    Assertions.assertEquals(
+        4321,
+        storageState
+            .getExistingUsers()
+            .get(loadedShortLink.getOwnerOfShortURL())
+            .getAmountOfMadeShortLinks());
+
+    Files.deleteIfExists(testStoragePath);
+    Files.deleteIfExists(testAppdata);
+  }
+
+  /**
+   * Проверяем, что короткие ссылки, пользователи и уведомления делятся на заданное количество
+   * файлов-шардов, которые записываются и загружаются параллельно, а старые снимки удаляются.
+   */
+  @Test
+  void saveAndLoadShardedFileStorage() throws StorageStatePersistenceException, IOException {
+    Path testAppdata = Path.of("test_appdata_sharded");
+    Path testStoragePath = testAppdata.resolve("test_storage.json");
+    final Path shardsDirectory = testAppdata.resolve("test_storage.json-shards");
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    when(configManager.getStorageLoadThreadsProperty()).thenReturn(4);
+    when(configManager.getStorageSnapshotGenerationsProperty()).thenReturn(1);
+    when(configManager.getStorageSnapshotShardsProperty()).thenReturn(8);
+
+    InMemoryUserRepository userRepository = new InMemoryUserRepository(new HashMap<>());
+    InMemoryShortLinkRepository shortLinkRepository =
+        new InMemoryShortLinkRepository(new HashMap<>());
+    InMemoryNotificationRepository notificationRepository =
+        new InMemoryNotificationRepository(new ArrayList<>());
+    LocalDateTime now = LocalDateTime.now();
+    User user = new User(UUID.randomUUID(), 3000);
+    userRepository.saveUser(user);
+    for (int i = 0; i < 3000; i++) {
+      shortLinkRepository.saveShortLink(
+          new ShortLink(
+              "https://github.com/" + i,
+              "id" + i,
+              now,
+              now.plusMinutes(i),
+              0,
+              10,
+              user.getUUID(),
+              false));
+    }
+    notificationRepository.saveNotification(
+        new Notification(
+            shortLinkRepository.getShortLinkByShortID("id1").orElseThrow(),
+            user.getUUID(),
+            Notification.NotificationType.EXPIRED,
+            false));
+
+    FileStorageService fileStorageService = new FileStorageService(configManager);
+    for (int i = 0; i < 3; i++) {
+      fileStorageService.saveStorageState(
+          userRepository, shortLinkRepository, notificationRepository);
+    }
+
+    // Хранятся только снимки, на которые ссылаются текущая и предыдущая версии описания
+    Assertions.assertFalse(Files.exists(testStoragePath));
+    Assertions.assertTrue(Files.exists(shardsDirectory.resolve("manifest.json")));
+    Assertions.assertFalse(Files.exists(shardsDirectory.resolve("snapshot-00000000000000000001")));
+    Path lastSnapshot = shardsDirectory.resolve("snapshot-00000000000000000003");
+    try (Stream<Path> files = Files.list(lastSnapshot)) {
+      Assertions.assertEquals(24, files.count());
+    }
+
+    StorageState storageState = fileStorageService.loadState().orElseThrow();
+    Assertions.assertEquals(3000, storageState.getExistingShortLinks().size());
+    Assertions.assertEquals(1, storageState.getExistingUsers().size());
+    Assertions.assertEquals(1, storageState.getUnreadNotifications().size());
+    Assertions.assertEquals(
+        now.plusMinutes(2999),
+        storageState.getExistingShortLinks().get("id2999").getExpirationDateTime());
+
+    try (Stream<Path> files = Files.walk(testAppdata)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
 }
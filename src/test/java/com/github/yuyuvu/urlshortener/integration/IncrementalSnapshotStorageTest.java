@@ -0,0 +1,155 @@
+package com.github.yuyuvu.urlshortener.integration;
+
+import static org.mockito.Mockito.when;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.FileStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryNotificationRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.IncrementalSnapshotStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageState;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Класс для тестов инкрементальных снимков данных: записи только изменений в файлы-дельты, их
+ * применения при загрузке и слияния в полный снимок.
+ */
+@ExtendWith(MockitoExtension.class)
+public class IncrementalSnapshotStorageTest {
+  private final Path testAppdata = Path.of("test_appdata_delta");
+  private final Path testStoragePath = testAppdata.resolve("test_storage.json");
+  private final Path testDeltaDirectory = testAppdata.resolve("test_storage.json-delta");
+
+  @Mock private ConfigManager configManager;
+
+  /** Удаляем все файлы теста. */
+  @AfterEach
+  void cleanUp() throws IOException {
+    if (Files.exists(testAppdata)) {
+      try (Stream<Path> files = Files.walk(testAppdata)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Проверяем, что после первого полного снимка сохраняются только изменения, они корректно
+   * применяются при загрузке, а после накопления заданного количества дельт сливаются в снимок.
+   */
+  @Test
+  void saveOnlyChangesAndMergeDeltas() throws StorageStatePersistenceException, IOException {
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    when(configManager.getStorageSnapshotMergeDeltasProperty()).thenReturn(3);
+
+    IncrementalSnapshotStorageService storageService =
+        new IncrementalSnapshotStorageService(new FileStorageService(configManager), configManager);
+    Assertions.assertTrue(storageService.loadState().isEmpty());
+
+    InMemoryUserRepository userRepository = new InMemoryUserRepository(new HashMap<>());
+    InMemoryShortLinkRepository shortLinkRepository =
+        new InMemoryShortLinkRepository(new HashMap<>());
+    final InMemoryNotificationRepository notificationRepository =
+        new InMemoryNotificationRepository(new ArrayList<>());
+
+    User user = new User(UUID.randomUUID(), 2);
+    userRepository.saveUser(user);
+    ShortLink keptLink = makeShortLink("aaaaaa", user.getUUID());
+    ShortLink deletedLink = makeShortLink("bbbbbb", user.getUUID());
+    shortLinkRepository.saveShortLink(keptLink);
+    shortLinkRepository.saveShortLink(deletedLink);
+
+    // Первое сохранение всегда полное, так как репозитории ещё не отслеживали изменения
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    Assertions.assertTrue(Files.exists(testStoragePath));
+    Assertions.assertEquals(0, countDeltas());
+
+    // Изменения после полного снимка попадают в дельту, а сам снимок не перезаписывается
+    final String baseSnapshot = Files.readString(testStoragePath);
+    shortLinkRepository.deleteShortLink(deletedLink.getShortId());
+    user.decrementAmountOfMadeShortLinks();
+    userRepository.saveUser(user);
+    Notification notification =
+        new Notification(deletedLink, user.getUUID(), Notification.NotificationType.EXPIRED, false);
+    notificationRepository.saveNotification(notification);
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    Assertions.assertEquals(1, countDeltas());
+    Assertions.assertEquals(baseSnapshot, Files.readString(testStoragePath));
+
+    // Без изменений новая дельта не создаётся
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    Assertions.assertEquals(1, countDeltas());
+
+    assertLoadedState(keptLink, user);
+
+    // Набираем заданное количество дельт, после чего они сливаются в полный снимок
+    notificationRepository.markUnreadNotificationsAsRead(List.of(notification));
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    Assertions.assertEquals(2, countDeltas());
+    notificationRepository.deleteNotification(notification);
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    Assertions.assertEquals(0, countDeltas());
+    Assertions.assertNotEquals(baseSnapshot, Files.readString(testStoragePath));
+
+    StorageState mergedState =
+        new IncrementalSnapshotStorageService(new FileStorageService(configManager), configManager)
+            .loadState()
+            .orElseThrow();
+    Assertions.assertEquals(1, mergedState.getExistingShortLinks().size());
+    Assertions.assertTrue(mergedState.getUnreadNotifications().isEmpty());
+  }
+
+  private void assertLoadedState(ShortLink keptLink, User user)
+      throws StorageStatePersistenceException {
+    StorageState loadedState =
+        new IncrementalSnapshotStorageService(new FileStorageService(configManager), configManager)
+            .loadState()
+            .orElseThrow();
+    Assertions.assertEquals(1, loadedState.getExistingShortLinks().size());
+    Assertions.assertEquals(
+        keptLink.getOriginalURLAddress(),
+        loadedState.getExistingShortLinks().get(keptLink.getShortId()).getOriginalURLAddress());
+    Assertions.assertEquals(
+        1, loadedState.getExistingUsers().get(user.getUUID()).getAmountOfMadeShortLinks());
+    Assertions.assertEquals(1, loadedState.getUnreadNotifications().size());
+    Assertions.assertEquals(
+        Notification.NotificationType.EXPIRED,
+        loadedState.getUnreadNotifications().get(0).getType());
+  }
+
+  private long countDeltas() throws IOException {
+    if (!Files.isDirectory(testDeltaDirectory)) {
+      return 0;
+    }
+    try (Stream<Path> files = Files.list(testDeltaDirectory)) {
+      return files.count();
+    }
+  }
+
+  private static ShortLink makeShortLink(String shortId, UUID owner) {
+    LocalDateTime now = LocalDateTime.now();
+    return new ShortLink(
+        "https://github.com/" + shortId, shortId, now, now.plusHours(1), 0, 5, owner, false);
+  }
+}
@@ -0,0 +1,213 @@
+package com.github.yuyuvu.urlshortener.integration;
+
+import static org.mockito.Mockito.when;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.FileStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryNotificationRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.IncrementalSnapshotStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StagedStorageState;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageService;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Класс для тестов ленивой загрузки данных: короткие ссылки загружаются сразу, а пользователи и
+ * уведомления догружаются по шардам, и обращение к пользователю ждёт только его шард.
+ */
+@ExtendWith(MockitoExtension.class)
+public class LazyStorageLoadTest {
+  private static final int SHARDS = 4;
+
+  private final Path testAppdata = Path.of("test_appdata_lazy");
+  private final Path testStoragePath = testAppdata.resolve("test_storage.json");
+
+  @Mock private ConfigManager configManager;
+
+  private final InMemoryUserRepository userRepository = new InMemoryUserRepository(new HashMap<>());
+  private final InMemoryShortLinkRepository shortLinkRepository =
+      new InMemoryShortLinkRepository(new HashMap<>());
+  private final InMemoryNotificationRepository notificationRepository =
+      new InMemoryNotificationRepository(new ArrayList<>());
+  private final List<User> users = new ArrayList<>();
+
+  /** Каждому пользователю создаём по ссылке и уведомлению. */
+  @BeforeEach
+  void fillRepositories() {
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    when(configManager.getStorageSnapshotShardsProperty()).thenReturn(SHARDS);
+    LocalDateTime now = LocalDateTime.now();
+    for (int i = 0; i < 64; i++) {
+      User user = new User(UUID.randomUUID(), 1);
+      users.add(user);
+      userRepository.saveUser(user);
+      ShortLink shortLink =
+          new ShortLink(
+              "https://github.com/yuyuvu/" + i,
+              "id" + i,
+              now,
+              now.plusDays(1),
+              0,
+              10,
+              user.getUUID(),
+              false);
+      shortLinkRepository.saveShortLink(shortLink);
+      notificationRepository.saveNotification(
+          new Notification(
+              shortLink, user.getUUID(), Notification.NotificationType.EXPIRED, false));
+    }
+  }
+
+  /** Удаляем все файлы теста. */
+  @AfterEach
+  void cleanUp() throws IOException {
+    if (Files.exists(testAppdata)) {
+      try (Stream<Path> files = Files.walk(testAppdata)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Проверяем, что при ленивой загрузке репозитории получают те же данные, что и при обычной,
+   * включая изменения пользователей и уведомлений из файлов-дельт.
+   */
+  @Test
+  void lazyLoadAppliesDeltasToUserAndNotificationShards() throws StorageStatePersistenceException {
+    when(configManager.getStorageSnapshotMergeDeltasProperty()).thenReturn(16);
+    StorageService storageService =
+        new IncrementalSnapshotStorageService(new FileStorageService(configManager), configManager);
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+
+    // Изменения после полного снимка попадают в файл-дельту
+    User changedUser = users.get(7);
+    userRepository.saveUser(new User(changedUser.getUUID(), 5));
+    Notification readNotification =
+        notificationRepository.getUnreadNotificationsByUserUUID(changedUser.getUUID()).get(0);
+    notificationRepository.markUnreadNotificationsAsRead(List.of(readNotification));
+    notificationRepository.deleteNotification(readNotification);
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+
+    StagedStorageState stagedStorageState = storageService.loadStateStaged().orElseThrow();
+    Assertions.assertEquals(64, stagedStorageState.getExistingShortLinks().size());
+    Assertions.assertEquals(SHARDS, stagedStorageState.getUserShards().size());
+
+    final InMemoryUserRepository loadedUsers = new InMemoryUserRepository(stagedStorageState);
+    InMemoryNotificationRepository loadedNotifications =
+        new InMemoryNotificationRepository(stagedStorageState);
+    // Новое уведомление встаёт в очередь пользователя после загруженных из ещё не добавленного
+    // шарда
+    User notifiedUser = users.get(9);
+    Notification newNotification =
+        new Notification(
+            shortLinkRepository.getShortLinkByShortID("id9").orElseThrow(),
+            notifiedUser.getUUID(),
+            Notification.NotificationType.LIMIT_REACHED,
+            false);
+    loadedNotifications.saveNotification(newNotification);
+    List<Notification> userNotifications =
+        loadedNotifications.getNotificationsByUserUUID(notifiedUser.getUUID());
+    Assertions.assertEquals(2, userNotifications.size());
+    Assertions.assertSame(newNotification, userNotifications.get(1));
+    Assertions.assertEquals(
+        5,
+        loadedUsers.getUserByUUID(changedUser.getUUID()).orElseThrow().getAmountOfMadeShortLinks());
+    Assertions.assertTrue(
+        loadedNotifications.getUnreadNotificationsByUserUUID(changedUser.getUUID()).isEmpty());
+    Assertions.assertEquals(
+        1, loadedNotifications.getUnreadNotificationsByUserUUID(users.get(8).getUUID()).size());
+    Assertions.assertEquals(64, loadedUsers.getRepositoryAsMap().size());
+    Assertions.assertEquals(64, loadedNotifications.getRepositoryAsList().size());
+  }
+
+  /**
+   * Проверяем, что дельта с изменёнными уведомлениями пользователя читает только его уведомления:
+   * сохранение изменений не ждёт загрузки остальных шардов уведомлений и не ломается из-за
+   * повреждённого шарда другого пользователя.
+   */
+  @Test
+  void notificationDeltaReadsOnlyChangedUsersShard()
+      throws StorageStatePersistenceException, IOException {
+    when(configManager.getStorageSnapshotMergeDeltasProperty()).thenReturn(16);
+    FileStorageService fileStorageService = new FileStorageService(configManager);
+    fileStorageService.saveStorageState(
+        userRepository, shortLinkRepository, notificationRepository);
+    Path snapshotDirectory =
+        testAppdata.resolve("test_storage.json-shards").resolve("snapshot-00000000000000000001");
+    Files.writeString(
+        snapshotDirectory.resolve("notifications-0001.json"), "{\"unreadNotifications\":");
+
+    StagedStorageState stagedStorageState = fileStorageService.loadStateStaged().orElseThrow();
+    InMemoryNotificationRepository loadedNotifications =
+        new InMemoryNotificationRepository(stagedStorageState);
+    final User changedUser =
+        users.stream()
+            .filter(user -> Math.floorMod(user.getUUID().hashCode(), SHARDS) != 1)
+            .findFirst()
+            .orElseThrow();
+
+    final StorageService storageService =
+        new IncrementalSnapshotStorageService(fileStorageService, configManager);
+    userRepository.enableDirtyTracking();
+    shortLinkRepository.enableDirtyTracking();
+    loadedNotifications.enableDirtyTracking();
+    loadedNotifications.markUnreadNotificationsAsRead(
+        loadedNotifications.getUnreadNotificationsByUserUUID(changedUser.getUUID()));
+    storageService.saveStorageState(userRepository, shortLinkRepository, loadedNotifications);
+
+    Assertions.assertTrue(
+        loadedNotifications.getNotificationsByUserUUID(changedUser.getUUID()).get(0).isRead());
+    Assertions.assertThrows(IllegalStateException.class, loadedNotifications::getRepositoryAsList);
+  }
+
+  /**
+   * Проверяем, что повреждение файла одного шарда пользователей не мешает загрузке ссылок и
+   * обращениям к пользователям из других шардов, а обычная загрузка в этом случае не запускается.
+   */
+  @Test
+  void userLookupWaitsOnlyForItsShard() throws StorageStatePersistenceException, IOException {
+    FileStorageService storageService = new FileStorageService(configManager);
+    storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+
+    Path snapshotDirectory =
+        testAppdata.resolve("test_storage.json-shards").resolve("snapshot-00000000000000000001");
+    Files.writeString(snapshotDirectory.resolve("users-0001.json"), "{\"existingUsers\":");
+
+    StagedStorageState stagedStorageState = storageService.loadStateStaged().orElseThrow();
+    Assertions.assertEquals(64, stagedStorageState.getExistingShortLinks().size());
+    InMemoryUserRepository loadedUsers = new InMemoryUserRepository(stagedStorageState);
+    for (User user : users) {
+      if (Math.floorMod(user.getUUID().hashCode(), SHARDS) == 1) {
+        Assertions.assertThrows(
+            IllegalStateException.class, () -> loadedUsers.getUserByUUID(user.getUUID()));
+      } else {
+        Assertions.assertTrue(loadedUsers.getUserByUUID(user.getUUID()).isPresent());
+      }
+    }
+    Assertions.assertThrows(IllegalStateException.class, loadedUsers::getRepositoryAsMap);
+    Assertions.assertThrows(StorageStatePersistenceException.class, storageService::loadState);
+  }
+}
@@ -5,6 +5,7 @@ import static org.mockito.Mockito.when;
 
 import com.github.yuyuvu.urlshortener.application.LinkService;
 import com.github.yuyuvu.urlshortener.application.NotificationService;
+import com.github.yuyuvu.urlshortener.application.UsageLimitNotifier;
 import com.github.yuyuvu.urlshortener.application.UserService;
 import com.github.yuyuvu.urlshortener.cli.ConsoleController;
 import com.github.yuyuvu.urlshortener.domain.model.Notification;
@@ -14,6 +15,7 @@ import com.github.yuyuvu.urlshortener.domain.repository.NotificationRepository;
 import com.github.yuyuvu.urlshortener.domain.repository.ShortLinkRepository;
 import com.github.yuyuvu.urlshortener.domain.repository.UserRepository;
 import com.github.yuyuvu.urlshortener.exceptions.InvalidOriginalLinkException;
+import com.github.yuyuvu.urlshortener.exceptions.InvalidShortLinkException;
 import com.github.yuyuvu.urlshortener.exceptions.OriginalLinkNotFoundException;
 import com.github.yuyuvu.urlshortener.exceptions.UsagesLimitReachedException;
 import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
@@ -22,6 +24,7 @@ import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLi
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
 import com.github.yuyuvu.urlshortener.infrastructure.scheduler.LinkCheckStateTask;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -55,7 +58,12 @@ public class LinkCheckStateTaskTest {
 
   /** Подготавливаем контекст для двух тестов. */
   @BeforeEach
-  public void setUpState() throws InvalidOriginalLinkException, UsagesLimitReachedException {
+  public void setUpState()
+      throws InvalidOriginalLinkException,
+          UsagesLimitReachedException,
+          OriginalLinkNotFoundException,
+          InvalidShortLinkException,
+          IOException {
     // Подставляем нужные настройки для создания новых ссылок
     when(configManager.getDefaultServiceBaseURLProperty()).thenReturn("https://yulink.tech/");
     when(configManager.getLegacyServiceBaseURLProperty())
@@ -107,11 +115,19 @@ public class LinkCheckStateTaskTest {
     shortLink[0].setCreationDateTime(LocalDateTime.of(2025, 1, 1, 11, 11), false);
     shortLink[0].setExpirationDateTime(LocalDateTime.of(2025, 2, 1, 11, 11));
 
-    shortLink[1].incrementUsageCounter();
-    shortLink[1].incrementUsageCounter();
+    // Уведомления об израсходовании лимита создаются при переходе, как в UrlShortenerApp, но
+    // синхронно и без отображения
+    linkService.addShortLinkEventListener(
+        new UsageLimitNotifier(linkService, notificationService, Runnable::run, () -> {}));
+    linkService.redirectByShortLink("https://yulink.tech/" + shortLink[1].getShortId(), false);
+    linkService.redirectByShortLink("https://yulink.tech/" + shortLink[1].getShortId(), false);
 
     shortLink[2].setCreationDateTime(LocalDateTime.of(2025, 3, 1, 11, 11), false);
     shortLink[2].setExpirationDateTime(LocalDateTime.of(2025, 4, 1, 11, 11));
+
+    // Сохраняем изменённые сроки, чтобы репозиторий переставил таймеры истечения ссылок
+    shortLinkRepository.saveShortLink(shortLink[0]);
+    shortLinkRepository.saveShortLink(shortLink[2]);
   }
 
   /**
@@ -125,9 +141,10 @@ public class LinkCheckStateTaskTest {
     LinkCheckStateTask linkCheckStateTask =
         new LinkCheckStateTask(linkService, notificationService, userService, () -> {});
 
-    // В репозиториях сейчас 4 ссылки и 0 уведомлений
+    // В репозиториях сейчас 4 ссылки и 1 уведомление (об израсходовании лимита, оно создаётся
+    // сразу при последнем переходе по ссылке)
     Assertions.assertEquals(4, linkService.listAllShortLinks().size());
-    Assertions.assertEquals(0, notificationService.listAllNotifications().size());
+    Assertions.assertEquals(1, notificationService.listAllNotifications().size());
 
     // Запускаем задачу
     linkCheckStateTask.run();
@@ -194,9 +211,10 @@ public class LinkCheckStateTaskTest {
     ByteArrayOutputStream bos = new ByteArrayOutputStream();
     System.setOut(new PrintStream(bos));
 
-    // В репозиториях сейчас 4 ссылки и 0 уведомлений
+    // В репозиториях сейчас 4 ссылки и 1 уведомление (об израсходовании лимита, оно создаётся
+    // сразу при последнем переходе по ссылке)
     Assertions.assertEquals(4, linkService.listAllShortLinks().size());
-    Assertions.assertEquals(0, notificationService.listAllNotifications().size());
+    Assertions.assertEquals(1, notificationService.listAllNotifications().size());
 
     // Имитируем разовый запуск scheduler (теперь c отображением уведомлений,
     // UUID-получатель в сети)
@@ -0,0 +1,212 @@
+package com.github.yuyuvu.urlshortener.integration;
+
+import com.github.yuyuvu.urlshortener.application.LinkService;
+import com.github.yuyuvu.urlshortener.application.RandomShortIdGenerator;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.http.RedirectHttpServer;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/** Класс для тестов HTTP-сервера редиректов по коротким ссылкам. */
+@ExtendWith(MockitoExtension.class)
+public class RedirectHttpServerTest {
+  /** Параметры нагрузочного прогона: число ссылок, клиентов и запросов каждого клиента. */
+  private static final int LOAD_SHORT_LINKS = 200;
+
+  private static final int LOAD_CLIENTS = 16;
+  private static final int LOAD_REQUESTS_PER_CLIENT = 500;
+
+  @Mock private ConfigManager configManager;
+
+  private final InMemoryShortLinkRepository shortLinkRepository =
+      new InMemoryShortLinkRepository(new HashMap<>());
+  private final HttpClient httpClient =
+      HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_1_1)
+          .followRedirects(HttpClient.Redirect.NEVER)
+          .build();
+  private RedirectHttpServer redirectHttpServer;
+
+  /** Запускаем сервер на свободном порту. */
+  @BeforeEach
+  void startServer() throws IOException {
+    LinkService linkService =
+        new LinkService(shortLinkRepository, configManager, new RandomShortIdGenerator());
+    redirectHttpServer =
+        new RedirectHttpServer(
+            linkService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    redirectHttpServer.start();
+  }
+
+  /** Останавливаем сервер. */
+  @AfterEach
+  void stopServer() {
+    redirectHttpServer.close();
+  }
+
+  private void saveShortLink(String originalURL, String shortId, int usageLimit) {
+    LocalDateTime now = LocalDateTime.now();
+    shortLinkRepository.saveShortLink(
+        new ShortLink(
+            originalURL, shortId, now, now.plusDays(1), 0, usageLimit, UUID.randomUUID(), false));
+  }
+
+  private HttpResponse<String> send(String method, String path)
+      throws IOException, InterruptedException {
+    return httpClient.send(
+        HttpRequest.newBuilder(
+                URI.create("http://localhost:" + redirectHttpServer.getPort() + path))
+            .method(method, HttpRequest.BodyPublishers.noBody())
+            .build(),
+        HttpResponse.BodyHandlers.ofString());
+  }
+
+  /**
+   * Проверяем, что GET /shortID отвечает редиректом на длинный URL и расходует лимит использований
+   * ссылки, а несуществующие и израсходованные ссылки, лишние сегменты пути и другие методы
+   * получают соответствующие коды ошибок.
+   */
+  @Test
+  void redirectsAndCountsUsages() throws IOException, InterruptedException {
+    saveShortLink("https://github.com/yuyuvu", "aaaaaa", 2);
+
+    for (int i = 0; i < 2; i++) {
+      HttpResponse<String> response = send("GET", "/aaaaaa");
+      Assertions.assertEquals(302, response.statusCode());
+      Assertions.assertEquals(
+          "https://github.com/yuyuvu", response.headers().firstValue("Location").orElseThrow());
+    }
+    Assertions.assertEquals(
+        2, shortLinkRepository.getShortLinkByShortID("aaaaaa").orElseThrow().getUsageCounter());
+    Assertions.assertEquals(410, send("GET", "/aaaaaa").statusCode());
+
+    Assertions.assertEquals(404, send("GET", "/bbbbbb").statusCode());
+    Assertions.assertEquals(404, send("GET", "/").statusCode());
+    Assertions.assertEquals(404, send("GET", "/aaaaaa/extra").statusCode());
+    Assertions.assertEquals(405, send("POST", "/aaaaaa").statusCode());
+    Assertions.assertEquals(405, send("HEAD", "/aaaaaa").statusCode());
+  }
+
+  /**
+   * Проверяем, что после запросов не GET и запросов GET со слишком большим телом сервер не
+   * оставляет соединение открытым, а лимит ссылки расходует только GET.
+   */
+  @Test
+  void largeRequestBodiesCloseConnection() throws IOException {
+    saveShortLink("https://github.com/yuyuvu", "aaaaaa", 1);
+    String body = "x".repeat(8192);
+
+    String postResponse = sendRaw("POST", "/aaaaaa", body);
+    Assertions.assertTrue(postResponse.startsWith("HTTP/1.1 405"), postResponse);
+    Assertions.assertTrue(postResponse.toLowerCase().contains("connection: close"), postResponse);
+
+    String getResponse = sendRaw("GET", "/aaaaaa", body);
+    Assertions.assertTrue(getResponse.startsWith("HTTP/1.1 302"), getResponse);
+    Assertions.assertTrue(getResponse.toLowerCase().contains("connection: close"), getResponse);
+  }
+
+  /**
+   * Метод отправляет запрос напрямую в сокет и читает ответ до закрытия соединения сервером.
+   * Таймаут чтения не даёт тесту зависнуть, если сервер соединение не закрывает.
+   */
+  private String sendRaw(String method, String path, String body) throws IOException {
+    String request =
+        method
+            + " "
+            + path
+            + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: "
+            + body.length()
+            + "\r\n\r\n"
+            + body;
+    try (Socket socket =
+        new Socket(InetAddress.getLoopbackAddress(), redirectHttpServer.getPort())) {
+      socket.setSoTimeout(5000);
+      socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+      socket.getOutputStream().flush();
+      return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Нагрузочный прогон: несколько клиентов параллельно переходят по случайным ссылкам. Выводим
+   * пропускную способность и задержки p50/p99, проверяем, что ни один переход не потерян.
+   */
+  @Test
+  void redirectLoadReportsThroughputAndLatency() throws Exception {
+    for (int i = 0; i < LOAD_SHORT_LINKS; i++) {
+      saveShortLink("https://github.com/yuyuvu/" + i, "load" + i, Integer.MAX_VALUE);
+    }
+
+    ExecutorService clients = Executors.newFixedThreadPool(LOAD_CLIENTS);
+    long[] latencies = new long[LOAD_CLIENTS * LOAD_REQUESTS_PER_CLIENT];
+    long startNanos = System.nanoTime();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int client = 0; client < LOAD_CLIENTS; client++) {
+        int clientNumber = client;
+        futures.add(
+            clients.submit(
+                () -> {
+                  for (int i = 0; i < LOAD_REQUESTS_PER_CLIENT; i++) {
+                    int shortLink = (clientNumber * 31 + i * 7) % LOAD_SHORT_LINKS;
+                    long requestStartNanos = System.nanoTime();
+                    HttpResponse<String> response = send("GET", "/load" + shortLink);
+                    latencies[clientNumber * LOAD_REQUESTS_PER_CLIENT + i] =
+                        System.nanoTime() - requestStartNanos;
+                    Assertions.assertEquals(302, response.statusCode());
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      clients.shutdown();
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+
+    Arrays.sort(latencies);
+    System.out.printf(
+        "Редиректы по HTTP (%s): %d запросов, %.0f запросов/с, p50 %.2f мс, p99 %.2f мс%n",
+        redirectHttpServer.usesVirtualThreads() ? "виртуальные потоки" : "пул потоков",
+        latencies.length,
+        latencies.length / (elapsedNanos / 1e9),
+        latencies[latencies.length / 2] / 1e6,
+        latencies[(int) (latencies.length * 0.99)] / 1e6);
+
+    long totalUsages = 0;
+    for (int i = 0; i < LOAD_SHORT_LINKS; i++) {
+      totalUsages +=
+          shortLinkRepository.getShortLinkByShortID("load" + i).orElseThrow().getUsageCounter();
+    }
+    Assertions.assertEquals(latencies.length, totalUsages);
+    Assertions.assertTrue(elapsedNanos < TimeUnit.MINUTES.toNanos(1));
+  }
+}
@@ -0,0 +1,148 @@
+package com.github.yuyuvu.urlshortener.integration;
+
+import static org.mockito.Mockito.when;
+
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.BinaryStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.FileStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryNotificationRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageService;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Класс для тестов безопасной записи снимков данных: контрольных сумм секций, хранения предыдущих
+ * версий файла и отката к ним при повреждении последней версии.
+ */
+@ExtendWith(MockitoExtension.class)
+public class SnapshotFallbackTest {
+  private final Path testAppdata = Path.of("test_appdata_fallback");
+  private final Path testStoragePath = testAppdata.resolve("test_storage.json");
+
+  @Mock private ConfigManager configManager;
+
+  private final InMemoryUserRepository userRepository = new InMemoryUserRepository(new HashMap<>());
+  private final InMemoryShortLinkRepository shortLinkRepository =
+      new InMemoryShortLinkRepository(new HashMap<>());
+  private final InMemoryNotificationRepository notificationRepository =
+      new InMemoryNotificationRepository(new ArrayList<>());
+
+  /** Удаляем все файлы теста. */
+  @AfterEach
+  void cleanUp() throws IOException {
+    if (Files.exists(testAppdata)) {
+      try (Stream<Path> files = Files.walk(testAppdata)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Проверяем, что изменение данных внутри JSON-файла без нарушения его синтаксиса обнаруживается
+   * по контрольной сумме и загружается предыдущая версия файла.
+   */
+  @Test
+  void fallBackToPreviousJsonGenerationOnChecksumMismatch()
+      throws StorageStatePersistenceException, IOException {
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    when(configManager.getStorageSnapshotGenerationsProperty()).thenReturn(2);
+    FileStorageService storageService = new FileStorageService(configManager);
+
+    saveThreeGenerations(storageService);
+    Assertions.assertTrue(Files.exists(testAppdata.resolve("test_storage.json.1")));
+    Assertions.assertTrue(Files.exists(testAppdata.resolve("test_storage.json.2")));
+    Assertions.assertFalse(Files.exists(testAppdata.resolve("test_storage.json.3")));
+    Assertions.assertFalse(Files.exists(testAppdata.resolve("test_storage.json.tmp")));
+    Assertions.assertEquals(3, loadUsageCounter(storageService));
+
+    // Меняем адрес ссылки на другой той же длины, файл остаётся корректным JSON
+    String content = Files.readString(testStoragePath, StandardCharsets.UTF_8);
+    Assertions.assertTrue(content.contains("https://github.com/yuyuvu"));
+    Files.writeString(
+        testStoragePath,
+        content.replace("https://github.com/yuyuvu", "https://github.com/xxxxx"),
+        StandardCharsets.UTF_8);
+    Assertions.assertEquals(2, loadUsageCounter(storageService));
+
+    // Если повреждены все версии, загрузка завершается ошибкой, а не пустыми данными
+    corruptFile(testAppdata.resolve("test_storage.json.1"));
+    corruptFile(testAppdata.resolve("test_storage.json.2"));
+    Assertions.assertThrows(StorageStatePersistenceException.class, storageService::loadState);
+  }
+
+  /** Проверяем откат к предыдущей версии двоичного файла при повреждении последней версии. */
+  @Test
+  void fallBackToPreviousBinaryGenerationOnCorruption()
+      throws StorageStatePersistenceException, IOException {
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    when(configManager.getStorageSnapshotGenerationsProperty()).thenReturn(1);
+    BinaryStorageService storageService = new BinaryStorageService(configManager);
+
+    saveThreeGenerations(storageService);
+    Assertions.assertTrue(Files.exists(testAppdata.resolve("test_storage.bin.1")));
+    Assertions.assertFalse(Files.exists(testAppdata.resolve("test_storage.bin.2")));
+    Assertions.assertEquals(3, loadUsageCounter(storageService));
+
+    corruptFile(testAppdata.resolve("test_storage.bin"));
+    Assertions.assertEquals(2, loadUsageCounter(storageService));
+  }
+
+  /** Сохраняем три версии файла, в каждой из которых у ссылки свой счётчик использований. */
+  private void saveThreeGenerations(StorageService storageService)
+      throws StorageStatePersistenceException {
+    User user = new User(UUID.randomUUID(), 1);
+    userRepository.saveUser(user);
+    LocalDateTime now = LocalDateTime.now();
+    for (int usageCounter = 1; usageCounter <= 3; usageCounter++) {
+      shortLinkRepository.saveShortLink(
+          new ShortLink(
+              "https://github.com/yuyuvu",
+              "abcdef",
+              now,
+              now.plusHours(1),
+              usageCounter,
+              10,
+              user.getUUID(),
+              false));
+      storageService.saveStorageState(userRepository, shortLinkRepository, notificationRepository);
+    }
+  }
+
+  private static int loadUsageCounter(StorageService storageService)
+      throws StorageStatePersistenceException {
+    return storageService
+        .loadState()
+        .orElseThrow()
+        .getExistingShortLinks()
+        .get("abcdef")
+        .getUsageCounter();
+  }
+
+  /** Меняем один байт в середине файла. */
+  private static void corruptFile(Path file) throws IOException {
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length / 2] ^= 0x5A;
+    Files.write(file, bytes);
+  }
+}
@@ -0,0 +1,153 @@
+package com.github.yuyuvu.urlshortener.integration;
+
+import static org.mockito.Mockito.when;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.domain.model.User;
+import com.github.yuyuvu.urlshortener.exceptions.StorageStatePersistenceException;
+import com.github.yuyuvu.urlshortener.exceptions.UsagesLimitReachedException;
+import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.FileStorageService;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryNotificationRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageState;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.WriteAheadLogStorageService;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Класс для тестов журнала упреждающей записи: восстановления изменений после выключения без снимка
+ * данных и очистки журнала после полного снимка.
+ */
+@ExtendWith(MockitoExtension.class)
+public class WriteAheadLogStorageTest {
+  private final Path testAppdata = Path.of("test_appdata_wal");
+  private final Path testStoragePath = testAppdata.resolve("test_storage.json");
+
+  @Mock private ConfigManager configManager;
+
+  /** Удаляем все файлы теста. */
+  @AfterEach
+  void cleanUp() throws IOException {
+    if (Files.exists(testAppdata)) {
+      try (Stream<Path> files = Files.walk(testAppdata)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Проверяем, что все изменения, сделанные после запуска, восстанавливаются из журнала без
+   * сохранения полного снимка, а после снимка журнал очищается без потери данных.
+   */
+  @Test
+  void replayChangesAfterRestart()
+      throws StorageStatePersistenceException, IOException, UsagesLimitReachedException {
+    when(configManager.getFileStoragePathProperty()).thenReturn(testStoragePath);
+    when(configManager.getStorageWriteAheadLogGroupCommitMillisProperty()).thenReturn(0);
+
+    // Первый запуск: данных ещё нет
+    WriteAheadLogStorageService writeAheadLog =
+        new WriteAheadLogStorageService(new FileStorageService(configManager), configManager);
+    Assertions.assertTrue(writeAheadLog.loadState().isEmpty());
+
+    InMemoryUserRepository userRepository = new InMemoryUserRepository(new HashMap<>());
+    InMemoryShortLinkRepository shortLinkRepository =
+        new InMemoryShortLinkRepository(new HashMap<>());
+    InMemoryNotificationRepository notificationRepository =
+        new InMemoryNotificationRepository(new ArrayList<>());
+    userRepository.addStorageChangeListener(writeAheadLog);
+    shortLinkRepository.addStorageChangeListener(writeAheadLog);
+    notificationRepository.addStorageChangeListener(writeAheadLog);
+
+    // Совершаем изменения всех видов
+    User user = new User(UUID.randomUUID(), 0);
+    userRepository.saveUser(user);
+    user.incrementAmountOfMadeShortLinks();
+    user.incrementAmountOfMadeShortLinks();
+    userRepository.saveUser(user);
+
+    ShortLink usedLink = makeShortLink("aaaaaa", user.getUUID());
+    ShortLink deletedLink = makeShortLink("bbbbbb", user.getUUID());
+    shortLinkRepository.saveShortLink(usedLink);
+    shortLinkRepository.saveShortLink(deletedLink);
+    usedLink.incrementUsageCounter();
+    shortLinkRepository.updateUsageCounter(usedLink);
+    shortLinkRepository.deleteShortLink(deletedLink.getShortId());
+
+    Notification readNotification =
+        new Notification(usedLink, user.getUUID(), Notification.NotificationType.EXPIRED, false);
+    Notification unreadNotification =
+        new Notification(
+            usedLink, user.getUUID(), Notification.NotificationType.LIMIT_REACHED, false);
+    notificationRepository.saveNotification(readNotification);
+    notificationRepository.saveNotification(unreadNotification);
+    notificationRepository.markUnreadNotificationsAsRead(List.of(readNotification));
+
+    // Выключаемся без полного снимка данных, остаётся только журнал
+    writeAheadLog.close();
+    Assertions.assertFalse(Files.exists(testStoragePath));
+
+    // Второй запуск: всё восстанавливается из журнала
+    writeAheadLog =
+        new WriteAheadLogStorageService(new FileStorageService(configManager), configManager);
+    StorageState storageState = writeAheadLog.loadState().orElseThrow();
+    assertRestoredState(storageState, user, usedLink);
+
+    // Делаем полный снимок, после чего старые сегменты журнала удаляются
+    when(configManager.getStorageWriteAheadLogCheckpointSizeMbProperty()).thenReturn(0);
+    writeAheadLog.saveStorageState(
+        new InMemoryUserRepository(storageState.getExistingUsers()),
+        new InMemoryShortLinkRepository(storageState.getExistingShortLinks()),
+        new InMemoryNotificationRepository(storageState.getUnreadNotifications()));
+    writeAheadLog.close();
+    Assertions.assertTrue(Files.exists(testStoragePath));
+
+    // Третий запуск: данные берутся из снимка
+    writeAheadLog =
+        new WriteAheadLogStorageService(new FileStorageService(configManager), configManager);
+    assertRestoredState(writeAheadLog.loadState().orElseThrow(), user, usedLink);
+    writeAheadLog.close();
+  }
+
+  private static void assertRestoredState(StorageState storageState, User user, ShortLink link) {
+    Assertions.assertEquals(1, storageState.getExistingUsers().size());
+    Assertions.assertEquals(
+        2, storageState.getExistingUsers().get(user.getUUID()).getAmountOfMadeShortLinks());
+
+    Assertions.assertEquals(1, storageState.getExistingShortLinks().size());
+    ShortLink restoredLink = storageState.getExistingShortLinks().get(link.getShortId());
+    Assertions.assertNotNull(restoredLink);
+    Assertions.assertEquals(1, restoredLink.getUsageCounter());
+    Assertions.assertEquals(link.getOriginalURLAddress(), restoredLink.getOriginalURLAddress());
+    Assertions.assertEquals(link.getExpirationDateTime(), restoredLink.getExpirationDateTime());
+
+    Assertions.assertEquals(2, storageState.getUnreadNotifications().size());
+    Assertions.assertEquals(
+        1, storageState.getUnreadNotifications().stream().filter(Notification::isRead).count());
+  }
+
+  private static ShortLink makeShortLink(String shortId, UUID owner) {
+    LocalDateTime now = LocalDateTime.now();
+    return new ShortLink(
+        "https://github.com/" + shortId, shortId, now, now.plusHours(1), 0, 5, owner, false);
+  }
+}
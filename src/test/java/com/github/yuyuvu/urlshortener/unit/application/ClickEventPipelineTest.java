@@ -0,0 +1,118 @@
+package com.github.yuyuvu.urlshortener.unit.application;
+
+import com.github.yuyuvu.urlshortener.application.ClickEventPipeline;
+import com.github.yuyuvu.urlshortener.application.ClickEventPipeline.ClickSource;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.StorageChangeListener;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Класс для тестов фоновой обработки событий переходов в ClickEventPipeline. */
+public class ClickEventPipelineTest {
+  private final InMemoryShortLinkRepository repository =
+      new InMemoryShortLinkRepository(new HashMap<>());
+  private final AtomicInteger usageUpdates = new AtomicInteger();
+
+  ClickEventPipelineTest() {
+    LocalDateTime now = LocalDateTime.now();
+    for (int i = 0; i < 4; i++) {
+      repository.saveShortLink(
+          new ShortLink(
+              "https://github.com/yuyuvu/" + i,
+              "id" + i,
+              now,
+              now.plusDays(1),
+              0,
+              0,
+              UUID.randomUUID(),
+              false));
+    }
+    repository.addStorageChangeListener(
+        new StorageChangeListener() {
+          @Override
+          public void onShortLinkUsageUpdated(ShortLink shortLink) {
+            usageUpdates.incrementAndGet();
+          }
+        });
+  }
+
+  /**
+   * Проверяем, что события от нескольких потоков обрабатываются все, по источникам, а счётчики
+   * использований сохраняются не на каждый переход, а по разу на ссылку за пачку.
+   */
+  @Test
+  void concurrentClicksAreProcessedInBatches() throws InterruptedException {
+    int threads = 4;
+    int clicksPerThread = 5000;
+    try (ClickEventPipeline pipeline = new ClickEventPipeline(repository, 1 << 16)) {
+      pipeline.start();
+      List<Thread> publishers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        String shortId = "id" + t;
+        ClickSource source = t % 2 == 0 ? ClickSource.CONSOLE : ClickSource.HTTP;
+        publishers.add(
+            new Thread(
+                () -> {
+                  for (int i = 0; i < clicksPerThread; i++) {
+                    Assertions.assertTrue(pipeline.publish(shortId, source));
+                  }
+                }));
+      }
+      publishers.forEach(Thread::start);
+      for (Thread publisher : publishers) {
+        publisher.join();
+      }
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (pipeline.getMetrics().queueDepth() > 0) {
+        Assertions.assertTrue(System.currentTimeMillis() < deadline, "буфер не опустел");
+        Thread.sleep(5);
+      }
+      pipeline.close();
+
+      ClickEventPipeline.Metrics metrics = pipeline.getMetrics();
+      int totalClicks = threads * clicksPerThread;
+      Assertions.assertEquals(totalClicks, metrics.published());
+      Assertions.assertEquals(0, metrics.dropped());
+      Assertions.assertEquals(65536, metrics.capacity());
+      Assertions.assertEquals(
+          totalClicks / 2, (long) metrics.processedClicksBySource().get(ClickSource.CONSOLE));
+      Assertions.assertEquals(
+          totalClicks / 2, (long) metrics.processedClicksBySource().get(ClickSource.HTTP));
+      Assertions.assertTrue(metrics.batches() > 0);
+      Assertions.assertEquals(totalClicks, metrics.averageBatchSize() * metrics.batches(), 0.001);
+      Assertions.assertTrue(metrics.maxBatchSize() <= 1024);
+      Assertions.assertTrue(usageUpdates.get() <= metrics.batches() * threads);
+    }
+  }
+
+  /**
+   * Проверяем, что при заполненном буфере события отбрасываются без блокировки, а счётчики
+   * использований ссылок с отброшенными событиями всё равно сохраняются при закрытии.
+   */
+  @Test
+  void overflowDropsEventsButKeepsUsagePersistence() {
+    ClickEventPipeline pipeline = new ClickEventPipeline(repository, 3);
+    for (int i = 0; i < 4; i++) {
+      Assertions.assertTrue(pipeline.publish("id0", ClickSource.HTTP));
+    }
+    Assertions.assertFalse(pipeline.publish("id1", ClickSource.HTTP));
+    Assertions.assertFalse(pipeline.publish("id2", ClickSource.CONSOLE));
+    Assertions.assertEquals(4, pipeline.getMetrics().queueDepth());
+    Assertions.assertEquals(2, pipeline.getMetrics().dropped());
+
+    // Поток обработки не запускался, поэтому все события обрабатываются при закрытии
+    pipeline.close();
+    ClickEventPipeline.Metrics metrics = pipeline.getMetrics();
+    Assertions.assertEquals(0, metrics.queueDepth());
+    Assertions.assertEquals(4, (long) metrics.processedClicksBySource().get(ClickSource.HTTP));
+    Assertions.assertEquals(3, usageUpdates.get());
+  }
+}
@@ -0,0 +1,70 @@
+package com.github.yuyuvu.urlshortener.unit.application;
+
+import com.github.yuyuvu.urlshortener.application.FeistelShortIdGenerator;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Класс для тестов генерации коротких ID перестановкой счётчика в FeistelShortIdGenerator. */
+public class FeistelShortIdGeneratorTest {
+  private static final char[] ALLOWED_CHARACTERS = new char[] {'a', 'b', 'c'};
+
+  private void save(InMemoryShortLinkRepository repository, String shortId) {
+    LocalDateTime now = LocalDateTime.now();
+    repository.saveShortLink(
+        new ShortLink(
+            "https://github.com", shortId, now, now.plusDays(1), 0, 10, UUID.randomUUID(), false));
+  }
+
+  /**
+   * Проверяем, что генератор без повторов перебирает всё пространство shortID (3^5 = 243 кода), не
+   * выдаёт их подряд по порядку, а после исчерпания пространства сообщает об ошибке.
+   */
+  @Test
+  void generatesEveryShortIdExactlyOnce() {
+    InMemoryShortLinkRepository repository = new InMemoryShortLinkRepository(new HashMap<>());
+    FeistelShortIdGenerator generator = new FeistelShortIdGenerator(42);
+
+    List<String> generated = new ArrayList<>();
+    for (int i = 0; i < 243; i++) {
+      String shortId = generator.nextShortId(ALLOWED_CHARACTERS, 5, repository);
+      Assertions.assertEquals(5, shortId.length());
+      generated.add(shortId);
+      save(repository, shortId);
+    }
+    Assertions.assertEquals(243, new HashSet<>(generated).size());
+    Assertions.assertNotEquals(List.of("aaaaa", "aaaab", "aaaac"), generated.subList(0, 3));
+    Assertions.assertThrows(
+        IllegalStateException.class,
+        () -> generator.nextShortId(ALLOWED_CHARACTERS, 5, repository));
+  }
+
+  /**
+   * Проверяем, что после перезапуска счётчик восстанавливается по существующим shortID: новый
+   * генератор с тем же ключом продолжает ту же последовательность, а другой ключ даёт другую.
+   */
+  @Test
+  void restoresCounterFromExistingShortIds() {
+    InMemoryShortLinkRepository repository = new InMemoryShortLinkRepository(new HashMap<>());
+    FeistelShortIdGenerator generator = new FeistelShortIdGenerator(7);
+    for (int i = 0; i < 100; i++) {
+      save(repository, generator.nextShortId(ALLOWED_CHARACTERS, 10, repository));
+    }
+    String expectedNext = generator.nextShortId(ALLOWED_CHARACTERS, 10, repository);
+
+    FeistelShortIdGenerator restartedGenerator = new FeistelShortIdGenerator(7);
+    Assertions.assertEquals(
+        expectedNext, restartedGenerator.nextShortId(ALLOWED_CHARACTERS, 10, repository));
+
+    FeistelShortIdGenerator otherKeyGenerator = new FeistelShortIdGenerator(8);
+    String otherKeyShortId = otherKeyGenerator.nextShortId(ALLOWED_CHARACTERS, 10, repository);
+    Assertions.assertTrue(repository.getShortLinkByShortID(otherKeyShortId).isEmpty());
+  }
+}
@@ -19,6 +19,7 @@ import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLi
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryUserRepository;
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
@@ -488,6 +489,59 @@ public class LinkServiceTest {
         () -> linkService.redirectByShortLink("https://yulink.tech/" + shortLinkId, false));
   }
 
+  /**
+   * Проверяем, что событие израсходования лимита публикуется ровно один раз при переходе,
+   * израсходовавшем лимит, а при запуске сервиса - для ссылок без созданного уведомления.
+   */
+  @Test
+  void usageLimitReachedEventTest()
+      throws InvalidOriginalLinkException,
+          UsagesLimitReachedException,
+          OriginalLinkNotFoundException,
+          IOException,
+          InvalidShortLinkException {
+    // Подставляем нужные настройки
+    when(configManager.getDefaultServiceBaseURLProperty()).thenReturn("https://yulink.tech/");
+    when(configManager.getLegacyServiceBaseURLProperty()).thenReturn(new String[] {""});
+    when(configManager.getDefaultShortLinkTTLTimeUnitProperty())
+        .thenReturn(ConfigManager.TimeUnit.MINUTES);
+    when(configManager.getDefaultShortLinkTTLInUnitsProperty()).thenReturn(15);
+    when(configManager.getDefaultShortLinkUsageLimitProperty()).thenReturn(3);
+    when(configManager.getShortLinkAllowedCharactersProperty())
+        .thenReturn(new char[] {'a', 'b', 'c'});
+    when(configManager.getDefaultShortLinkIdLengthProperty()).thenReturn(10);
+
+    List<ShortLink> events = new ArrayList<>();
+    linkService.addShortLinkEventListener(events::add);
+    ShortLink shortLink =
+        linkService.saveNewShortLink(
+            linkService.makeNewShortLink("https://github.com", UUID.randomUUID()));
+    String shortURL = "https://yulink.tech/" + shortLink.getShortId();
+
+    // Событие публикуется только на третьем (последнем разрешённом) переходе
+    linkService.redirectByShortLink(shortURL, false);
+    linkService.redirectByShortLink(shortURL, false);
+    Assertions.assertTrue(events.isEmpty());
+    linkService.redirectByShortLink(shortURL, false);
+    Assertions.assertEquals(List.of(shortLink), events);
+    Assertions.assertThrows(
+        UsagesLimitReachedException.class, () -> linkService.redirectByShortLink(shortURL, false));
+    Assertions.assertEquals(1, events.size());
+
+    // При запуске сервиса событие публикуется повторно, пока уведомление не создано
+    linkService.publishPendingUsageLimitReachedEvents();
+    Assertions.assertEquals(2, events.size());
+    Assertions.assertTrue(linkService.markShortLinkLimitNotified(shortLink));
+    linkService.publishPendingUsageLimitReachedEvents();
+    Assertions.assertEquals(2, events.size());
+
+    // Отметка об уведомлении не возвращает в хранилище уже удалённую ссылку
+    Assertions.assertTrue(linkService.uncheckedDeleteShortLinkByShortId(shortLink.getShortId()));
+    Assertions.assertFalse(linkService.markShortLinkLimitNotified(shortLink));
+    Assertions.assertTrue(
+        shortLinkRepository.getShortLinkByShortID(shortLink.getShortId()).isEmpty());
+  }
+
   /**
    * Проверяем метод для управления созданной короткой ссылкой: позволяет вручную изменить лимит
    * использований.
@@ -920,4 +974,203 @@ public class LinkServiceTest {
     Assertions.assertTrue(totalList.contains(shortLink[2]));
     Assertions.assertTrue(totalList.contains(secondShortLink[0]));
   }
+
+  /**
+   * Проверяем, что после заполнения пространства коротких ID на заданный процент новые ссылки
+   * получают ID на символ длиннее, а ссылки с короткими ID продолжают находиться.
+   */
+  @Test
+  void shortIdLengthGrowsWithOccupancyTest() {
+    when(configManager.getShortLinkAllowedCharactersProperty()).thenReturn(new char[] {'a', 'b'});
+    when(configManager.getDefaultShortLinkIdLengthProperty()).thenReturn(4);
+    when(configManager.getShortLinkLengthGrowthOccupancyPercentProperty()).thenReturn(50);
+
+    // Из 2^4 = 16 возможных ID длины 4 занимаем половину
+    UUID owner = UUID.randomUUID();
+    List<String> shortIds = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      String shortId = linkService.generateShortLinkID();
+      Assertions.assertEquals(4, shortId.length());
+      shortIds.add(shortId);
+      LocalDateTime now = LocalDateTime.now();
+      linkService.saveNewShortLink(
+          new ShortLink("https://github.com", shortId, now, now.plusDays(1), 0, 10, owner, false));
+    }
+
+    LinkService.ShortIdKeyspaceStats stats = linkService.getShortIdKeyspaceStats();
+    Assertions.assertEquals(5, stats.shortIdLength());
+    Assertions.assertEquals(0, stats.occupiedShortIds());
+    Assertions.assertEquals(32, stats.keyspaceSize());
+    Assertions.assertEquals(1, stats.expectedRandomAttempts());
+    Assertions.assertEquals(5, linkService.generateShortLinkID().length());
+
+    // После удаления ссылок длина не уменьшается, а старые ID по-прежнему находятся
+    shortLinkRepository.deleteShortLink(shortIds.get(0));
+    Assertions.assertEquals(5, linkService.generateShortLinkID().length());
+    Assertions.assertTrue(shortLinkRepository.getShortLinkByShortID(shortIds.get(7)).isPresent());
+    Assertions.assertEquals(7, shortLinkRepository.countShortLinksByShortIdLength(4));
+  }
+
+  /**
+   * Проверяем, что при идемпотентном сокращении повторное сокращение того же (с точностью до
+   * нормализации) URL тем же пользователем возвращает его действующую ссылку, а другой пользователь
+   * или заблокированная по лимиту ссылка приводят к созданию новой.
+   */
+  @Test
+  void idempotentMakeNewShortLinkTest()
+      throws InvalidOriginalLinkException, UsagesLimitReachedException {
+    when(configManager.getDefaultServiceBaseURLProperty()).thenReturn("https://yulink.tech/");
+    when(configManager.getLegacyServiceBaseURLProperty()).thenReturn(new String[] {""});
+    when(configManager.getDefaultShortLinkTTLTimeUnitProperty())
+        .thenReturn(ConfigManager.TimeUnit.MINUTES);
+    when(configManager.getDefaultShortLinkTTLInUnitsProperty()).thenReturn(15);
+    when(configManager.getDefaultShortLinkUsageLimitProperty()).thenReturn(1);
+    when(configManager.getShortLinkAllowedCharactersProperty()).thenReturn(new char[] {'a', 'b'});
+    when(configManager.getDefaultShortLinkIdLengthProperty()).thenReturn(10);
+    when(configManager.getShortLinkShortenIdempotentProperty()).thenReturn(true);
+
+    UUID owner = UUID.randomUUID();
+    ShortLink shortLink = linkService.makeNewShortLink("https://GitHub.com:443", owner);
+    Assertions.assertFalse(linkService.isSavedShortLink(shortLink));
+    linkService.saveNewShortLink(shortLink);
+
+    ShortLink repeatedShortLink = linkService.makeNewShortLink("https://github.com/", owner);
+    Assertions.assertSame(shortLink, repeatedShortLink);
+    Assertions.assertTrue(linkService.isSavedShortLink(repeatedShortLink));
+
+    ShortLink otherOwnerShortLink =
+        linkService.makeNewShortLink("https://github.com/", UUID.randomUUID());
+    Assertions.assertNotEquals(shortLink.getShortId(), otherOwnerShortLink.getShortId());
+    Assertions.assertNotEquals(
+        shortLink.getShortId(),
+        linkService.makeNewShortLink("https://github.com/yuyuvu", owner).getShortId());
+
+    // Ссылка с израсходованным лимитом больше не возвращается повторно
+    Assertions.assertTrue(shortLink.incrementUsageCounter());
+    Assertions.assertFalse(
+        linkService.isSavedShortLink(linkService.makeNewShortLink("https://github.com", owner)));
+    Assertions.assertTrue(
+        linkService.findActiveShortLinkByOriginalURL("https://github.com", owner).isEmpty());
+  }
+
+  /**
+   * Проверяем, что префиксное дерево по service URL выбирает URL в том же порядке, что и
+   * последовательная проверка (устаревшие URL раньше текущего, даже если текущий длиннее), и
+   * перестраивается после перезагрузки настроек.
+   */
+  @Test
+  void serviceBaseURLMatcherKeepsOrderAndFollowsReload() {
+    when(configManager.getDefaultServiceBaseURLProperty()).thenReturn("https://yulink.tech/new/");
+    when(configManager.getLegacyServiceBaseURLProperty())
+        .thenReturn(new String[] {"https://yulink.tech/", "https://yulink.tech/n"});
+
+    LinkService.SplitShortURL splitShortURL =
+        linkService.splitShortLinkAndServiceBaseURL("https://yulink.tech/new/ABC123");
+    Assertions.assertEquals("https://yulink.tech/", splitShortURL.getServiceURL());
+    Assertions.assertEquals("new/ABC123", splitShortURL.getShortID());
+    Assertions.assertTrue(
+        linkService.checkShortLinkDoesNotStartWithServiceBaseURL("https://yulink"));
+    Assertions.assertTrue(
+        linkService.checkShortLinkDoesNotStartWithServiceBaseURL("https://yulink.tech"));
+
+    // Новые объекты настроек после перезагрузки
+    when(configManager.getDefaultServiceBaseURLProperty()).thenReturn("https://yulink.tech/new/");
+    when(configManager.getLegacyServiceBaseURLProperty())
+        .thenReturn(new String[] {"https://old.tech/", ""});
+
+    splitShortURL = linkService.splitShortLinkAndServiceBaseURL("https://yulink.tech/new/ABC123");
+    Assertions.assertEquals("https://yulink.tech/new/", splitShortURL.getServiceURL());
+    Assertions.assertEquals("ABC123", splitShortURL.getShortID());
+    Assertions.assertTrue(
+        linkService.checkShortLinkDoesNotStartWithServiceBaseURL("https://yulink.tech/ABC123"));
+    Assertions.assertTrue(
+        linkService.checkShortLinkDoesNotStartWithServiceBaseURL("https://old.tech/ABC123"));
+  }
+
+  /**
+   * Проверяем, что повторные переходы берут подготовленный редирект из кэша, а смена длинного URL,
+   * истечение срока действия и удаление ссылки не дают перейти по устаревшему редиректу.
+   */
+  @Test
+  void redirectCacheFollowsChangesExpiryAndDeletes()
+      throws OriginalLinkNotFoundException,
+          InvalidShortLinkException,
+          InvalidOriginalLinkException,
+          UsagesLimitReachedException,
+          NotEnoughPermissionsException,
+          IllegalCommandParameterException,
+          InterruptedException {
+    when(configManager.getRedirectCacheMaxEntriesProperty()).thenReturn(10);
+    when(configManager.getDefaultServiceBaseURLProperty()).thenReturn("https://yulink.tech/");
+    when(configManager.getLegacyServiceBaseURLProperty()).thenReturn(new String[] {""});
+    UUID owner = UUID.randomUUID();
+    LocalDateTime now = LocalDateTime.now();
+    linkService.saveNewShortLink(
+        new ShortLink(
+            "https://github.com/yuyuvu", "cached", now, now.plusDays(1), 0, 10, owner, false));
+
+    Assertions.assertEquals("https://github.com/yuyuvu", linkService.redirectByShortId("cached"));
+    Assertions.assertEquals("https://github.com/yuyuvu", linkService.redirectByShortId("cached"));
+    Assertions.assertEquals(1, linkService.getRedirectCacheMetrics().hits());
+    Assertions.assertEquals(1, linkService.getRedirectCacheMetrics().size());
+
+    linkService.changeShortLinkOriginalURL(
+        "https://yulink.tech/cached", owner, "https://example.com/new");
+    Assertions.assertEquals("https://example.com/new", linkService.redirectByShortId("cached"));
+    Assertions.assertEquals(
+        3, shortLinkRepository.getShortLinkByShortID("cached").orElseThrow().getUsageCounter());
+
+    linkService.uncheckedDeleteShortLinkByShortId("cached");
+    Assertions.assertEquals(0, linkService.getRedirectCacheMetrics().size());
+    Assertions.assertThrows(
+        OriginalLinkNotFoundException.class, () -> linkService.redirectByShortId("cached"));
+
+    // Срок действия проверяется и для ссылки из кэша
+    LocalDateTime expiration = LocalDateTime.now().plusNanos(300_000_000);
+    linkService.saveNewShortLink(
+        new ShortLink(
+            "https://github.com/yuyuvu", "expiring", now, expiration, 0, 10, owner, false));
+    Assertions.assertEquals("https://github.com/yuyuvu", linkService.redirectByShortId("expiring"));
+    while (!LocalDateTime.now().isAfter(expiration.plusNanos(1_000_000))) {
+      Thread.sleep(20);
+    }
+    Assertions.assertThrows(
+        InvalidShortLinkException.class, () -> linkService.redirectByShortId("expiring"));
+  }
+
+  /**
+   * Проверяем, что заполненный кэш редиректов освобождает место для новой ссылки, вытесняя ссылку
+   * без повторных переходов, а часто используемая ссылка остаётся в кэше.
+   */
+  @Test
+  void redirectCacheEvictsColdLinksWhenFull()
+      throws OriginalLinkNotFoundException,
+          InvalidShortLinkException,
+          InvalidOriginalLinkException,
+          UsagesLimitReachedException {
+    when(configManager.getRedirectCacheMaxEntriesProperty()).thenReturn(2);
+    UUID owner = UUID.randomUUID();
+    LocalDateTime now = LocalDateTime.now();
+    for (String shortId : new String[] {"hot", "cold", "new"}) {
+      linkService.saveNewShortLink(
+          new ShortLink(
+              "https://github.com/" + shortId, shortId, now, now.plusDays(1), 0, 10, owner, false));
+    }
+
+    linkService.redirectByShortId("hot");
+    linkService.redirectByShortId("hot");
+    linkService.redirectByShortId("cold");
+    linkService.redirectByShortId("new");
+    Assertions.assertEquals(1, linkService.getRedirectCacheMetrics().evictions());
+    Assertions.assertEquals(2, linkService.getRedirectCacheMetrics().size());
+
+    // Оставшиеся в кэше ссылки выдаются из кэша, вытесненная готовится заново
+    long hits = linkService.getRedirectCacheMetrics().hits();
+    linkService.redirectByShortId("hot");
+    linkService.redirectByShortId("new");
+    Assertions.assertEquals(hits + 2, linkService.getRedirectCacheMetrics().hits());
+    linkService.redirectByShortId("cold");
+    Assertions.assertEquals(hits + 2, linkService.getRedirectCacheMetrics().hits());
+    Assertions.assertEquals(2, linkService.getRedirectCacheMetrics().size());
+  }
 }
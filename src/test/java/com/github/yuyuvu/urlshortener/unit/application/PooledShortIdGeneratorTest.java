@@ -0,0 +1,70 @@
+package com.github.yuyuvu.urlshortener.unit.application;
+
+import com.github.yuyuvu.urlshortener.application.FeistelShortIdGenerator;
+import com.github.yuyuvu.urlshortener.application.PooledShortIdGenerator;
+import com.github.yuyuvu.urlshortener.application.ShortIdGenerator;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Класс для тестов пула заранее сгенерированных коротких ID в PooledShortIdGenerator. */
+public class PooledShortIdGeneratorTest {
+  private static final char[] ALLOWED_CHARACTERS = "abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+  private void awaitDepth(PooledShortIdGenerator generator, int depth) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (generator.getMetrics().depth() != depth) {
+      Assertions.assertTrue(System.currentTimeMillis() < deadline, "пул не пополнился");
+      Thread.sleep(5);
+    }
+  }
+
+  /**
+   * Проверяем, что пул пополняется в фоне до верхней границы, серия созданий до нижней границы
+   * забирает shortID из пула без обращений к генератору, а все выданные shortID различны.
+   */
+  @Test
+  void burstTakesShortIdsFromPool() throws InterruptedException {
+    InMemoryShortLinkRepository repository = new InMemoryShortLinkRepository(new HashMap<>());
+    AtomicInteger delegateCalls = new AtomicInteger();
+    FeistelShortIdGenerator feistel = new FeistelShortIdGenerator(7);
+    ShortIdGenerator countingGenerator =
+        (allowedCharacters, shortIdLength, shortLinkRepository) -> {
+          delegateCalls.incrementAndGet();
+          return feistel.nextShortId(allowedCharacters, shortIdLength, shortLinkRepository);
+        };
+
+    try (PooledShortIdGenerator generator = new PooledShortIdGenerator(countingGenerator, 8, 32)) {
+      Set<String> issued = new HashSet<>();
+      // Первое обращение ещё не находит готовых shortID и запускает пополнение
+      Assertions.assertTrue(issued.add(generator.nextShortId(ALLOWED_CHARACTERS, 5, repository)));
+      awaitDepth(generator, 32);
+
+      int callsBeforeBurst = delegateCalls.get();
+      for (int i = 0; i < 24; i++) {
+        Assertions.assertTrue(issued.add(generator.nextShortId(ALLOWED_CHARACTERS, 5, repository)));
+      }
+      Assertions.assertEquals(callsBeforeBurst, delegateCalls.get());
+      Assertions.assertEquals(
+          new PooledShortIdGenerator.Metrics(8, 24, 1, 1), generator.getMetrics());
+
+      // Опускание ниже нижней границы снова пополняет пул до верхней
+      Assertions.assertTrue(issued.add(generator.nextShortId(ALLOWED_CHARACTERS, 5, repository)));
+      awaitDepth(generator, 32);
+      // Быстрая серия опустошает пул: недостающие shortID генерируются в обход пула без повторов
+      for (int i = 0; i < 100; i++) {
+        Assertions.assertTrue(issued.add(generator.nextShortId(ALLOWED_CHARACTERS, 5, repository)));
+      }
+
+      // Смена длины shortID сбрасывает пул
+      long missesBeforeReset = generator.getMetrics().misses();
+      String longerShortId = generator.nextShortId(ALLOWED_CHARACTERS, 6, repository);
+      Assertions.assertEquals(6, longerShortId.length());
+      Assertions.assertEquals(missesBeforeReset + 1, generator.getMetrics().misses());
+    }
+  }
+}
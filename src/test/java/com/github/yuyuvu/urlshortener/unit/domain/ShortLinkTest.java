@@ -12,8 +12,14 @@ import com.github.yuyuvu.urlshortener.infrastructure.config.ConfigManager;
 import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -125,8 +131,8 @@ public class ShortLinkTest {
     when(configManager.getLegacyServiceBaseURLProperty()).thenReturn(new String[] {""});
 
     for (int i = 1; i <= 10; i++) {
-      // Проверка инкремента напрямую
-      shortLink.incrementUsageCounter();
+      // Проверка инкремента напрямую: об израсходовании лимита сообщает только 10-е использование
+      Assertions.assertEquals(i == 10, shortLink.incrementUsageCounter());
 
       // На 9 итерации проверяем, что лимит ещё не израсходован
       if (i == 9) {
@@ -147,4 +153,56 @@ public class ShortLinkTest {
     shortLink.setUsageLimitAmount(15);
     Assertions.assertFalse(shortLink.isLimitReached());
   }
+
+  /**
+   * Проверяем, что при параллельных переходах счётчик засчитывает ровно столько использований,
+   * сколько разрешает лимит, и ровно одно из них сообщает об израсходовании лимита, а лимит нельзя
+   * поменять после его израсходования.
+   */
+  @Test
+  void concurrentUsageAdmissionTest() throws Exception {
+    ShortLink shortLink =
+        new ShortLink(
+            "https://google.com",
+            "12345",
+            LocalDateTime.of(2025, 1, 1, 1, 1),
+            LocalDateTime.of(2100, 2, 1, 1, 1),
+            0,
+            1000,
+            UUID.randomUUID(),
+            false);
+    AtomicInteger admitted = new AtomicInteger();
+    AtomicInteger limitReached = new AtomicInteger();
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        futures.add(
+            executorService.submit(
+                () -> {
+                  for (int i = 0; i < 500; i++) {
+                    ShortLink.UsageAdmission usageAdmission = shortLink.tryAdmitUsage();
+                    if (usageAdmission == ShortLink.UsageAdmission.ADMITTED) {
+                      admitted.incrementAndGet();
+                    } else if (usageAdmission == ShortLink.UsageAdmission.ADMITTED_LIMIT_REACHED) {
+                      limitReached.incrementAndGet();
+                    }
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdown();
+    }
+
+    Assertions.assertEquals(999, admitted.get());
+    Assertions.assertEquals(1, limitReached.get());
+    Assertions.assertEquals(1000, shortLink.getUsageCounter());
+    Assertions.assertEquals(1000, shortLink.getUsageLimitAmount());
+    Assertions.assertEquals(ShortLink.UsageAdmission.REJECTED, shortLink.tryAdmitUsage());
+    Assertions.assertFalse(shortLink.trySetUsageLimitAmount(2000));
+    Assertions.assertEquals(1000, shortLink.getUsageLimitAmount());
+  }
 }
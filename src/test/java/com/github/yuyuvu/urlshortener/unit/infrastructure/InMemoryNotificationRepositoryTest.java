@@ -0,0 +1,104 @@
+package com.github.yuyuvu.urlshortener.unit.infrastructure;
+
+import com.github.yuyuvu.urlshortener.domain.model.Notification;
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryNotificationRepository;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Класс для тестов хранения уведомлений по пользователям в InMemoryNotificationRepository. */
+public class InMemoryNotificationRepositoryTest {
+  private final LocalDateTime now = LocalDateTime.now();
+
+  private Notification notification(UUID userUUID, boolean isRead) {
+    ShortLink shortLink =
+        new ShortLink(
+            "https://github.com/yuyuvu", "abcdef", now, now.plusDays(1), 0, 10, userUUID, false);
+    return new Notification(shortLink, userUUID, Notification.NotificationType.EXPIRED, isRead);
+  }
+
+  /**
+   * Проверяем, что непрочитанные уведомления возвращаются только для своего пользователя, а
+   * удаление прочитанных не трогает непрочитанные и уведомления других пользователей.
+   */
+  @Test
+  void readNotificationsArePurgedPerUser() {
+    UUID firstUser = UUID.randomUUID();
+    UUID secondUser = UUID.randomUUID();
+    InMemoryNotificationRepository repository =
+        new InMemoryNotificationRepository(
+            List.of(notification(firstUser, true), notification(secondUser, false)));
+    repository.saveNotification(notification(firstUser, false));
+    repository.saveNotification(notification(firstUser, false));
+
+    List<Notification> unread = repository.getUnreadNotificationsByUserUUID(firstUser);
+    Assertions.assertEquals(2, unread.size());
+    repository.markUnreadNotificationsAsRead(List.of(unread.get(0)));
+    Assertions.assertEquals(1, repository.getUnreadNotificationsByUserUUID(firstUser).size());
+
+    // Удаляются прочитанное при загрузке и прочитанное сейчас уведомления первого пользователя
+    Assertions.assertEquals(2, repository.deleteReadNotifications());
+    Assertions.assertEquals(0, repository.deleteReadNotifications());
+    Assertions.assertEquals(2, repository.getRepositoryAsList().size());
+    Assertions.assertEquals(1, repository.getUnreadNotificationsByUserUUID(firstUser).size());
+    Assertions.assertEquals(1, repository.getUnreadNotificationsByUserUUID(secondUser).size());
+
+    Notification lastUnread = repository.getUnreadNotificationsByUserUUID(firstUser).get(0);
+    Assertions.assertTrue(repository.deleteNotification(lastUnread));
+    Assertions.assertFalse(repository.deleteNotification(lastUnread));
+    Assertions.assertTrue(repository.getUnreadNotificationsByUserUUID(firstUser).isEmpty());
+  }
+
+  /**
+   * Проверяем, что уведомления не теряются, когда один поток создаёт и читает уведомления, а другой
+   * параллельно удаляет прочитанные, как консоль и планировщик в сервисе.
+   */
+  @Test
+  void concurrentReadAndPurgeKeepUnreadNotifications() throws Exception {
+    InMemoryNotificationRepository repository = new InMemoryNotificationRepository(List.of());
+    List<UUID> users = List.of(UUID.randomUUID(), UUID.randomUUID());
+    ExecutorService executorService = Executors.newFixedThreadPool(3);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (UUID user : users) {
+        futures.add(
+            executorService.submit(
+                () -> {
+                  for (int i = 0; i < 3000; i++) {
+                    repository.saveNotification(notification(user, false));
+                    if (i % 3 != 2) {
+                      repository.markUnreadNotificationsAsRead(
+                          repository.getUnreadNotificationsByUserUUID(user));
+                    }
+                  }
+                }));
+      }
+      futures.add(
+          executorService.submit(
+              () -> {
+                for (int i = 0; i < 3000; i++) {
+                  repository.deleteReadNotifications();
+                }
+              }));
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdown();
+    }
+    repository.deleteReadNotifications();
+
+    // После последнего прочтения непрочитанным остаётся только уведомление, созданное последним
+    for (UUID user : users) {
+      Assertions.assertEquals(1, repository.getUnreadNotificationsByUserUUID(user).size());
+    }
+    Assertions.assertEquals(2, repository.getRepositoryAsList().size());
+  }
+}
@@ -0,0 +1,243 @@
+package com.github.yuyuvu.urlshortener.unit.infrastructure;
+
+import com.github.yuyuvu.urlshortener.domain.model.ShortLink;
+import com.github.yuyuvu.urlshortener.infrastructure.persistence.InMemoryShortLinkRepository;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Класс для тестов индекса владельцев коротких ссылок в InMemoryShortLinkRepository. */
+public class InMemoryShortLinkRepositoryTest {
+  private final LocalDateTime now = LocalDateTime.now();
+
+  private ShortLink shortLink(String shortId, UUID owner) {
+    return shortLink(shortId, owner, now.plusDays(1));
+  }
+
+  private ShortLink shortLink(String shortId, UUID owner, LocalDateTime expirationDateTime) {
+    return new ShortLink(
+        "https://github.com/yuyuvu", shortId, now, expirationDateTime, 0, 10, owner, false);
+  }
+
+  private List<String> expiredShortIds(InMemoryShortLinkRepository repository, LocalDateTime at) {
+    return repository.getExpiredShortLinks(at).stream()
+        .map(ShortLink::getShortId)
+        .sorted()
+        .toList();
+  }
+
+  /**
+   * Проверяем, что индекс владельцев строится по загруженным данным и обновляется при сохранении,
+   * замене и удалении ссылок.
+   */
+  @Test
+  void ownerIndexFollowsSaveAndDelete() {
+    UUID firstOwner = UUID.randomUUID();
+    UUID secondOwner = UUID.randomUUID();
+    Map<String, ShortLink> loadedShortLinks = new HashMap<>();
+    loadedShortLinks.put("aaaaaa", shortLink("aaaaaa", firstOwner));
+    loadedShortLinks.put("bbbbbb", shortLink("bbbbbb", secondOwner));
+    InMemoryShortLinkRepository repository = new InMemoryShortLinkRepository(loadedShortLinks);
+
+    Assertions.assertEquals(1, repository.getShortLinksByOwnerUUID(firstOwner).size());
+    repository.saveShortLink(shortLink("cccccc", firstOwner));
+    Assertions.assertEquals(2, repository.getShortLinksByOwnerUUID(firstOwner).size());
+
+    // Замена ссылки с тем же shortID не дублирует её в индексе
+    repository.saveShortLink(shortLink("cccccc", firstOwner));
+    Assertions.assertEquals(2, repository.getShortLinksByOwnerUUID(firstOwner).size());
+
+    // Ссылка с тем же shortID у другого владельца переносится в его индекс
+    repository.saveShortLink(shortLink("aaaaaa", secondOwner));
+    Assertions.assertEquals(1, repository.getShortLinksByOwnerUUID(firstOwner).size());
+    Assertions.assertEquals(2, repository.getShortLinksByOwnerUUID(secondOwner).size());
+
+    Assertions.assertTrue(repository.deleteShortLink("cccccc"));
+    Assertions.assertFalse(repository.deleteShortLink("cccccc"));
+    Assertions.assertTrue(repository.getShortLinksByOwnerUUID(firstOwner).isEmpty());
+    Assertions.assertTrue(repository.getShortLinksByOwnerUUID(UUID.randomUUID()).isEmpty());
+  }
+
+  /**
+   * Проверяем, что при параллельном создании и удалении ссылок индекс остаётся согласованным с
+   * хранилищем.
+   */
+  @Test
+  void ownerIndexStaysConsistentUnderConcurrentUpdates() throws Exception {
+    InMemoryShortLinkRepository repository = new InMemoryShortLinkRepository(new HashMap<>());
+    List<UUID> owners = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        int threadNumber = thread;
+        futures.add(
+            executorService.submit(
+                () -> {
+                  for (int i = 0; i < 2000; i++) {
+                    String shortId = threadNumber + "-" + i;
+                    repository.saveShortLink(shortLink(shortId, owners.get(i % owners.size())));
+                    if (i % 2 == 0) {
+                      repository.deleteShortLink(shortId);
+                    }
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdown();
+    }
+
+    int indexedShortLinks = 0;
+    for (UUID owner : owners) {
+      for (ShortLink shortLink : repository.getShortLinksByOwnerUUID(owner)) {
+        Assertions.assertEquals(owner, shortLink.getOwnerOfShortURL());
+        indexedShortLinks++;
+      }
+    }
+    Assertions.assertEquals(4000, indexedShortLinks);
+    Assertions.assertEquals(4000, repository.getRepositoryAsMap().size());
+  }
+
+  /**
+   * Проверяем, что колесо таймеров возвращает ссылки ровно после наступления их срока (в том числе
+   * сроков, которые переносятся между уровнями колеса), учитывает изменение срока и удаление
+   * ссылки, а ссылка с истёкшим сроком возвращается повторно, пока её не удалят.
+   */
+  @Test
+  void expiredShortLinksFollowTimingWheel() {
+    UUID owner = UUID.randomUUID();
+    Map<String, ShortLink> loadedShortLinks = new HashMap<>();
+    loadedShortLinks.put("loaded", shortLink("loaded", owner, now.minusDays(1)));
+    InMemoryShortLinkRepository repository = new InMemoryShortLinkRepository(loadedShortLinks);
+    repository.saveShortLink(shortLink("minute", owner, now.plusMinutes(1)));
+    repository.saveShortLink(shortLink("hours", owner, now.plusHours(5)));
+    repository.saveShortLink(shortLink("days", owner, now.plusDays(40)));
+    repository.saveShortLink(shortLink("years", owner, now.plusYears(3)));
+
+    Assertions.assertEquals(List.of("loaded"), expiredShortIds(repository, now.plusSeconds(1)));
+    Assertions.assertEquals(List.of("loaded"), expiredShortIds(repository, now.plusSeconds(2)));
+    Assertions.assertTrue(repository.deleteShortLink("loaded"));
+    Assertions.assertEquals(List.of(), expiredShortIds(repository, now.plusSeconds(59)));
+    Assertions.assertEquals(List.of("minute"), expiredShortIds(repository, now.plusMinutes(2)));
+    repository.deleteShortLink("minute");
+
+    // Продление срока через сохранение переставляет таймер
+    ShortLink hours = repository.getShortLinkByShortID("hours").orElseThrow();
+    hours.setExpirationDateTime(now.plusDays(2));
+    repository.saveShortLink(hours);
+    Assertions.assertEquals(List.of(), expiredShortIds(repository, now.plusHours(6)));
+    Assertions.assertEquals(List.of("hours"), expiredShortIds(repository, now.plusDays(3)));
+    repository.deleteShortLink("hours");
+
+    // Удалённая ссылка не возвращается даже после наступления срока
+    repository.deleteShortLink("days");
+    Assertions.assertEquals(List.of(), expiredShortIds(repository, now.plusYears(1)));
+    Assertions.assertEquals(
+        List.of("years"), expiredShortIds(repository, now.plusYears(3).plusSeconds(1)));
+  }
+
+  /**
+   * Проверяем, что индекс URL находит ссылки владельца по нормализованному URL и следует за сменой
+   * URL в объекте ссылки, сменой владельца и удалением.
+   */
+  @Test
+  void originalURLIndexFollowsSaveAndDelete() {
+    UUID owner = UUID.randomUUID();
+    InMemoryShortLinkRepository repository = new InMemoryShortLinkRepository(new HashMap<>());
+    ShortLink shortLink = shortLink("aaaaaa", owner);
+    repository.saveShortLink(shortLink);
+
+    Assertions.assertEquals(
+        List.of(shortLink),
+        repository.getShortLinksByOwnerAndOriginalURL(owner, " HTTPS://GitHub.com:443/yuyuvu "));
+    Assertions.assertTrue(
+        repository
+            .getShortLinksByOwnerAndOriginalURL(owner, "https://github.com/YUYUVU")
+            .isEmpty());
+    Assertions.assertTrue(
+        repository
+            .getShortLinksByOwnerAndOriginalURL(UUID.randomUUID(), "https://github.com/yuyuvu")
+            .isEmpty());
+
+    // URL меняется в объекте ссылки и фиксируется повторным сохранением
+    shortLink.setOriginalURLAddress("https://example.com");
+    repository.saveShortLink(shortLink);
+    Assertions.assertTrue(
+        repository
+            .getShortLinksByOwnerAndOriginalURL(owner, "https://github.com/yuyuvu")
+            .isEmpty());
+    Assertions.assertEquals(
+        List.of(shortLink),
+        repository.getShortLinksByOwnerAndOriginalURL(owner, "https://example.com/"));
+
+    repository.deleteShortLink("aaaaaa");
+    Assertions.assertTrue(
+        repository.getShortLinksByOwnerAndOriginalURL(owner, "https://example.com").isEmpty());
+  }
+
+  /**
+   * Проверяем, что фильтр Блума по shortID не теряет ссылки при параллельном сохранении с
+   * пересозданием фильтра, отвечает "ссылки нет" для удалённых и неизвестных shortID без обращения
+   * к хранилищу в большинстве случаев и отдаёт метрики.
+   */
+  @Test
+  void shortIdFilterNeverHidesSavedShortLinks() throws Exception {
+    InMemoryShortLinkRepository repository = new InMemoryShortLinkRepository(new HashMap<>());
+    UUID owner = UUID.randomUUID();
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        int threadNumber = thread;
+        futures.add(
+            executorService.submit(
+                () -> {
+                  for (int i = 0; i < 3000; i++) {
+                    String shortId = "saved-" + threadNumber + "-" + i;
+                    repository.saveShortLink(shortLink(shortId, owner));
+                    Assertions.assertTrue(repository.getShortLinkByShortID(shortId).isPresent());
+                    if (i % 3 == 0) {
+                      repository.deleteShortLink(shortId);
+                    }
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdown();
+    }
+
+    for (int thread = 0; thread < 4; thread++) {
+      for (int i = 0; i < 3000; i++) {
+        String shortId = "saved-" + thread + "-" + i;
+        Assertions.assertEquals(
+            i % 3 != 0, repository.getShortLinkByShortID(shortId).isPresent(), shortId);
+      }
+    }
+
+    InMemoryShortLinkRepository.ShortIdFilterMetrics before = repository.getShortIdFilterMetrics();
+    for (int i = 0; i < 10000; i++) {
+      Assertions.assertTrue(repository.getShortLinkByShortID("unknown-" + i).isEmpty());
+    }
+    InMemoryShortLinkRepository.ShortIdFilterMetrics after = repository.getShortIdFilterMetrics();
+    Assertions.assertEquals(10000, after.lookups() - before.lookups());
+    Assertions.assertTrue(after.definiteMisses() - before.definiteMisses() > 9500);
+    Assertions.assertTrue(after.observedFalsePositiveRate() < 0.05);
+    Assertions.assertTrue(after.expectedFalsePositiveRate() < 0.05);
+    Assertions.assertTrue(after.capacity() >= 8000);
+    Assertions.assertTrue(after.memoryBytes() > 0);
+  }
+}